@@ -0,0 +1,48 @@
+package com.codehacks.contactsearch.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class ReportingDataSourceConfig {
+
+    /**
+     * Connections for reporting searches, to a read replica when
+     * {@code contact-search.reporting.datasource.url} is set and to the main
+     * database otherwise. Read-only, with its own small pool, so heavy
+     * reports cannot starve the request threads of connections.
+     * <p>
+     * Not a default candidate, so it is only injected where asked for by name
+     * and Spring Boot still sets up the main data source, JPA and JDBC
+     * templates as usual.
+     */
+    @Bean(defaultCandidate = false)
+    public DataSource reportingDataSource(
+            DataSource dataSource,
+            @Value("${contact-search.reporting.datasource.url:}") String url,
+            @Value("${contact-search.reporting.datasource.username:}") String username,
+            @Value("${contact-search.reporting.datasource.password:}") String password,
+            @Value("${contact-search.reporting.datasource.maximum-pool-size:4}") int maximumPoolSize) {
+        if (!StringUtils.hasText(url)) {
+            // A delegate rather than the bean itself, so closing this one at shutdown leaves the main pool alone
+            return new DelegatingDataSource(dataSource);
+        }
+        HikariDataSource replica = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .url(url)
+                .username(username)
+                .password(password)
+                .build();
+        replica.setReadOnly(true);
+        replica.setMaximumPoolSize(maximumPoolSize);
+        replica.setPoolName("HikariCP-Reporting");
+        return replica;
+    }
+}
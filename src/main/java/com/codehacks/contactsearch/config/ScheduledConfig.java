@@ -1,11 +1,18 @@
 package com.codehacks.contactsearch.config;
 
+import com.codehacks.contactsearch.service.AutocompleteIndex;
+import com.codehacks.contactsearch.service.ContactIndexManager;
+import com.codehacks.contactsearch.service.ContactSearchTemplates;
+import com.codehacks.contactsearch.service.IndexOutbox;
 import com.codehacks.contactsearch.service.PasswordResetService;
+import com.codehacks.contactsearch.service.ReindexJobService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 
 @Configuration
 @EnableScheduling
@@ -15,6 +22,16 @@ public class ScheduledConfig {
 
     private final PasswordResetService passwordResetService;
 
+    private final ContactSearchTemplates contactSearchTemplates;
+
+    private final AutocompleteIndex autocompleteIndex;
+
+    private final ReindexJobService reindexJobService;
+
+    private final ContactIndexManager contactIndexManager;
+
+    private final IndexOutbox indexOutbox;
+
     /**
      * Clean up expired password reset tokens every hour
      */
@@ -27,4 +44,104 @@ public class ScheduledConfig {
             log.error("Error cleaning up expired tokens", e);
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Retry search template registration every 5 minutes (no-op once registered)
+     */
+    @Scheduled(fixedDelay = 300000, initialDelay = 300000) // 5 minutes in milliseconds
+    public void registerSearchTemplates() {
+        contactSearchTemplates.register();
+    }
+
+    /**
+     * Pick up contacts changed or deleted through other instances every 30 seconds
+     */
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000) // 30 seconds in milliseconds
+    public void refreshAutocompleteIndex() {
+        if (!autocompleteIndex.isReady()) {
+            return;
+        }
+        try {
+            autocompleteIndex.replayChanges();
+        } catch (Exception e) {
+            log.error("Error refreshing autocomplete index", e);
+        }
+    }
+
+    /**
+     * Prune the autocomplete delete feed and rewrite the snapshot every 10 minutes
+     */
+    @Scheduled(fixedDelay = 600000, initialDelay = 600000) // 10 minutes in milliseconds
+    public void snapshotAutocompleteIndex() {
+        try {
+            // Deletes are recorded whether or not this instance keeps an index
+            autocompleteIndex.pruneDeletions();
+            if (autocompleteIndex.isReady()) {
+                autocompleteIndex.saveSnapshot();
+            }
+        } catch (Exception e) {
+            log.error("Error snapshotting autocomplete index", e);
+        }
+    }
+
+    /**
+     * Take over sync jobs whose instance went away every minute
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000) // 1 minute in milliseconds
+    public void resumeStaleReindexJobs() {
+        try {
+            reindexJobService.resumeStaleJobs();
+        } catch (Exception e) {
+            log.error("Error resuming sync jobs", e);
+        }
+    }
+
+    /**
+     * Runs {@link #refreshRebuildTarget} on its own thread, so a long snapshot
+     * or drain on the shared scheduler can't hold it up while a rebuild waits
+     * for it. Not a default candidate, so Spring Boot still sets up the shared
+     * scheduler for the other jobs.
+     */
+    @Bean(defaultCandidate = false)
+    public ThreadPoolTaskScheduler rebuildTargetScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("rebuild-target-");
+        return scheduler;
+    }
+
+    /**
+     * Look up the index being rebuilt every 10 seconds, so contact writes go to
+     * it too; keep below contact-search.index.rebuild.instance-stale-after
+     */
+    @Scheduled(fixedDelay = 10000, initialDelay = 10000, scheduler = "rebuildTargetScheduler") // 10 seconds
+    public void refreshRebuildTarget() {
+        contactIndexManager.refreshRebuildTarget();
+    }
+
+    /**
+     * Runs {@link #drainIndexOutbox} on its own thread, so indexing lag stays
+     * bounded by the poll interval however long the other jobs take
+     */
+    @Bean(defaultCandidate = false)
+    public ThreadPoolTaskScheduler indexOutboxScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("index-outbox-");
+        return scheduler;
+    }
+
+    /**
+     * Index contact changes recorded in the outbox every poll-interval
+     */
+    @Scheduled(fixedDelayString = "${contact-search.contacts.outbox.poll-interval:1s}",
+            initialDelayString = "${contact-search.contacts.outbox.initial-delay:5s}",
+            scheduler = "indexOutboxScheduler")
+    public void drainIndexOutbox() {
+        try {
+            indexOutbox.drain();
+        } catch (Exception e) {
+            log.error("Error draining the index outbox", e);
+        }
+    }
+}
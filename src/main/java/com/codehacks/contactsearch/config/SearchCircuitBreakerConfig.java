@@ -0,0 +1,55 @@
+package com.codehacks.contactsearch.config;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class SearchCircuitBreakerConfig {
+
+    public static final String ELASTICSEARCH_BREAKER = "elasticsearch";
+
+    /**
+     * Opens when too many of the last searches against Elasticsearch failed or
+     * were slow, so searches go straight to the database fallback instead of
+     * waiting on a degraded cluster. After {@code wait-in-open} a few probe
+     * searches are let through (half-open) and decide whether it closes again.
+     * Invalid requests (e.g. a malformed cursor) don't count against the cluster.
+     * <p>
+     * State, call outcomes and slow calls are published as
+     * {@code resilience4j.circuitbreaker.*} metrics.
+     */
+    @Bean
+    public CircuitBreaker elasticsearchCircuitBreaker(
+            MeterRegistry meterRegistry,
+            @Value("${contact-search.search.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+            @Value("${contact-search.search.circuit-breaker.slow-call-rate-threshold:50}") float slowCallRateThreshold,
+            @Value("${contact-search.search.circuit-breaker.slow-call-duration:1s}") Duration slowCallDuration,
+            @Value("${contact-search.search.circuit-breaker.sliding-window-size:50}") int slidingWindowSize,
+            @Value("${contact-search.search.circuit-breaker.minimum-calls:20}") int minimumCalls,
+            @Value("${contact-search.search.circuit-breaker.wait-in-open:10s}") Duration waitInOpen,
+            @Value("${contact-search.search.circuit-breaker.half-open-calls:5}") int halfOpenCalls) {
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slowCallDurationThreshold(slowCallDuration)
+                .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumCalls)
+                .waitDurationInOpenState(waitInOpen)
+                .permittedNumberOfCallsInHalfOpenState(halfOpenCalls)
+                .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                .ignoreExceptions(IllegalArgumentException.class)
+                .build();
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(config);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+        return registry.circuitBreaker(ELASTICSEARCH_BREAKER);
+    }
+}
@@ -0,0 +1,65 @@
+package com.codehacks.contactsearch.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+@EnableConfigurationProperties(SearchTimeoutProperties.class)
+public class SearchExecutorConfig {
+
+    /**
+     * Runs the strategies of a fused search in parallel. Bounded, so a burst
+     * of fused searches queues (and is rejected once the queue is full)
+     * instead of opening unbounded connections to Elasticsearch.
+     * <p>
+     * Not a default candidate, so it is only injected where asked for by name
+     * and Spring Boot still sets up its own task executor for MVC async
+     * requests.
+     */
+    @Bean(defaultCandidate = false)
+    public ThreadPoolTaskExecutor contactSearchExecutor(
+            @Value("${contact-search.search.fused.threads:8}") int threads,
+            @Value("${contact-search.search.fused.queue-capacity:200}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("contact-search-");
+        return executor;
+    }
+
+    /**
+     * Sends the {@code _bulk} requests of a full resync. {@link
+     * com.codehacks.contactsearch.service.ContactIndexer} never has more than
+     * {@code contact-search.contacts.sync.concurrent-requests} of them
+     * submitted, so the queue only covers a worker that released its permit
+     * but has not yet gone back to the pool.
+     */
+    @Bean(defaultCandidate = false)
+    public ThreadPoolTaskExecutor contactIndexerExecutor(
+            @Value("${contact-search.contacts.sync.concurrent-requests:4}") int concurrentRequests) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrentRequests);
+        executor.setMaxPoolSize(concurrentRequests);
+        executor.setQueueCapacity(concurrentRequests);
+        executor.setThreadNamePrefix("contact-indexer-");
+        return executor;
+    }
+
+    /**
+     * Runs background resync jobs, one at a time; the job itself hands its
+     * bulk requests to {@code contactIndexerExecutor}
+     */
+    @Bean(defaultCandidate = false)
+    public ThreadPoolTaskExecutor reindexJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(10);
+        executor.setThreadNamePrefix("reindex-job-");
+        return executor;
+    }
+}
@@ -0,0 +1,52 @@
+package com.codehacks.contactsearch.config;
+
+import com.codehacks.contactsearch.model.SearchMode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Time budgets for contact searches, sent to Elasticsearch as the search
+ * {@code timeout}. Shards still running when it expires stop collecting and
+ * the hits found so far are returned as a partial result.
+ * @param defaultBudget Budget of modes without an entry in {@code modes}
+ * @param maxBudget Upper bound for a budget requested per call; keep it below
+ *                  {@code spring.elasticsearch.socket-timeout}, which ends other
+ *                  requests Elasticsearch does not answer in time
+ * @param modes Budgets of individual search modes
+ * @param clientGrace Time past its budget that a search, or a caller sharing an
+ *                    identical in-flight search, waits for the answer before
+ *                    giving up on the client side
+ */
+@ConfigurationProperties("contact-search.search.timeout")
+public record SearchTimeoutProperties(
+    @DefaultValue("2s") Duration defaultBudget,
+    @DefaultValue("5s") Duration maxBudget,
+    Map<SearchMode, Duration> modes,
+    @DefaultValue("500ms") Duration clientGrace
+) {
+
+    public SearchTimeoutProperties {
+        modes = modes != null ? Map.copyOf(modes) : Map.of();
+    }
+
+    /**
+     * The requested budget capped at {@code maxBudget}, or the mode's own
+     * budget when none was requested
+     */
+    public Duration budget(SearchMode mode, Duration requested) {
+        if (requested == null) {
+            return modes.getOrDefault(mode, defaultBudget);
+        }
+        return capped(requested);
+    }
+
+    /**
+     * The requested budget capped at {@code maxBudget}
+     */
+    public Duration capped(Duration requested) {
+        return requested.compareTo(maxBudget) > 0 ? maxBudget : requested;
+    }
+}
@@ -1,7 +1,12 @@
 package com.codehacks.contactsearch.controller;
 
+import com.codehacks.contactsearch.dto.BulkGetRequest;
+import com.codehacks.contactsearch.model.BulkGetResponse;
 import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.ReindexJob;
+import com.codehacks.contactsearch.model.ReindexJobResponse;
 import com.codehacks.contactsearch.service.ContactService;
+import com.codehacks.contactsearch.service.ReindexJobService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -12,6 +17,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -20,8 +26,10 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import com.codehacks.contactsearch.model.SyncResponse;
+
+import java.net.URI;
 
 @RestController
 @RequestMapping("/api/v1/contacts")
@@ -30,8 +38,11 @@ public class ContactController {
 
     private final ContactService contactService;
 
-    public ContactController(ContactService contactService) {
+    private final ReindexJobService reindexJobService;
+
+    public ContactController(ContactService contactService, ReindexJobService reindexJobService) {
         this.contactService = contactService;
+        this.reindexJobService = reindexJobService;
     }
 
     @PostMapping
@@ -69,6 +80,33 @@ public class ContactController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @PostMapping("/bulk-get")
+    @Operation(
+        summary = "Get contacts by IDs",
+        description = "Retrieves many contacts in one call, from PostgreSQL with a single query, or as search "
+            + "documents from Elasticsearch with a single multi-get when fromIndex is set. Contacts are returned "
+            + "in the order their ids were requested, and ids with no contact are listed as missing."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Contacts retrieved successfully",
+            content = @Content(schema = @Schema(implementation = BulkGetResponse.class))),
+        @ApiResponse(responseCode = "400", description = "No ids, or more ids than allowed")
+    })
+    public ResponseEntity<BulkGetResponse<?>> getContacts(
+        @Parameter(description = "Contact IDs to read", required = true)
+        @Valid @RequestBody BulkGetRequest request,
+        @Parameter(description = "Read search documents from Elasticsearch instead of PostgreSQL", example = "false")
+        @RequestParam(defaultValue = "false") boolean fromIndex) {
+        try {
+            BulkGetResponse<?> response = fromIndex
+                    ? contactService.getDocumentsByIds(request.getIds())
+                    : contactService.getContactsByIds(request.getIds());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     @PutMapping("/{id}")
     @Operation(
         summary = "Update contact by ID",
@@ -127,14 +165,84 @@ public class ContactController {
     @PostMapping("/sync")
     @Operation(
         summary = "Sync contacts to Elasticsearch",
-        description = "Synchronizes all contacts from PostgreSQL to Elasticsearch for search functionality"
+        description = "Starts a background job that synchronizes all contacts from PostgreSQL to Elasticsearch, "
+            + "with keyset-paged reads and parallel bulk requests, and returns it right away. If a sync is "
+            + "already running, that job is returned instead. Poll the job for progress."
     )
     @ApiResponses(value = {
-        @ApiResponse(responseCode = "200", description = "Sync completed successfully",
-            content = @Content(schema = @Schema(implementation = SyncResponse.class)))
+        @ApiResponse(responseCode = "202", description = "Sync job started or already running",
+            content = @Content(schema = @Schema(implementation = ReindexJobResponse.class))),
+        @ApiResponse(responseCode = "409", description = "No Elasticsearch index to sync (Postgres search engine)")
     })
-    public ResponseEntity<SyncResponse> syncToElasticsearch() {
-        contactService.syncAllToElasticsearch();
-        return ResponseEntity.ok(new SyncResponse("Sync completed", "All contacts have been synchronized to Elasticsearch"));
+    public ResponseEntity<ReindexJobResponse> syncToElasticsearch() {
+        try {
+            ReindexJob job = reindexJobService.start();
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/v1/contacts/sync/" + job.getId()))
+                    .body(ReindexJobResponse.from(job));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @PostMapping("/index/rebuild")
+    @Operation(
+        summary = "Rebuild the search index blue/green",
+        description = "Starts a background job that loads all contacts into a new versioned index with the current "
+            + "settings and mapping, then moves the contacts alias to it in one step, so search keeps working "
+            + "throughout. Contacts written meanwhile go to both indexes. Progress is reported like a sync job's."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "202", description = "Rebuild job started, or the job already running",
+            content = @Content(schema = @Schema(implementation = ReindexJobResponse.class))),
+        @ApiResponse(responseCode = "409", description = "No Elasticsearch index to rebuild (Postgres search engine)")
+    })
+    public ResponseEntity<ReindexJobResponse> rebuildIndex() {
+        try {
+            ReindexJob job = reindexJobService.startRebuild();
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/v1/contacts/sync/" + job.getId()))
+                    .body(ReindexJobResponse.from(job));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    @GetMapping("/sync/{jobId}")
+    @Operation(
+        summary = "Get sync job progress",
+        description = "Reports a sync job's status, contacts processed out of the total, throughput in docs/sec, "
+            + "estimated time left and the error it failed with"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Sync job found",
+            content = @Content(schema = @Schema(implementation = ReindexJobResponse.class))),
+        @ApiResponse(responseCode = "404", description = "Sync job not found")
+    })
+    public ResponseEntity<ReindexJobResponse> getSyncJob(
+        @Parameter(description = "Sync job ID", required = true, example = "1")
+        @PathVariable Long jobId) {
+        return reindexJobService.getJob(jobId)
+                .map(job -> ResponseEntity.ok(ReindexJobResponse.from(job)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/sync/{jobId}/cancel")
+    @Operation(
+        summary = "Cancel a sync job",
+        description = "Asks a running sync job to stop; it stops once its bulk requests in flight have finished. "
+            + "Contacts indexed so far stay in the index."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "202", description = "Cancellation requested, or the job had already finished",
+            content = @Content(schema = @Schema(implementation = ReindexJobResponse.class))),
+        @ApiResponse(responseCode = "404", description = "Sync job not found")
+    })
+    public ResponseEntity<ReindexJobResponse> cancelSyncJob(
+        @Parameter(description = "Sync job ID", required = true, example = "1")
+        @PathVariable Long jobId) {
+        return reindexJobService.cancel(jobId)
+                .map(job -> ResponseEntity.accepted().body(ReindexJobResponse.from(job)))
+                .orElse(ResponseEntity.notFound().build());
     }
 }
@@ -1,7 +1,21 @@
 package com.codehacks.contactsearch.controller;
 
 import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.dto.BatchSearchRequest;
+import com.codehacks.contactsearch.model.BatchSearchResult;
+import com.codehacks.contactsearch.model.ContactFields;
+import com.codehacks.contactsearch.model.ContactProjection;
+import com.codehacks.contactsearch.model.CursorPage;
+import com.codehacks.contactsearch.model.ErrorResponse;
+import com.codehacks.contactsearch.model.FusedPage;
+import com.codehacks.contactsearch.model.SearchMode;
+import com.codehacks.contactsearch.model.SearchResponse;
+import com.codehacks.contactsearch.model.TieredPage;
+import com.codehacks.contactsearch.model.UnknownFieldException;
 import com.codehacks.contactsearch.service.ContactSearchService;
+import com.codehacks.contactsearch.service.FullTextContactSearch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -9,24 +23,56 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/v1/search/contacts")
 @Tag(name = "Contact Search", description = "APIs for searching contacts using Elasticsearch")
 public class ContactSearchController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    static final String SEARCH_TIER_HEADER = "X-Search-Tier";
+
+    static final String SEARCH_STRATEGIES_HEADER = "X-Search-Strategies";
+
+    static final String SEARCH_BUDGET_HEADER = "X-Search-Budget-Ms";
+
+    static final String PARTIAL_RESULTS_HEADER = "X-Partial-Results";
+
+    static final String DEGRADED_RESULTS_HEADER = "X-Search-Degraded";
 
     private final ContactSearchService contactSearchService;
 
-    public ContactSearchController(ContactSearchService contactSearchService) {
+    private final FullTextContactSearch fullTextContactSearch;
+
+    private final ObjectMapper objectMapper;
+
+    public ContactSearchController(ContactSearchService contactSearchService,
+                                   FullTextContactSearch fullTextContactSearch, ObjectMapper objectMapper) {
         this.contactSearchService = contactSearchService;
+        this.fullTextContactSearch = fullTextContactSearch;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
@@ -36,15 +82,165 @@ public class ContactSearchController {
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Search results retrieved successfully",
-            content = @Content(schema = @Schema(implementation = ContactDocument.class)))
+            content = @Content(schema = @Schema(implementation = ContactProjection.class)))
+    })
+    public ResponseEntity<?> searchContacts(
+            @Parameter(description = "Search query", required = true, example = "john")
+            @RequestParam String query,
+            @Parameter(description = "Number of results to skip", example = "0")
+            @RequestParam(defaultValue = "0") int offset,
+            @Parameter(description = "Maximum number of results", example = "10")
+            @RequestParam(defaultValue = "10") int size,
+            @Parameter(description = "Cursor from the previous page's X-Next-Cursor header, or * to start cursor pagination")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Comma-separated fields to return, e.g. firstName,lastName (id is always returned); all by default")
+            @RequestParam(required = false) String fields,
+            @Parameter(description = "Wrap the page in a SearchResponse with the hit count and timings (offset pages only)")
+            @RequestParam(defaultValue = "false") boolean envelope,
+            @Parameter(description = "Time budget in milliseconds, capped at contact-search.search.timeout.max-budget; "
+                + "the mode's configured budget by default")
+            @RequestHeader(value = SEARCH_BUDGET_HEADER, required = false) Long budgetMs) {
+        ContactFields contactFields = ContactFields.parse(fields);
+        if (cursor != null) {
+            return cursorPage(contactFields, SearchMode.STANDARD, query, cursor, size);
+        }
+        return offsetPage(SearchMode.STANDARD, query, offset, size, contactFields, envelope, budgetMs);
+    }
+
+    @GetMapping("/smart")
+    @Operation(
+        summary = "Smart search",
+        description = "Tries exact and prefix matching first and escalates to fuzzy, n-gram and then spelling "
+            + "correction matching only when the previous tier does not fill the page. The tier that answered "
+            + "is returned in the X-Search-Tier header."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Search results retrieved successfully",
+            content = @Content(schema = @Schema(implementation = ContactProjection.class)))
     })
-    public ResponseEntity<List<ContactDocument>> searchContacts(
+    public ResponseEntity<List<ContactProjection>> smartSearch(
             @Parameter(description = "Search query", required = true, example = "john")
             @RequestParam String query,
+            @Parameter(description = "Number of results to skip", example = "0")
+            @RequestParam(defaultValue = "0") int offset,
+            @Parameter(description = "Maximum number of results", example = "10")
+            @RequestParam(defaultValue = "10") int size,
+            @Parameter(description = "Comma-separated fields to return, e.g. firstName,lastName (id is always returned); all by default")
+            @RequestParam(required = false) String fields,
+            @Parameter(description = "Time budget in milliseconds of each tier's search, capped at "
+                + "contact-search.search.timeout.max-budget; the tier mode's configured budget by default")
+            @RequestHeader(value = SEARCH_BUDGET_HEADER, required = false) Long budgetMs) {
+        if (budgetMs != null && budgetMs <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        ContactFields contactFields = ContactFields.parse(fields);
+        TieredPage<ContactDocument> page =
+                contactSearchService.smartSearch(query, offset, size, contactFields, budget(budgetMs));
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .header(SEARCH_TIER_HEADER, page.tier().name().toLowerCase(Locale.ROOT));
+        return flagged(builder, page.partial(), page.degraded()).body(project(page.results(), contactFields));
+    }
+
+    @GetMapping("/fused")
+    @Operation(
+        summary = "Fused search",
+        description = "Runs fuzzy, partial-match and spelling-correction searches in parallel and merges them with "
+            + "reciprocal rank fusion, each contact once. Strategies that miss the latency budget (the "
+            + "X-Search-Budget-Ms header, or contact-search.search.fused.budget) are left out; the ones that were "
+            + "fused are listed in the X-Search-Strategies header."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Fused search results retrieved successfully",
+            content = @Content(schema = @Schema(implementation = ContactProjection.class)))
+    })
+    public ResponseEntity<List<ContactProjection>> fusedSearch(
+            @Parameter(description = "Search query of uncertain spelling", required = true, example = "Jon Smyth")
+            @RequestParam String query,
+            @Parameter(description = "Number of results to skip", example = "0")
+            @RequestParam(defaultValue = "0") int offset,
             @Parameter(description = "Maximum number of results", example = "10")
-            @RequestParam(defaultValue = "10") int size) {
-        List<ContactDocument> results = contactSearchService.searchContacts(query, size);
-        return ResponseEntity.ok(results);
+            @RequestParam(defaultValue = "10") int size,
+            @Parameter(description = "Comma-separated fields to return, e.g. firstName,lastName (id is always returned); all by default")
+            @RequestParam(required = false) String fields,
+            @Parameter(description = "Time budget in milliseconds of each strategy and of the fusion waiting for "
+                + "them, capped at contact-search.search.timeout.max-budget; the strategy modes' budgets and "
+                + "contact-search.search.fused.budget by default")
+            @RequestHeader(value = SEARCH_BUDGET_HEADER, required = false) Long budgetMs) {
+        if (budgetMs != null && budgetMs <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        ContactFields contactFields = ContactFields.parse(fields);
+        FusedPage<ContactDocument> page =
+                contactSearchService.fusedSearch(query, offset, size, contactFields, budget(budgetMs));
+        String strategies = page.strategies().stream()
+                .map(mode -> mode.name().toLowerCase(Locale.ROOT))
+                .collect(Collectors.joining(","));
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .header(SEARCH_STRATEGIES_HEADER, strategies);
+        return flagged(builder, page.partial(), page.degraded()).body(project(page.results(), contactFields));
+    }
+
+    @GetMapping("/full-text")
+    @Operation(
+        summary = "Full-text search for reports",
+        description = "Ranked Postgres full-text search over whole words of the names, email and city, answered from "
+            + "the reporting data source (a read replica when configured) and never from Elasticsearch. Accepts web "
+            + "search syntax: \"quoted phrases\", or, -excluded. Pages can be larger than on the other endpoints."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Search results retrieved successfully",
+            content = @Content(schema = @Schema(implementation = ContactProjection.class)))
+    })
+    public ResponseEntity<List<ContactProjection>> fullTextSearch(
+            @Parameter(description = "Search query", required = true, example = "john -smith")
+            @RequestParam String query,
+            @Parameter(description = "Number of results to skip", example = "0")
+            @RequestParam(defaultValue = "0") int offset,
+            @Parameter(description = "Maximum number of results, capped at contact-search.reporting.max-page-size",
+                example = "100")
+            @RequestParam(defaultValue = "100") int size,
+            @Parameter(description = "Comma-separated fields to return, e.g. firstName,lastName (id is always returned); all by default")
+            @RequestParam(required = false) String fields) {
+        ContactFields contactFields = ContactFields.parse(fields);
+        return ResponseEntity.ok(project(
+                fullTextContactSearch.searchContacts(query, offset, size, contactFields), contactFields));
+    }
+
+    @PostMapping(value = "/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(
+        summary = "Batch search",
+        description = "Runs many searches in one call, sent to Elasticsearch in chunks of multi-search requests. "
+            + "Results are streamed back as newline-delimited JSON, one line per search in request order, each "
+            + "with the search's index, its first page of results and whether they are partial or degraded. "
+            + "Suggest mode is not supported."
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Batch search results streamed successfully",
+            content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                schema = @Schema(implementation = BatchSearchResult.class))),
+        @ApiResponse(responseCode = "400",
+            description = "Invalid batch, too many searches, unsupported mode or non-positive budget")
+    })
+    public ResponseEntity<StreamingResponseBody> batchSearch(
+            @Valid @RequestBody BatchSearchRequest request,
+            @Parameter(description = "Time budget in milliseconds of each search, capped at "
+                + "contact-search.search.timeout.max-budget; each search mode's configured budget by default")
+            @RequestHeader(value = SEARCH_BUDGET_HEADER, required = false) Long budgetMs) {
+        if (budgetMs != null && budgetMs <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        List<BatchSearchRequest.Search> searches = request.getSearches();
+        try {
+            contactSearchService.validateBatch(searches);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        Duration budget = budget(budgetMs);
+        StreamingResponseBody body = out -> contactSearchService.batchSearch(searches, budget,
+                chunk -> writeLines(out, chunk));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     @GetMapping("/autocomplete")
@@ -54,15 +250,57 @@ public class ContactSearchController {
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Autocomplete suggestions retrieved successfully",
-            content = @Content(schema = @Schema(implementation = ContactDocument.class)))
+            content = @Content(schema = @Schema(implementation = ContactProjection.class)))
     })
-    public ResponseEntity<List<ContactDocument>> autocompleteSearch(
+    public ResponseEntity<?> autocompleteSearch(
             @Parameter(description = "Partial search query", required = true, example = "jo")
             @RequestParam String query,
+            @Parameter(description = "Number of results to skip", example = "0")
+            @RequestParam(defaultValue = "0") int offset,
+            @Parameter(description = "Maximum number of suggestions", example = "5")
+            @RequestParam(defaultValue = "5") int size,
+            @Parameter(description = "Cursor from the previous page's X-Next-Cursor header, or * to start cursor pagination")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Comma-separated fields to return, e.g. firstName,lastName (id is always returned); all by default")
+            @RequestParam(required = false) String fields,
+            @Parameter(description = "Wrap the page in a SearchResponse with the hit count and timings (offset pages only)")
+            @RequestParam(defaultValue = "false") boolean envelope,
+            @Parameter(description = "Time budget in milliseconds, capped at contact-search.search.timeout.max-budget; "
+                + "the mode's configured budget by default")
+            @RequestHeader(value = SEARCH_BUDGET_HEADER, required = false) Long budgetMs) {
+        ContactFields contactFields = ContactFields.parse(fields);
+        if (cursor != null) {
+            return cursorPage(contactFields, SearchMode.AUTOCOMPLETE, query, cursor, size);
+        }
+        return offsetPage(SearchMode.AUTOCOMPLETE, query, offset, size, contactFields, envelope, budgetMs);
+    }
+
+    @GetMapping("/suggest")
+    @Operation(
+        summary = "Completion suggestions",
+        description = "Suggests contacts whose first name, last name, full name, email or city starts with the input, "
+            + "using the Elasticsearch completion suggester"
+    )
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Suggestions retrieved successfully",
+            content = @Content(schema = @Schema(implementation = ContactProjection.class)))
+    })
+    public ResponseEntity<?> suggestSearch(
+            @Parameter(description = "Prefix to complete", required = true, example = "john sm")
+            @RequestParam String query,
+            @Parameter(description = "Number of results to skip", example = "0")
+            @RequestParam(defaultValue = "0") int offset,
             @Parameter(description = "Maximum number of suggestions", example = "5")
-            @RequestParam(defaultValue = "5") int size) {
-        List<ContactDocument> results = contactSearchService.autocompleteSearch(query, size);
-        return ResponseEntity.ok(results);
+            @RequestParam(defaultValue = "5") int size,
+            @Parameter(description = "Comma-separated fields to return, e.g. firstName,lastName (id is always returned); all by default")
+            @RequestParam(required = false) String fields,
+            @Parameter(description = "Wrap the page in a SearchResponse with the hit count and timings (offset pages only)")
+            @RequestParam(defaultValue = "false") boolean envelope,
+            @Parameter(description = "Time budget in milliseconds, capped at contact-search.search.timeout.max-budget; "
+                + "the mode's configured budget by default")
+            @RequestHeader(value = SEARCH_BUDGET_HEADER, required = false) Long budgetMs) {
+        ContactFields contactFields = ContactFields.parse(fields);
+        return offsetPage(SearchMode.SUGGEST, query, offset, size, contactFields, envelope, budgetMs);
     }
 
     @GetMapping("/fuzzy")
@@ -72,15 +310,29 @@ public class ContactSearchController {
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Fuzzy search results retrieved successfully",
-            content = @Content(schema = @Schema(implementation = ContactDocument.class)))
+            content = @Content(schema = @Schema(implementation = ContactProjection.class)))
     })
-    public ResponseEntity<List<ContactDocument>> fuzzySearch(
+    public ResponseEntity<?> fuzzySearch(
             @Parameter(description = "Search query (tolerant to typos)", required = true, example = "jhon")
             @RequestParam String query,
+            @Parameter(description = "Number of results to skip", example = "0")
+            @RequestParam(defaultValue = "0") int offset,
             @Parameter(description = "Maximum number of results", example = "10")
-            @RequestParam(defaultValue = "10") int size) {
-        List<ContactDocument> results = contactSearchService.fuzzySearch(query, size);
-        return ResponseEntity.ok(results);
+            @RequestParam(defaultValue = "10") int size,
+            @Parameter(description = "Cursor from the previous page's X-Next-Cursor header, or * to start cursor pagination")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Comma-separated fields to return, e.g. firstName,lastName (id is always returned); all by default")
+            @RequestParam(required = false) String fields,
+            @Parameter(description = "Wrap the page in a SearchResponse with the hit count and timings (offset pages only)")
+            @RequestParam(defaultValue = "false") boolean envelope,
+            @Parameter(description = "Time budget in milliseconds, capped at contact-search.search.timeout.max-budget; "
+                + "the mode's configured budget by default")
+            @RequestHeader(value = SEARCH_BUDGET_HEADER, required = false) Long budgetMs) {
+        ContactFields contactFields = ContactFields.parse(fields);
+        if (cursor != null) {
+            return cursorPage(contactFields, SearchMode.FUZZY, query, cursor, size);
+        }
+        return offsetPage(SearchMode.FUZZY, query, offset, size, contactFields, envelope, budgetMs);
     }
 
     @GetMapping("/city")
@@ -90,15 +342,29 @@ public class ContactSearchController {
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "City search results retrieved successfully",
-            content = @Content(schema = @Schema(implementation = ContactDocument.class)))
+            content = @Content(schema = @Schema(implementation = ContactProjection.class)))
     })
-    public ResponseEntity<List<ContactDocument>> searchByCity(
+    public ResponseEntity<?> searchByCity(
             @Parameter(description = "City name to search for", required = true, example = "New York")
             @RequestParam String city,
+            @Parameter(description = "Number of results to skip", example = "0")
+            @RequestParam(defaultValue = "0") int offset,
             @Parameter(description = "Maximum number of results", example = "10")
-            @RequestParam(defaultValue = "10") int size) {
-        List<ContactDocument> results = contactSearchService.searchByCity(city, size);
-        return ResponseEntity.ok(results);
+            @RequestParam(defaultValue = "10") int size,
+            @Parameter(description = "Cursor from the previous page's X-Next-Cursor header, or * to start cursor pagination")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Comma-separated fields to return, e.g. firstName,lastName (id is always returned); all by default")
+            @RequestParam(required = false) String fields,
+            @Parameter(description = "Wrap the page in a SearchResponse with the hit count and timings (offset pages only)")
+            @RequestParam(defaultValue = "false") boolean envelope,
+            @Parameter(description = "Time budget in milliseconds, capped at contact-search.search.timeout.max-budget; "
+                + "the mode's configured budget by default")
+            @RequestHeader(value = SEARCH_BUDGET_HEADER, required = false) Long budgetMs) {
+        ContactFields contactFields = ContactFields.parse(fields);
+        if (cursor != null) {
+            return cursorPage(contactFields, SearchMode.CITY, city, cursor, size);
+        }
+        return offsetPage(SearchMode.CITY, city, offset, size, contactFields, envelope, budgetMs);
     }
 
     @GetMapping("/spelling-correction")
@@ -108,32 +374,150 @@ public class ContactSearchController {
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Spelling correction search results retrieved successfully",
-            content = @Content(schema = @Schema(implementation = ContactDocument.class)))
+            content = @Content(schema = @Schema(implementation = ContactProjection.class)))
     })
-    public ResponseEntity<List<ContactDocument>> spellingCorrectionSearch(
+    public ResponseEntity<?> spellingCorrectionSearch(
             @Parameter(description = "Search query with potential misspellings", required = true, example = "Jhon Smith")
             @RequestParam String query,
+            @Parameter(description = "Number of results to skip", example = "0")
+            @RequestParam(defaultValue = "0") int offset,
             @Parameter(description = "Maximum number of results", example = "10")
-            @RequestParam(defaultValue = "10") int size) {
-        List<ContactDocument> results = contactSearchService.spellingCorrectionSearch(query, size);
-        return ResponseEntity.ok(results);
+            @RequestParam(defaultValue = "10") int size,
+            @Parameter(description = "Cursor from the previous page's X-Next-Cursor header, or * to start cursor pagination")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Comma-separated fields to return, e.g. firstName,lastName (id is always returned); all by default")
+            @RequestParam(required = false) String fields,
+            @Parameter(description = "Wrap the page in a SearchResponse with the hit count and timings (offset pages only)")
+            @RequestParam(defaultValue = "false") boolean envelope,
+            @Parameter(description = "Time budget in milliseconds, capped at contact-search.search.timeout.max-budget; "
+                + "the mode's configured budget by default")
+            @RequestHeader(value = SEARCH_BUDGET_HEADER, required = false) Long budgetMs) {
+        ContactFields contactFields = ContactFields.parse(fields);
+        if (cursor != null) {
+            return cursorPage(contactFields, SearchMode.SPELLING_CORRECTION, query, cursor, size);
+        }
+        return offsetPage(SearchMode.SPELLING_CORRECTION, query, offset, size, contactFields, envelope, budgetMs);
     }
 
     @GetMapping("/partial-match")
     @Operation(
         summary = "Partial/Shortened name search",
-        description = "Search contacts by partial or shortened names using n-gram and wildcard matching"
+        description = "Search contacts by partial or shortened names using n-gram and prefix matching"
     )
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Partial match search results retrieved successfully",
-            content = @Content(schema = @Schema(implementation = ContactDocument.class)))
+            content = @Content(schema = @Schema(implementation = ContactProjection.class)))
     })
-    public ResponseEntity<List<ContactDocument>> partialMatchSearch(
+    public ResponseEntity<?> partialMatchSearch(
             @Parameter(description = "Partial or shortened name", required = true, example = "Alex MacSmith")
             @RequestParam String query,
+            @Parameter(description = "Number of results to skip", example = "0")
+            @RequestParam(defaultValue = "0") int offset,
             @Parameter(description = "Maximum number of results", example = "10")
-            @RequestParam(defaultValue = "10") int size) {
-        List<ContactDocument> results = contactSearchService.partialMatchSearch(query, size);
-        return ResponseEntity.ok(results);
+            @RequestParam(defaultValue = "10") int size,
+            @Parameter(description = "Cursor from the previous page's X-Next-Cursor header, or * to start cursor pagination")
+            @RequestParam(required = false) String cursor,
+            @Parameter(description = "Comma-separated fields to return, e.g. firstName,lastName (id is always returned); all by default")
+            @RequestParam(required = false) String fields,
+            @Parameter(description = "Wrap the page in a SearchResponse with the hit count and timings (offset pages only)")
+            @RequestParam(defaultValue = "false") boolean envelope,
+            @Parameter(description = "Time budget in milliseconds, capped at contact-search.search.timeout.max-budget; "
+                + "the mode's configured budget by default")
+            @RequestHeader(value = SEARCH_BUDGET_HEADER, required = false) Long budgetMs) {
+        ContactFields contactFields = ContactFields.parse(fields);
+        if (cursor != null) {
+            return cursorPage(contactFields, SearchMode.PARTIAL_MATCH, query, cursor, size);
+        }
+        return offsetPage(SearchMode.PARTIAL_MATCH, query, offset, size, contactFields, envelope, budgetMs);
+    }
+
+    private void writeLines(OutputStream out, List<BatchSearchResult> chunk) {
+        try {
+            for (BatchSearchResult result : chunk) {
+                out.write(objectMapper.writeValueAsBytes(result));
+                out.write('\n');
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Unknown names in the fields parameter, answered with the name and the known ones
+     */
+    @ExceptionHandler(UnknownFieldException.class)
+    public ResponseEntity<ErrorResponse> unknownField(UnknownFieldException e) {
+        return ResponseEntity.badRequest().body(ErrorResponse.of("UNKNOWN_FIELD", e.getMessage(),
+                "Known fields: " + String.join(", ", ContactFields.NAMES)));
+    }
+
+    /**
+     * Cursor searches while Elasticsearch is marked unavailable
+     */
+    @ExceptionHandler(CallNotPermittedException.class)
+    public ResponseEntity<Void> serviceUnavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+    }
+
+    /**
+     * Runs an offset search and answers with the page, or with the whole
+     * {@link SearchResponse} when an envelope was asked for. Partial results
+     * are marked with the {@value #PARTIAL_RESULTS_HEADER} header and results
+     * from the database fallback with {@value #DEGRADED_RESULTS_HEADER},
+     * either way.
+     */
+    private ResponseEntity<?> offsetPage(SearchMode mode, String query, int offset, int size, ContactFields fields,
+                                         boolean envelope, Long budgetMs) {
+        if (budgetMs != null && budgetMs <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        SearchResponse<ContactProjection> response = contactSearchService
+                .searchWithMetadata(mode, query, offset, size, fields, budget(budgetMs))
+                .map(document -> ContactProjection.of(document, fields));
+        ResponseEntity.BodyBuilder builder = flagged(ResponseEntity.ok(), response.partial(), response.degraded());
+        return envelope ? builder.body(response) : builder.body(response.results());
+    }
+
+    /**
+     * The {@value #SEARCH_BUDGET_HEADER} budget, or null for the configured ones
+     */
+    private static Duration budget(Long budgetMs) {
+        return budgetMs != null ? Duration.ofMillis(budgetMs) : null;
+    }
+
+    /**
+     * Adds the {@value #PARTIAL_RESULTS_HEADER} and {@value #DEGRADED_RESULTS_HEADER} headers that apply
+     */
+    private static ResponseEntity.BodyBuilder flagged(ResponseEntity.BodyBuilder builder, boolean partial,
+                                                      boolean degraded) {
+        if (partial) {
+            builder.header(PARTIAL_RESULTS_HEADER, "true");
+        }
+        if (degraded) {
+            builder.header(DEGRADED_RESULTS_HEADER, "true");
+        }
+        return builder;
+    }
+
+    private static List<ContactProjection> project(List<ContactDocument> results, ContactFields fields) {
+        return results.stream()
+                .map(document -> ContactProjection.of(document, fields))
+                .toList();
+    }
+
+    private ResponseEntity<List<ContactProjection>> cursorPage(ContactFields fields, SearchMode mode, String query,
+                                                              String cursor, int size) {
+        CursorPage<ContactDocument> page;
+        try {
+            page = contactSearchService.searchWithCursor(mode, query, cursor, size, fields);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.hasNext()) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(project(page.results(), fields));
     }
 }
@@ -1,18 +1,33 @@
 package com.codehacks.contactsearch.document;
 
+import com.codehacks.contactsearch.model.Contact;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.CompletionField;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
 import org.springframework.data.elasticsearch.annotations.Mapping;
 import org.springframework.data.elasticsearch.annotations.Setting;
+import org.springframework.data.elasticsearch.core.suggest.Completion;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
 
-
-@Document(indexName = "contacts")
+/**
+ * Search document of a {@link Contact}. {@code contacts} is an alias onto a
+ * versioned index, which {@link com.codehacks.contactsearch.service.ContactIndexManager}
+ * creates and swaps on rebuilds, so the repository doesn't create the index.
+ * <p>
+ * Documents are written with an {@code external_gte} version, see {@link
+ * #version(Contact)}, so a write carrying an older copy of a contact than the
+ * one indexed is rejected instead of overwriting it.
+ */
+@Document(indexName = "contacts", createIndex = false, versionType = Document.VersionType.EXTERNAL_GTE)
 @Setting(settingPath = "/elasticsearch/contact-settings.json")
 @Mapping(mappingPath = "/elasticsearch/contact-mapping.json")
 @NoArgsConstructor
@@ -40,6 +55,14 @@ public class ContactDocument {
     @Field(type = FieldType.Date, format = {}, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSSSS")
     private LocalDateTime updatedAt;
 
+    /**
+     * Completion suggester inputs; only set on documents written to the
+     * index, see {@link #forIndexing(Contact)}
+     */
+    @CompletionField(analyzer = "suggest_analyzer", searchAnalyzer = "suggest_analyzer", maxInputLength = 100)
+    @JsonIgnore
+    private List<Completion> suggest;
+
     public ContactDocument(String id, String firstName, String lastName, String email, String city,
                            LocalDateTime createdAt, LocalDateTime updatedAt) {
         this.id = id;
@@ -50,4 +73,68 @@ public class ContactDocument {
         this.createdAt = createdAt;
         this.updatedAt = updatedAt;
     }
+
+    public static ContactDocument from(Contact contact) {
+        return new ContactDocument(
+                contact.getId().toString(),
+                contact.getFirstName(),
+                contact.getLastName(),
+                contact.getEmail(),
+                contact.getCity(),
+                contact.getCreatedAt(),
+                contact.getUpdatedAt()
+        );
+    }
+
+    /**
+     * Document as written to Elasticsearch, with the completion suggester
+     * inputs filled in
+     */
+    public static ContactDocument forIndexing(Contact contact) {
+        ContactDocument document = from(contact);
+        document.setSuggest(suggestions(document));
+        return document;
+    }
+
+    /**
+     * External version of the contact's document: when it was last updated,
+     * in microseconds, read as UTC like the rest of the stored timestamps
+     */
+    public static long version(Contact contact) {
+        LocalDateTime updatedAt = contact.getUpdatedAt() != null ? contact.getUpdatedAt() : contact.getCreatedAt();
+        return updatedAt != null ? version(updatedAt) : 0;
+    }
+
+    /**
+     * External version of a write made at the given time, e.g. a delete
+     */
+    public static long version(LocalDateTime time) {
+        return Math.max(0, time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000);
+    }
+
+    /**
+     * One completion entry per input so each carries its own weight, matching
+     * the field boosts of the other modes: names 3, email 2, city 1. The full
+     * name is an input too, so "john sm" completes to "John Smith".
+     */
+    static List<Completion> suggestions(ContactDocument document) {
+        List<Completion> suggestions = new ArrayList<>();
+        addSuggestion(suggestions, document.getFirstName(), 3);
+        addSuggestion(suggestions, document.getLastName(), 3);
+        if (document.getFirstName() != null && document.getLastName() != null) {
+            addSuggestion(suggestions, document.getFirstName() + " " + document.getLastName(), 3);
+        }
+        addSuggestion(suggestions, document.getEmail(), 2);
+        addSuggestion(suggestions, document.getCity(), 1);
+        return suggestions;
+    }
+
+    private static void addSuggestion(List<Completion> suggestions, String input, int weight) {
+        if (input == null || input.isBlank()) {
+            return;
+        }
+        Completion completion = new Completion(new String[]{input});
+        completion.setWeight(weight);
+        suggestions.add(completion);
+    }
 }
@@ -0,0 +1,41 @@
+package com.codehacks.contactsearch.dto;
+
+import com.codehacks.contactsearch.model.SearchMode;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchSearchRequest {
+
+    @NotEmpty(message = "At least one search is required")
+    private List<@Valid @NotNull Search> searches;
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Search {
+
+        @NotNull(message = "Search mode is required")
+        private SearchMode mode;
+
+        @NotBlank(message = "Query is required")
+        private String query;
+
+        @Min(value = 1, message = "Size must be at least 1")
+        @Builder.Default
+        private int size = 10;
+    }
+}
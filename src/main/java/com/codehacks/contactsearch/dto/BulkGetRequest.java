@@ -0,0 +1,20 @@
+package com.codehacks.contactsearch.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkGetRequest {
+
+    @NotEmpty(message = "At least one id is required")
+    private List<@NotNull Long> ids;
+}
@@ -0,0 +1,19 @@
+package com.codehacks.contactsearch.model;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+
+import java.util.List;
+
+/**
+ * Results of one search in a batch
+ * @param index Position of the search in the batch request
+ * @param results The matching contacts
+ * @param partial Whether the search ran out of its time budget, so hits may be missing
+ * @param degraded Whether the results come from the database fallback instead of Elasticsearch
+ */
+public record BatchSearchResult(int index, List<ContactDocument> results, boolean partial, boolean degraded) {
+
+    public BatchSearchResult(int index, List<ContactDocument> results) {
+        this(index, results, false, false);
+    }
+}
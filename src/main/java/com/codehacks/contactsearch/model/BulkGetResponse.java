@@ -0,0 +1,11 @@
+package com.codehacks.contactsearch.model;
+
+import java.util.List;
+
+/**
+ * Response for bulk reads by id
+ * @param found The contacts that exist, in the order their ids were requested
+ * @param missing The requested ids with no contact, in request order
+ */
+public record BulkGetResponse<T>(List<T> found, List<Long> missing) {
+}
@@ -0,0 +1,30 @@
+package com.codehacks.contactsearch.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A deleted contact, written in the deleting transaction; the change feed
+ * {@link com.codehacks.contactsearch.service.AutocompleteIndex} replays
+ * deletes made through other instances from, as deleted rows leave no
+ * {@code updatedAt} behind.
+ */
+@Data
+@Entity
+@Table(name = "contact_deletions")
+@NoArgsConstructor
+public class ContactDeletion {
+
+    @Id
+    @Column(name = "contact_id")
+    private Long contactId;
+
+    @Column(name = "deleted_at", nullable = false)
+    private LocalDateTime deletedAt;
+}
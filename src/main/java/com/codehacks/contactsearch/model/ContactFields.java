@@ -0,0 +1,58 @@
+package com.codehacks.contactsearch.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The contact fields a search response carries, sent to Elasticsearch as
+ * {@code _source} includes so unused fields are neither transferred nor
+ * deserialized. The id is always included.
+ * @param names Included field names, in {@link #NAMES} order
+ */
+public record ContactFields(List<String> names) {
+
+    /**
+     * Every field of a search result, in response order
+     */
+    public static final List<String> NAMES =
+            List.of("id", "firstName", "lastName", "email", "city", "createdAt", "updatedAt");
+
+    public static final ContactFields ALL = new ContactFields(NAMES);
+
+    public ContactFields {
+        names = List.copyOf(names);
+    }
+
+    /**
+     * Parses a comma-separated {@code fields} parameter; null or blank means all fields
+     * @throws UnknownFieldException for a name that is not a contact field
+     */
+    public static ContactFields parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        Set<String> requested = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toSet());
+        for (String name : requested) {
+            if (!NAMES.contains(name)) {
+                throw new UnknownFieldException(name);
+            }
+        }
+        List<String> names = new ArrayList<>();
+        for (String name : NAMES) {
+            if (name.equals("id") || requested.contains(name)) {
+                names.add(name);
+            }
+        }
+        return new ContactFields(names);
+    }
+
+    public boolean includes(String name) {
+        return names.contains(name);
+    }
+}
@@ -0,0 +1,32 @@
+package com.codehacks.contactsearch.model;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.LocalDateTime;
+
+/**
+ * A search result with only the requested {@link ContactFields}; fields that
+ * were not requested are left out of the JSON
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ContactProjection(
+    String id,
+    String firstName,
+    String lastName,
+    String email,
+    String city,
+    LocalDateTime createdAt,
+    LocalDateTime updatedAt
+) {
+    public static ContactProjection of(ContactDocument document, ContactFields fields) {
+        return new ContactProjection(
+                document.getId(),
+                fields.includes("firstName") ? document.getFirstName() : null,
+                fields.includes("lastName") ? document.getLastName() : null,
+                fields.includes("email") ? document.getEmail() : null,
+                fields.includes("city") ? document.getCity() : null,
+                fields.includes("createdAt") ? document.getCreatedAt() : null,
+                fields.includes("updatedAt") ? document.getUpdatedAt() : null);
+    }
+}
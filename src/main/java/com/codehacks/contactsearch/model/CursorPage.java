@@ -0,0 +1,15 @@
+package com.codehacks.contactsearch.model;
+
+import java.util.List;
+
+/**
+ * One page of cursor-paginated search results
+ * @param results The results on this page
+ * @param nextCursor Opaque cursor for the next page, or null when there are no more results
+ */
+public record CursorPage<T>(List<T> results, String nextCursor) {
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
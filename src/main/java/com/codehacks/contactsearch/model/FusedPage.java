@@ -0,0 +1,17 @@
+package com.codehacks.contactsearch.model;
+
+import java.util.List;
+
+/**
+ * One page of fused search results
+ * @param results The results on this page, ranked by reciprocal rank fusion
+ * @param strategies The search modes that finished within the latency budget and were fused
+ * @param partial Whether a strategy ran out of its time budget or missed the latency budget, so hits may be missing
+ * @param degraded Whether any fused strategy was answered from the database fallback instead of Elasticsearch
+ */
+public record FusedPage<T>(List<T> results, List<SearchMode> strategies, boolean partial, boolean degraded) {
+
+    public FusedPage(List<T> results, List<SearchMode> strategies) {
+        this(results, strategies, false, false);
+    }
+}
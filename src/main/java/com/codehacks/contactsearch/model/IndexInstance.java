@@ -0,0 +1,35 @@
+package com.codehacks.contactsearch.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * An instance draining the index outbox, as it last reported itself to
+ * {@link com.codehacks.contactsearch.service.ContactIndexManager}; one row
+ * per process, so rows of instances gone away stop being seen.
+ */
+@Data
+@Entity
+@Table(name = "contact_index_instances")
+@NoArgsConstructor
+public class IndexInstance {
+
+    @Id
+    @Column(name = "instance_id")
+    private String instanceId;
+
+    /**
+     * Index being rebuilt that the instance writes contact changes to as well, if any
+     */
+    @Column(name = "rebuild_target")
+    private String rebuildTarget;
+
+    @Column(name = "seen_at", nullable = false)
+    private LocalDateTime seenAt;
+}
@@ -0,0 +1,65 @@
+package com.codehacks.contactsearch.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A contact whose search document is out of date, written in the same
+ * transaction as the change; {@link com.codehacks.contactsearch.service.IndexOutbox}
+ * indexes the contact as it then is in the table, or deletes its document
+ * if it's gone. There is one entry per contact however often it changed.
+ */
+@Data
+@Entity
+@Table(name = "contact_index_outbox")
+@NoArgsConstructor
+public class IndexOutboxEntry {
+
+    @Id
+    @Column(name = "contact_id")
+    private Long contactId;
+
+    /**
+     * Bumped by every change, so a drainer only removes the entry if nothing
+     * changed while it was indexing
+     */
+    @Column(nullable = false)
+    private long revision;
+
+    /**
+     * Failed attempts since the last change
+     */
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    /**
+     * Set while an instance is indexing the contact, which no other instance does until then
+     */
+    @Column(name = "leased_until")
+    private LocalDateTime leasedUntil;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    /**
+     * First change not yet indexed
+     */
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    /**
+     * Latest change, as the writing instance's clock saw it; null on entries
+     * recorded before it was kept
+     */
+    @Column(name = "changed_at")
+    private LocalDateTime changedAt;
+}
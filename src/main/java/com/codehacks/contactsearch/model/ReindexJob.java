@@ -0,0 +1,91 @@
+package com.codehacks.contactsearch.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A background resync of the contacts index, or a rebuild into a new index
+ * when {@code targetIndex} is set. {@code lastId} is the checkpoint: every
+ * contact up to it is indexed, so a job whose instance went away is picked up
+ * again after it.
+ */
+@Data
+@Entity
+@Table(name = "reindex_jobs")
+@NoArgsConstructor
+public class ReindexJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ReindexJobStatus status;
+
+    /**
+     * Contacts in the table when the job started
+     */
+    @Column(nullable = false)
+    private long total;
+
+    @Column(nullable = false)
+    private long processed;
+
+    @Column(name = "last_id", nullable = false)
+    private long lastId;
+
+    /**
+     * Versioned index a rebuild loads and then moves the alias to; null for a resync in place
+     */
+    @Column(name = "target_index")
+    private String targetIndex;
+
+    @Column(name = "cancel_requested", nullable = false)
+    private boolean cancelRequested;
+
+    private String error;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    /**
+     * When the current run started, which is later than {@code startedAt}
+     * once the job was resumed; the rate is measured from here
+     */
+    @Column(name = "resumed_at")
+    private LocalDateTime resumedAt;
+
+    /**
+     * {@code processed} when the current run started
+     */
+    @Column(name = "resumed_processed", nullable = false)
+    private long resumedProcessed;
+
+    /**
+     * Last checkpoint; a running job not updated for a while has lost its instance
+     */
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        startedAt = LocalDateTime.now();
+        resumedAt = startedAt;
+        updatedAt = startedAt;
+    }
+}
@@ -0,0 +1,38 @@
+package com.codehacks.contactsearch.model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a background resync
+ * @param id Job id, for the status and cancel endpoints
+ * @param status Running, or how it ended
+ * @param targetIndex Index a rebuild loads, null for a resync of the live index
+ * @param processed Contacts indexed so far
+ * @param total Contacts in the table when the job started
+ * @param lastId Checkpoint: every contact up to this id is indexed
+ * @param docsPerSecond Throughput of the current (or last) run
+ * @param etaSeconds Estimated seconds left, null unless running and past its first checkpoint
+ * @param cancelRequested Whether the job was asked to stop
+ * @param error Why the job failed
+ */
+public record ReindexJobResponse(Long id, ReindexJobStatus status, String targetIndex, long processed, long total,
+                                 long lastId, double docsPerSecond, Long etaSeconds, boolean cancelRequested,
+                                 String error, LocalDateTime startedAt, LocalDateTime updatedAt, LocalDateTime finishedAt) {
+
+    public static ReindexJobResponse from(ReindexJob job) {
+        double docsPerSecond = 0;
+        if (job.getResumedAt() != null && job.getUpdatedAt() != null) {
+            double seconds = Duration.between(job.getResumedAt(), job.getUpdatedAt()).toMillis() / 1000.0;
+            if (seconds > 0) {
+                docsPerSecond = (job.getProcessed() - job.getResumedProcessed()) / seconds;
+            }
+        }
+        Long etaSeconds = job.getStatus() == ReindexJobStatus.RUNNING && docsPerSecond > 0
+                ? Math.round(Math.max(job.getTotal() - job.getProcessed(), 0) / docsPerSecond)
+                : null;
+        return new ReindexJobResponse(job.getId(), job.getStatus(), job.getTargetIndex(), job.getProcessed(),
+                job.getTotal(), job.getLastId(), docsPerSecond, etaSeconds, job.isCancelRequested(), job.getError(),
+                job.getStartedAt(), job.getUpdatedAt(), job.getFinishedAt());
+    }
+}
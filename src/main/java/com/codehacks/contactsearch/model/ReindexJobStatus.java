@@ -0,0 +1,8 @@
+package com.codehacks.contactsearch.model;
+
+public enum ReindexJobStatus {
+    RUNNING,
+    COMPLETED,
+    CANCELLED,
+    FAILED
+}
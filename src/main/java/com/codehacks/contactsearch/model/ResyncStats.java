@@ -0,0 +1,15 @@
+package com.codehacks.contactsearch.model;
+
+/**
+ * Outcome of a full resync of the contacts index
+ * @param documents Contacts written to the index
+ * @param tookMs Wall time of the resync, reading and writing, in milliseconds
+ * @param docsPerSecond Indexing throughput over the whole resync
+ */
+public record ResyncStats(long documents, long tookMs, double docsPerSecond) {
+
+    public static ResyncStats of(long documents, long tookNanos) {
+        double seconds = tookNanos / 1_000_000_000.0;
+        return new ResyncStats(documents, tookNanos / 1_000_000, seconds > 0 ? documents / seconds : 0);
+    }
+}
@@ -0,0 +1,10 @@
+package com.codehacks.contactsearch.model;
+
+/**
+ * Where contact searches are answered, chosen per deployment with
+ * {@code contact-search.search.engine}
+ */
+public enum SearchEngine {
+    ELASTICSEARCH, // Elasticsearch index, with Postgres as the circuit breaker fallback
+    POSTGRES       // pg_trgm trigram search on the contacts table, no Elasticsearch needed
+}
@@ -0,0 +1,12 @@
+package com.codehacks.contactsearch.model;
+
+public enum SearchMode {
+    STANDARD,            // Multi-match full-text search with AUTO fuzziness
+    AUTOCOMPLETE,        // Edge n-gram prefix matching
+    FUZZY,               // Typo-tolerant matching
+    CITY,                // Exact city match
+    SPELLING_CORRECTION, // Enhanced fuzzy matching for misspelt names and cities
+    PARTIAL_MATCH,       // Partial or shortened names
+    SUGGEST,             // Completion suggester prefix lookup, no query scoring
+    EXACT                // Exact keyword or prefix matches only, no fuzziness
+}
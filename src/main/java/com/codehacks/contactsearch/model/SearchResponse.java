@@ -2,23 +2,49 @@ package com.codehacks.contactsearch.model;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Response for search operations with metadata
  * @param query The original search query
  * @param results The search results
- * @param totalResults Total number of results found
- * @param searchTimeMs Time taken for the search in milliseconds
+ * @param totalResults Total number of results found, or a lower bound when {@code totalResultsExact} is false
+ * @param totalResultsExact Whether {@code totalResults} is an exact count
+ * @param partial Whether the search ran out of its time budget, so results may be missing
+ * @param degraded Whether Elasticsearch was unavailable and the results come from the database fallback,
+ *                 which matches terms literally and does not rank by relevance
+ * @param searchTimeMs End-to-end time taken by the service for the search in milliseconds
+ * @param tookMs Time Elasticsearch reported for the search in milliseconds, or null when it was
+ *               answered without a request (cache or in-memory index)
  * @param timestamp When the search was performed
  */
 public record SearchResponse<T>(
     String query,
     List<T> results,
     long totalResults,
+    boolean totalResultsExact,
+    boolean partial,
+    boolean degraded,
     long searchTimeMs,
+    Long tookMs,
     LocalDateTime timestamp
 ) {
+    /**
+     * An exact count, complete and not degraded, without an Elasticsearch took
+     */
     public static <T> SearchResponse<T> of(String query, List<T> results, long totalResults, long searchTimeMs) {
-        return new SearchResponse<>(query, results, totalResults, searchTimeMs, LocalDateTime.now());
+        return of(query, results, totalResults, true, false, false, searchTimeMs, null);
     }
-} 
\ No newline at end of file
+
+    public static <T> SearchResponse<T> of(String query, List<T> results, long totalResults, boolean totalResultsExact,
+                                           boolean partial, boolean degraded, long searchTimeMs, Long tookMs) {
+        return new SearchResponse<>(query, results, totalResults, totalResultsExact, partial, degraded, searchTimeMs,
+                tookMs, LocalDateTime.now());
+    }
+
+    public <R> SearchResponse<R> map(Function<? super T, ? extends R> mapper) {
+        List<R> mapped = results.stream().<R>map(mapper).toList();
+        return new SearchResponse<>(query, mapped, totalResults, totalResultsExact, partial, degraded, searchTimeMs,
+                tookMs, timestamp);
+    }
+}
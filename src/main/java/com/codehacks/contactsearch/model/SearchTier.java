@@ -0,0 +1,23 @@
+package com.codehacks.contactsearch.model;
+
+/**
+ * Tiers of the smart search, cheapest first. Each tier runs the query of its
+ * {@link SearchMode}; a later tier only runs when the earlier ones did not
+ * answer.
+ */
+public enum SearchTier {
+    EXACT(SearchMode.EXACT),                  // Keyword and prefix matches
+    FUZZY(SearchMode.FUZZY),                  // Typo-tolerant matching
+    NGRAM(SearchMode.PARTIAL_MATCH),          // Substring matches on the ngram subfields
+    SPELLING(SearchMode.SPELLING_CORRECTION); // All spelling-correction clauses
+
+    private final SearchMode mode;
+
+    SearchTier(SearchMode mode) {
+        this.mode = mode;
+    }
+
+    public SearchMode mode() {
+        return mode;
+    }
+}
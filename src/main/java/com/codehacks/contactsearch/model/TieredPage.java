@@ -0,0 +1,17 @@
+package com.codehacks.contactsearch.model;
+
+import java.util.List;
+
+/**
+ * One page of smart search results
+ * @param results The results on this page
+ * @param tier The tier whose query produced the results
+ * @param partial Whether the tier's search ran out of its time budget, so hits may be missing
+ * @param degraded Whether the results come from the database fallback instead of Elasticsearch
+ */
+public record TieredPage<T>(List<T> results, SearchTier tier, boolean partial, boolean degraded) {
+
+    public TieredPage(List<T> results, SearchTier tier) {
+        this(results, tier, false, false);
+    }
+}
@@ -0,0 +1,18 @@
+package com.codehacks.contactsearch.model;
+
+/**
+ * A {@code fields} parameter names something that is not one of {@link ContactFields#NAMES}
+ */
+public class UnknownFieldException extends IllegalArgumentException {
+
+    private final String field;
+
+    public UnknownFieldException(String field) {
+        super("Unknown contact field: " + field);
+        this.field = field;
+    }
+
+    public String getField() {
+        return field;
+    }
+}
@@ -0,0 +1,31 @@
+package com.codehacks.contactsearch.repository;
+
+import com.codehacks.contactsearch.model.ContactDeletion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ContactDeletionRepository extends JpaRepository<ContactDeletion, Long> {
+
+    /**
+     * Records the delete in the caller's transaction, so it is only seen if the delete commits
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO contact_deletions (contact_id, deleted_at) VALUES (:contactId, :now) "
+            + "ON CONFLICT (contact_id) DO UPDATE SET deleted_at = :now", nativeQuery = true)
+    int record(Long contactId, LocalDateTime now);
+
+    List<ContactDeletion> findByDeletedAtGreaterThanEqual(LocalDateTime deletedAt);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ContactDeletion d where d.deletedAt < :before")
+    int deleteDeletedBefore(LocalDateTime before);
+}
@@ -1,9 +1,24 @@
 package com.codehacks.contactsearch.repository;
 
 import com.codehacks.contactsearch.model.Contact;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Repository
 public interface ContactRepository extends JpaRepository<Contact, Long> {
+
+    List<Contact> findByUpdatedAtGreaterThanEqual(LocalDateTime updatedAt);
+
+    /**
+     * The next page of contacts in id order, for keyset pagination over the whole table
+     */
+    List<Contact> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Query("select c.id from Contact c")
+    List<Long> findAllIds();
 }
@@ -0,0 +1,38 @@
+package com.codehacks.contactsearch.repository;
+
+import com.codehacks.contactsearch.model.IndexInstance;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IndexInstanceRepository extends JpaRepository<IndexInstance, String> {
+
+    /**
+     * Records which index being rebuilt, if any, the instance now writes to
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO contact_index_instances (instance_id, rebuild_target, seen_at) "
+            + "VALUES (:instanceId, :rebuildTarget, :now) "
+            + "ON CONFLICT (instance_id) DO UPDATE SET rebuild_target = :rebuildTarget, seen_at = :now",
+            nativeQuery = true)
+    int report(String instanceId, String rebuildTarget, LocalDateTime now);
+
+    /**
+     * Instances seen since {@code seenAfter} that report writing to another
+     * index being rebuilt than {@code rebuildTarget}, or to none when it is null
+     */
+    @Query(value = "SELECT count(*) FROM contact_index_instances WHERE seen_at >= :seenAfter "
+            + "AND rebuild_target IS DISTINCT FROM CAST(:rebuildTarget AS VARCHAR)", nativeQuery = true)
+    long countReportingOther(String rebuildTarget, LocalDateTime seenAfter);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IndexInstance i where i.seenAt < :before")
+    int deleteSeenBefore(LocalDateTime before);
+}
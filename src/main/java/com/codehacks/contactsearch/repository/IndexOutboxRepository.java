@@ -0,0 +1,73 @@
+package com.codehacks.contactsearch.repository;
+
+import com.codehacks.contactsearch.model.IndexOutboxEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface IndexOutboxRepository extends JpaRepository<IndexOutboxEntry, Long> {
+
+    /**
+     * Records a change to the contact, in the caller's transaction; a pending
+     * entry gets a new revision and is due again right away
+     */
+    @Modifying
+    @Query(value = "INSERT INTO contact_index_outbox "
+            + "(contact_id, revision, attempts, next_attempt_at, created_at, changed_at) "
+            + "VALUES (:contactId, 1, 0, :now, :now, :now) "
+            + "ON CONFLICT (contact_id) DO UPDATE SET revision = contact_index_outbox.revision + 1, attempts = 0, "
+            + "next_attempt_at = :now, last_error = NULL, changed_at = :now", nativeQuery = true)
+    int enqueue(Long contactId, LocalDateTime now);
+
+    /**
+     * Leases up to {@code limit} due entries, oldest first, skipping those
+     * another instance is claiming at the same moment
+     */
+    @Transactional
+    @Query(value = "UPDATE contact_index_outbox SET leased_until = :leaseUntil WHERE contact_id IN ("
+            + "SELECT contact_id FROM contact_index_outbox WHERE next_attempt_at <= :now "
+            + "AND (leased_until IS NULL OR leased_until < :now) "
+            + "ORDER BY created_at LIMIT :limit FOR UPDATE SKIP LOCKED) RETURNING *", nativeQuery = true)
+    List<IndexOutboxEntry> claim(LocalDateTime now, LocalDateTime leaseUntil, int limit);
+
+    /**
+     * Removes an indexed entry
+     * @return 0 if the contact changed again meanwhile
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from IndexOutboxEntry e where e.contactId = :contactId and e.revision = :revision")
+    int complete(Long contactId, long revision);
+
+    @Transactional
+    @Modifying
+    @Query("update IndexOutboxEntry e set e.attempts = e.attempts + 1, e.nextAttemptAt = :nextAttemptAt, "
+            + "e.lastError = :error, e.leasedUntil = null where e.contactId = :contactId and e.revision = :revision")
+    int retryLater(Long contactId, long revision, LocalDateTime nextAttemptAt, String error);
+
+    /**
+     * Moves an entry that ran out of attempts to {@code contact_index_dead_letters}
+     * @return 0 if the contact changed again meanwhile
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "WITH moved AS (DELETE FROM contact_index_outbox WHERE contact_id = :contactId "
+            + "AND revision = :revision RETURNING *) "
+            + "INSERT INTO contact_index_dead_letters (contact_id, attempts, error, changed_at, failed_at) "
+            + "SELECT contact_id, attempts + 1, :error, created_at, :now FROM moved", nativeQuery = true)
+    int deadLetter(Long contactId, long revision, String error, LocalDateTime now);
+
+    /**
+     * Ends the lease of an entry that changed while it was being indexed, so it is indexed again
+     */
+    @Transactional
+    @Modifying
+    @Query("update IndexOutboxEntry e set e.leasedUntil = null where e.contactId = :contactId")
+    int release(Long contactId);
+}
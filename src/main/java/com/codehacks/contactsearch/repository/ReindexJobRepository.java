@@ -0,0 +1,58 @@
+package com.codehacks.contactsearch.repository;
+
+import com.codehacks.contactsearch.model.ReindexJob;
+import com.codehacks.contactsearch.model.ReindexJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ReindexJobRepository extends JpaRepository<ReindexJob, Long> {
+
+    List<ReindexJob> findByStatus(ReindexJobStatus status);
+
+    Optional<ReindexJob> findFirstByStatus(ReindexJobStatus status);
+
+    boolean existsByIdAndCancelRequestedTrue(Long id);
+
+    /**
+     * Takes over a running job that hasn't reported progress since {@code staleBefore};
+     * of several instances trying at once only one updates the row
+     * @return 1 if the job is now this instance's to run
+     */
+    @Transactional
+    @Modifying
+    @Query("update ReindexJob j set j.updatedAt = :now, j.resumedAt = :now, j.resumedProcessed = j.processed "
+            + "where j.id = :id and j.status = com.codehacks.contactsearch.model.ReindexJobStatus.RUNNING "
+            + "and j.updatedAt < :staleBefore")
+    int claim(Long id, LocalDateTime now, LocalDateTime staleBefore);
+
+    @Transactional
+    @Modifying
+    @Query("update ReindexJob j set j.processed = :processed, j.lastId = :lastId, j.updatedAt = :now "
+            + "where j.id = :id")
+    int checkpoint(Long id, long processed, long lastId, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update ReindexJob j set j.updatedAt = :now where j.id = :id")
+    int heartbeat(Long id, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("update ReindexJob j set j.cancelRequested = true "
+            + "where j.id = :id and j.status = com.codehacks.contactsearch.model.ReindexJobStatus.RUNNING")
+    int requestCancel(Long id);
+
+    @Transactional
+    @Modifying
+    @Query("update ReindexJob j set j.status = :status, j.error = :error, j.updatedAt = :now, j.finishedAt = :now "
+            + "where j.id = :id")
+    int finish(Long id, ReindexJobStatus status, String error, LocalDateTime now);
+}
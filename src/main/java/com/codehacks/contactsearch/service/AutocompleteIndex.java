@@ -0,0 +1,869 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.ContactDeletion;
+import com.codehacks.contactsearch.model.SearchMode;
+import com.codehacks.contactsearch.repository.ContactDeletionRepository;
+import com.codehacks.contactsearch.repository.ContactRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Memory-resident autocomplete over firstName, lastName, email and city.
+ * <p>
+ * Every token of those fields, split and lowercased like the index's
+ * {@code autocomplete} analyzer does (standard tokenizer, edge n-grams of 2
+ * to 20 characters), is stored in a radix trie (edges carry whole label
+ * strings, so single-child chains are collapsed). Each node
+ * keeps the top-k contacts of its subtree, ranked by field weight (names 3,
+ * email 2, city 1, the same boosts as the Elasticsearch autocomplete query)
+ * with the contact id as tie-breaker, so a one-term prefix is answered by
+ * walking to the node and reading its list.
+ * <p>
+ * Like {@code bool_prefix}, a multi-term query matches contacts having any
+ * of the terms as a token prefix, scored by the sum of their best weight per
+ * term. A query is answered from memory only when no term matches more
+ * contacts than its node keeps, so the union of the per-term lists holds
+ * every match; otherwise {@link #search} returns empty for every page of
+ * that query and the caller serves it from Elasticsearch, so pages of one
+ * query never mix the two rankings. It does the same until the index has
+ * been built.
+ * <p>
+ * Kept current by this instance's committed {@link ContactService} writes, and by
+ * periodically replaying rows whose {@code updatedAt} passed the index's
+ * high-water mark, and the {@link ContactDeletionRepository} feed of deletes
+ * past it (writes made through other instances).
+ * <p>
+ * At startup the index is loaded from its {@link AutocompleteSnapshot} when
+ * one is configured and valid, and only the changes since the snapshot's
+ * high-water mark are replayed; otherwise it is built from
+ * {@link ContactRepository}. The snapshot is rewritten periodically when the
+ * index has changed.
+ */
+@Component
+@Slf4j
+public class AutocompleteIndex {
+
+    static final int FIRST_NAME_WEIGHT = 3;
+    static final int LAST_NAME_WEIGHT = 3;
+    static final int EMAIL_WEIGHT = 2;
+    static final int CITY_WEIGHT = 1;
+
+    static final Scored[] NO_ENTRIES = new Scored[0];
+
+    static final Node[] NO_CHILDREN = new Node[0];
+
+    /** Gram lengths of the {@code autocomplete_filter} in elasticsearch/contact-settings.json */
+    static final int EDGE_NGRAM_MIN = 2;
+    static final int EDGE_NGRAM_MAX = 20;
+
+    private static final Comparator<Scored> RANKING =
+            Comparator.comparingInt(Scored::weight).reversed().thenComparing(Scored::id);
+
+    private final ContactRepository contactRepository;
+
+    private final ContactDeletionRepository contactDeletionRepository;
+
+    private final boolean enabled;
+
+    private final int topK;
+
+    private final Path snapshotPath;
+
+    private final Duration replayOverlap;
+
+    private final Duration deletionRetention;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Held by rebuilds, replays and delete reconciliation, which read the
+     * database without holding {@link #lock}
+     */
+    private final Object refreshLock = new Object();
+
+    private Map<String, ContactDocument> contacts = new HashMap<>();
+
+    /**
+     * Weighted tokens per contact id, filled lazily after a snapshot load;
+     * concurrent because searches fill it under the read lock
+     */
+    private Map<String, Map<String, Integer>> tokensById = new ConcurrentHashMap<>();
+
+    /**
+     * Ids written through {@link #upsert} or {@link #remove} since the running
+     * refresh started reading the database, whose rows it may have read stale;
+     * null when no refresh is running
+     */
+    private Set<String> touchedDuringRefresh;
+
+    private Node root = new Node("");
+
+    private volatile boolean ready;
+
+    /** Latest {@code updatedAt} of any contact, or {@code deletedAt} of any delete, applied to the index */
+    private LocalDateTime highWaterMark;
+
+    private long modifications;
+
+    private long snapshotModifications = -1;
+
+    public AutocompleteIndex(ContactRepository contactRepository,
+                             ContactDeletionRepository contactDeletionRepository,
+                             @Value("${contact-search.autocomplete.enabled:true}") boolean enabled,
+                             @Value("${contact-search.autocomplete.top-k:20}") int topK,
+                             @Value("${contact-search.autocomplete.snapshot.path:}") String snapshotPath,
+                             @Value("${contact-search.autocomplete.snapshot.replay-overlap:1m}") Duration replayOverlap,
+                             @Value("${contact-search.autocomplete.deletion-retention:1d}") Duration deletionRetention) {
+        this.contactRepository = contactRepository;
+        this.contactDeletionRepository = contactDeletionRepository;
+        this.enabled = enabled;
+        this.topK = topK;
+        this.snapshotPath = snapshotPath == null || snapshotPath.isBlank() ? null : Path.of(snapshotPath);
+        this.replayOverlap = replayOverlap;
+        this.deletionRetention = deletionRetention;
+    }
+
+    AutocompleteIndex(ContactRepository contactRepository, ContactDeletionRepository contactDeletionRepository,
+                      boolean enabled, int topK) {
+        this(contactRepository, contactDeletionRepository, enabled, topK, null, Duration.ofMinutes(1), Duration.ofDays(1));
+    }
+
+    record Scored(String id, int weight) {
+    }
+
+    static final class Node {
+        String label;
+        Node[] children = NO_CHILDREN;
+        /** Contacts with a token ending exactly at this node, by id, with their best weight for it */
+        Map<String, Integer> terminal;
+        Scored[] top = NO_ENTRIES;
+        /** Whether the subtree matches more contacts than {@link #top} holds */
+        boolean truncated;
+
+        Node(String label) {
+            this.label = label;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        if (loadSnapshot()) {
+            long started = System.nanoTime();
+            replayChanges();
+            // The snapshot may be older than the deletes kept in the feed
+            reconcileDeletes();
+            ready = true;
+            log.info("Autocomplete index caught up from snapshot in {} ms", (System.nanoTime() - started) / 1_000_000);
+        } else {
+            rebuild();
+        }
+        saveSnapshot();
+    }
+
+    /**
+     * Replaces the index contents with every contact in the database
+     */
+    public void rebuild() {
+        synchronized (refreshLock) {
+            long started = System.nanoTime();
+            startRefresh();
+            List<ContactDocument> documents = contactRepository.findAll().stream()
+                    .map(ContactDocument::from)
+                    .toList();
+            load(documents);
+            log.info("Autocomplete index built with {} contacts in {} ms",
+                    documents.size(), (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    /**
+     * Builds a new trie from the documents without holding the lock and swaps
+     * it in, then applies again the writes made meanwhile, if a refresh was
+     * started
+     */
+    void load(Collection<ContactDocument> documents) {
+        synchronized (refreshLock) {
+            Map<String, ContactDocument> loaded = new HashMap<>();
+            Map<String, Map<String, Integer>> loadedTokens = new ConcurrentHashMap<>();
+            Node loadedRoot = new Node("");
+            LocalDateTime loadedMark = null;
+            for (ContactDocument document : documents) {
+                Map<String, Integer> tokens = weightedTokens(document);
+                loaded.put(document.getId(), document);
+                loadedTokens.put(document.getId(), tokens);
+                tokens.forEach((token, weight) -> insert(loadedRoot, token, document.getId(), weight, null));
+                LocalDateTime updatedAt = document.getUpdatedAt();
+                if (updatedAt != null && (loadedMark == null || updatedAt.isAfter(loadedMark))) {
+                    loadedMark = updatedAt;
+                }
+            }
+            recomputeSubtree(loadedRoot);
+
+            lock.writeLock().lock();
+            try {
+                Map<String, ContactDocument> previous = contacts;
+                contacts = loaded;
+                tokensById = loadedTokens;
+                root = loadedRoot;
+                highWaterMark = loadedMark;
+                if (touchedDuringRefresh != null) {
+                    for (String id : touchedDuringRefresh) {
+                        ContactDocument current = previous.get(id);
+                        if (current != null) {
+                            applyUpsert(current);
+                        } else {
+                            applyRemove(id);
+                        }
+                    }
+                }
+                touchedDuringRefresh = null;
+                modifications++;
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * Adds the contact, or replaces its previous state
+     */
+    public void upsert(ContactDocument document) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            touched(document.getId());
+            applyUpsert(document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            touched(id);
+            applyRemove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void touched(String id) {
+        if (touchedDuringRefresh != null) {
+            touchedDuringRefresh.add(id);
+        }
+    }
+
+    private void applyUpsert(ContactDocument document) {
+        removeTokens(document.getId());
+        Map<String, Integer> tokens = weightedTokens(document);
+        contacts.put(document.getId(), document);
+        tokensById.put(document.getId(), tokens);
+        tokens.forEach((token, weight) -> {
+            List<Node> path = new ArrayList<>();
+            insert(root, token, document.getId(), weight, path);
+            recomputePath(path);
+        });
+        advanceHighWaterMark(document);
+        modifications++;
+    }
+
+    private void applyRemove(String id) {
+        removeTokens(id);
+        contacts.remove(id);
+        modifications++;
+    }
+
+    /**
+     * Starts recording the ids written until the refresh applies its database
+     * reads, which happen without the lock so that writes and searches don't
+     * wait for them
+     */
+    private void startRefresh() {
+        lock.writeLock().lock();
+        try {
+            touchedDuringRefresh = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Upserts every contact updated, and removes every contact deleted, since
+     * the high-water mark, less {@code replay-overlap} to cover clock skew
+     * between instances and transactions that committed after a later one
+     */
+    public void replayChanges() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (refreshLock) {
+            LocalDateTime since;
+            lock.writeLock().lock();
+            try {
+                since = highWaterMark;
+                touchedDuringRefresh = new HashSet<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            List<ContactDocument> changed = (since == null
+                    ? contactRepository.findAll()
+                    : contactRepository.findByUpdatedAtGreaterThanEqual(since.minus(replayOverlap)))
+                    .stream()
+                    .map(ContactDocument::from)
+                    .toList();
+            List<ContactDeletion> deleted = since == null
+                    ? contactDeletionRepository.findAll()
+                    : contactDeletionRepository.findByDeletedAtGreaterThanEqual(since.minus(replayOverlap));
+
+            lock.writeLock().lock();
+            try {
+                for (ContactDocument document : changed) {
+                    // A write made here since the read is newer than the row read
+                    if (!touchedDuringRefresh.contains(document.getId())
+                            && !document.equals(contacts.get(document.getId()))) {
+                        applyUpsert(document);
+                    }
+                }
+                for (ContactDeletion deletion : deleted) {
+                    String id = String.valueOf(deletion.getContactId());
+                    if (!touchedDuringRefresh.contains(id) && contacts.containsKey(id)) {
+                        applyRemove(id);
+                    }
+                    if (highWaterMark == null || deletion.getDeletedAt().isAfter(highWaterMark)) {
+                        highWaterMark = deletion.getDeletedAt();
+                    }
+                }
+                touchedDuringRefresh = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.debug("Replayed {} changed and {} deleted contacts into the autocomplete index",
+                    changed.size(), deleted.size());
+        }
+    }
+
+    /**
+     * Records a contact deleted in the current transaction in the feed other
+     * instances replay deletes from; recorded whether or not this instance
+     * keeps an index, as others may
+     */
+    public void recordDeletion(Long id) {
+        contactDeletionRepository.record(id, LocalDateTime.now());
+    }
+
+    /**
+     * Drops deletes older than {@code deletion-retention} from the feed; an
+     * instance that falls further behind catches up by id when it restarts
+     */
+    public void pruneDeletions() {
+        int pruned = contactDeletionRepository.deleteDeletedBefore(LocalDateTime.now().minus(deletionRetention));
+        if (pruned > 0) {
+            log.debug("Pruned {} deletes from the autocomplete change feed", pruned);
+        }
+    }
+
+    /**
+     * Removes contacts that no longer exist in the database, scanning every
+     * id; run at startup, for snapshots older than the deletes the feed keeps
+     */
+    public void reconcileDeletes() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (refreshLock) {
+            startRefresh();
+            Set<String> live = contactRepository.findAllIds().stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.toSet());
+
+            List<String> deleted;
+            lock.writeLock().lock();
+            try {
+                // Contacts created here since the read are live even though it missed them
+                deleted = contacts.keySet().stream()
+                        .filter(id -> !live.contains(id) && !touchedDuringRefresh.contains(id))
+                        .toList();
+                deleted.forEach(this::applyRemove);
+                touchedDuringRefresh = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (!deleted.isEmpty()) {
+                log.debug("Removed {} deleted contacts from the autocomplete index", deleted.size());
+            }
+        }
+    }
+
+    /**
+     * Loads the snapshot file if one is configured, readable and built with
+     * the same top-k; the index is not marked ready until changes since the
+     * snapshot have been replayed
+     */
+    boolean loadSnapshot() {
+        if (snapshotPath == null) {
+            return false;
+        }
+        long started = System.nanoTime();
+        AutocompleteSnapshot.Contents contents;
+        try {
+            contents = AutocompleteSnapshot.read(snapshotPath);
+        } catch (NoSuchFileException e) {
+            log.info("No autocomplete snapshot at {}, building from the database", snapshotPath);
+            return false;
+        } catch (AutocompleteSnapshot.TooLargeException e) {
+            log.error("Autocomplete snapshot {} cannot be loaded, building from the database: {}",
+                    snapshotPath, e.getMessage());
+            return false;
+        } catch (IOException e) {
+            log.warn("Ignoring unusable autocomplete snapshot {}", snapshotPath, e);
+            return false;
+        }
+        if (contents.topK() != topK) {
+            log.info("Autocomplete snapshot was built with top-k {} (now {}), building from the database",
+                    contents.topK(), topK);
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            contacts = new HashMap<>();
+            tokensById = new ConcurrentHashMap<>();
+            for (ContactDocument document : contents.contacts()) {
+                contacts.put(document.getId(), document);
+            }
+            root = contents.root();
+            highWaterMark = contents.highWaterMark();
+            snapshotModifications = modifications;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Loaded autocomplete snapshot with {} contacts (high-water mark {}) in {} ms",
+                contents.contacts().size(), contents.highWaterMark(), (System.nanoTime() - started) / 1_000_000);
+        return true;
+    }
+
+    /**
+     * Writes the snapshot if one is configured and the index changed since
+     * the last one. Writers only wait while the index is copied, not while
+     * the file is written.
+     */
+    public synchronized void saveSnapshot() {
+        if (snapshotPath == null || !isReady()) {
+            return;
+        }
+        long started = System.nanoTime();
+        AutocompleteSnapshot.Contents contents;
+        long copied;
+        lock.readLock().lock();
+        try {
+            if (modifications == snapshotModifications) {
+                return;
+            }
+            contents = new AutocompleteSnapshot.Contents(
+                    topK, highWaterMark, new ArrayList<>(contacts.values()), copy(root));
+            copied = modifications;
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            AutocompleteSnapshot.write(snapshotPath, contents);
+        } catch (AutocompleteSnapshot.TooLargeException e) {
+            log.error("Unable to write autocomplete snapshot {}: {}", snapshotPath, e.getMessage());
+            return;
+        } catch (IOException e) {
+            log.warn("Unable to write autocomplete snapshot {}", snapshotPath, e);
+            return;
+        }
+        snapshotModifications = copied;
+        log.info("Wrote autocomplete snapshot {} in {} ms", snapshotPath, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Copies the node and its subtree; children and terminal maps are changed
+     * in place by writes, while {@link Node#top} arrays are only ever replaced
+     * and can be shared
+     */
+    private static Node copy(Node node) {
+        Node copy = new Node(node.label);
+        copy.terminal = node.terminal != null ? new HashMap<>(node.terminal) : null;
+        copy.top = node.top;
+        copy.truncated = node.truncated;
+        if (node.children.length > 0) {
+            copy.children = new Node[node.children.length];
+            for (int i = 0; i < node.children.length; i++) {
+                copy.children[i] = copy(node.children[i]);
+            }
+        }
+        return copy;
+    }
+
+    private void advanceHighWaterMark(ContactDocument document) {
+        LocalDateTime updatedAt = document.getUpdatedAt();
+        if (updatedAt != null && (highWaterMark == null || updatedAt.isAfter(highWaterMark))) {
+            highWaterMark = updatedAt;
+        }
+    }
+
+    /**
+     * Ranked contacts for the query, or empty if the answer has to come from
+     * Elasticsearch
+     */
+    public Optional<List<ContactDocument>> search(String query, int offset, int size) {
+        if (!isReady()) {
+            return Optional.empty();
+        }
+        List<String> terms = queryTerms(query);
+        if (terms.isEmpty() || size < 1) {
+            return Optional.empty();
+        }
+
+        lock.readLock().lock();
+        try {
+            // Whether memory answers depends on the query alone, never on the page
+            Map<String, Integer> scores = new HashMap<>();
+            for (String term : terms) {
+                Node node = find(term);
+                if (node == null) {
+                    continue;
+                }
+                if (node.truncated) {
+                    return Optional.empty();
+                }
+                for (Scored entry : node.top) {
+                    scores.computeIfAbsent(entry.id(), id -> score(id, terms));
+                }
+            }
+            return Optional.of(rank(scores).stream()
+                    .skip(offset)
+                    .limit(size)
+                    .map(entry -> contacts.get(entry.id()))
+                    .toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static List<Scored> rank(Map<String, Integer> scores) {
+        List<Scored> ranked = new ArrayList<>(scores.size());
+        scores.forEach((id, score) -> ranked.add(new Scored(id, score)));
+        ranked.sort(RANKING);
+        return ranked;
+    }
+
+    private int score(String id, List<String> terms) {
+        Map<String, Integer> tokens = tokensById.computeIfAbsent(id, key -> weightedTokens(contacts.get(key)));
+        int score = 0;
+        for (String term : terms) {
+            int best = 0;
+            for (Map.Entry<String, Integer> token : tokens.entrySet()) {
+                if (token.getKey().startsWith(term)) {
+                    best = Math.max(best, token.getValue());
+                }
+            }
+            score += best;
+        }
+        return score;
+    }
+
+    /**
+     * The query's tokens that can match, as {@code bool_prefix} sends them:
+     * every token but the last is a term query that has to equal a gram, the
+     * last a prefix query over the grams
+     */
+    private static List<String> queryTerms(String query) {
+        List<String> tokens = SearchQueryNormalizer.standardTokens(
+                SearchQueryNormalizer.normalize(SearchMode.AUTOCOMPLETE, query));
+        List<String> terms = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String term = tokens.get(i);
+            boolean last = i == tokens.size() - 1;
+            if (term.length() <= EDGE_NGRAM_MAX && (last || term.length() >= EDGE_NGRAM_MIN)
+                    && !terms.contains(term)) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    static Map<String, Integer> weightedTokens(ContactDocument document) {
+        Map<String, Integer> tokens = new HashMap<>();
+        addTokens(tokens, document.getFirstName(), FIRST_NAME_WEIGHT);
+        addTokens(tokens, document.getLastName(), LAST_NAME_WEIGHT);
+        addTokens(tokens, document.getEmail(), EMAIL_WEIGHT);
+        addTokens(tokens, document.getCity(), CITY_WEIGHT);
+        return tokens;
+    }
+
+    private static void addTokens(Map<String, Integer> tokens, String value, int weight) {
+        for (String token : SearchQueryNormalizer.standardTokens(value)) {
+            // Shorter tokens have no gram
+            if (token.length() >= EDGE_NGRAM_MIN) {
+                tokens.merge(token, weight, Math::max);
+            }
+        }
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+        int position = 0;
+        while (position < prefix.length()) {
+            Node child = child(node, prefix.charAt(position));
+            if (child == null) {
+                return null;
+            }
+            int common = commonPrefix(child.label, prefix, position);
+            if (position + common == prefix.length()) {
+                // The prefix ends on or inside this edge; everything below the edge matches
+                return child;
+            }
+            if (common < child.label.length()) {
+                return null;
+            }
+            node = child;
+            position += common;
+        }
+        return node;
+    }
+
+    /**
+     * Inserts the token, collecting the nodes from the root to its terminal
+     * into {@code path} (deepest last) when it is non-null
+     */
+    private void insert(Node root, String token, String id, int weight, List<Node> path) {
+        Node node = root;
+        int position = 0;
+        if (path != null) {
+            path.add(node);
+        }
+        while (position < token.length()) {
+            Node child = child(node, token.charAt(position));
+            if (child == null) {
+                child = new Node(token.substring(position));
+                addChild(node, child);
+                position = token.length();
+            } else {
+                int common = commonPrefix(child.label, token, position);
+                if (common < child.label.length()) {
+                    child = split(node, child, common);
+                }
+                position += common;
+            }
+            node = child;
+            if (path != null) {
+                path.add(node);
+            }
+        }
+        if (node.terminal == null) {
+            node.terminal = new HashMap<>(2);
+        }
+        node.terminal.merge(id, weight, Math::max);
+    }
+
+    private void removeTokens(String id) {
+        Map<String, Integer> tokens = tokensById.remove(id);
+        if (tokens == null) {
+            ContactDocument previous = contacts.get(id);
+            if (previous == null) {
+                return;
+            }
+            tokens = weightedTokens(previous);
+        }
+        for (String token : tokens.keySet()) {
+            List<Node> path = pathTo(token);
+            if (path == null) {
+                continue;
+            }
+            Node terminal = path.get(path.size() - 1);
+            if (terminal.terminal != null) {
+                terminal.terminal.remove(id);
+                if (terminal.terminal.isEmpty()) {
+                    terminal.terminal = null;
+                }
+            }
+            prune(path);
+            recomputePath(path);
+        }
+    }
+
+    private List<Node> pathTo(String token) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int position = 0;
+        while (position < token.length()) {
+            Node child = child(node, token.charAt(position));
+            if (child == null || !token.startsWith(child.label, position)) {
+                return null;
+            }
+            position += child.label.length();
+            node = child;
+            path.add(node);
+        }
+        return path;
+    }
+
+    /**
+     * Drops empty leaves and folds single-child nodes into their child, walking
+     * up from the end of the path and trimming the path to the nodes that remain
+     */
+    private void prune(List<Node> path) {
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node node = path.get(i);
+            Node parent = path.get(i - 1);
+            if (node.terminal != null) {
+                break;
+            }
+            if (node.children.length == 0) {
+                removeChild(parent, node);
+                path.remove(i);
+            } else if (node.children.length == 1) {
+                Node only = node.children[0];
+                only.label = node.label + only.label;
+                replaceChild(parent, node, only);
+                path.remove(i);
+                break;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private void recomputePath(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            recompute(path.get(i));
+        }
+    }
+
+    private void recomputeSubtree(Node node) {
+        for (Node child : node.children) {
+            recomputeSubtree(child);
+        }
+        recompute(node);
+    }
+
+    private void recompute(Node node) {
+        Map<String, Integer> best = new HashMap<>();
+        boolean truncated = false;
+        if (node.terminal != null) {
+            node.terminal.forEach((id, weight) -> best.merge(id, weight, Math::max));
+        }
+        for (Node child : node.children) {
+            truncated |= child.truncated;
+            for (Scored entry : child.top) {
+                best.merge(entry.id(), entry.weight(), Math::max);
+            }
+        }
+        List<Scored> ranked = rank(best);
+        node.truncated = truncated || ranked.size() > topK;
+        node.top = ranked.subList(0, Math.min(topK, ranked.size())).toArray(NO_ENTRIES);
+    }
+
+    private static Node child(Node node, char first) {
+        int low = 0;
+        int high = node.children.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char key = node.children[mid].label.charAt(0);
+            if (key < first) {
+                low = mid + 1;
+            } else if (key > first) {
+                high = mid - 1;
+            } else {
+                return node.children[mid];
+            }
+        }
+        return null;
+    }
+
+    private static void addChild(Node parent, Node child) {
+        Node[] children = Arrays.copyOf(parent.children, parent.children.length + 1);
+        int i = children.length - 1;
+        while (i > 0 && children[i - 1].label.charAt(0) > child.label.charAt(0)) {
+            children[i] = children[i - 1];
+            i--;
+        }
+        children[i] = child;
+        parent.children = children;
+    }
+
+    private static void removeChild(Node parent, Node child) {
+        Node[] children = new Node[parent.children.length - 1];
+        int j = 0;
+        for (Node candidate : parent.children) {
+            if (candidate != child) {
+                children[j++] = candidate;
+            }
+        }
+        parent.children = children;
+    }
+
+    private static void replaceChild(Node parent, Node previous, Node replacement) {
+        for (int i = 0; i < parent.children.length; i++) {
+            if (parent.children[i] == previous) {
+                parent.children[i] = replacement;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Splits the child's edge after {@code at} characters and returns the new
+     * intermediate node, which inherits the child's ranking
+     */
+    private static Node split(Node parent, Node child, int at) {
+        Node middle = new Node(child.label.substring(0, at));
+        child.label = child.label.substring(at);
+        middle.children = new Node[] {child};
+        middle.top = child.top;
+        middle.truncated = child.truncated;
+        replaceChild(parent, child, middle);
+        return middle;
+    }
+
+    private static int commonPrefix(String label, String value, int offset) {
+        int max = Math.min(label.length(), value.length() - offset);
+        int i = 0;
+        while (i < max && label.charAt(i) == value.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,295 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Versioned on-disk form of {@link AutocompleteIndex}: the contacts, and the
+ * trie in pre-order with each node's precomputed ranking, so loading it is a
+ * single sequential decode with no ranking work.
+ * <p>
+ * The file is read through {@link FileChannel#map}, straight from the page
+ * cache, and decoded onto the heap, where lookups are served from; a single
+ * mapping holds at most 2 GB, so larger snapshots are refused with a
+ * {@link TooLargeException} when written and read. It carries the index's high-water mark on {@code updatedAt} so only
+ * later changes have to be replayed from the database. A snapshot is rejected
+ * if its format version or top-k differs from this build, or if its checksum
+ * does not match.
+ * <pre>
+ * header:  magic | version | topK | high-water mark | payload length | CRC32 of payload
+ * payload: contacts, then nodes as (label, truncated, terminal entries, top entries, child count, children...)
+ * </pre>
+ */
+final class AutocompleteSnapshot {
+
+    static final int MAGIC = 0x43534143; // "CSAC"
+
+    static final int VERSION = 2; // 2: tokens split like the standard tokenizer
+
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 4 + 8 + 8;
+
+    private static final long NO_HIGH_WATER_MARK = Long.MIN_VALUE;
+
+    /** Largest file a single {@link FileChannel#map} call can map */
+    static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    private AutocompleteSnapshot() {
+    }
+
+    record Contents(int topK, LocalDateTime highWaterMark, List<ContactDocument> contacts,
+                    AutocompleteIndex.Node root) {
+    }
+
+    /**
+     * The snapshot is larger than {@link #MAX_SIZE}
+     */
+    static final class TooLargeException extends IOException {
+
+        TooLargeException(long size) {
+            super("Snapshot of " + size + " bytes exceeds the " + MAX_SIZE + " bytes a single mapping can hold");
+        }
+    }
+
+    /**
+     * Writes the snapshot to a temporary file next to {@code path} and moves
+     * it into place, so readers never see a partial file
+     * @throws TooLargeException if the snapshot would be larger than {@link #MAX_SIZE}
+     */
+    static void write(Path path, Contents contents) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.position(HEADER_SIZE);
+                CRC32 crc = new CRC32();
+                CountingOutputStream counting = new CountingOutputStream(new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), crc));
+                DataOutputStream out = new DataOutputStream(counting);
+                writePayload(out, contents);
+                out.flush();
+                if (HEADER_SIZE + counting.count > MAX_SIZE) {
+                    throw new TooLargeException(HEADER_SIZE + counting.count);
+                }
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(contents.topK());
+                LocalDateTime mark = contents.highWaterMark();
+                header.putLong(mark != null ? mark.toEpochSecond(ZoneOffset.UTC) : NO_HIGH_WATER_MARK);
+                header.putInt(mark != null ? mark.getNano() : 0);
+                header.putLong(counting.count).putLong(crc.getValue());
+                header.flip();
+                channel.write(header, 0);
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Maps and decodes the snapshot
+     * @throws IOException if the file cannot be read, or is not a valid snapshot of this version
+     * @throws TooLargeException if the file is larger than {@link #MAX_SIZE}
+     */
+    static Contents read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Snapshot too short: " + size + " bytes");
+            }
+            if (size > MAX_SIZE) {
+                throw new TooLargeException(size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an autocomplete snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int topK = buffer.getInt();
+            long markSeconds = buffer.getLong();
+            int markNanos = buffer.getInt();
+            long payloadLength = buffer.getLong();
+            long expectedCrc = buffer.getLong();
+            if (payloadLength != size - HEADER_SIZE) {
+                throw new IOException("Snapshot truncated");
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+
+            LocalDateTime highWaterMark = markSeconds == NO_HIGH_WATER_MARK
+                    ? null
+                    : LocalDateTime.ofEpochSecond(markSeconds, markNanos, ZoneOffset.UTC);
+            List<ContactDocument> contacts = readContacts(buffer);
+            AutocompleteIndex.Node root = readNode(buffer, contacts);
+            return new Contents(topK, highWaterMark, contacts, root);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, IndexOutOfBoundsException etc. from a corrupt payload
+            throw new IOException("Corrupt autocomplete snapshot", e);
+        }
+    }
+
+    private static void writePayload(DataOutputStream out, Contents contents) throws IOException {
+        Map<String, Integer> indexById = new HashMap<>();
+        out.writeInt(contents.contacts().size());
+        for (ContactDocument contact : contents.contacts()) {
+            indexById.put(contact.getId(), indexById.size());
+            writeString(out, contact.getId());
+            writeString(out, contact.getFirstName());
+            writeString(out, contact.getLastName());
+            writeString(out, contact.getEmail());
+            writeString(out, contact.getCity());
+            writeDateTime(out, contact.getCreatedAt());
+            writeDateTime(out, contact.getUpdatedAt());
+        }
+        writeNode(out, contents.root(), indexById);
+    }
+
+    private static void writeNode(DataOutputStream out, AutocompleteIndex.Node node, Map<String, Integer> indexById)
+            throws IOException {
+        writeString(out, node.label);
+        out.writeBoolean(node.truncated);
+        Map<String, Integer> terminal = node.terminal != null ? node.terminal : Map.of();
+        out.writeInt(terminal.size());
+        for (Map.Entry<String, Integer> entry : terminal.entrySet()) {
+            out.writeInt(indexById.get(entry.getKey()));
+            out.writeInt(entry.getValue());
+        }
+        out.writeInt(node.top.length);
+        for (AutocompleteIndex.Scored entry : node.top) {
+            out.writeInt(indexById.get(entry.id()));
+            out.writeInt(entry.weight());
+        }
+        out.writeInt(node.children.length);
+        for (AutocompleteIndex.Node child : node.children) {
+            writeNode(out, child, indexById);
+        }
+    }
+
+    private static List<ContactDocument> readContacts(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<ContactDocument> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            contacts.add(new ContactDocument(
+                    readString(buffer),
+                    readString(buffer),
+                    readString(buffer),
+                    readString(buffer),
+                    readString(buffer),
+                    readDateTime(buffer),
+                    readDateTime(buffer)));
+        }
+        return contacts;
+    }
+
+    private static AutocompleteIndex.Node readNode(ByteBuffer buffer, List<ContactDocument> contacts) {
+        AutocompleteIndex.Node node = new AutocompleteIndex.Node(readString(buffer));
+        node.truncated = buffer.get() != 0;
+        int terminalCount = buffer.getInt();
+        if (terminalCount > 0) {
+            node.terminal = new HashMap<>(Math.max(2, terminalCount * 2));
+            for (int i = 0; i < terminalCount; i++) {
+                node.terminal.put(contacts.get(buffer.getInt()).getId(), buffer.getInt());
+            }
+        }
+        int topCount = buffer.getInt();
+        node.top = new AutocompleteIndex.Scored[topCount];
+        for (int i = 0; i < topCount; i++) {
+            node.top[i] = new AutocompleteIndex.Scored(contacts.get(buffer.getInt()).getId(), buffer.getInt());
+        }
+        int childCount = buffer.getInt();
+        if (childCount > 0) {
+            node.children = new AutocompleteIndex.Node[childCount];
+            for (int i = 0; i < childCount; i++) {
+                node.children[i] = readNode(buffer, contacts);
+            }
+        }
+        return node;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDateTime(DataOutputStream out, LocalDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(value.getNano());
+        }
+    }
+
+    private static LocalDateTime readDateTime(ByteBuffer buffer) {
+        if (buffer.get() == 0) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.codehacks.contactsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.transport.rest_client.RestClientOptions;
+import com.codehacks.contactsearch.config.SearchTimeoutProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.apache.http.client.config.RequestConfig;
+import org.elasticsearch.client.RequestOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * {@link ElasticsearchOperations} whose requests the client gives up on once
+ * the search's budget plus {@code contact-search.search.timeout.client-grace}
+ * has passed, instead of after the global
+ * {@code spring.elasticsearch.socket-timeout}. The search {@code timeout}
+ * sent to Elasticsearch only stops shards collecting hits; this also bounds
+ * the wait for a node that does not answer at all.
+ * <p>
+ * One template is kept per socket timeout, at most {@value #MAX_TEMPLATES}.
+ * With a transport other than the low-level REST client the shared
+ * operations are used as they are.
+ */
+@Component
+public class BudgetedSearchOperations {
+
+    static final int MAX_TEMPLATES = 64;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+
+    private final ElasticsearchClient elasticsearchClient;
+
+    private final SearchTimeoutProperties searchTimeouts;
+
+    private final Duration connectTimeout;
+
+    private final Cache<Duration, ElasticsearchOperations> templates = Caffeine.newBuilder()
+            .maximumSize(MAX_TEMPLATES)
+            .build();
+
+    public BudgetedSearchOperations(ElasticsearchOperations elasticsearchOperations,
+                                    ElasticsearchClient elasticsearchClient,
+                                    SearchTimeoutProperties searchTimeouts,
+                                    @Value("${spring.elasticsearch.connection-timeout:1s}") Duration connectTimeout) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.elasticsearchClient = elasticsearchClient;
+        this.searchTimeouts = searchTimeouts;
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Operations for a search sent with the given timeout
+     */
+    public ElasticsearchOperations within(Duration timeout) {
+        if (!(elasticsearchClient._transportOptions() instanceof RestClientOptions options)) {
+            return elasticsearchOperations;
+        }
+        return templates.get(timeout.plus(searchTimeouts.clientGrace()),
+                socketTimeout -> template(options, socketTimeout));
+    }
+
+    private ElasticsearchOperations template(RestClientOptions options, Duration socketTimeout) {
+        // Replaces the client's default request config, so the connect timeout is set again
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(Math.toIntExact(connectTimeout.toMillis()))
+                .setSocketTimeout(Math.toIntExact(socketTimeout.toMillis()))
+                .build();
+        RequestOptions requestOptions = options.restClientRequestOptions().toBuilder()
+                .setRequestConfig(requestConfig)
+                .build();
+        ElasticsearchClient client = elasticsearchClient.withTransportOptions(
+                new RestClientOptions(requestOptions, options.keepResponseBodyOnException()));
+        return new ElasticsearchTemplate(client, elasticsearchOperations.getElasticsearchConverter());
+    }
+}
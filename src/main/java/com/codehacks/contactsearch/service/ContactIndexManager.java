@@ -0,0 +1,361 @@
+package com.codehacks.contactsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Time;
+import co.elastic.clients.elasticsearch.indices.ExistsAliasRequest;
+import co.elastic.clients.elasticsearch.indices.ForcemergeRequest;
+import co.elastic.clients.elasticsearch.indices.GetAliasRequest;
+import co.elastic.clients.elasticsearch.indices.PutIndicesSettingsRequest;
+import co.elastic.clients.elasticsearch.tasks.GetTasksRequest;
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.repository.ContactSearchRepository;
+import com.codehacks.contactsearch.repository.IndexInstanceRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActionParameters;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.Settings;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.Set;
+
+/**
+ * Keeps the contacts index behind the {@value #ALIAS} alias, which is what
+ * {@link ContactDocument} reads and writes, so the index can be rebuilt
+ * blue/green without search noticing:
+ * <ol>
+ *     <li>{@link #prepareRebuild} creates a versioned index with the current
+ *     settings and mapping, tuned for bulk loading ({@code refresh_interval=-1},
+ *     no replicas), behind the {@value #REBUILD_ALIAS} alias</li>
+ *     <li>every instance picks up the rebuild alias within {@link
+ *     #refreshRebuildTarget}'s period, from then on drains contact changes
+ *     into both indexes, and reports so in {@code contact_index_instances};
+ *     the load only starts once every instance seen in the last {@code
+ *     instance-stale-after} has</li>
+ *     <li>documents are versioned by their contact's {@code updatedAt} (see
+ *     {@link ContactIndexer}), so a contact written meanwhile keeps its newer
+ *     version</li>
+ *     <li>{@link #promote} restores the settings, force-merges, and swaps the
+ *     alias over in one {@code _aliases} request</li>
+ * </ol>
+ * A contact deleted while the chunk holding it is being loaded can come back
+ * in the new index if that chunk lands more than {@code index.gc_deletes}
+ * (60s) after the delete, which is when Elasticsearch forgets its version.
+ */
+@Slf4j
+@Component
+public class ContactIndexManager {
+
+    public static final String ALIAS = "contacts";
+
+    static final String REBUILD_ALIAS = "contacts-rebuild";
+
+    private static final String SETTINGS_PATH = "elasticsearch/contact-settings.json";
+
+    private static final DateTimeFormatter VERSION = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final ElasticsearchOperations elasticsearchOperations;
+
+    private final ElasticsearchClient elasticsearchClient;
+
+    /**
+     * Empty when Elasticsearch repositories are disabled, i.e. on the Postgres search engine
+     */
+    private final Optional<ContactSearchRepository> contactSearchRepository;
+
+    private final IndexInstanceRepository indexInstanceRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Identifies this process in {@code contact_index_instances}
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    /**
+     * Index being rebuilt, which writes go to as well
+     */
+    private volatile IndexCoordinates rebuildTarget;
+
+    @Value("${contact-search.index.replicas:1}")
+    private int replicas = 1;
+
+    @Value("${contact-search.index.refresh-interval:1s}")
+    private String refreshInterval = "1s";
+
+    @Value("${contact-search.index.rebuild.propagation:1m}")
+    private Duration propagation = Duration.ofMinutes(1);
+
+    @Value("${contact-search.index.rebuild.instance-stale-after:30s}")
+    private Duration instanceStaleAfter = Duration.ofSeconds(30);
+
+    @Value("${contact-search.index.rebuild.force-merge-timeout:30m}")
+    private Duration forceMergeTimeout = Duration.ofMinutes(30);
+
+    public ContactIndexManager(ElasticsearchOperations elasticsearchOperations, ElasticsearchClient elasticsearchClient,
+                               Optional<ContactSearchRepository> contactSearchRepository,
+                               IndexInstanceRepository indexInstanceRepository) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.elasticsearchClient = elasticsearchClient;
+        this.contactSearchRepository = contactSearchRepository;
+        this.indexInstanceRepository = indexInstanceRepository;
+    }
+
+    /**
+     * Creates a first versioned index behind the alias when there is neither.
+     * An index created before the alias existed, named like it, is left in
+     * place until the next rebuild replaces it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndex() {
+        if (contactSearchRepository.isEmpty()) {
+            return;
+        }
+        try {
+            if (!elasticsearchOperations.indexOps(IndexCoordinates.of(ALIAS)).exists()) {
+                String index = newIndexName();
+                create(index, false);
+                elasticsearchOperations.indexOps(IndexCoordinates.of(index)).alias(new AliasActions(
+                        new AliasAction.Add(aliasParameters(index, ALIAS))));
+                log.info("Created contacts index {} behind alias {}", index, ALIAS);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Unable to create the contacts index, writes will fail until it exists", e);
+        }
+        refreshRebuildTarget();
+    }
+
+    /**
+     * Name of a new versioned index
+     */
+    public String newIndexName() {
+        return ALIAS + "-" + LocalDateTime.now().format(VERSION);
+    }
+
+    /**
+     * Creates the index for a rebuild, unless it exists already (a resumed
+     * rebuild), puts the rebuild alias on it and waits until every instance
+     * has reported writing to it
+     * @throws IllegalStateException when some instance hasn't within {@code propagation}
+     */
+    public void prepareRebuild(String index) throws InterruptedException {
+        if (!elasticsearchOperations.indexOps(IndexCoordinates.of(index)).exists()) {
+            create(index, true);
+        }
+        elasticsearchOperations.indexOps(IndexCoordinates.of(index)).alias(new AliasActions(
+                new AliasAction.Add(aliasParameters(index, REBUILD_ALIAS))));
+        rebuildTarget = IndexCoordinates.of(index);
+        report();
+        log.info("Rebuilding contacts into {}, waiting up to {} for every instance to write to it", index, propagation);
+        long unconfirmed = awaitInstances(index);
+        if (unconfirmed > 0) {
+            throw new IllegalStateException(unconfirmed + " instances did not start writing to " + index
+                    + " within " + propagation);
+        }
+    }
+
+    /**
+     * Restores replicas and the refresh interval, force-merges, and moves the
+     * alias from the indexes it is on to the rebuilt one in one request; an
+     * index named like the alias is deleted in the same request. The indexes
+     * it replaced are deleted afterwards.
+     * @param heartbeat Called while waiting for the force merge
+     */
+    public void promote(String index, Runnable heartbeat) {
+        try {
+            elasticsearchClient.indices().putSettings(PutIndicesSettingsRequest.of(p -> p
+                    .index(index)
+                    .settings(s -> s
+                            .numberOfReplicas(String.valueOf(replicas))
+                            .refreshInterval(Time.of(t -> t.time(refreshInterval))))));
+            forceMerge(index, heartbeat);
+            elasticsearchOperations.indexOps(IndexCoordinates.of(index)).refresh();
+
+            Set<String> replaced = aliasedIndexes(ALIAS);
+            AliasActions actions = new AliasActions();
+            for (String old : replaced) {
+                actions.add(new AliasAction.Remove(aliasParameters(old, ALIAS)));
+            }
+            if (replaced.isEmpty() && elasticsearchOperations.indexOps(IndexCoordinates.of(ALIAS)).exists()) {
+                actions.add(new AliasAction.RemoveIndex(AliasActionParameters.builder().withIndices(ALIAS).build()));
+            }
+            actions.add(new AliasAction.Add(aliasParameters(index, ALIAS)));
+            actions.add(new AliasAction.Remove(aliasParameters(index, REBUILD_ALIAS)));
+            elasticsearchOperations.indexOps(IndexCoordinates.of(index)).alias(actions);
+            rebuildTarget = null;
+            report();
+            log.info("Alias {} moved to {}", ALIAS, index);
+
+            for (String old : replaced) {
+                if (!old.equals(index)) {
+                    elasticsearchOperations.indexOps(IndexCoordinates.of(old)).delete();
+                    log.info("Deleted replaced contacts index {}", old);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to promote " + index, e);
+        }
+    }
+
+    /**
+     * Drops a rebuild that was cancelled or failed. Instances that haven't
+     * noticed yet may still write to it, so the index is only deleted once
+     * they all reported they stopped, or after {@code propagation}, lest a
+     * late write create it again.
+     */
+    public void abandon(String index) throws InterruptedException {
+        IndexOperations indexOps = elasticsearchOperations.indexOps(IndexCoordinates.of(index));
+        if (!indexOps.exists()) {
+            return;
+        }
+        indexOps.alias(new AliasActions(new AliasAction.Remove(aliasParameters(index, REBUILD_ALIAS))));
+        rebuildTarget = null;
+        report();
+        long unconfirmed = awaitInstances(null);
+        if (unconfirmed > 0) {
+            log.warn("{} instances may still write to {}, deleting it anyway", unconfirmed, index);
+        }
+        indexOps.delete();
+        log.info("Deleted abandoned contacts index {}", index);
+    }
+
+    /**
+     * Looks up the index being rebuilt, so contact changes drained on this
+     * instance go to it too, and reports which one that is. Run more often
+     * than {@code contact-search.index.rebuild.instance-stale-after}, and on
+     * a thread no other work holds up, since a rebuild waits for it.
+     */
+    public void refreshRebuildTarget() {
+        if (contactSearchRepository.isEmpty()) {
+            return;
+        }
+        try {
+            rebuildTarget = aliasedIndexes(REBUILD_ALIAS).stream().findFirst().map(IndexCoordinates::of).orElse(null);
+        } catch (IOException | RuntimeException e) {
+            // Still reported, as the index this instance writes to, so a rebuild waits rather than thinks it gone
+            log.warn("Unable to look up the index being rebuilt", e);
+        }
+        report();
+    }
+
+    /**
+     * Records the index being rebuilt this instance now writes to; the
+     * change must take effect before, so drains started after the report
+     * write to it
+     */
+    private void report() {
+        try {
+            IndexCoordinates target = rebuildTarget;
+            indexInstanceRepository.report(instanceId, target != null ? target.getIndexName() : null,
+                    LocalDateTime.now());
+        } catch (RuntimeException e) {
+            log.warn("Unable to report the index being rebuilt", e);
+        }
+    }
+
+    /**
+     * Waits until no instance seen recently reports another index being
+     * rebuilt than the given one, or {@code propagation} has passed
+     * @return Instances still reporting another one
+     */
+    private long awaitInstances(String target) throws InterruptedException {
+        long deadline = System.nanoTime() + propagation.toNanos();
+        indexInstanceRepository.deleteSeenBefore(LocalDateTime.now().minus(instanceStaleAfter));
+        while (true) {
+            long unconfirmed = indexInstanceRepository.countReportingOther(target,
+                    LocalDateTime.now().minus(instanceStaleAfter));
+            if (unconfirmed == 0 || System.nanoTime() - deadline >= 0) {
+                return unconfirmed;
+            }
+            Thread.sleep(1000);
+        }
+    }
+
+    /**
+     * Index being rebuilt, which {@link IndexOutbox} writes contact changes to as well
+     */
+    Optional<IndexCoordinates> rebuildTarget() {
+        return Optional.ofNullable(rebuildTarget);
+    }
+
+    private void create(String index, boolean forBulkLoad) {
+        IndexOperations indexOps = elasticsearchOperations.indexOps(IndexCoordinates.of(index));
+        indexOps.create(settings(forBulkLoad), indexOps.createMapping(ContactDocument.class));
+    }
+
+    /**
+     * Settings from {@code contact-settings.json}; for a bulk load without
+     * refreshes and replicas, otherwise with {@code contact-search.index.replicas}
+     */
+    Settings settings(boolean forBulkLoad) {
+        try (InputStream in = new ClassPathResource(SETTINGS_PATH).getInputStream()) {
+            ObjectNode settings = (ObjectNode) objectMapper.readTree(in);
+            ObjectNode index = settings.withObjectProperty("index");
+            if (forBulkLoad) {
+                index.put("refresh_interval", "-1");
+                index.put("number_of_replicas", 0);
+            } else {
+                index.put("number_of_replicas", replicas);
+            }
+            return Settings.parse(objectMapper.writeValueAsString(settings));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + SETTINGS_PATH, e);
+        }
+    }
+
+    private Set<String> aliasedIndexes(String alias) throws IOException {
+        if (!elasticsearchClient.indices().existsAlias(ExistsAliasRequest.of(e -> e.name(alias))).value()) {
+            return Set.of();
+        }
+        return elasticsearchClient.indices().getAlias(GetAliasRequest.of(g -> g.name(alias))).result().keySet();
+    }
+
+    /**
+     * Merges down to one segment as a task, which can outlast the client's
+     * socket timeout on a large index, and waits for it
+     */
+    private void forceMerge(String index, Runnable heartbeat) throws IOException {
+        String task = elasticsearchClient.indices().forcemerge(ForcemergeRequest.of(f -> f
+                .index(index)
+                .maxNumSegments(1L)
+                .waitForCompletion(false))).task();
+        if (task == null) {
+            return;
+        }
+        long deadline = System.nanoTime() + forceMergeTimeout.toNanos();
+        try {
+            while (!elasticsearchClient.tasks().get(GetTasksRequest.of(t -> t.taskId(task))).completed()) {
+                if (System.nanoTime() > deadline) {
+                    log.warn("Force merge of {} still running after {}, promoting anyway", index, forceMergeTimeout);
+                    return;
+                }
+                heartbeat.run();
+                Thread.sleep(1000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while force-merging " + index, e);
+        }
+    }
+
+    private static AliasActionParameters aliasParameters(String index, String alias) {
+        return AliasActionParameters.builder().withIndices(index).withAliases(alias).build();
+    }
+}
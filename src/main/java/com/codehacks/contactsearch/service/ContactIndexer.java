@@ -0,0 +1,240 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.ResyncStats;
+import com.codehacks.contactsearch.repository.ContactRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.RefreshPolicy;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.BulkOptions;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Full resync of the contacts index from the database. Contacts are read in
+ * id order, one chunk of {@code contact-search.contacts.sync.chunk-size} at a
+ * time (keyset pagination, so every read is an index range scan however far
+ * in it is), and each chunk is written with one {@code _bulk} request.
+ * <p>
+ * Up to {@code contact-search.contacts.sync.concurrent-requests} bulk
+ * requests are in flight while the next chunk is read; reading waits for one
+ * of them to finish before going further, so at most that many chunks plus
+ * the one being read are held in memory. Bulk requests don't refresh the
+ * index, it is refreshed once at the end.
+ * <p>
+ * Each document carries its contact's {@code updatedAt} as an {@code
+ * external_gte} version (see {@link ContactDocument#version(Contact)}), so a
+ * chunk read before a contact changed can't overwrite the newer copy the
+ * {@link IndexOutbox} wrote meanwhile, nor bring back one deleted since; the
+ * version conflicts that causes are skipped.
+ * <p>
+ * A resync can start after a given id and reports checkpoints as it goes,
+ * so an interrupted one can be resumed (see {@link ReindexJobService}).
+ * Throughput is logged and returned in docs/sec.
+ */
+@Slf4j
+@Component
+public class ContactIndexer {
+
+    private static final BulkOptions BULK_OPTIONS = BulkOptions.builder()
+            .withRefreshPolicy(RefreshPolicy.NONE)
+            .build();
+
+    private final ContactRepository contactRepository;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+
+    private final Executor executor;
+
+    @Value("${contact-search.contacts.sync.chunk-size:1000}")
+    private int chunkSize = 1000;
+
+    @Value("${contact-search.contacts.sync.concurrent-requests:4}")
+    private int concurrentRequests = 4;
+
+    public ContactIndexer(ContactRepository contactRepository, ElasticsearchOperations elasticsearchOperations,
+                          @Qualifier("contactIndexerExecutor") Executor executor) {
+        this.contactRepository = contactRepository;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.executor = executor;
+    }
+
+    /**
+     * Told how far a resync has got; called from the threads sending the bulk
+     * requests, one call at a time
+     */
+    public interface Listener {
+
+        /**
+         * Every contact up to and including {@code lastId} is in the index
+         * @param documents Contacts written by this resync up to {@code lastId}
+         */
+        void checkpoint(long lastId, long documents);
+
+        /**
+         * Checked before each chunk is read; true stops the resync once the
+         * requests in flight have finished
+         */
+        default boolean cancelled() {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the contacts with ids above {@code afterId} to the contacts index
+     */
+    public ResyncStats resync(long afterId, Listener listener) {
+        return resync(elasticsearchOperations.getIndexCoordinatesFor(ContactDocument.class), afterId, listener);
+    }
+
+    /**
+     * Writes the contacts with ids above {@code afterId} to the given index,
+     * e.g. one being rebuilt (see {@link ContactIndexManager})
+     * @throws RuntimeException the first failed bulk request's error, once the
+     *                          requests still in flight have finished; no
+     *                          further chunks are read after a failure
+     */
+    public ResyncStats resync(IndexCoordinates index, long afterId, Listener listener) {
+        long started = System.nanoTime();
+        Semaphore inFlight = new Semaphore(concurrentRequests);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Checkpoints checkpoints = new Checkpoints(listener);
+        try {
+            long lastId = afterId;
+            List<Contact> chunk;
+            do {
+                if (listener.cancelled()) {
+                    break;
+                }
+                chunk = contactRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(chunkSize));
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                long chunkLastId = chunk.get(chunk.size() - 1).getId();
+                lastId = chunkLastId;
+                List<IndexQuery> queries = chunk.stream().map(ContactIndexer::indexQuery).toList();
+
+                inFlight.acquire();
+                if (failure.get() != null) {
+                    inFlight.release();
+                    break;
+                }
+                checkpoints.sent(chunkLastId, queries.size());
+                try {
+                    executor.execute(() -> {
+                        try {
+                            bulkIndex(queries, index);
+                            checkpoints.indexed(chunkLastId);
+                        } catch (RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    failure.compareAndSet(null, e);
+                }
+            } while (chunk.size() == chunkSize && failure.get() == null);
+
+            // Wait for the requests still in flight
+            inFlight.acquire(concurrentRequests);
+            inFlight.release(concurrentRequests);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while resyncing " + index.getIndexName(), e);
+        }
+        if (failure.get() != null) {
+            log.warn("Resync of {} failed after {} contacts", index.getIndexName(), checkpoints.documents());
+            throw failure.get();
+        }
+
+        elasticsearchOperations.indexOps(index).refresh();
+        ResyncStats stats = ResyncStats.of(checkpoints.documents(), System.nanoTime() - started);
+        log.info("Resynced {} contacts into {} in {} ms ({} docs/sec)", stats.documents(), index.getIndexName(),
+                stats.tookMs(), Math.round(stats.docsPerSecond()));
+        return stats;
+    }
+
+    /**
+     * Bulk requests finish out of order, so the checkpoint only moves past a
+     * chunk once every chunk before it is indexed too; resuming after it then
+     * never skips a contact.
+     */
+    private static final class Checkpoints {
+
+        private final Listener listener;
+
+        /**
+         * Chunks sent and not yet below the checkpoint, by their last id, with
+         * their size, negative until indexed
+         */
+        private final TreeMap<Long, Integer> chunks = new TreeMap<>();
+
+        private long documents;
+
+        Checkpoints(Listener listener) {
+            this.listener = listener;
+        }
+
+        synchronized void sent(long lastId, int size) {
+            chunks.put(lastId, -size);
+        }
+
+        synchronized void indexed(long lastId) {
+            chunks.computeIfPresent(lastId, (id, size) -> -size);
+            Long checkpoint = null;
+            while (!chunks.isEmpty() && chunks.firstEntry().getValue() > 0) {
+                Map.Entry<Long, Integer> chunk = chunks.pollFirstEntry();
+                documents += chunk.getValue();
+                checkpoint = chunk.getKey();
+            }
+            if (checkpoint != null) {
+                listener.checkpoint(checkpoint, documents);
+            }
+        }
+
+        synchronized long documents() {
+            return documents;
+        }
+    }
+
+    /**
+     * Sends one {@code _bulk} request; documents already indexed in a newer
+     * version are skipped rather than failing the request
+     */
+    private void bulkIndex(List<IndexQuery> queries, IndexCoordinates index) {
+        try {
+            elasticsearchOperations.bulkIndex(queries, BULK_OPTIONS, index);
+        } catch (BulkFailureException e) {
+            boolean onlyNewer = e.getFailedDocuments().values().stream()
+                    .allMatch(failure -> Integer.valueOf(409).equals(failure.status()));
+            if (!onlyNewer) {
+                throw e;
+            }
+        }
+    }
+
+    private static IndexQuery indexQuery(Contact contact) {
+        return new IndexQueryBuilder()
+                .withId(contact.getId().toString())
+                .withObject(ContactDocument.forIndexing(contact))
+                .withVersion(ContactDocument.version(contact))
+                .build();
+    }
+}
@@ -0,0 +1,225 @@
+package com.codehacks.contactsearch.service;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.TextQueryType;
+import co.elastic.clients.elasticsearch.core.search.Suggester;
+import com.codehacks.contactsearch.model.SearchMode;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Builds the Elasticsearch query for each {@link SearchMode} as typed
+ * query-DSL objects. Field lists, boosts and clause shapes are fixed
+ * constants; only the user's query value is filled in per request, and it is
+ * always passed as a value (never spliced into JSON), so quotes, backslashes
+ * and other special characters in user input are safe.
+ * <p>
+ * "Contains" matching looks the query up as a term in the {@code ngram}
+ * subfields rather than running a leading-wildcard query, so it never scans
+ * the term dictionary.
+ */
+@Component
+public class ContactQueryFactory {
+
+    static final String SUGGESTION_NAME = "contact-suggest";
+
+    private static final String SUGGEST_FIELD = "suggest";
+
+    private static final String FUZZINESS_AUTO = "AUTO";
+
+    private static final List<String> TEXT_FIELDS = List.of("firstName^3", "lastName^3", "email^2", "city");
+
+    private static final List<String> KEYWORD_FIELDS =
+            List.of("firstName.keyword^2", "lastName.keyword^2", "email^2", "city.keyword");
+
+    private static final List<String> AUTOCOMPLETE_FIELDS = List.of(
+            "firstName.autocomplete^3", "lastName.autocomplete^3", "email.autocomplete^2", "city.autocomplete");
+
+    private static final List<String> PARTIAL_TEXT_FIELDS = List.of(
+            "firstName^3", "lastName^3", "firstName.ngram^2", "lastName.ngram^2", "email^2", "city");
+
+    private static final List<String> SPELLING_MATCH_FIELDS = List.of("firstName", "lastName", "city");
+
+    private static final List<String> SPELLING_CONTAINS_FIELDS = List.of("firstName", "lastName", "city");
+
+    private static final List<String> PARTIAL_CONTAINS_FIELDS = List.of("firstName", "lastName", "email", "city");
+
+    private static final List<String> PARTIAL_PREFIX_FIELDS = List.of("firstName", "lastName", "email", "city");
+
+    // Must match ngram_filter in contact-settings.json
+    static final int NGRAM_MIN = 2;
+    static final int NGRAM_MAX = 10;
+
+    public Query build(SearchMode mode, String value) {
+        return build(mode, value, containsTerms(value));
+    }
+
+    /**
+     * @param containsTerms ngram terms that must all be present for a
+     *                      "contains" clause to match, see {@link #containsTerms(String)}
+     */
+    Query build(SearchMode mode, String value, List<String> containsTerms) {
+        return switch (mode) {
+            case STANDARD -> standard(value);
+            case AUTOCOMPLETE -> autocomplete(value);
+            case FUZZY -> fuzzy(value);
+            case CITY -> city(value);
+            case SPELLING_CORRECTION -> spellingCorrection(value, containsTerms);
+            case PARTIAL_MATCH -> partialMatch(value, containsTerms);
+            case EXACT -> exact(value);
+            case SUGGEST -> throw new IllegalArgumentException("SUGGEST is served by the completion suggester, not a query");
+        };
+    }
+
+    /**
+     * Completion suggester over the {@code suggest} field for
+     * {@link SearchMode#SUGGEST}. Suggesters have no from parameter, so
+     * {@code size} must cover the skipped results too.
+     */
+    public Suggester suggester(String prefix, int size) {
+        return Suggester.of(s -> s.suggesters(SUGGESTION_NAME, f -> f
+                .prefix(prefix)
+                .completion(c -> c.field(SUGGEST_FIELD).size(size))));
+    }
+
+    private Query standard(String value) {
+        return Query.of(q -> q.multiMatch(m -> m
+                .query(value)
+                .fields(TEXT_FIELDS)
+                .type(TextQueryType.BestFields)
+                .fuzziness(FUZZINESS_AUTO)));
+    }
+
+    private Query autocomplete(String value) {
+        return autocompleteClause(value);
+    }
+
+    private Query exact(String value) {
+        return Query.of(q -> q.bool(b -> b
+                .should(keywordClause(value))
+                .should(autocompleteClause(value))
+                .minimumShouldMatch("1")));
+    }
+
+    private Query fuzzy(String value) {
+        return Query.of(q -> q.bool(b -> b
+                .should(fuzzyTextClause(value, "75%"))
+                .should(keywordClause(value))));
+    }
+
+    private Query city(String value) {
+        return Query.of(q -> q.term(t -> t.field("city.keyword").value(value)));
+    }
+
+    private Query spellingCorrection(String value, List<String> containsTerms) {
+        List<Query> should = new ArrayList<>();
+        should.add(fuzzyTextClause(value, "60%"));
+        should.add(keywordClause(value));
+        for (String field : SPELLING_MATCH_FIELDS) {
+            should.add(Query.of(q -> q.match(m -> m
+                    .field(field)
+                    .query(value)
+                    .fuzziness(FUZZINESS_AUTO)
+                    .prefixLength(1))));
+        }
+        if (!containsTerms.isEmpty()) {
+            for (String field : SPELLING_CONTAINS_FIELDS) {
+                should.add(containsClause(field, containsTerms));
+            }
+        }
+        return Query.of(q -> q.bool(b -> b.should(should).minimumShouldMatch("1")));
+    }
+
+    private Query partialMatch(String value, List<String> containsTerms) {
+        List<Query> should = new ArrayList<>();
+        should.add(Query.of(q -> q.multiMatch(m -> m
+                .query(value)
+                .fields(PARTIAL_TEXT_FIELDS)
+                .type(TextQueryType.BestFields)
+                .minimumShouldMatch("50%"))));
+        should.add(autocompleteClause(value));
+        if (!containsTerms.isEmpty()) {
+            for (String field : PARTIAL_CONTAINS_FIELDS) {
+                should.add(containsClause(field, containsTerms));
+            }
+        }
+        for (String field : PARTIAL_PREFIX_FIELDS) {
+            should.add(Query.of(q -> q.prefix(p -> p.field(field).value(value))));
+        }
+        return Query.of(q -> q.bool(b -> b.should(should).minimumShouldMatch("1")));
+    }
+
+    private Query fuzzyTextClause(String value, String minimumShouldMatch) {
+        return Query.of(q -> q.multiMatch(m -> m
+                .query(value)
+                .fields(TEXT_FIELDS)
+                .fuzziness(FUZZINESS_AUTO)
+                .minimumShouldMatch(minimumShouldMatch)));
+    }
+
+    private Query keywordClause(String value) {
+        return Query.of(q -> q.multiMatch(m -> m
+                .query(value)
+                .fields(KEYWORD_FIELDS)
+                .type(TextQueryType.BestFields)));
+    }
+
+    private Query autocompleteClause(String value) {
+        return Query.of(q -> q.multiMatch(m -> m
+                .query(value)
+                .fields(AUTOCOMPLETE_FIELDS)
+                .type(TextQueryType.BoolPrefix)));
+    }
+
+    /**
+     * Constant score of 1.0, as the leading-wildcard clause this replaced
+     * had, so ranking stays the same
+     */
+    private Query containsClause(String field, List<String> containsTerms) {
+        String ngramField = field + ".ngram";
+        Query filter = containsTerms.size() == 1
+                ? termQuery(ngramField, containsTerms.get(0))
+                : Query.of(q -> q.bool(b -> b.filter(containsTerms.stream()
+                        .map(term -> termQuery(ngramField, term))
+                        .toList())));
+        return Query.of(q -> q.constantScore(c -> c.filter(filter)));
+    }
+
+    private static Query termQuery(String field, String value) {
+        return Query.of(q -> q.term(t -> t.field(field).value(value)));
+    }
+
+    /**
+     * Ngram terms whose presence means a field contains the value, ignoring
+     * case. A value up to {@link #NGRAM_MAX} characters is a single term; a
+     * longer one is covered by overlapping grams of that length, all of which
+     * must match (a false positive needs every piece elsewhere in the same
+     * field). A single character has no gram, so it gets no contains clause.
+     */
+    static List<String> containsTerms(String value) {
+        String needle = value.toLowerCase(Locale.ROOT);
+        if (needle.length() < NGRAM_MIN) {
+            return List.of();
+        }
+        if (needle.length() <= NGRAM_MAX) {
+            return List.of(needle);
+        }
+        List<String> terms = new ArrayList<>();
+        for (int start = 0; start + NGRAM_MAX < needle.length(); start += NGRAM_MAX) {
+            terms.add(needle.substring(start, start + NGRAM_MAX));
+        }
+        terms.add(needle.substring(needle.length() - NGRAM_MAX));
+        return terms;
+    }
+
+    /**
+     * Whether the mode's query can be sent as a stored template, which holds
+     * at most one contains term
+     */
+    static boolean templatable(SearchMode mode, String value) {
+        return mode != SearchMode.SUGGEST && containsTerms(value).size() <= 1;
+    }
+}
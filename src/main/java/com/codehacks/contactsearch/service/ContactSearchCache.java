@@ -0,0 +1,367 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.ContactFields;
+import com.codehacks.contactsearch.model.SearchMode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Bounded in-process cache of offset search results, keyed by search mode,
+ * normalized query, offset, size and returned fields. Eviction is Caffeine's W-TinyLFU with a
+ * time-to-live on every entry; hit, miss and eviction counts are published to
+ * Micrometer as the {@code contactSearch} cache.
+ * <p>
+ * Writes invalidate only the entries a contact could match, before or after
+ * the change, plus any entry that currently contains it. Changes that cannot
+ * be described per contact bump a global generation instead, which makes
+ * every existing entry stale.
+ * <p>
+ * Elasticsearch only sees a write after its next refresh, so for
+ * {@code write-fence} after a write, results that the written contacts could
+ * affect are not stored; otherwise a search racing the refresh would cache
+ * the pre-write result again.
+ * <p>
+ * Queries that returned no hits at offset 0 are also kept in a separate,
+ * larger set of small entries ({@code contactSearchZeroHits}), so they
+ * short-circuit at any offset and size. In autocomplete mode a query that
+ * only appends letters or digits to a known zero-hit query also has no hits:
+ * its last term is a strictly narrower prefix and the other terms are
+ * unchanged.
+ */
+@Component
+@Slf4j
+public class ContactSearchCache {
+
+    static final String CACHE_NAME = "contactSearch";
+
+    static final String ZERO_HIT_CACHE_NAME = "contactSearchZeroHits";
+
+    /**
+     * Edits covered by fuzziness AUTO, which counts a transposition as one edit
+     */
+    private static final int MAX_EDITS = 2;
+
+    private final Cache<Key, Entry> cache;
+
+    private final Cache<ZeroHitKey, Long> zeroHits;
+
+    private final boolean enabled;
+
+    private final long writeFenceNanos;
+
+    private final LongSupplier nanoTime;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Deque<RecentWrite> recentWrites = new ConcurrentLinkedDeque<>();
+
+    private volatile long globalFenceUntil;
+
+    public ContactSearchCache(@Value("${contact-search.search.cache.enabled:true}") boolean enabled,
+                              @Value("${contact-search.search.cache.max-size:10000}") long maxSize,
+                              @Value("${contact-search.search.cache.ttl:5m}") Duration ttl,
+                              @Value("${contact-search.search.cache.write-fence:2s}") Duration writeFence,
+                              @Value("${contact-search.search.cache.zero-hit-max-size:50000}") long zeroHitMaxSize,
+                              MeterRegistry meterRegistry) {
+        this(enabled, maxSize, ttl, writeFence, zeroHitMaxSize, System::nanoTime);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        CaffeineCacheMetrics.monitor(meterRegistry, zeroHits, ZERO_HIT_CACHE_NAME);
+    }
+
+    ContactSearchCache(boolean enabled, long maxSize, Duration ttl, Duration writeFence, long zeroHitMaxSize,
+                       LongSupplier nanoTime) {
+        this.enabled = enabled;
+        this.writeFenceNanos = writeFence.toNanos();
+        this.nanoTime = nanoTime;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.zeroHits = Caffeine.newBuilder()
+                .maximumSize(zeroHitMaxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.globalFenceUntil = nanoTime.getAsLong();
+    }
+
+    /**
+     * Cache key for a search; {@code query} must already be normalized
+     */
+    public record Key(SearchMode mode, String query, int offset, int size, ContactFields fields) {
+
+        public Key(SearchMode mode, String query, int offset, int size) {
+            this(mode, query, offset, size, ContactFields.ALL);
+        }
+    }
+
+    private record Entry(long generation, SearchResult result) {
+    }
+
+    private record ZeroHitKey(SearchMode mode, String query) {
+    }
+
+    private record RecentWrite(long at, List<ContactDocument> contacts) {
+    }
+
+    /**
+     * Generation to pass back to {@link #put}; read it before searching
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public Optional<SearchResult> get(Key key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Entry entry = cache.getIfPresent(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.generation() != generation.get()) {
+            cache.invalidate(key);
+            return Optional.empty();
+        }
+        return Optional.of(entry.result());
+    }
+
+    /**
+     * Whether the normalized query is known to have no hits in the mode
+     */
+    public boolean isKnownEmpty(SearchMode mode, String query) {
+        if (!enabled) {
+            return false;
+        }
+        if (isZeroHit(mode, query)) {
+            return true;
+        }
+        if (mode != SearchMode.AUTOCOMPLETE && mode != SearchMode.SUGGEST) {
+            return false;
+        }
+        for (int end = query.length() - 1; end > 0 && Character.isLetterOrDigit(query.charAt(end)); end--) {
+            if (isZeroHit(mode, query.substring(0, end))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isZeroHit(SearchMode mode, String query) {
+        ZeroHitKey key = new ZeroHitKey(mode, query);
+        Long entryGeneration = zeroHits.getIfPresent(key);
+        if (entryGeneration == null) {
+            return false;
+        }
+        if (entryGeneration != generation.get()) {
+            zeroHits.invalidate(key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stores a result unless the cache was invalidated since {@code searchGeneration}
+     * was read or a recent write could still change it
+     */
+    public void put(Key key, long searchGeneration, SearchResult result) {
+        if (!enabled || searchGeneration != generation.get() || fencedByRecentWrite(key)) {
+            return;
+        }
+        ZeroHitKey zeroHitKey = result.results().isEmpty() && key.offset() == 0
+                ? new ZeroHitKey(key.mode(), key.query())
+                : null;
+        cache.put(key, new Entry(searchGeneration, result));
+        if (zeroHitKey != null) {
+            zeroHits.put(zeroHitKey, searchGeneration);
+        }
+        // An invalidation may have run between the checks and the put
+        if (searchGeneration != generation.get() || fencedByRecentWrite(key)) {
+            cache.invalidate(key);
+            if (zeroHitKey != null) {
+                zeroHits.invalidate(zeroHitKey);
+            }
+        }
+    }
+
+    /**
+     * Invalidates entries affected by a contact write. Either side may be
+     * null for a create or a delete.
+     */
+    public void contactChanged(ContactDocument before, ContactDocument after) {
+        if (!enabled) {
+            return;
+        }
+        List<ContactDocument> touched = new ArrayList<>(2);
+        if (before != null) {
+            touched.add(before);
+        }
+        if (after != null) {
+            touched.add(after);
+        }
+        if (touched.isEmpty()) {
+            invalidateAll();
+            return;
+        }
+        recentWrites.addLast(new RecentWrite(nanoTime.getAsLong(), touched));
+        cache.asMap().keySet().removeIf(key -> touched.stream().anyMatch(contact -> affects(key, contact)));
+        zeroHits.asMap().keySet().removeIf(key -> touched.stream()
+                .anyMatch(contact -> couldMatch(key.mode(), key.query(), contact)));
+    }
+
+    /**
+     * Makes every cached entry stale, e.g. after a bulk resync
+     */
+    public void invalidateAll() {
+        globalFenceUntil = nanoTime.getAsLong() + writeFenceNanos;
+        generation.incrementAndGet();
+        cache.invalidateAll();
+        zeroHits.invalidateAll();
+        log.debug("Search cache invalidated, generation {}", generation.get());
+    }
+
+    private boolean affects(Key key, ContactDocument contact) {
+        // Quietly, so invalidation scans neither count as hits or misses nor promote the entries they look at
+        Entry entry = cache.policy().getIfPresentQuietly(key);
+        if (entry != null && entry.result().results().stream().anyMatch(doc -> Objects.equals(doc.getId(), contact.getId()))) {
+            return true;
+        }
+        return couldMatch(key.mode(), key.query(), contact);
+    }
+
+    private boolean fencedByRecentWrite(Key key) {
+        long now = nanoTime.getAsLong();
+        if (now - globalFenceUntil < 0) {
+            return true;
+        }
+        RecentWrite oldest;
+        while ((oldest = recentWrites.peekFirst()) != null && now - oldest.at() > writeFenceNanos) {
+            recentWrites.remove(oldest);
+        }
+        for (RecentWrite write : recentWrites) {
+            for (ContactDocument contact : write.contacts()) {
+                if (couldMatch(key.mode(), key.query(), contact)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Conservative test of whether a contact could appear in the results for
+     * a normalized query. False positives only cost an extra miss; a false
+     * negative would serve a stale result, so every clause of the mode's
+     * query must be covered.
+     */
+    static boolean couldMatch(SearchMode mode, String query, ContactDocument contact) {
+        return switch (mode) {
+            case CITY -> query.equals(contact.getCity());
+            // Suggest inputs and exact keyword values start with a field's first word, so a prefix of
+            // either starts with a token prefix
+            case AUTOCOMPLETE, SUGGEST, EXACT -> anyTokenPair(query, contact,
+                    (queryToken, fieldToken) -> fieldToken.startsWith(queryToken));
+            case STANDARD, FUZZY -> anyTokenPair(query, contact,
+                    (queryToken, fieldToken) -> withinEdits(queryToken, fieldToken));
+            case SPELLING_CORRECTION -> containsQuery(query, contact) || anyTokenPair(query, contact,
+                    (queryToken, fieldToken) -> withinEdits(queryToken, fieldToken) || fieldToken.contains(queryToken));
+            // The ngram subfields are searched with plain lowercased terms, so they match substrings, not fragments
+            case PARTIAL_MATCH -> containsQuery(query, contact) || anyTokenPair(query, contact,
+                    (queryToken, fieldToken) -> fieldToken.contains(queryToken));
+        };
+    }
+
+    /**
+     * Covers the ngram "contains" clauses, which see the whole query: some
+     * field holds every one of its terms
+     */
+    private static boolean containsQuery(String query, ContactDocument contact) {
+        List<String> terms = ContactQueryFactory.containsTerms(query);
+        if (terms.isEmpty()) {
+            return false;
+        }
+        return Stream.of(contact.getFirstName(), contact.getLastName(), contact.getEmail(), contact.getCity())
+                .filter(Objects::nonNull)
+                .map(field -> field.toLowerCase(Locale.ROOT))
+                .anyMatch(field -> terms.stream().allMatch(field::contains));
+    }
+
+    private interface TokenPredicate {
+        boolean test(String queryToken, String fieldToken);
+    }
+
+    private static boolean anyTokenPair(String query, ContactDocument contact, TokenPredicate predicate) {
+        List<String> fieldTokens = new ArrayList<>();
+        fieldTokens.addAll(SearchQueryNormalizer.tokens(contact.getFirstName()));
+        fieldTokens.addAll(SearchQueryNormalizer.tokens(contact.getLastName()));
+        fieldTokens.addAll(SearchQueryNormalizer.tokens(contact.getEmail()));
+        fieldTokens.addAll(SearchQueryNormalizer.tokens(contact.getCity()));
+        for (String queryToken : SearchQueryNormalizer.tokens(query)) {
+            for (String fieldToken : fieldTokens) {
+                if (predicate.test(queryToken, fieldToken)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Optimal string alignment distance within {@link #MAX_EDITS}: insertions,
+     * deletions, substitutions and transpositions of adjacent characters, as
+     * Elasticsearch fuzzy matching counts them
+     */
+    static boolean withinEdits(String a, String b) {
+        if (Math.abs(a.length() - b.length()) > MAX_EDITS) {
+            return false;
+        }
+        int[] beforePrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        int previousRowMin = 0;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    current[j] = Math.min(current[j], beforePrevious[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            // A transposition reaches back two rows, so stop only once both are out of range
+            if (rowMin > MAX_EDITS && previousRowMin > MAX_EDITS) {
+                return false;
+            }
+            previousRowMin = rowMin;
+            int[] swap = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()] <= MAX_EDITS;
+    }
+}
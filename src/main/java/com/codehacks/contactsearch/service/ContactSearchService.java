@@ -1,335 +1,867 @@
 package com.codehacks.contactsearch.service;
 
+import com.codehacks.contactsearch.config.SearchTimeoutProperties;
 import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.dto.BatchSearchRequest;
+import com.codehacks.contactsearch.model.BatchSearchResult;
+import com.codehacks.contactsearch.model.ContactFields;
+import com.codehacks.contactsearch.model.CursorPage;
+import com.codehacks.contactsearch.model.FusedPage;
+import com.codehacks.contactsearch.model.SearchEngine;
+import com.codehacks.contactsearch.model.SearchMode;
+import com.codehacks.contactsearch.model.SearchResponse;
+import com.codehacks.contactsearch.model.SearchTier;
+import com.codehacks.contactsearch.model.TieredPage;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.Query;
-import org.springframework.data.elasticsearch.core.query.StringQuery;
+import org.springframework.data.elasticsearch.core.query.SearchTemplateQuery;
+import org.springframework.data.elasticsearch.core.query.SourceFilter;
+import org.springframework.data.elasticsearch.core.suggest.response.CompletionSuggestion;
+import org.springframework.data.elasticsearch.core.suggest.response.Suggest;
 import org.springframework.stereotype.Service;
 
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 
 @Service
-public class ContactSearchService {
+@Slf4j
+public class ContactSearchService implements ContactTextSearch {
+
+    static final String SMART_TIER_METRIC = "contact.search.smart.tier";
+
+    static final String SMART_TOP_SCORE_METRIC = "contact.search.smart.top-score";
+
+    static final String FUSED_DROPPED_METRIC = "contact.search.fused.dropped";
+
+    static final String PARTIAL_METRIC = "contact.search.partial";
+
+    static final String FALLBACK_METRIC = "contact.search.fallback";
+
+    /**
+     * Strategies a fused search runs, in the order ties are broken
+     */
+    static final List<SearchMode> FUSED_STRATEGIES =
+            List.of(SearchMode.FUZZY, SearchMode.PARTIAL_MATCH, SearchMode.SPELLING_CORRECTION);
+
+    private static final Sort CURSOR_SORT = Sort.by(Sort.Order.desc("_score"), Sort.Order.asc("id"));
 
     private final ElasticsearchOperations elasticsearchOperations;
 
-    public ContactSearchService(ElasticsearchOperations elasticsearchOperations) {
+    private final ContactQueryFactory contactQueryFactory;
+
+    private final ContactSearchTemplates contactSearchTemplates;
+
+    private final ContactSearchCache contactSearchCache;
+
+    private final SearchRequestCoalescer searchRequestCoalescer;
+
+    private final BudgetedSearchOperations budgetedSearchOperations;
+
+    private final AutocompleteIndex autocompleteIndex;
+
+    private final Executor contactSearchExecutor;
+
+    private final MeterRegistry meterRegistry;
+
+    private final SearchTimeoutProperties searchTimeouts;
+
+    private final CircuitBreaker circuitBreaker;
+
+    private final PostgresContactSearch postgresContactSearch;
+
+    private final Map<SearchTier, Counter> tierAnswers = new EnumMap<>(SearchTier.class);
+
+    private final Map<SearchTier, DistributionSummary> tierTopScores = new EnumMap<>(SearchTier.class);
+
+    @Value("${contact-search.search.engine:elasticsearch}")
+    private SearchEngine engine = SearchEngine.ELASTICSEARCH;
+
+    @Value("${contact-search.search.max-page-size:100}")
+    private int maxPageSize;
+
+    @Value("${contact-search.search.max-result-window:10000}")
+    private int maxResultWindow;
+
+    @Value("${contact-search.search.track-total-hits:1000}")
+    private int trackTotalHits;
+
+    @Value("${contact-search.search.cursor-keep-alive:1m}")
+    private Duration cursorKeepAlive;
+
+    @Value("${contact-search.search.smart.min-score.exact:0}")
+    private float exactMinScore;
+
+    @Value("${contact-search.search.smart.min-score.fuzzy:0}")
+    private float fuzzyMinScore;
+
+    @Value("${contact-search.search.smart.min-score.ngram:0}")
+    private float ngramMinScore;
+
+    @Value("${contact-search.search.fused.budget:300ms}")
+    private Duration fusedBudget;
+
+    @Value("${contact-search.search.fused.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${contact-search.search.batch.max-searches:10000}")
+    private int maxBatchSearches;
+
+    @Value("${contact-search.search.batch.chunk-size:200}")
+    private int batchChunkSize;
+
+    public ContactSearchService(ElasticsearchOperations elasticsearchOperations,
+                                ContactQueryFactory contactQueryFactory,
+                                ContactSearchTemplates contactSearchTemplates,
+                                ContactSearchCache contactSearchCache,
+                                SearchRequestCoalescer searchRequestCoalescer,
+                                BudgetedSearchOperations budgetedSearchOperations,
+                                AutocompleteIndex autocompleteIndex,
+                                @Qualifier("contactSearchExecutor") Executor contactSearchExecutor,
+                                MeterRegistry meterRegistry,
+                                SearchTimeoutProperties searchTimeouts,
+                                CircuitBreaker circuitBreaker,
+                                PostgresContactSearch postgresContactSearch) {
         this.elasticsearchOperations = elasticsearchOperations;
+        this.contactQueryFactory = contactQueryFactory;
+        this.contactSearchTemplates = contactSearchTemplates;
+        this.contactSearchCache = contactSearchCache;
+        this.searchRequestCoalescer = searchRequestCoalescer;
+        this.budgetedSearchOperations = budgetedSearchOperations;
+        this.autocompleteIndex = autocompleteIndex;
+        this.contactSearchExecutor = contactSearchExecutor;
+        this.meterRegistry = meterRegistry;
+        this.searchTimeouts = searchTimeouts;
+        this.circuitBreaker = circuitBreaker;
+        this.postgresContactSearch = postgresContactSearch;
+        for (SearchTier tier : SearchTier.values()) {
+            String tag = tier.name().toLowerCase(Locale.ROOT);
+            tierAnswers.put(tier, Counter.builder(SMART_TIER_METRIC)
+                    .description("Smart searches answered by each tier")
+                    .tag("tier", tag)
+                    .register(meterRegistry));
+            tierTopScores.put(tier, DistributionSummary.builder(SMART_TOP_SCORE_METRIC)
+                    .description("Top score of each tier's first page, for tuning the min-score thresholds")
+                    .tag("tier", tag)
+                    .publishPercentiles(0.1, 0.5, 0.9)
+                    .register(meterRegistry));
+        }
     }
 
-    public List<ContactDocument> searchContacts(String query, int size) {
-        String queryString = buildMultiMatchQueryString(query);
-        Query searchQuery = new StringQuery(queryString);
+    @Override
+    public List<ContactDocument> searchContacts(String query, int offset, int size, ContactFields fields) {
+        return executeSearch(SearchMode.STANDARD, query, offset, size, fields);
+    }
 
-        SearchHits<ContactDocument> searchHits = elasticsearchOperations.search(
-                searchQuery, ContactDocument.class
-        );
+    /**
+     * Served from {@link AutocompleteIndex} when it holds every match of the
+     * query, otherwise from Elasticsearch, the same for every page
+     */
+    public List<ContactDocument> autocompleteSearch(String query, int offset, int size, ContactFields fields) {
+        return autocomplete(query, offset, size, fields, null).results();
+    }
 
-        return searchHits.stream()
-                .map(SearchHit::getContent)
-                .limit(size)
-                .collect(Collectors.toList());
+    private SearchResult autocomplete(String query, int offset, int size, ContactFields fields, Duration budget) {
+        int from = Math.max(offset, 0);
+        int pageSize = Math.min(size, Math.min(maxPageSize, maxResultWindow - from));
+        if (pageSize >= 1) {
+            Optional<List<ContactDocument>> fromMemory = autocompleteIndex.search(query, from, pageSize);
+            if (fromMemory.isPresent()) {
+                return SearchResult.unscored(fromMemory.get());
+            }
+        }
+        return executeScoredSearch(SearchMode.AUTOCOMPLETE, query, offset, size, fields, budget);
     }
 
-    public List<ContactDocument> autocompleteSearch(String query, int size) {
-        String queryString = buildAutocompleteQueryString(query);
-        Query searchQuery = new StringQuery(queryString);
+    /**
+     * The same offset search as the mode's own method, answered with its hit
+     * count and timing. The count is exact up to
+     * {@code contact-search.search.track-total-hits} and a lower bound past
+     * it; suggestions and in-memory autocomplete answers only report the
+     * page they return. {@code tookMs} is the time Elasticsearch spent on the
+     * request and is null when none was made, {@code searchTimeMs} the time
+     * the whole call took here.
+     * @param budget Search timeout for this call, capped at the configured maximum;
+     *               null for the mode's configured budget. A search that runs out
+     *               of it answers with the hits found so far, marked partial.
+     */
+    public SearchResponse<ContactDocument> searchWithMetadata(SearchMode mode, String query, int offset, int size,
+                                                              ContactFields fields, Duration budget) {
+        long start = System.nanoTime();
+        SearchResult result = mode == SearchMode.AUTOCOMPLETE
+                ? autocomplete(query, offset, size, fields, budget)
+                : executeScoredSearch(mode, query, offset, size, fields, budget);
+        long searchTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return SearchResponse.of(query, result.results(), result.totalHits(), result.totalHitsExact(),
+                result.partial(), result.degraded(), searchTimeMs, result.took() != null ? result.took().toMillis() : null);
+    }
 
-        SearchHits<ContactDocument> searchHits = elasticsearchOperations.search(
-                searchQuery, ContactDocument.class
-        );
+    /**
+     * Prefix lookup on the completion suggester's in-memory FST instead of a
+     * scored search over the edge n-gram subfields. Matches the start of a
+     * first name, last name, full name, email or city, ranked by field weight.
+     */
+    public List<ContactDocument> suggestSearch(String query, int offset, int size, ContactFields fields) {
+        return executeSearch(SearchMode.SUGGEST, query, offset, size, fields);
+    }
 
-        return searchHits.stream()
-                .map(SearchHit::getContent)
-                .limit(size)
-                .collect(Collectors.toList());
+    /**
+     * Runs the {@link SearchTier}s cheapest first and answers with the first
+     * one whose first page is full and whose top score reaches the tier's
+     * {@code contact-search.search.smart.min-score}; the last tier answers
+     * with whatever it finds. The tier is decided on the first page, so
+     * every page of a query comes from the same tier. Each tier's search goes
+     * through the result cache like the mode it runs.
+     * @param budget Search timeout of each tier's search, capped at the
+     *               configured maximum; null for the tier mode's budget
+     */
+    public TieredPage<ContactDocument> smartSearch(String query, int offset, int size, ContactFields fields,
+                                                   Duration budget) {
+        int decisionSize = Math.min(size, maxPageSize);
+        SearchTier tier = SearchTier.EXACT;
+        SearchResult firstPage = null;
+        for (SearchTier candidate : SearchTier.values()) {
+            tier = candidate;
+            firstPage = executeScoredSearch(candidate.mode(), query, 0, decisionSize, fields, budget);
+            if (!firstPage.results().isEmpty() && !Float.isNaN(firstPage.maxScore())) {
+                tierTopScores.get(candidate).record(firstPage.maxScore());
+            }
+            if (answers(candidate, firstPage, decisionSize)) {
+                break;
+            }
+        }
+        tierAnswers.get(tier).increment();
+        SearchResult page = offset <= 0
+                ? firstPage
+                : executeScoredSearch(tier.mode(), query, offset, size, fields, budget);
+        return new TieredPage<>(page.results(), tier, page.partial(), page.degraded());
     }
 
-    public List<ContactDocument> fuzzySearch(String query, int size) {
-        String queryString = buildFuzzyQueryString(query);
-        Query searchQuery = new StringQuery(queryString);
+    private boolean answers(SearchTier tier, SearchResult firstPage, int decisionSize) {
+        if (firstPage.results().size() < decisionSize) {
+            return false;
+        }
+        float minScore = switch (tier) {
+            case EXACT -> exactMinScore;
+            case FUZZY -> fuzzyMinScore;
+            case NGRAM -> ngramMinScore;
+            case SPELLING -> 0;
+        };
+        return minScore <= 0 || firstPage.maxScore() >= minScore;
+    }
 
-        SearchHits<ContactDocument> searchHits = elasticsearchOperations.search(
-                searchQuery, ContactDocument.class
-        );
+    /**
+     * Runs the {@link #FUSED_STRATEGIES} in parallel and merges their rankings
+     * with reciprocal rank fusion: a contact scores {@code 1 / (rrf-k + rank)}
+     * for each strategy that found it, so contacts found by several
+     * strategies rise, and each contact appears once.
+     * <p>
+     * Strategies still running when {@code contact-search.search.fused.budget}
+     * runs out are left out of the fusion rather than waited for; they keep
+     * running and cache their result for the next call. Each strategy fetches
+     * its top {@code offset + size} hits (at most {@code maxPageSize}), so
+     * fused pages end there.
+     * @param budget Search timeout of each strategy and how long the fusion
+     *               waits for them, capped at the configured maximum; null for
+     *               the strategy modes' budgets and the fused budget
+     */
+    public FusedPage<ContactDocument> fusedSearch(String query, int offset, int size, ContactFields fields,
+                                                  Duration budget) {
+        int from = Math.max(offset, 0);
+        int depth = Math.min(from + Math.min(size, maxPageSize), maxPageSize);
+        if (depth <= from) {
+            return new FusedPage<>(List.of(), List.of());
+        }
 
-        return searchHits.stream()
-                .map(SearchHit::getContent)
-                .limit(size)
-                .collect(Collectors.toList());
+        Duration wait = budget != null ? searchTimeouts.capped(budget) : fusedBudget;
+        long deadline = System.nanoTime() + wait.toNanos();
+        Map<SearchMode, CompletableFuture<SearchResult>> running = new EnumMap<>(SearchMode.class);
+        for (SearchMode strategy : FUSED_STRATEGIES) {
+            running.put(strategy, submit(() -> executeScoredSearch(strategy, query, 0, depth, fields, budget)));
+        }
+
+        Map<SearchMode, List<ContactDocument>> finished = new LinkedHashMap<>();
+        boolean partial = false;
+        boolean degraded = false;
+        for (SearchMode strategy : FUSED_STRATEGIES) {
+            try {
+                long remaining = Math.max(deadline - System.nanoTime(), 0);
+                SearchResult result = running.get(strategy).get(remaining, TimeUnit.NANOSECONDS);
+                finished.put(strategy, result.results());
+                partial |= result.partial();
+                degraded |= result.degraded();
+            } catch (TimeoutException e) {
+                log.debug("Fused {} search for '{}' missed the {} budget", strategy, query, wait);
+                dropped(strategy, "timeout");
+                partial = true;
+            } catch (ExecutionException e) {
+                log.warn("Fused {} search for '{}' failed", strategy, query, e.getCause());
+                dropped(strategy, "error");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        return new FusedPage<>(
+                fuse(finished.values()).stream().skip(from).limit(depth - from).toList(),
+                List.copyOf(finished.keySet()),
+                partial,
+                degraded);
+    }
+
+    private CompletableFuture<SearchResult> submit(Supplier<SearchResult> search) {
+        try {
+            return CompletableFuture.supplyAsync(search, contactSearchExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void dropped(SearchMode strategy, String reason) {
+        meterRegistry.counter(FUSED_DROPPED_METRIC,
+                "strategy", strategy.name().toLowerCase(Locale.ROOT),
+                "reason", reason).increment();
+    }
+
+    /**
+     * Reciprocal rank fusion over the given rankings, deduplicated by contact
+     * id. Ties keep the order in which contacts were first seen.
+     */
+    private List<ContactDocument> fuse(Iterable<List<ContactDocument>> rankings) {
+        Map<String, ContactDocument> byId = new LinkedHashMap<>();
+        Map<String, Double> scores = new HashMap<>();
+        for (List<ContactDocument> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                ContactDocument document = ranking.get(rank);
+                byId.putIfAbsent(document.getId(), document);
+                scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+            }
+        }
+        List<ContactDocument> fused = new ArrayList<>(byId.values());
+        fused.sort(Comparator.comparingDouble((ContactDocument document) -> scores.get(document.getId())).reversed());
+        return fused;
+    }
+
+    /**
+     * Rejects a batch that {@link #batchSearch} would fail on, so the caller
+     * can answer before streaming any results
+     */
+    public void validateBatch(List<BatchSearchRequest.Search> searches) {
+        if (searches.size() > maxBatchSearches) {
+            throw new IllegalArgumentException("A batch can hold at most " + maxBatchSearches + " searches");
+        }
+        for (BatchSearchRequest.Search search : searches) {
+            if (search.getMode() == SearchMode.SUGGEST) {
+                throw new IllegalArgumentException("Suggestions are not supported in a batch");
+            }
+        }
     }
 
-    public List<ContactDocument> searchByCity(String city, int size) {
-        String queryString = String.format("""
-            {
-                "term": {
-                    "city.keyword": "%s"
+    /**
+     * Runs the searches in chunks of {@code contact-search.search.batch.chunk-size}
+     * and hands each chunk's results to {@code sink} in request order. Within a
+     * chunk, searches answered by the result cache are skipped and the rest go
+     * to Elasticsearch as one {@code _msearch} request; their results are
+     * cached like any other search. Each search returns its first page.
+     * While the circuit breaker is open, or if the request fails, the chunk's
+     * searches are answered one by one from the database instead. Each result
+     * says whether it is partial or comes from the database.
+     * @param budget Search timeout of each search, capped at the configured
+     *               maximum; null for each search mode's budget
+     */
+    public void batchSearch(List<BatchSearchRequest.Search> searches, Duration budget,
+                            Consumer<List<BatchSearchResult>> sink) {
+        validateBatch(searches);
+        for (int start = 0; start < searches.size(); start += batchChunkSize) {
+            int end = Math.min(start + batchChunkSize, searches.size());
+            sink.accept(searchChunk(searches.subList(start, end), start, budget));
+        }
+    }
+
+    private List<BatchSearchResult> searchChunk(List<BatchSearchRequest.Search> chunk, int firstIndex,
+                                                Duration budget) {
+        List<SearchResult> results =
+                new ArrayList<>(Collections.nCopies(chunk.size(), SearchResult.unscored(List.of())));
+        if (engine == SearchEngine.POSTGRES) {
+            // No multi-search to batch into; each search is still answered from the cache when it can be
+            for (int i = 0; i < chunk.size(); i++) {
+                BatchSearchRequest.Search search = chunk.get(i);
+                results.set(i, executeScoredSearch(search.getMode(), search.getQuery(), 0, search.getSize(),
+                        ContactFields.ALL, budget));
+            }
+            return numbered(results, firstIndex);
+        }
+        List<Integer> pending = new ArrayList<>();
+        List<ContactSearchCache.Key> pendingKeys = new ArrayList<>();
+        List<NativeQuery> pendingQueries = new ArrayList<>();
+
+        for (int i = 0; i < chunk.size(); i++) {
+            SearchMode mode = chunk.get(i).getMode();
+            int pageSize = Math.min(chunk.get(i).getSize(), Math.min(maxPageSize, maxResultWindow));
+            String normalized = SearchQueryNormalizer.normalize(mode, chunk.get(i).getQuery());
+            if (pageSize < 1 || contactSearchCache.isKnownEmpty(mode, normalized)) {
+                continue;
+            }
+            ContactSearchCache.Key key = new ContactSearchCache.Key(mode, normalized, 0, pageSize);
+            Optional<SearchResult> cached = contactSearchCache.get(key);
+            if (cached.isPresent()) {
+                results.set(i, cached.get());
+                continue;
+            }
+            pending.add(i);
+            pendingKeys.add(key);
+            pendingQueries.add(NativeQuery.builder()
+                    .withQuery(contactQueryFactory.build(mode, normalized))
+                    .withPageable(OffsetPageRequest.of(0, pageSize))
+                    .withSourceFilter(sourceFilter(key.fields()))
+                    .withTrackTotalHitsUpTo(trackTotalHits)
+                    .withTimeout(searchTimeouts.budget(mode, budget))
+                    .build());
+        }
+
+        if (!pendingQueries.isEmpty()) {
+            long generation = contactSearchCache.generation();
+            // Null when the chunk was answered from the database instead
+            List<SearchHits<ContactDocument>> hits = guarded(
+                    () -> elasticsearchOperations.multiSearch(pendingQueries, ContactDocument.class),
+                    reason -> {
+                        for (int j = 0; j < pending.size(); j++) {
+                            ContactSearchCache.Key key = pendingKeys.get(j);
+                            results.set(pending.get(j),
+                                    fallback(key.mode(), key.query(), 0, key.size(), reason,
+                                            pendingQueries.get(j).getTimeout()));
+                        }
+                        return null;
+                    });
+            if (hits != null && hits.size() == pendingQueries.size()) {
+                for (int j = 0; j < pending.size(); j++) {
+                    SearchResult result = SearchResult.of(hits.get(j), pendingQueries.get(j).getTimeout());
+                    if (!result.partial()) {
+                        contactSearchCache.put(pendingKeys.get(j), generation, result);
+                    }
+                    results.set(pending.get(j), result);
+                }
+            } else if (hits != null) {
+                // Failed items are left out of the response, so the others can't be matched to their searches
+                log.warn("{} of {} batch searches failed, running the chunk one by one",
+                        pendingQueries.size() - hits.size(), pendingQueries.size());
+                for (int j = 0; j < pending.size(); j++) {
+                    ContactSearchCache.Key key = pendingKeys.get(j);
+                    results.set(pending.get(j),
+                            executeScoredSearch(key.mode(), key.query(), 0, key.size(), key.fields(), budget));
                 }
             }
-            """, city);
+        }
 
-        Query searchQuery = new StringQuery(queryString);
+        return numbered(results, firstIndex);
+    }
 
-        SearchHits<ContactDocument> searchHits = elasticsearchOperations.search(
-                searchQuery, ContactDocument.class
-        );
+    private static List<BatchSearchResult> numbered(List<SearchResult> results, int firstIndex) {
+        List<BatchSearchResult> chunkResults = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            SearchResult result = results.get(i);
+            chunkResults.add(new BatchSearchResult(firstIndex + i, result.results(), result.partial(),
+                    result.degraded()));
+        }
+        return chunkResults;
+    }
 
-        return searchHits.stream()
-                .map(SearchHit::getContent)
-                .limit(size)
-                .collect(Collectors.toList());
+    public List<ContactDocument> fuzzySearch(String query, int offset, int size, ContactFields fields) {
+        return executeSearch(SearchMode.FUZZY, query, offset, size, fields);
     }
 
-    public List<ContactDocument> spellingCorrectionSearch(String query, int size) {
-        String queryString = buildSpellingCorrectionQueryString(query);
-        Query searchQuery = new StringQuery(queryString);
+    public List<ContactDocument> searchByCity(String city, int offset, int size, ContactFields fields) {
+        return executeSearch(SearchMode.CITY, city, offset, size, fields);
+    }
 
-        SearchHits<ContactDocument> searchHits = elasticsearchOperations.search(
-                searchQuery, ContactDocument.class
-        );
+    public List<ContactDocument> spellingCorrectionSearch(String query, int offset, int size, ContactFields fields) {
+        return executeSearch(SearchMode.SPELLING_CORRECTION, query, offset, size, fields);
+    }
 
-        return searchHits.stream()
-                .map(SearchHit::getContent)
-                .limit(size)
-                .collect(Collectors.toList());
+    public List<ContactDocument> partialMatchSearch(String query, int offset, int size, ContactFields fields) {
+        return executeSearch(SearchMode.PARTIAL_MATCH, query, offset, size, fields);
+    }
+
+    /**
+     * Cursor-paginated search over a point-in-time snapshot of the index.
+     * Results are sorted by score with the contact id as tie-breaker, and each
+     * page resumes with search_after from the previous page's last hit, so
+     * deep pages cost the same as the first one and are not affected by
+     * concurrent writes.
+     * <p>
+     * A point in time only exists in Elasticsearch, so there is no database
+     * fallback: while the circuit breaker is open this throws
+     * {@link io.github.resilience4j.circuitbreaker.CallNotPermittedException}.
+     * On the Postgres engine pages are read with keyset pagination on the
+     * same sort instead, without a snapshot.
+     * @param cursor {@link SearchCursor#START} (or null) to open a new point in time,
+     *               otherwise the cursor returned with the previous page
+     */
+    public CursorPage<ContactDocument> searchWithCursor(SearchMode mode, String query, String cursor, int size,
+                                                        ContactFields fields) {
+        if (mode == SearchMode.SUGGEST) {
+            throw new IllegalArgumentException("Cursor pagination is not supported for suggestions");
+        }
+        if (engine == SearchEngine.POSTGRES) {
+            return postgresCursorPage(mode, query, cursor, size);
+        }
+        return circuitBreaker.executeSupplier(() -> cursorPage(mode, query, cursor, size, fields));
+    }
+
+    private CursorPage<ContactDocument> postgresCursorPage(SearchMode mode, String query, String cursor, int size) {
+        int pageSize = Math.min(size, maxPageSize);
+        if (pageSize < 1) {
+            return new CursorPage<>(List.of(), null);
+        }
+        SearchCursor position = SearchCursor.isStart(cursor) ? null : SearchCursor.decode(cursor);
+        Double afterScore = null;
+        Long afterId = null;
+        if (position != null) {
+            if (!PostgresContactSearch.CURSOR_SNAPSHOT.equals(position.pitId()) || position.searchAfter().size() != 2
+                    || !(position.searchAfter().get(0) instanceof Number score)) {
+                throw new IllegalArgumentException("Invalid search cursor");
+            }
+            afterScore = score.doubleValue();
+            try {
+                afterId = Long.valueOf(String.valueOf(position.searchAfter().get(1)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid search cursor", e);
+            }
+        }
+
+        List<PostgresContactSearch.Hit> hits = postgresContactSearch.searchAfter(mode,
+                SearchQueryNormalizer.normalize(mode, query), afterScore, afterId, pageSize,
+                searchTimeouts.budget(mode, null));
+        List<ContactDocument> results = hits.stream().map(PostgresContactSearch.Hit::document).toList();
+        if (hits.size() < pageSize) {
+            return new CursorPage<>(results, null);
+        }
+        PostgresContactSearch.Hit last = hits.get(hits.size() - 1);
+        return new CursorPage<>(results, new SearchCursor(PostgresContactSearch.CURSOR_SNAPSHOT,
+                List.of(last.score(), last.document().getId())).encode());
     }
 
-    public List<ContactDocument> partialMatchSearch(String query, int size) {
-        String queryString = buildPartialMatchQueryString(query);
-        Query searchQuery = new StringQuery(queryString);
+    private CursorPage<ContactDocument> cursorPage(SearchMode mode, String query, String cursor, int size,
+                                                   ContactFields fields) {
+        int pageSize = Math.min(size, maxPageSize);
+        if (pageSize < 1) {
+            return new CursorPage<>(List.of(), null);
+        }
+
+        SearchCursor position = SearchCursor.isStart(cursor) ? null : SearchCursor.decode(cursor);
+        String pitId = position != null
+                ? position.pitId()
+                : elasticsearchOperations.openPointInTime(
+                        elasticsearchOperations.getIndexCoordinatesFor(ContactDocument.class), cursorKeepAlive, false);
+
+        NativeQuery searchQuery = NativeQuery.builder()
+                .withQuery(contactQueryFactory.build(mode, SearchQueryNormalizer.normalize(mode, query)))
+                .withPageable(OffsetPageRequest.of(0, pageSize, CURSOR_SORT))
+                .withPointInTime(new Query.PointInTime(pitId, cursorKeepAlive))
+                .withSearchAfter(position != null ? position.searchAfter() : null)
+                .withSourceFilter(sourceFilter(fields))
+                // Cursor pages are never counted
+                .withTrackTotalHits(false)
+                .withTimeout(searchTimeouts.budget(mode, null))
+                .build();
 
-        SearchHits<ContactDocument> searchHits = elasticsearchOperations.search(
-                searchQuery, ContactDocument.class
-        );
+        SearchHits<ContactDocument> searchHits;
+        try {
+            searchHits = elasticsearchOperations.search(searchQuery, ContactDocument.class);
+        } catch (RuntimeException e) {
+            closePointInTime(pitId);
+            throw e;
+        }
 
-        return searchHits.stream()
+        List<SearchHit<ContactDocument>> hits = searchHits.getSearchHits();
+        String currentPitId = searchHits.getPointInTimeId() != null ? searchHits.getPointInTimeId() : pitId;
+        List<ContactDocument> results = hits.stream()
                 .map(SearchHit::getContent)
-                .limit(size)
                 .collect(Collectors.toList());
+
+        if (hits.size() < pageSize) {
+            // Last page: release the point in time now rather than waiting for keep-alive to expire
+            closePointInTime(currentPitId);
+            return new CursorPage<>(results, null);
+        }
+
+        List<Object> lastSortValues = hits.get(hits.size() - 1).getSortValues();
+        return new CursorPage<>(results, new SearchCursor(currentPitId, lastSortValues).encode());
     }
 
-    private String buildMultiMatchQueryString(String query) {
-        return String.format("""
-            {
-                "multi_match": {
-                    "query": "%s",
-                    "fields": ["firstName^3", "lastName^3", "email^2", "city"],
-                    "type": "best_fields",
-                    "fuzziness": "AUTO"
-                }
+    private void closePointInTime(String pitId) {
+        try {
+            elasticsearchOperations.closePointInTime(pitId);
+        } catch (RuntimeException e) {
+            // The point in time may already have expired; keep-alive cleans it up either way
+            log.debug("Unable to close point in time {}", pitId, e);
+        }
+    }
+
+    /**
+     * Runs the query with from/size applied on the Elasticsearch side, so only
+     * the requested window is fetched and mapped. The size is capped at
+     * {@code maxPageSize} and the window never extends past {@code maxResultWindow}
+     * (the index's {@code index.max_result_window}).
+     * <p>
+     * Results are served from {@link ContactSearchCache} when present, keyed by
+     * the normalized query, which is also what gets sent to Elasticsearch.
+     * On a miss, concurrent identical searches share one request.
+     */
+    private List<ContactDocument> executeSearch(SearchMode mode, String query, int offset, int size,
+                                                ContactFields fields) {
+        return executeScoredSearch(mode, query, offset, size, fields, null).results();
+    }
+
+    /**
+     * Partial results (see {@link SearchTimeoutProperties}) and degraded
+     * results from the database fallback are returned but not cached, so the
+     * next identical search gets another chance to complete. A call sharing
+     * an identical in-flight search waits for it no longer than its own
+     * budget plus the client grace, and gets an empty partial result after.
+     */
+    private SearchResult executeScoredSearch(SearchMode mode, String query, int offset, int size,
+                                             ContactFields fields, Duration budget) {
+        int from = Math.max(offset, 0);
+        int pageSize = Math.min(size, Math.min(maxPageSize, maxResultWindow - from));
+        if (pageSize < 1) {
+            return SearchResult.unscored(List.of());
+        }
+
+        String normalized = SearchQueryNormalizer.normalize(mode, query);
+        if (contactSearchCache.isKnownEmpty(mode, normalized)) {
+            return SearchResult.unscored(List.of());
+        }
+        ContactSearchCache.Key key = new ContactSearchCache.Key(mode, normalized, from, pageSize, fields);
+        Optional<SearchResult> cached = contactSearchCache.get(key);
+        if (cached.isPresent()) {
+            return cached.get().withoutTook();
+        }
+
+        Duration timeout = searchTimeouts.budget(mode, budget);
+        Duration wait = timeout.plus(searchTimeouts.clientGrace());
+        return searchRequestCoalescer.execute(key, wait, () -> {
+            long generation = contactSearchCache.generation();
+            SearchResult result = engine == SearchEngine.POSTGRES
+                    ? postgresSearch(mode, normalized, from, pageSize, timeout)
+                    : guarded(() -> search(mode, normalized, from, pageSize, fields, timeout),
+                            reason -> fallback(mode, normalized, from, pageSize, reason, timeout));
+            if (result.partial()) {
+                meterRegistry.counter(PARTIAL_METRIC, "mode", mode.name().toLowerCase(Locale.ROOT)).increment();
+            } else if (!result.degraded()) {
+                contactSearchCache.put(key, generation, result);
             }
-            """, query);
+            return result;
+        }, () -> {
+            meterRegistry.counter(PARTIAL_METRIC, "mode", mode.name().toLowerCase(Locale.ROOT)).increment();
+            return SearchResult.timedOut();
+        });
     }
 
-    private String buildAutocompleteQueryString(String query) {
-        return String.format("""
-            {
-                "multi_match": {
-                    "query": "%s",
-                    "fields": ["firstName.autocomplete^3", "lastName.autocomplete^3", "email.autocomplete^2", "city.autocomplete"],
-                    "type": "bool_prefix"
+    /**
+     * When the stored search templates are registered only the template id and
+     * parameters are sent; otherwise, or for a query too long for one contains
+     * term, the typed query is sent inline. A request that Elasticsearch does
+     * not answer within its budget plus the client grace (see
+     * {@link BudgetedSearchOperations}) gives an empty partial result rather
+     * than an error, and is not retried.
+     */
+    private SearchResult search(SearchMode mode, String query, int from, int pageSize, ContactFields fields,
+                                Duration timeout) {
+        if (mode == SearchMode.SUGGEST) {
+            return suggest(query, from, pageSize, fields, timeout);
+        }
+        Optional<String> templateId = ContactQueryFactory.templatable(mode, query)
+                ? contactSearchTemplates.templateId(mode)
+                : Optional.empty();
+        if (templateId.isPresent()) {
+            SearchTemplateQuery templateQuery = SearchTemplateQuery.builder()
+                    .withId(templateId.get())
+                    .withParams(contactSearchTemplates.params(query, from, pageSize, fields, trackTotalHits, timeout))
+                    .build();
+            try {
+                return SearchResult.of(budgetedSearchOperations.within(timeout)
+                        .search(templateQuery, ContactDocument.class), timeout);
+            } catch (RuntimeException e) {
+                if (isSocketTimeout(e)) {
+                    log.warn("{} search for '{}' got no answer within the socket timeout", mode, query);
+                    return SearchResult.timedOut();
                 }
+                // The stored template may be gone (e.g. a rebuilt cluster); re-register and answer inline
+                log.warn("Template search {} failed, retrying with inline query", templateId.get(), e);
+                contactSearchTemplates.invalidate();
             }
-            """, query);
-    }
-
-    private String buildFuzzyQueryString(String query) {
-        return String.format("""
-            {
-                "bool": {
-                    "should": [
-                        {
-                            "multi_match": {
-                                "query": "%s",
-                                "fields": ["firstName^3", "lastName^3", "email^2", "city"],
-                                "fuzziness": "AUTO",
-                                "minimum_should_match": "75%%"
-                            }
-                        },
-                        {
-                            "multi_match": {
-                                "query": "%s",
-                                "fields": ["firstName.keyword^2", "lastName.keyword^2", "email^2", "city.keyword"],
-                                "type": "best_fields"
-                            }
-                        }
-                    ]
-                }
+        }
+
+        NativeQuery searchQuery = NativeQuery.builder()
+                .withQuery(contactQueryFactory.build(mode, query))
+                .withPageable(OffsetPageRequest.of(from, pageSize))
+                .withSourceFilter(sourceFilter(fields))
+                .withTrackTotalHitsUpTo(trackTotalHits)
+                .withTimeout(timeout)
+                .build();
+
+        try {
+            return SearchResult.of(budgetedSearchOperations.within(timeout)
+                    .search(searchQuery, ContactDocument.class), timeout);
+        } catch (RuntimeException e) {
+            if (isSocketTimeout(e)) {
+                log.warn("{} search for '{}' got no answer within the socket timeout", mode, query);
+                return SearchResult.timedOut();
             }
-            """, query, query);
-    }
-
-    private String buildSpellingCorrectionQueryString(String query) {
-        return String.format("""
-            {
-                "bool": {
-                    "should": [
-                        {
-                            "multi_match": {
-                                "query": "%s",
-                                "fields": ["firstName^3", "lastName^3", "email^2", "city"],
-                                "fuzziness": "AUTO",
-                                "minimum_should_match": "60%%"
-                            }
-                        },
-                        {
-                            "multi_match": {
-                                "query": "%s",
-                                "fields": ["firstName.keyword^2", "lastName.keyword^2", "email^2", "city.keyword"],
-                                "type": "best_fields"
-                            }
-                        },
-                        {
-                            "match": {
-                                "firstName": {
-                                    "query": "%s",
-                                    "fuzziness": "AUTO",
-                                    "prefix_length": 1
-                                }
-                            }
-                        },
-                        {
-                            "match": {
-                                "lastName": {
-                                    "query": "%s",
-                                    "fuzziness": "AUTO",
-                                    "prefix_length": 1
-                                }
-                            }
-                        },
-                        {
-                            "match": {
-                                "city": {
-                                    "query": "%s",
-                                    "fuzziness": "AUTO",
-                                    "prefix_length": 1
-                                }
-                            }
-                        },
-                        {
-                            "wildcard": {
-                                "firstName": {
-                                    "value": "*%s*"
-                                }
-                            }
-                        },
-                        {
-                            "wildcard": {
-                                "lastName": {
-                                    "value": "*%s*"
-                                }
-                            }
-                        },
-                        {
-                            "wildcard": {
-                                "city": {
-                                    "value": "*%s*"
-                                }
-                            }
-                        }
-                    ],
-                    "minimum_should_match": 1
-                }
+            throw e;
+        }
+    }
+
+    /**
+     * Runs an Elasticsearch request through the circuit breaker, which counts
+     * it as failed when it throws or gets no answer within the socket timeout
+     * and as slow when it takes longer than
+     * {@code contact-search.search.circuit-breaker.slow-call-duration}. While
+     * the breaker is open, or when the request throws, {@code fallback} answers
+     * instead with the reason ({@code open} or {@code error}).
+     */
+    private <T> T guarded(Supplier<T> request, Function<String, T> fallback) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return fallback.apply("open");
+        }
+        long start = System.nanoTime();
+        T response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+            log.warn("Elasticsearch request failed, answering from the database", e);
+            return fallback.apply("error");
+        }
+        long elapsed = System.nanoTime() - start;
+        if (response instanceof SearchResult result && result.partial() && result.took() == null) {
+            circuitBreaker.onError(elapsed, TimeUnit.NANOSECONDS,
+                    new SocketTimeoutException("No answer within the socket timeout"));
+        } else {
+            circuitBreaker.onSuccess(elapsed, TimeUnit.NANOSECONDS);
+        }
+        return response;
+    }
+
+    private SearchResult fallback(SearchMode mode, String query, int from, int pageSize, String reason,
+                                  Duration timeout) {
+        meterRegistry.counter(FALLBACK_METRIC,
+                "mode", mode.name().toLowerCase(Locale.ROOT),
+                "reason", reason).increment();
+        return postgresSearch(mode, query, from, pageSize, timeout).asDegraded();
+    }
+
+    /**
+     * A search that runs out of its budget in Postgres is cancelled by the
+     * statement timeout and gives an empty partial result, like a socket
+     * timeout does for Elasticsearch
+     */
+    private SearchResult postgresSearch(SearchMode mode, String query, int from, int pageSize, Duration timeout) {
+        try {
+            return postgresContactSearch.search(mode, query, from, pageSize, timeout);
+        } catch (QueryTimeoutException e) {
+            log.warn("{} search for '{}' was cancelled by the statement timeout", mode, query);
+            return SearchResult.timedOut();
+        }
+    }
+
+    private static boolean isSocketTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return true;
             }
-            """, query, query, query, query, query, query, query, query);
-    }
-
-    private String buildPartialMatchQueryString(String query) {
-        return String.format("""
-            {
-                "bool": {
-                    "should": [
-                        {
-                            "multi_match": {
-                                "query": "%s",
-                                "fields": [
-                                    "firstName^3",
-                                    "lastName^3",
-                                    "firstName.ngram^2",
-                                    "lastName.ngram^2",
-                                    "email^2",
-                                    "city"
-                                ],
-                                "type": "best_fields",
-                                "minimum_should_match": "50%%"
-                            }
-                        },
-                        {
-                            "multi_match": {
-                                "query": "%s",
-                                "fields": [
-                                    "firstName.autocomplete^3",
-                                    "lastName.autocomplete^3",
-                                    "email.autocomplete^2",
-                                    "city.autocomplete"
-                                ],
-                                "type": "bool_prefix"
-                            }
-                        },
-                        {
-                            "wildcard": {
-                                "firstName": {
-                                    "value": "*%s*"
-                                }
-                            }
-                        },
-                        {
-                            "wildcard": {
-                                "lastName": {
-                                    "value": "*%s*"
-                                }
-                            }
-                        },
-                        {
-                            "wildcard": {
-                                "email": {
-                                    "value": "*%s*"
-                                }
-                            }
-                        },
-                        {
-                            "wildcard": {
-                                "city": {
-                                    "value": "*%s*"
-                                }
-                            }
-                        },
-                        {
-                            "prefix": {
-                                "firstName": {
-                                    "value": "%s"
-                                }
-                            }
-                        },
-                        {
-                            "prefix": {
-                                "lastName": {
-                                    "value": "%s"
-                                }
-                            }
-                        },
-                        {
-                            "prefix": {
-                                "email": {
-                                    "value": "%s"
-                                }
-                            }
-                        },
-                        {
-                            "prefix": {
-                                "city": {
-                                    "value": "%s"
-                                }
-                            }
-                        }
-                    ],
-                    "minimum_should_match": 1
+        }
+        return false;
+    }
+
+    /**
+     * The suggester has no from parameter, so the skipped suggestions are
+     * fetched and dropped here. Falls back to the edge n-gram query if the
+     * suggest request fails, e.g. against an index created before the
+     * {@code suggest} field was added to the mapping.
+     */
+    private SearchResult suggest(String prefix, int from, int pageSize, ContactFields fields, Duration timeout) {
+        NativeQuery suggestQuery = NativeQuery.builder()
+                .withSuggester(contactQueryFactory.suggester(prefix, from + pageSize))
+                .withMaxResults(0)
+                .withTrackTotalHits(false)
+                .withSourceFilter(sourceFilter(fields))
+                .withTimeout(timeout)
+                .build();
+
+        SearchHits<ContactDocument> searchHits;
+        try {
+            searchHits = budgetedSearchOperations.within(timeout).search(suggestQuery, ContactDocument.class);
+        } catch (RuntimeException e) {
+            log.warn("Completion suggest for '{}' failed, answering with the autocomplete query", prefix, e);
+            if (isSocketTimeout(e)) {
+                return SearchResult.timedOut();
+            }
+            return search(SearchMode.AUTOCOMPLETE, prefix, from, pageSize, fields, timeout);
+        }
+
+        Suggest suggest = searchHits.getSuggest();
+        if (suggest == null || !(suggest.getSuggestion(ContactQueryFactory.SUGGESTION_NAME)
+                instanceof CompletionSuggestion<?> suggestion)) {
+            return SearchResult.unscored(List.of());
+        }
+
+        // A contact matching several of its inputs is only returned once, at its best rank
+        Map<String, ContactDocument> byId = new LinkedHashMap<>();
+        for (CompletionSuggestion.Entry<?> entry : suggestion.getEntries()) {
+            for (CompletionSuggestion.Entry.Option<?> option : entry.getOptions()) {
+                SearchHit<?> hit = option.getSearchHit();
+                if (hit != null && hit.getContent() instanceof ContactDocument document) {
+                    byId.putIfAbsent(document.getId(), document);
                 }
             }
-            """, query, query, query, query, query, query, query, query, query, query);
+        }
+        return SearchResult.unscored(byId.values().stream()
+                .skip(from)
+                .limit(pageSize)
+                .toList());
+    }
+
+    /**
+     * {@code _source} includes for the fields; also keeps the completion
+     * suggester inputs out of every response
+     */
+    private static SourceFilter sourceFilter(ContactFields fields) {
+        return FetchSourceFilter.of(null, fields.names().toArray(String[]::new), null);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,183 @@
+package com.codehacks.contactsearch.service;
+
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.JsonpUtils;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.codehacks.contactsearch.model.ContactFields;
+import com.codehacks.contactsearch.model.SearchMode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.script.Script;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stores one mustache search template per {@link SearchMode} in Elasticsearch,
+ * so a search request only carries the template id and its parameters instead
+ * of the full query body.
+ * <p>
+ * Template sources are rendered from {@link ContactQueryFactory} with
+ * placeholders in place of the user's value. The template id embeds a hash of
+ * the index mapping, settings and template source, so a change to any of them
+ * registers new ids; instances still running the previous version keep using
+ * the old ids during a rolling deploy.
+ * <p>
+ * Until registration succeeds, {@link #templateId(SearchMode)} is empty and
+ * callers send the typed query instead.
+ */
+@Component
+@Slf4j
+public class ContactSearchTemplates {
+
+    static final String QUERY_PARAM = "query";
+    static final String CONTAINS_PARAM = "query_contains";
+    static final String FROM_PARAM = "from";
+    static final String SIZE_PARAM = "size";
+    static final String SOURCE_PARAM = "source_includes";
+    static final String TRACK_TOTAL_HITS_PARAM = "track_total_hits";
+    static final String TIMEOUT_PARAM = "timeout";
+
+    private static final String MUSTACHE = "mustache";
+
+    private static final String MAPPING_PATH = "elasticsearch/contact-mapping.json";
+    private static final String SETTINGS_PATH = "elasticsearch/contact-settings.json";
+
+    private final ElasticsearchOperations elasticsearchOperations;
+
+    private final Map<SearchMode, Script> templates;
+
+    private volatile boolean registered;
+
+    @Value("${contact-search.search.templates.enabled:true}")
+    private boolean enabled = true;
+
+    public ContactSearchTemplates(ElasticsearchOperations elasticsearchOperations,
+                                  ContactQueryFactory contactQueryFactory) {
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.templates = renderTemplates(contactQueryFactory);
+    }
+
+    /**
+     * Id of the stored template for the mode, if templates are registered
+     */
+    public Optional<String> templateId(SearchMode mode) {
+        return enabled && registered ? Optional.ofNullable(templates.get(mode)).map(Script::id) : Optional.empty();
+    }
+
+    /**
+     * Parameters for a template search: the raw query, its lowercased form for
+     * the ngram contains clauses, the from/size window, the {@code _source}
+     * includes, the {@code track_total_hits} cap and the search timeout. Only
+     * valid when {@link ContactQueryFactory#templatable} holds for the query.
+     */
+    public Map<String, Object> params(String query, int from, int size, ContactFields fields, int trackTotalHits,
+                                      Duration timeout) {
+        return Map.of(
+                QUERY_PARAM, query,
+                CONTAINS_PARAM, query.toLowerCase(Locale.ROOT),
+                FROM_PARAM, from,
+                SIZE_PARAM, size,
+                SOURCE_PARAM, fields.names(),
+                TRACK_TOTAL_HITS_PARAM, trackTotalHits,
+                TIMEOUT_PARAM, timeout.toMillis() + "ms");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerOnStartup() {
+        register();
+    }
+
+    /**
+     * Puts every template into the cluster's stored scripts. Safe to call
+     * repeatedly; does nothing once registration has succeeded.
+     */
+    public void register() {
+        if (!enabled || registered) {
+            return;
+        }
+        try {
+            for (Script template : templates.values()) {
+                elasticsearchOperations.putScript(template);
+            }
+            registered = true;
+            log.info("Registered {} contact search templates", templates.size());
+        } catch (RuntimeException e) {
+            log.warn("Unable to register contact search templates, using inline queries until the next attempt", e);
+        }
+    }
+
+    /**
+     * Forces re-registration, e.g. after a template search failed because the
+     * cluster no longer has the stored script
+     */
+    public void invalidate() {
+        registered = false;
+    }
+
+    Map<SearchMode, Script> templates() {
+        return templates;
+    }
+
+    private static Map<SearchMode, Script> renderTemplates(ContactQueryFactory contactQueryFactory) {
+        JsonpMapper mapper = new JacksonJsonpMapper();
+        String indexDefinition = readResource(MAPPING_PATH) + readResource(SETTINGS_PATH);
+
+        Map<SearchMode, Script> rendered = new EnumMap<>(SearchMode.class);
+        for (SearchMode mode : SearchMode.values()) {
+            if (mode == SearchMode.SUGGEST) {
+                // Served by the completion suggester, which has no query to template
+                continue;
+            }
+            String query = JsonpUtils.toJsonString(
+                    contactQueryFactory.build(mode, placeholder(QUERY_PARAM), List.of(placeholder(CONTAINS_PARAM))), mapper);
+            String source = "{\"from\":" + placeholder(FROM_PARAM)
+                    + ",\"size\":" + placeholder(SIZE_PARAM)
+                    + ",\"query\":" + query
+                    + ",\"track_total_hits\":" + placeholder(TRACK_TOTAL_HITS_PARAM)
+                    + ",\"timeout\":\"" + placeholder(TIMEOUT_PARAM) + "\""
+                    + ",\"_source\":{{#toJson}}" + SOURCE_PARAM + "{{/toJson}}}";
+            String id = "contacts-" + mode.name().toLowerCase(Locale.ROOT).replace('_', '-')
+                    + "-" + shortHash(indexDefinition + source);
+            rendered.put(mode, Script.builder().withId(id).withLanguage(MUSTACHE).withSource(source).build());
+        }
+        return rendered;
+    }
+
+    private static String placeholder(String param) {
+        return "{{" + param + "}}";
+    }
+
+    private static String readResource(String path) {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + path, e);
+        }
+    }
+
+    private static String shortHash(String content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,16 +1,25 @@
 package com.codehacks.contactsearch.service;
 
 import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.BulkGetResponse;
 import com.codehacks.contactsearch.model.Contact;
 import com.codehacks.contactsearch.repository.ContactRepository;
 import com.codehacks.contactsearch.repository.ContactSearchRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 @Service
 @Transactional
@@ -18,17 +27,38 @@ public class ContactService {
 
     private final ContactRepository contactRepository;
 
-    private final ContactSearchRepository contactSearchRepository;
+    /**
+     * Empty when Elasticsearch repositories are disabled, i.e. on the Postgres search engine
+     */
+    private final Optional<ContactSearchRepository> contactSearchRepository;
 
-    public ContactService(ContactRepository contactRepository, ContactSearchRepository contactSearchRepository) {
+    private final ContactSearchCache contactSearchCache;
+
+    private final AutocompleteIndex autocompleteIndex;
+
+    private final IndexOutbox indexOutbox;
+
+    @Value("${contact-search.contacts.bulk-get.max-ids:1000}")
+    private int maxBulkGetIds = 1000;
+
+    public ContactService(ContactRepository contactRepository, Optional<ContactSearchRepository> contactSearchRepository,
+                          ContactSearchCache contactSearchCache, AutocompleteIndex autocompleteIndex,
+                          IndexOutbox indexOutbox) {
         this.contactRepository = contactRepository;
         this.contactSearchRepository = contactSearchRepository;
+        this.contactSearchCache = contactSearchCache;
+        this.autocompleteIndex = autocompleteIndex;
+        this.indexOutbox = indexOutbox;
     }
 
     public Contact createContact(Contact contact) {
         Contact savedContact = contactRepository.save(contact);
-        // Sync to Elasticsearch
-        syncToElasticsearch(savedContact);
+        indexOutbox.contactChanged(savedContact.getId());
+        afterCommit(() -> {
+            ContactDocument document = ContactDocument.from(savedContact);
+            contactSearchCache.contactChanged(null, document);
+            autocompleteIndex.upsert(document);
+        });
         return savedContact;
     }
 
@@ -36,44 +66,112 @@ public class ContactService {
         return contactRepository.findById(id);
     }
 
+    /**
+     * Reads the contacts with one {@code id in (...)} query
+     * @throws IllegalArgumentException if more than {@code contact-search.contacts.bulk-get.max-ids} ids are given
+     */
+    @Transactional(readOnly = true)
+    public BulkGetResponse<Contact> getContactsByIds(List<Long> ids) {
+        List<Long> distinctIds = distinctIds(ids);
+        return inRequestOrder(distinctIds, contactRepository.findAllById(distinctIds), Contact::getId);
+    }
+
+    /**
+     * Reads the indexed documents with one {@code _mget} request, for callers
+     * that want the same shape as search results. Without Elasticsearch they
+     * are read from the database instead.
+     * @throws IllegalArgumentException if more than {@code contact-search.contacts.bulk-get.max-ids} ids are given
+     */
+    @Transactional(readOnly = true)
+    public BulkGetResponse<ContactDocument> getDocumentsByIds(List<Long> ids) {
+        List<Long> distinctIds = distinctIds(ids);
+        Iterable<ContactDocument> documents = contactSearchRepository.isPresent()
+                ? contactSearchRepository.get().findAllById(distinctIds.stream().map(String::valueOf).toList())
+                : contactRepository.findAllById(distinctIds).stream().map(ContactDocument::from).toList();
+        return inRequestOrder(distinctIds, documents, document -> Long.valueOf(document.getId()));
+    }
+
+    private List<Long> distinctIds(List<Long> ids) {
+        List<Long> distinctIds = List.copyOf(new LinkedHashSet<>(ids));
+        if (distinctIds.size() > maxBulkGetIds) {
+            throw new IllegalArgumentException("At most " + maxBulkGetIds + " ids can be read at once");
+        }
+        return distinctIds;
+    }
+
+    private static <T> BulkGetResponse<T> inRequestOrder(List<Long> ids, Iterable<T> items, Function<T, Long> idOf) {
+        Map<Long, T> byId = new HashMap<>();
+        items.forEach(item -> byId.put(idOf.apply(item), item));
+        List<T> found = new ArrayList<>(byId.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            T item = byId.get(id);
+            if (item != null) {
+                found.add(item);
+            } else {
+                missing.add(id);
+            }
+        }
+        return new BulkGetResponse<>(found, missing);
+    }
+
     public Contact updateContact(Long id, Contact updatedContact) {
         return contactRepository.findById(id)
                 .map(contact -> {
+                    ContactDocument before = ContactDocument.from(contact);
                     contact.setFirstName(updatedContact.getFirstName());
                     contact.setLastName(updatedContact.getLastName());
                     contact.setEmail(updatedContact.getEmail());
                     contact.setCity(updatedContact.getCity());
                     Contact saved = contactRepository.save(contact);
-                    syncToElasticsearch(saved);
+                    indexOutbox.contactChanged(saved.getId());
+                    afterCommit(() -> {
+                        ContactDocument after = ContactDocument.from(saved);
+                        contactSearchCache.contactChanged(before, after);
+                        autocompleteIndex.upsert(after);
+                    });
                     return saved;
                 })
                 .orElseThrow(() -> new RuntimeException("Contact not found"));
     }
 
     public void deleteContact(Long id) {
+        Optional<ContactDocument> before = contactRepository.findById(id).map(ContactDocument::from);
         contactRepository.deleteById(id);
-        contactSearchRepository.deleteById(id.toString());
+        indexOutbox.contactChanged(id);
+        if (before.isPresent()) {
+            autocompleteIndex.recordDeletion(id);
+        }
+        afterCommit(() -> {
+            autocompleteIndex.remove(id.toString());
+            if (before.isPresent()) {
+                contactSearchCache.contactChanged(before.get(), null);
+            } else {
+                // Nothing known about what was removed from the index
+                contactSearchCache.invalidateAll();
+            }
+        });
     }
 
     public Page<Contact> getAllContacts(Pageable pageable) {
         return contactRepository.findAll(pageable);
     }
 
-    public void syncAllToElasticsearch() {
-        List<Contact> contacts = contactRepository.findAll();
-        contacts.forEach(this::syncToElasticsearch);
-    }
-
-    private void syncToElasticsearch(Contact contact) {
-        ContactDocument document = new ContactDocument(
-                contact.getId().toString(),
-                contact.getFirstName(),
-                contact.getLastName(),
-                contact.getEmail(),
-                contact.getCity(),
-                contact.getCreatedAt(),
-                contact.getUpdatedAt()
-        );
-        contactSearchRepository.save(document);
+    /**
+     * Runs the action once the current transaction commits, so a rolled back
+     * write is never seen by the cache or the autocomplete index, or right away
+     * when there is no transaction
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 }
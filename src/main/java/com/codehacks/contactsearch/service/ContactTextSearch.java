@@ -0,0 +1,17 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.ContactFields;
+
+import java.util.List;
+
+/**
+ * Ranked free-text search over contacts, one page at a time. Implemented by
+ * {@link ContactSearchService} for user traffic and by
+ * {@link FullTextContactSearch} for reporting, so a caller can be pointed
+ * at either.
+ */
+public interface ContactTextSearch {
+
+    List<ContactDocument> searchContacts(String query, int offset, int size, ContactFields fields);
+}
@@ -0,0 +1,82 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.ContactFields;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Ranked full-text search for reporting jobs, on the {@code search_vector}
+ * column of {@code contacts} (see {@code schema.sql}) through the reporting
+ * data source, i.e. a read replica when one is configured. Never touches
+ * Elasticsearch, so heavy reports don't compete with user searches.
+ * <p>
+ * The query uses web search syntax ({@code "quoted phrases"}, {@code or},
+ * {@code -excluded}) over whole words of the names, the email's local part
+ * and the city, without stemming. Hits are ranked with {@code ts_rank}, names
+ * above the email above the city, then by id.
+ */
+@Component
+public class FullTextContactSearch implements ContactTextSearch {
+
+    private static final RowMapper<ContactDocument> DOCUMENT_MAPPER = (rs, rowNum) -> new ContactDocument(
+            String.valueOf(rs.getLong("id")),
+            rs.getString("first_name"),
+            rs.getString("last_name"),
+            rs.getString("email"),
+            rs.getString("city"),
+            rs.getObject("created_at", LocalDateTime.class),
+            rs.getObject("updated_at", LocalDateTime.class));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${contact-search.reporting.max-page-size:1000}")
+    private int maxPageSize = 1000;
+
+    @Value("${contact-search.reporting.statement-timeout:30s}")
+    private Duration statementTimeout = Duration.ofSeconds(30);
+
+    public FullTextContactSearch(@Qualifier("reportingDataSource") DataSource reportingDataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(reportingDataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(reportingDataSource));
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    /**
+     * @param fields Ignored; whole contacts are read and projected by the caller
+     */
+    @Override
+    public List<ContactDocument> searchContacts(String query, int offset, int size, ContactFields fields) {
+        int pageSize = Math.min(size, maxPageSize);
+        if (query == null || query.isBlank() || pageSize < 1) {
+            return List.of();
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("query", query.trim())
+                .addValue("from", Math.max(offset, 0))
+                .addValue("size", pageSize)
+                .addValue("timeout", String.valueOf(Math.max(statementTimeout.toMillis(), 1)));
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForObject("SELECT set_config('statement_timeout', :timeout, true)", params,
+                    String.class);
+            return jdbcTemplate.query("SELECT id, first_name, last_name, email, city, created_at, updated_at"
+                    + " FROM contacts, websearch_to_tsquery('simple', :query) query"
+                    + " WHERE search_vector @@ query"
+                    + " ORDER BY ts_rank(search_vector, query) DESC, id"
+                    + " LIMIT :size OFFSET :from", params, DOCUMENT_MAPPER);
+        });
+    }
+}
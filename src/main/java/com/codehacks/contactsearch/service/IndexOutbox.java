@@ -0,0 +1,256 @@
+package com.codehacks.contactsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.VersionType;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.IndexOutboxEntry;
+import com.codehacks.contactsearch.repository.ContactRepository;
+import com.codehacks.contactsearch.repository.ContactSearchRepository;
+import com.codehacks.contactsearch.repository.IndexOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Transactional outbox between the contacts table and the search index.
+ * Contact writes only record which contact changed, in their own transaction
+ * ({@link #contactChanged}), so they neither wait for Elasticsearch nor lose
+ * the change when it is down, and a rolled back write leaves nothing behind.
+ * <p>
+ * {@link #drain} leases up to {@code contact-search.contacts.outbox.batch-size}
+ * due entries and sends one {@code _bulk} request for them, with each contact
+ * as it is in the table when drained (a delete if it's gone), to the
+ * {@code contacts} alias and to the index being rebuilt, if any. Documents
+ * are versioned by the contact's {@code updatedAt} and deletes by when the
+ * deleting instance recorded them ({@code external_gte}), both on the
+ * writer's clock like the versions a resync writes, so neither overwrites a
+ * newer copy written by the other; a write rejected as older than what is
+ * there counts as done. An entry that
+ * fails is retried after a backoff doubling from {@code backoff.initial} up to
+ * {@code backoff.max}; after {@code max-attempts} it is moved to the
+ * {@code contact_index_dead_letters} table and counted in
+ * {@code contact.index.outbox.dead-lettered}. The next change to the contact,
+ * or a sync, indexes it again.
+ */
+@Slf4j
+@Component
+public class IndexOutbox {
+
+    static final String DEAD_LETTERED_METRIC = "contact.index.outbox.dead-lettered";
+
+    private final IndexOutboxRepository indexOutboxRepository;
+
+    private final ContactRepository contactRepository;
+
+    /**
+     * Empty when Elasticsearch repositories are disabled, i.e. on the Postgres search engine
+     */
+    private final Optional<ContactSearchRepository> contactSearchRepository;
+
+    private final ElasticsearchOperations elasticsearchOperations;
+
+    private final ElasticsearchClient elasticsearchClient;
+
+    private final ContactIndexManager contactIndexManager;
+
+    private final ContactSearchCache contactSearchCache;
+
+    private final Counter deadLettered;
+
+    @Value("${contact-search.contacts.outbox.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${contact-search.contacts.outbox.lease:1m}")
+    private Duration lease = Duration.ofMinutes(1);
+
+    @Value("${contact-search.contacts.outbox.max-attempts:10}")
+    private int maxAttempts = 10;
+
+    @Value("${contact-search.contacts.outbox.backoff.initial:1s}")
+    private Duration initialBackoff = Duration.ofSeconds(1);
+
+    @Value("${contact-search.contacts.outbox.backoff.max:5m}")
+    private Duration maxBackoff = Duration.ofMinutes(5);
+
+    public IndexOutbox(IndexOutboxRepository indexOutboxRepository, ContactRepository contactRepository,
+                       Optional<ContactSearchRepository> contactSearchRepository,
+                       ElasticsearchOperations elasticsearchOperations, ElasticsearchClient elasticsearchClient,
+                       ContactIndexManager contactIndexManager, ContactSearchCache contactSearchCache,
+                       MeterRegistry meterRegistry) {
+        this.indexOutboxRepository = indexOutboxRepository;
+        this.contactRepository = contactRepository;
+        this.contactSearchRepository = contactSearchRepository;
+        this.elasticsearchOperations = elasticsearchOperations;
+        this.elasticsearchClient = elasticsearchClient;
+        this.contactIndexManager = contactIndexManager;
+        this.contactSearchCache = contactSearchCache;
+        this.deadLettered = Counter.builder(DEAD_LETTERED_METRIC)
+                .description("Contact index updates given up on after max-attempts")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Records that the contact was created, updated or deleted; call it in
+     * the transaction making the change
+     */
+    public void contactChanged(Long contactId) {
+        if (contactSearchRepository.isPresent()) {
+            indexOutboxRepository.enqueue(contactId, LocalDateTime.now());
+        }
+    }
+
+    /**
+     * Indexes due entries a batch at a time until less than a batch is due
+     * @return Entries handled, indexed or not
+     */
+    public int drain() {
+        if (contactSearchRepository.isEmpty()) {
+            return 0;
+        }
+        int drained = 0;
+        List<IndexOutboxEntry> batch;
+        do {
+            LocalDateTime now = LocalDateTime.now();
+            batch = indexOutboxRepository.claim(now, now.plus(lease), batchSize);
+            if (!batch.isEmpty()) {
+                index(batch);
+                drained += batch.size();
+            }
+        } while (batch.size() == batchSize);
+        return drained;
+    }
+
+    private void index(List<IndexOutboxEntry> batch) {
+        Map<Long, Contact> contacts = new HashMap<>();
+        contactRepository.findAllById(batch.stream().map(IndexOutboxEntry::getContactId).toList())
+                .forEach(contact -> contacts.put(contact.getId(), contact));
+        List<IndexCoordinates> indexes = new ArrayList<>(2);
+        indexes.add(elasticsearchOperations.getIndexCoordinatesFor(ContactDocument.class));
+        contactIndexManager.rebuildTarget().ifPresent(indexes::add);
+
+        List<BulkOperation> operations = new ArrayList<>(batch.size() * indexes.size());
+        for (IndexOutboxEntry entry : batch) {
+            String id = entry.getContactId().toString();
+            Contact contact = contacts.get(entry.getContactId());
+            Object document = contact != null ? toIndex(contact) : null;
+            long version = contact != null
+                    ? ContactDocument.version(contact)
+                    : ContactDocument.version(deletedAt(entry));
+            for (IndexCoordinates index : indexes) {
+                operations.add(document != null
+                        ? BulkOperation.of(o -> o.index(i -> i.index(index.getIndexName()).id(id).document(document)
+                                .version(version).versionType(VersionType.ExternalGte)))
+                        : BulkOperation.of(o -> o.delete(d -> d.index(index.getIndexName()).id(id)
+                                .version(version).versionType(VersionType.ExternalGte))));
+            }
+        }
+
+        // Contact id to the first error indexing it
+        Map<Long, String> errors = new HashMap<>();
+        try {
+            BulkResponse response = elasticsearchClient.bulk(BulkRequest.of(b -> b.operations(operations)));
+            if (response.errors()) {
+                for (BulkResponseItem item : response.items()) {
+                    // A newer copy is already indexed
+                    boolean superseded = (item.operationType() == OperationType.Index
+                            || item.operationType() == OperationType.Delete) && item.status() == 409;
+                    if (item.error() != null && !superseded) {
+                        String error = item.error().type() + ": " + item.error().reason();
+                        errors.putIfAbsent(Long.valueOf(item.id()), error);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Bulk request for {} outbox entries failed", batch.size(), e);
+            batch.forEach(entry -> errors.put(entry.getContactId(), String.valueOf(e.getMessage())));
+        }
+
+        for (IndexOutboxEntry entry : batch) {
+            String error = errors.get(entry.getContactId());
+            if (error == null) {
+                indexed(entry, contacts.get(entry.getContactId()));
+            } else {
+                failed(entry, error);
+            }
+        }
+    }
+
+    /**
+     * When the contact was deleted, on the deleting instance's clock rather
+     * than the drainer's, which may run ahead of the instance that writes
+     * the contact next
+     */
+    private static LocalDateTime deletedAt(IndexOutboxEntry entry) {
+        // Entries recorded before changed_at was kept
+        return entry.getChangedAt() != null ? entry.getChangedAt() : entry.getCreatedAt();
+    }
+
+    private void indexed(IndexOutboxEntry entry, Contact contact) {
+        if (indexOutboxRepository.complete(entry.getContactId(), entry.getRevision()) == 0) {
+            indexOutboxRepository.release(entry.getContactId());
+        }
+        // Searches cached before the index changed must not outlive it, nor be cached again before its refresh
+        if (contact != null) {
+            contactSearchCache.contactChanged(null, ContactDocument.from(contact));
+        } else {
+            ContactDocument deleted = new ContactDocument();
+            deleted.setId(entry.getContactId().toString());
+            contactSearchCache.contactChanged(deleted, null);
+        }
+    }
+
+    private void failed(IndexOutboxEntry entry, String error) {
+        int attempts = entry.getAttempts() + 1;
+        LocalDateTime now = LocalDateTime.now();
+        int updated;
+        if (attempts >= maxAttempts) {
+            updated = indexOutboxRepository.deadLetter(entry.getContactId(), entry.getRevision(), error, now);
+            if (updated > 0) {
+                deadLettered.increment();
+                log.error("Giving up indexing contact {} after {} attempts: {}", entry.getContactId(), attempts, error);
+            }
+        } else {
+            updated = indexOutboxRepository.retryLater(entry.getContactId(), entry.getRevision(),
+                    now.plus(backoff(attempts)), error);
+            log.debug("Indexing contact {} failed ({} attempts): {}", entry.getContactId(), attempts, error);
+        }
+        if (updated == 0) {
+            // Changed meanwhile, which starts its attempts over
+            indexOutboxRepository.release(entry.getContactId());
+        }
+    }
+
+    /**
+     * The document as Spring Data Elasticsearch would write it, with the completion suggester inputs
+     */
+    private Object toIndex(Contact contact) {
+        return elasticsearchOperations.getElasticsearchConverter().mapObject(ContactDocument.forIndexing(contact));
+    }
+
+    /**
+     * Wait after the given number of failed attempts
+     */
+    Duration backoff(int attempts) {
+        Duration backoff = initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 30));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+}
@@ -0,0 +1,104 @@
+package com.codehacks.contactsearch.service;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.Objects;
+
+/**
+ * Pageable backed by an absolute offset instead of a page number, so that
+ * callers can request any window (e.g. offset 15, size 10) and have it sent
+ * to Elasticsearch as from/size unchanged.
+ */
+public final class OffsetPageRequest implements Pageable {
+
+    private final long offset;
+    private final int size;
+    private final Sort sort;
+
+    private OffsetPageRequest(long offset, int size, Sort sort) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative");
+        }
+        if (size < 1) {
+            throw new IllegalArgumentException("Size must be at least 1");
+        }
+        this.offset = offset;
+        this.size = size;
+        this.sort = sort;
+    }
+
+    public static OffsetPageRequest of(long offset, int size) {
+        return new OffsetPageRequest(offset, size, Sort.unsorted());
+    }
+
+    public static OffsetPageRequest of(long offset, int size, Sort sort) {
+        return new OffsetPageRequest(offset, size, sort);
+    }
+
+    @Override
+    public int getPageNumber() {
+        return (int) (offset / size);
+    }
+
+    @Override
+    public int getPageSize() {
+        return size;
+    }
+
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public Sort getSort() {
+        return sort;
+    }
+
+    @Override
+    public Pageable next() {
+        return new OffsetPageRequest(offset + size, size, sort);
+    }
+
+    @Override
+    public Pageable previousOrFirst() {
+        return hasPrevious() ? new OffsetPageRequest(Math.max(0, offset - size), size, sort) : first();
+    }
+
+    @Override
+    public Pageable first() {
+        return new OffsetPageRequest(0, size, sort);
+    }
+
+    @Override
+    public Pageable withPage(int pageNumber) {
+        return new OffsetPageRequest((long) pageNumber * size, size, sort);
+    }
+
+    @Override
+    public boolean hasPrevious() {
+        return offset > 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof OffsetPageRequest that)) {
+            return false;
+        }
+        return offset == that.offset && size == that.size && sort.equals(that.sort);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(offset, size, sort);
+    }
+
+    @Override
+    public String toString() {
+        return "OffsetPageRequest [offset=" + offset + ", size=" + size + ", sort=" + sort + "]";
+    }
+}
@@ -0,0 +1,252 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.SearchMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Contact search on the {@code contacts} table with the {@code pg_trgm}
+ * extension, served by the trigram GIN indexes in {@code schema.sql}. Answers
+ * every {@link SearchMode} when {@code contact-search.search.engine} is
+ * {@code postgres}, and is the circuit breaker's fallback otherwise.
+ * <p>
+ * Each query term is compared with the first name, last name, email and city
+ * by word similarity, weighted like the Elasticsearch field boosts, and the
+ * scores of all terms are added up. Modes differ in what counts as a match:
+ * <ul>
+ *     <li>standard, fuzzy and spelling correction: a term's word similarity to
+ *     some column reaches the mode's {@link #wordSimilarityThreshold}; spelling
+ *     correction also matches columns containing the query</li>
+ *     <li>partial match: a column contains or starts with the query, or a
+ *     standard match</li>
+ *     <li>autocomplete and suggest: a column, or the full name, starts with the query</li>
+ *     <li>exact: a column equals or starts with the query</li>
+ *     <li>city: the city equals the query, case-sensitively</li>
+ * </ul>
+ * Hits are ordered by score, then id.
+ */
+@Component
+public class PostgresContactSearch {
+
+    /**
+     * Snapshot id of cursors over this engine; there is no point in time, a
+     * cursor resumes after the last hit's score and id (keyset pagination)
+     */
+    static final String CURSOR_SNAPSHOT = "postgres";
+
+    /**
+     * Terms beyond this are ignored, to bound the size of the SQL statement
+     */
+    static final int MAX_TERMS = 5;
+
+    /**
+     * Searched columns with the weights of {@link ContactQueryFactory}'s field boosts
+     */
+    private static final List<Column> COLUMNS = List.of(
+            new Column("lower(first_name)", 3),
+            new Column("lower(last_name)", 3),
+            new Column("lower(email)", 2),
+            new Column("lower(city)", 1));
+
+    private static final String FULL_NAME = "lower(first_name || ' ' || last_name)";
+
+    private static final String SELECT = "SELECT id, first_name, last_name, email, city, created_at, updated_at";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final RowMapper<Hit> HIT_MAPPER = (rs, rowNum) -> new Hit(
+            new ContactDocument(
+                    String.valueOf(rs.getLong("id")),
+                    rs.getString("first_name"),
+                    rs.getString("last_name"),
+                    rs.getString("email"),
+                    rs.getString("city"),
+                    rs.getObject("created_at", LocalDateTime.class),
+                    rs.getObject("updated_at", LocalDateTime.class)),
+            rs.getDouble("score"));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Value("${contact-search.search.track-total-hits:1000}")
+    private int trackTotalHits = 1000;
+
+    public PostgresContactSearch(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    record Column(String expression, int weight) {
+    }
+
+    /**
+     * A contact with the score it was ranked by
+     */
+    record Hit(ContactDocument document, double score) {
+    }
+
+    /**
+     * One window of hits, counted like an Elasticsearch search: exactly up
+     * to {@code contact-search.search.track-total-hits}, as a lower bound past it
+     * @param timeout Statement timeout for the search; when it runs out the
+     *                driver throws {@link org.springframework.dao.QueryTimeoutException}
+     */
+    @Transactional(readOnly = true)
+    public SearchResult search(SearchMode mode, String query, int from, int size, Duration timeout) {
+        Statement statement = statement(mode, query);
+        if (statement == null || size < 1) {
+            return SearchResult.unscored(List.of());
+        }
+        prepare(mode, timeout);
+
+        MapSqlParameterSource params = statement.params()
+                .addValue("from", from)
+                .addValue("size", size);
+        List<Hit> hits = jdbcTemplate.query(SELECT + ", " + statement.score() + " AS score FROM contacts"
+                + " WHERE " + statement.where()
+                + " ORDER BY score DESC, id LIMIT :size OFFSET :from", params, HIT_MAPPER);
+
+        long totalHits;
+        boolean exact;
+        if (hits.size() < size && (!hits.isEmpty() || from == 0)) {
+            // The last page, so everything before it matched too
+            totalHits = from + hits.size();
+            exact = true;
+        } else {
+            params.addValue("cap", trackTotalHits);
+            Long counted = jdbcTemplate.queryForObject("SELECT count(*) FROM (SELECT 1 FROM contacts WHERE "
+                    + statement.where() + " LIMIT :cap) matches", params, Long.class);
+            totalHits = counted != null ? counted : 0;
+            exact = totalHits < trackTotalHits;
+        }
+        float maxScore = from == 0 && !hits.isEmpty() ? (float) hits.get(0).score() : Float.NaN;
+        return new SearchResult(hits.stream().map(Hit::document).toList(), maxScore, totalHits, exact, null,
+                false, false);
+    }
+
+    /**
+     * The hits ranked after the given score and id, for cursor pagination
+     * @param afterScore Score of the last hit of the previous page, or null for the first page
+     * @param afterId Id of the last hit of the previous page, or null for the first page
+     */
+    @Transactional(readOnly = true)
+    public List<Hit> searchAfter(SearchMode mode, String query, Double afterScore, Long afterId, int size,
+                                 Duration timeout) {
+        Statement statement = statement(mode, query);
+        if (statement == null || size < 1) {
+            return List.of();
+        }
+        prepare(mode, timeout);
+
+        MapSqlParameterSource params = statement.params().addValue("size", size);
+        String where = statement.where();
+        if (afterScore != null && afterId != null) {
+            params.addValue("afterScore", afterScore).addValue("afterId", afterId);
+            where = "(" + where + ") AND (" + statement.score() + " < :afterScore OR ("
+                    + statement.score() + " = :afterScore AND id > :afterId))";
+        }
+        return jdbcTemplate.query(SELECT + ", " + statement.score() + " AS score FROM contacts"
+                + " WHERE " + where
+                + " ORDER BY score DESC, id LIMIT :size", params, HIT_MAPPER);
+    }
+
+    /**
+     * Sets the transaction's statement timeout and the {@code <%} operator's
+     * threshold for the mode
+     */
+    private void prepare(SearchMode mode, Duration timeout) {
+        MapSqlParameterSource settings = new MapSqlParameterSource()
+                .addValue("timeout", String.valueOf(Math.max(timeout.toMillis(), 1)))
+                .addValue("threshold", String.valueOf(wordSimilarityThreshold(mode)));
+        jdbcTemplate.queryForObject("SELECT set_config('statement_timeout', :timeout, true), "
+                + "set_config('pg_trgm.word_similarity_threshold', :threshold, true)", settings,
+                (rs, rowNum) -> rs.getString(1));
+    }
+
+    /**
+     * Lowest word similarity between a term and a column that counts as a
+     * match, lower for the typo-tolerant modes
+     */
+    static double wordSimilarityThreshold(SearchMode mode) {
+        return switch (mode) {
+            case FUZZY -> 0.5;
+            case SPELLING_CORRECTION -> 0.4;
+            default -> 0.6;
+        };
+    }
+
+    private record Statement(String where, String score, MapSqlParameterSource params) {
+    }
+
+    /**
+     * The match condition and score for the mode, or null when the query
+     * has nothing to search for
+     */
+    private static Statement statement(SearchMode mode, String query) {
+        String value = query == null ? "" : query.trim();
+        if (value.isEmpty()) {
+            return null;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        if (mode == SearchMode.CITY) {
+            params.addValue("query", value);
+            return new Statement("city = :query", "1.0", params);
+        }
+
+        String lowercased = value.toLowerCase(Locale.ROOT);
+        List<String> terms = Arrays.stream(WHITESPACE.split(lowercased)).distinct().limit(MAX_TERMS).toList();
+        List<String> termParams = new ArrayList<>(terms.size());
+        for (int i = 0; i < terms.size(); i++) {
+            params.addValue("t" + i, terms.get(i));
+            termParams.add(":t" + i);
+        }
+        params.addValue("query", lowercased)
+                .addValue("prefix", escapeLike(lowercased) + "%")
+                .addValue("contains", "%" + escapeLike(lowercased) + "%");
+
+        String similar = anyOf(termParams.stream()
+                .flatMap(term -> COLUMNS.stream().map(column -> term + " <% " + column.expression())));
+        String startsWith = anyOf(COLUMNS.stream().map(column -> column.expression() + " LIKE :prefix"));
+        String contains = anyOf(COLUMNS.stream().map(column -> column.expression() + " LIKE :contains"));
+        String equals = anyOf(COLUMNS.stream().map(column -> column.expression() + " = :query"));
+
+        String where = switch (mode) {
+            case STANDARD, FUZZY -> similar;
+            case SPELLING_CORRECTION -> similar + " OR " + contains;
+            case PARTIAL_MATCH -> similar + " OR " + contains + " OR " + startsWith;
+            case AUTOCOMPLETE, SUGGEST -> startsWith + " OR " + FULL_NAME + " LIKE :prefix";
+            case EXACT -> equals + " OR " + startsWith;
+            case CITY -> throw new IllegalStateException("Handled above");
+        };
+        String score = termParams.stream()
+                .map(term -> "GREATEST(" + COLUMNS.stream()
+                        .map(column -> column.weight() + " * word_similarity(" + term + ", " + column.expression() + ")")
+                        .collect(Collectors.joining(", ")) + ")")
+                .collect(Collectors.joining(" + "));
+        return new Statement(where, "(" + score + ")", params);
+    }
+
+    private static String anyOf(Stream<String> conditions) {
+        return conditions.collect(Collectors.joining(" OR ", "(", ")"));
+    }
+
+    /**
+     * Escapes LIKE wildcards with Postgres' default escape character
+     */
+    static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
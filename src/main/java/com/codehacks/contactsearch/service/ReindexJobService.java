@@ -0,0 +1,229 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.model.ReindexJob;
+import com.codehacks.contactsearch.model.ReindexJobStatus;
+import com.codehacks.contactsearch.model.ResyncStats;
+import com.codehacks.contactsearch.repository.ContactRepository;
+import com.codehacks.contactsearch.repository.ContactSearchRepository;
+import com.codehacks.contactsearch.repository.ReindexJobRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Full resyncs of the contacts index as background jobs, tracked in the
+ * {@code reindex_jobs} table. A job persists its checkpoint (the id every
+ * contact up to which is indexed) after each chunk; if its instance goes away,
+ * the job stops reporting progress and after {@code
+ * contact-search.contacts.sync.stale-after} another instance (or the same one
+ * after a restart) takes it over and continues after the checkpoint.
+ * <p>
+ * A rebuild is a job with a target index: it loads a new versioned index
+ * and moves the {@code contacts} alias to it, see {@link ContactIndexManager}.
+ * Only one job runs at a time, across instances: starting one while another
+ * is running returns the running one.
+ */
+@Slf4j
+@Service
+public class ReindexJobService {
+
+    private final ReindexJobRepository reindexJobRepository;
+
+    private final ContactRepository contactRepository;
+
+    /**
+     * Empty when Elasticsearch repositories are disabled, i.e. on the Postgres search engine
+     */
+    private final Optional<ContactSearchRepository> contactSearchRepository;
+
+    private final ContactIndexer contactIndexer;
+
+    private final ContactIndexManager contactIndexManager;
+
+    private final ContactSearchCache contactSearchCache;
+
+    private final Executor executor;
+
+    /**
+     * Jobs running on this instance, which are never taken over by it
+     */
+    private final Set<Long> runningHere = ConcurrentHashMap.newKeySet();
+
+    @Value("${contact-search.contacts.sync.stale-after:2m}")
+    private Duration staleAfter = Duration.ofMinutes(2);
+
+    public ReindexJobService(ReindexJobRepository reindexJobRepository, ContactRepository contactRepository,
+                             Optional<ContactSearchRepository> contactSearchRepository, ContactIndexer contactIndexer,
+                             ContactIndexManager contactIndexManager, ContactSearchCache contactSearchCache,
+                             @Qualifier("reindexJobExecutor") Executor executor) {
+        this.reindexJobRepository = reindexJobRepository;
+        this.contactRepository = contactRepository;
+        this.contactSearchRepository = contactSearchRepository;
+        this.contactIndexer = contactIndexer;
+        this.contactIndexManager = contactIndexManager;
+        this.contactSearchCache = contactSearchCache;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a resync of the live index in the background, or returns the job already running
+     * @throws IllegalStateException on the Postgres search engine, which has no index to sync
+     */
+    public ReindexJob start() {
+        return start(null);
+    }
+
+    /**
+     * Starts a blue/green rebuild into a new index in the background, or
+     * returns the job already running
+     * @throws IllegalStateException on the Postgres search engine, which has no index to rebuild
+     */
+    public ReindexJob startRebuild() {
+        return start(contactIndexManager.newIndexName());
+    }
+
+    private ReindexJob start(String targetIndex) {
+        if (contactSearchRepository.isEmpty()) {
+            throw new IllegalStateException("There is no Elasticsearch index to sync on the Postgres search engine");
+        }
+        Optional<ReindexJob> running = reindexJobRepository.findFirstByStatus(ReindexJobStatus.RUNNING);
+        if (running.isPresent()) {
+            return running.get();
+        }
+
+        ReindexJob job = new ReindexJob();
+        job.setStatus(ReindexJobStatus.RUNNING);
+        job.setTargetIndex(targetIndex);
+        job.setTotal(contactRepository.count());
+        try {
+            job = reindexJobRepository.saveAndFlush(job);
+        } catch (DataIntegrityViolationException e) {
+            // Another instance started one at the same time
+            return reindexJobRepository.findFirstByStatus(ReindexJobStatus.RUNNING).orElseThrow(() -> e);
+        }
+        log.info("Started sync job {} for {} contacts{}", job.getId(), job.getTotal(),
+                targetIndex != null ? " into " + targetIndex : "");
+        submit(job.getId());
+        return job;
+    }
+
+    public Optional<ReindexJob> getJob(Long id) {
+        return reindexJobRepository.findById(id);
+    }
+
+    /**
+     * Asks a running job to stop; it does after the bulk requests in flight,
+     * and ends as cancelled. Finished jobs are returned unchanged.
+     */
+    public Optional<ReindexJob> cancel(Long id) {
+        reindexJobRepository.requestCancel(id);
+        return reindexJobRepository.findById(id);
+    }
+
+    /**
+     * Takes over running jobs that stopped reporting progress, i.e. whose
+     * instance crashed or was redeployed, and continues them after their checkpoint
+     */
+    public void resumeStaleJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        for (ReindexJob job : reindexJobRepository.findByStatus(ReindexJobStatus.RUNNING)) {
+            if (runningHere.contains(job.getId())
+                    || reindexJobRepository.claim(job.getId(), now, now.minus(staleAfter)) == 0) {
+                continue;
+            }
+            log.info("Resuming sync job {} after contact {} ({} of {} done)", job.getId(), job.getLastId(),
+                    job.getProcessed(), job.getTotal());
+            submit(job.getId());
+        }
+    }
+
+    private void submit(Long jobId) {
+        runningHere.add(jobId);
+        try {
+            executor.execute(() -> run(jobId));
+        } catch (RejectedExecutionException e) {
+            runningHere.remove(jobId);
+            // Left running, so it is taken over once stale
+            log.warn("Could not run sync job {} now", jobId, e);
+        }
+    }
+
+    void run(Long jobId) {
+        String targetIndex = null;
+        try {
+            ReindexJob job = reindexJobRepository.findById(jobId).orElseThrow();
+            targetIndex = job.getTargetIndex();
+            long processedBefore = job.getProcessed();
+            AtomicBoolean cancelled = new AtomicBoolean();
+            ContactIndexer.Listener listener = new ContactIndexer.Listener() {
+                @Override
+                public void checkpoint(long lastId, long documents) {
+                    reindexJobRepository.checkpoint(jobId, processedBefore + documents, lastId, LocalDateTime.now());
+                }
+
+                @Override
+                public boolean cancelled() {
+                    if (reindexJobRepository.existsByIdAndCancelRequestedTrue(jobId)) {
+                        cancelled.set(true);
+                    }
+                    return cancelled.get();
+                }
+            };
+            ResyncStats stats;
+            if (targetIndex == null) {
+                stats = contactIndexer.resync(job.getLastId(), listener);
+            } else {
+                contactIndexManager.prepareRebuild(targetIndex);
+                stats = contactIndexer.resync(IndexCoordinates.of(targetIndex), job.getLastId(), listener);
+            }
+            if (cancelled.get()) {
+                abandon(targetIndex);
+                contactSearchCache.invalidateAll();
+                reindexJobRepository.finish(jobId, ReindexJobStatus.CANCELLED, null, LocalDateTime.now());
+                log.info("Sync job {} cancelled after {} contacts in this run", jobId, stats.documents());
+                return;
+            }
+            if (targetIndex != null) {
+                // The force merge reports no progress, so keep the job from looking stale meanwhile
+                Runnable heartbeat = () -> reindexJobRepository.heartbeat(jobId, LocalDateTime.now());
+                contactIndexManager.promote(targetIndex, heartbeat);
+            }
+            contactSearchCache.invalidateAll();
+            reindexJobRepository.finish(jobId, ReindexJobStatus.COMPLETED, null, LocalDateTime.now());
+            log.info("Sync job {} completed", jobId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Left running, so it is taken over once stale
+            log.warn("Sync job {} interrupted", jobId);
+        } catch (RuntimeException e) {
+            log.error("Sync job {} failed", jobId, e);
+            reindexJobRepository.finish(jobId, ReindexJobStatus.FAILED, String.valueOf(e.getMessage()),
+                    LocalDateTime.now());
+            try {
+                abandon(targetIndex);
+            } catch (InterruptedException | RuntimeException abandonFailure) {
+                log.warn("Unable to drop the index of failed sync job {}", jobId, abandonFailure);
+            }
+        } finally {
+            runningHere.remove(jobId);
+        }
+    }
+
+    private void abandon(String targetIndex) throws InterruptedException {
+        if (targetIndex != null) {
+            contactIndexManager.abandon(targetIndex);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.codehacks.contactsearch.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Position in a point-in-time search: the PIT id and the sort values of the
+ * last hit returned. Clients only ever see the encoded, URL-safe form.
+ * @param pitId Elasticsearch point-in-time id
+ * @param searchAfter Sort values of the last hit (score, then id)
+ */
+public record SearchCursor(String pitId, List<Object> searchAfter) {
+
+    /**
+     * Cursor value a client sends to start a new cursor-paginated search
+     */
+    public static final String START = "*";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static boolean isStart(String cursor) {
+        return cursor == null || cursor.isBlank() || START.equals(cursor);
+    }
+
+    public String encode() {
+        try {
+            byte[] json = MAPPER.writeValueAsBytes(this);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to encode search cursor", e);
+        }
+    }
+
+    public static SearchCursor decode(String cursor) {
+        SearchCursor decoded;
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(cursor);
+            decoded = MAPPER.readValue(new String(json, StandardCharsets.UTF_8), SearchCursor.class);
+        } catch (IllegalArgumentException | IOException e) {
+            throw new IllegalArgumentException("Invalid search cursor", e);
+        }
+        if (decoded.pitId() == null || decoded.searchAfter() == null || decoded.searchAfter().isEmpty()) {
+            throw new IllegalArgumentException("Invalid search cursor");
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,211 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.model.SearchMode;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes search input so that equivalent queries share one cache entry
+ * and are sent to Elasticsearch in the same form.
+ * <p>
+ * Unicode is folded to NFKC (full-width letters, ligatures, composed accents)
+ * and whitespace is trimmed and collapsed for every mode. Case is only folded
+ * for modes whose clauses all go through a lowercasing analyzer; the others
+ * hit keyword fields or unanalyzed prefix clauses, where "John" and
+ * "john" match different documents.
+ */
+public final class SearchQueryNormalizer {
+
+    private static final Set<SearchMode> CASE_INSENSITIVE_MODES = EnumSet.of(SearchMode.AUTOCOMPLETE, SearchMode.SUGGEST);
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Word break classes of UAX#29, as far as the standard tokenizer needs them
+    private static final int OTHER = 0;
+    private static final int LETTER = 1;
+    private static final int NUMERIC = 2;
+    private static final int KATAKANA = 3;
+    private static final int IDEOGRAPHIC = 4;
+    private static final int EXTEND_NUM_LET = 5;
+    private static final int MID_LETTER = 6;
+    private static final int MID_NUM = 7;
+    private static final int MID_NUM_LET = 8;
+    private static final int EXTEND = 9;
+
+    private SearchQueryNormalizer() {
+    }
+
+    public static String normalize(SearchMode mode, String query) {
+        String normalized = fold(query);
+        return CASE_INSENSITIVE_MODES.contains(mode) ? normalized.toLowerCase(Locale.ROOT) : normalized;
+    }
+
+    /**
+     * Lowercased tokens of a value, used to decide whether a document could
+     * match a query: every whitespace-separated word, its letter/digit runs
+     * and its {@link #standardTokens}, so a superset of what the standard
+     * tokenizer produces ("email.com" as well as "email" and "com")
+     */
+    public static List<String> tokens(String value) {
+        List<String> tokens = new ArrayList<>();
+        if (value == null) {
+            return tokens;
+        }
+        String folded = fold(value).toLowerCase(Locale.ROOT);
+        for (String word : WHITESPACE.split(folded)) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            tokens.add(word);
+            for (String token : NON_WORD.split(word)) {
+                if (!token.isEmpty() && !token.equals(word)) {
+                    tokens.add(token);
+                }
+            }
+        }
+        for (String token : standardTokens(folded)) {
+            if (!tokens.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Lowercased tokens of a value as Elasticsearch's standard tokenizer and
+     * lowercase filter produce them, i.e. split at UAX#29 word boundaries:
+     * letters, digits and '_' run together, '.' and '\'' join letters to
+     * letters and digits to digits, ':' joins letters and ',' and ';' join
+     * digits. So "john.smith@email.com" gives "john.smith" and "email.com".
+     * Ideographs and hiragana are a token each; Hebrew, Thai and emoji
+     * specifics are not modelled. No NFKC folding, as the index has none.
+     */
+    public static List<String> standardTokens(String value) {
+        List<String> tokens = new ArrayList<>();
+        if (value == null) {
+            return tokens;
+        }
+        String text = value.toLowerCase(Locale.ROOT);
+        StringBuilder token = new StringBuilder();
+        // Class of the token's last character that isn't a mark
+        int last = OTHER;
+        boolean word = false;
+        int position = 0;
+        while (position < text.length()) {
+            int codePoint = text.codePointAt(position);
+            int type = wordBreakClass(codePoint);
+            position += Character.charCount(codePoint);
+            if (type == EXTEND) {
+                // Marks stay with the character before them
+                if (!token.isEmpty()) {
+                    token.appendCodePoint(codePoint);
+                }
+                continue;
+            }
+            if (!token.isEmpty() && joins(last, type)) {
+                token.appendCodePoint(codePoint);
+                last = type;
+                word |= type != EXTEND_NUM_LET;
+                continue;
+            }
+            if (!token.isEmpty() && joinsAcross(last, type, text, position)) {
+                token.appendCodePoint(codePoint);
+                continue;
+            }
+            if (word) {
+                tokens.add(token.toString());
+            }
+            token.setLength(0);
+            word = false;
+            last = OTHER;
+            if (type == LETTER || type == NUMERIC || type == KATAKANA || type == EXTEND_NUM_LET) {
+                token.appendCodePoint(codePoint);
+                last = type;
+                word = type != EXTEND_NUM_LET;
+            } else if (type == IDEOGRAPHIC) {
+                tokens.add(new String(Character.toChars(codePoint)));
+            }
+        }
+        if (word) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Whether no word boundary falls between the two classes (WB5, WB8-10, WB13-13b)
+     */
+    private static boolean joins(int before, int after) {
+        boolean alphanumeric = before == LETTER || before == NUMERIC;
+        return switch (after) {
+            case LETTER, NUMERIC -> alphanumeric || before == EXTEND_NUM_LET;
+            case KATAKANA -> before == KATAKANA || before == EXTEND_NUM_LET;
+            case EXTEND_NUM_LET -> alphanumeric || before == KATAKANA || before == EXTEND_NUM_LET;
+            default -> false;
+        };
+    }
+
+    /**
+     * Whether a mid-word character at {@code next} - 1 joins the characters
+     * either side of it (WB6-7, WB11-12)
+     */
+    private static boolean joinsAcross(int before, int mid, String text, int next) {
+        int after = OTHER;
+        for (int position = next; position < text.length(); ) {
+            int codePoint = text.codePointAt(position);
+            after = wordBreakClass(codePoint);
+            if (after != EXTEND) {
+                break;
+            }
+            position += Character.charCount(codePoint);
+        }
+        return before == LETTER && after == LETTER && (mid == MID_LETTER || mid == MID_NUM_LET)
+                || before == NUMERIC && after == NUMERIC && (mid == MID_NUM || mid == MID_NUM_LET);
+    }
+
+    private static int wordBreakClass(int codePoint) {
+        switch (codePoint) {
+            case ':', 0x00B7, 0x0387, 0x05F4, 0x2027, 0xFE13, 0xFE55, 0xFF1A:
+                return MID_LETTER;
+            case ',', ';', 0x037E, 0x0589, 0x060C, 0x060D, 0x066C, 0x07F8, 0x2044, 0xFE10, 0xFE14, 0xFE50,
+                 0xFE54, 0xFF0C, 0xFF1B:
+                return MID_NUM;
+            case '.', '\'', 0x2018, 0x2019, 0x2024, 0xFE52, 0xFF07, 0xFF0E:
+                return MID_NUM_LET;
+            default:
+                break;
+        }
+        int type = Character.getType(codePoint);
+        if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                || type == Character.COMBINING_SPACING_MARK || type == Character.FORMAT) {
+            return EXTEND;
+        }
+        if (type == Character.CONNECTOR_PUNCTUATION) {
+            return EXTEND_NUM_LET;
+        }
+        if (Character.isDigit(codePoint)) {
+            return NUMERIC;
+        }
+        if (!Character.isLetter(codePoint)) {
+            return OTHER;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        if (script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA) {
+            return IDEOGRAPHIC;
+        }
+        return script == Character.UnicodeScript.KATAKANA ? KATAKANA : LETTER;
+    }
+
+    private static String fold(String value) {
+        String nfkc = Normalizer.normalize(value, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(nfkc).replaceAll(" ").trim();
+    }
+}
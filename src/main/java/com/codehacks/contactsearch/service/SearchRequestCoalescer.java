@@ -0,0 +1,97 @@
+package com.codehacks.contactsearch.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent identical searches into one Elasticsearch request.
+ * The first caller for a key runs the search; callers arriving while it is
+ * in flight wait for and share its result (or its exception), but no longer
+ * than their own budget, after which they get their timeout result instead.
+ * Nothing is kept once the search completes, so later callers search again
+ * or hit {@link ContactSearchCache}.
+ * <p>
+ * Collapsed calls are counted in {@code contact.search.coalesced}, and those
+ * that gave up waiting in {@code contact.search.coalesced.timed-out}.
+ */
+@Component
+public class SearchRequestCoalescer {
+
+    static final String COALESCED_METRIC = "contact.search.coalesced";
+
+    static final String TIMED_OUT_METRIC = "contact.search.coalesced.timed-out";
+
+    private final Map<ContactSearchCache.Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter coalesced;
+
+    private final Counter timedOut;
+
+    public SearchRequestCoalescer(MeterRegistry meterRegistry) {
+        this.coalesced = Counter.builder(COALESCED_METRIC)
+                .description("Searches answered by an identical in-flight search")
+                .register(meterRegistry);
+        this.timedOut = Counter.builder(TIMED_OUT_METRIC)
+                .description("Coalesced searches whose budget ran out before the shared search answered")
+                .register(meterRegistry);
+        meterRegistry.gauge("contact.search.in-flight", inFlight, Map::size);
+    }
+
+    /**
+     * Callers of one key must all expect the same result type
+     * @param budget Longest a caller collapsed into an in-flight search waits for it
+     * @param onTimeout Answers a caller whose budget ran out first
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(ContactSearchCache.Key key, Duration budget, Supplier<T> search, Supplier<T> onTimeout) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return (T) await(existing, budget);
+            } catch (TimeoutException e) {
+                timedOut.increment();
+                return onTimeout.get();
+            }
+        }
+
+        try {
+            T results = search.get();
+            mine.complete(results);
+            return results;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> future, Duration budget) throws TimeoutException {
+        try {
+            return future.get(budget.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted while waiting for the in-flight search");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchShardStatistics;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * One window of search results with the top score and hit count
+ * Elasticsearch reported for the query
+ * @param results The contacts in the requested window
+ * @param maxScore Highest score of any hit, or NaN when the search was not scored
+ * @param totalHits Number of matching contacts, or a lower bound when {@code totalHitsExact} is false
+ * @param totalHitsExact Whether {@code totalHits} was counted exactly rather than capped by track_total_hits
+ * @param took Server-side time Elasticsearch reported, or null when no request was made
+ * @param partial Whether the search ran out of its time budget or lost shards, so hits may be missing
+ * @param degraded Whether the results come from the database fallback instead of Elasticsearch
+ */
+public record SearchResult(
+    List<ContactDocument> results,
+    float maxScore,
+    long totalHits,
+    boolean totalHitsExact,
+    Duration took,
+    boolean partial,
+    boolean degraded
+) {
+
+    public SearchResult {
+        results = List.copyOf(results);
+    }
+
+    /**
+     * @param timeout The search timeout the request was sent with; Elasticsearch
+     *                only stops a search once it has taken at least this long
+     *                (the response's timed_out flag is not exposed)
+     */
+    public static SearchResult of(SearchHits<ContactDocument> searchHits, Duration timeout) {
+        Duration took = searchHits.getExecutionDuration();
+        SearchShardStatistics shards = searchHits.getSearchShardStatistics();
+        boolean partial = (took != null && timeout != null && took.compareTo(timeout) >= 0)
+                || (shards != null && shards.getFailed() != null && shards.getFailed().intValue() > 0);
+        return new SearchResult(
+                searchHits.stream().map(SearchHit::getContent).toList(),
+                searchHits.getMaxScore(),
+                searchHits.getTotalHits(),
+                searchHits.getTotalHitsRelation() == TotalHitsRelation.EQUAL_TO,
+                took,
+                partial,
+                false);
+    }
+
+    /**
+     * Results without a hit count; the page size is reported as a lower bound
+     */
+    public static SearchResult unscored(List<ContactDocument> results) {
+        return new SearchResult(results, Float.NaN, results.size(), false, null, false, false);
+    }
+
+    /**
+     * No results because the time budget ran out before the search engine answered
+     */
+    public static SearchResult timedOut() {
+        return new SearchResult(List.of(), Float.NaN, 0, false, null, true, false);
+    }
+
+    /**
+     * The same result, marked as coming from the database fallback
+     */
+    public SearchResult asDegraded() {
+        return new SearchResult(results, maxScore, totalHits, totalHitsExact, took, partial, true);
+    }
+
+    /**
+     * The same result answered again without a request, e.g. from the cache
+     */
+    public SearchResult withoutTook() {
+        return took == null ? this : new SearchResult(results, maxScore, totalHits, totalHitsExact, null, partial,
+                degraded);
+    }
+}
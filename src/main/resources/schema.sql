@@ -35,10 +35,91 @@ CREATE TABLE IF NOT EXISTS contacts (
 CREATE INDEX IF NOT EXISTS idx_contacts_email ON contacts(email);
 CREATE INDEX IF NOT EXISTS idx_contacts_city ON contacts(city);
 CREATE INDEX IF NOT EXISTS idx_contacts_name ON contacts(first_name, last_name);
+CREATE INDEX IF NOT EXISTS idx_contacts_updated_at ON contacts(updated_at);
 
 -- Create a composite index for search queries
 CREATE INDEX IF NOT EXISTS idx_contacts_search ON contacts(first_name, last_name, city);
 
+-- Trigram indexes for the Postgres search engine and fallback (similarity, LIKE prefix and substring matches)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_contacts_first_name_trgm ON contacts USING gin (lower(first_name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_contacts_last_name_trgm ON contacts USING gin (lower(last_name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_contacts_email_trgm ON contacts USING gin (lower(email) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_contacts_city_trgm ON contacts USING gin (lower(city) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS idx_contacts_full_name_trgm
+    ON contacts USING gin (lower(first_name || ' ' || last_name) gin_trgm_ops);
+
+-- Full-text search vector for reporting searches: names weigh most, then the email's local part, then the city
+ALTER TABLE contacts ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (
+    setweight(to_tsvector('simple', first_name || ' ' || last_name), 'A')
+    || setweight(to_tsvector('simple', regexp_replace(split_part(email, '@', 1), '[._+-]+', ' ', 'g')), 'B')
+    || setweight(to_tsvector('simple', city), 'C')
+) STORED;
+CREATE INDEX IF NOT EXISTS idx_contacts_search_vector ON contacts USING gin (search_vector);
+
+-- Contacts deleted recently, so instances keeping an in-memory autocomplete index can replay deletes the way they
+-- replay updated_at; rows older than contact-search.autocomplete.deletion-retention are pruned
+CREATE TABLE IF NOT EXISTS contact_deletions (
+    contact_id BIGINT PRIMARY KEY,
+    deleted_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+CREATE INDEX IF NOT EXISTS idx_contact_deletions_deleted_at ON contact_deletions(deleted_at);
+
+-- Background resync jobs of the contacts index; last_id is the checkpoint a resumed job continues after
+CREATE TABLE IF NOT EXISTS reindex_jobs (
+    id BIGSERIAL PRIMARY KEY,
+    status VARCHAR(20) NOT NULL,
+    total BIGINT NOT NULL DEFAULT 0,
+    processed BIGINT NOT NULL DEFAULT 0,
+    last_id BIGINT NOT NULL DEFAULT 0,
+    cancel_requested BOOLEAN NOT NULL DEFAULT false,
+    error TEXT,
+    started_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    resumed_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    resumed_processed BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    finished_at TIMESTAMP
+);
+
+-- Set for blue/green rebuilds: the versioned index loaded before the contacts alias moves to it
+ALTER TABLE reindex_jobs ADD COLUMN IF NOT EXISTS target_index VARCHAR(255);
+
+-- At most one running job across all instances
+CREATE UNIQUE INDEX IF NOT EXISTS idx_reindex_jobs_running ON reindex_jobs ((true)) WHERE status = 'RUNNING';
+
+-- Instances draining the outbox and the index being rebuilt each last reported writing to; a rebuild only
+-- starts loading once every instance seen recently reports its index
+CREATE TABLE IF NOT EXISTS contact_index_instances (
+    instance_id VARCHAR(64) PRIMARY KEY,
+    rebuild_target VARCHAR(255),
+    seen_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Contacts whose search document is out of date, one row per contact, written in the contact write's transaction
+CREATE TABLE IF NOT EXISTS contact_index_outbox (
+    contact_id BIGINT PRIMARY KEY,
+    revision BIGINT NOT NULL DEFAULT 1,
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    leased_until TIMESTAMP,
+    last_error TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+CREATE INDEX IF NOT EXISTS idx_contact_index_outbox_next_attempt ON contact_index_outbox(next_attempt_at);
+
+-- Latest change, on the writer's clock; the version a delete is sent with
+ALTER TABLE contact_index_outbox ADD COLUMN IF NOT EXISTS changed_at TIMESTAMP;
+
+-- Outbox entries given up on after max-attempts; a later change to the contact or a sync indexes it again
+CREATE TABLE IF NOT EXISTS contact_index_dead_letters (
+    id BIGSERIAL PRIMARY KEY,
+    contact_id BIGINT NOT NULL,
+    attempts INT NOT NULL,
+    error TEXT,
+    changed_at TIMESTAMP,
+    failed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
 -- Insert default admin user (password: admin123)
 INSERT INTO users (username, password, email, first_name, last_name, role) 
 VALUES ('admin', '$2a$10$aVvkObTRAootm6gbSTYJ8ebMwViMZVb7T9DiuyDIux0VJ7TMhBr52', 'admin@contactsearch.com', 'Admin', 'User', 'ADMIN')
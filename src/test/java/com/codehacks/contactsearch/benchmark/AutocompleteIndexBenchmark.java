@@ -0,0 +1,99 @@
+package com.codehacks.contactsearch.benchmark;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.repository.ContactDeletionRepository;
+import com.codehacks.contactsearch.repository.ContactRepository;
+import com.codehacks.contactsearch.service.AutocompleteIndex;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link AutocompleteIndex#search} over a generated set of contacts,
+ * for a short prefix, a longer one and a two-term query, which match too many
+ * contacts and are handed to Elasticsearch, and a selective prefix answered
+ * from memory.
+ * <p>
+ * Run the same way as {@link QueryBuildingBenchmark}:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     com.codehacks.contactsearch.benchmark.AutocompleteIndexBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AutocompleteIndexBenchmark {
+
+    private static final String[] FIRST_NAMES = {"john", "jane", "joseph", "mary", "maria", "michael", "robert",
+        "roberta", "alex", "alexandra", "sam", "samantha", "chris", "christine", "pat", "patricia"};
+
+    private static final String[] LAST_NAMES = {"smith", "johnson", "jones", "brown", "miller", "davis", "garcia",
+        "rodriguez", "wilson", "martinez", "anderson", "taylor", "thomas", "moore", "jackson", "martin"};
+
+    private static final String[] CITIES = {"new york", "los angeles", "boston", "chicago", "houston", "phoenix",
+        "johannesburg", "london", "madrid", "lagos"};
+
+    @Param({"100000"})
+    public int contacts;
+
+    @Param({"jo", "alexan", "jo smi", "smith123"})
+    public String query;
+
+    private AutocompleteIndex index;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<Contact> all = new ArrayList<>(contacts);
+        for (long i = 1; i <= contacts; i++) {
+            Contact contact = new Contact();
+            contact.setId(i);
+            contact.setFirstName(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+            contact.setLastName(LAST_NAMES[random.nextInt(LAST_NAMES.length)] + random.nextInt(1000));
+            contact.setEmail(contact.getFirstName() + "." + contact.getLastName() + "@example.com");
+            contact.setCity(CITIES[random.nextInt(CITIES.length)]);
+            all.add(contact);
+        }
+        ContactRepository repository = Mockito.mock(ContactRepository.class);
+        Mockito.when(repository.findAll()).thenReturn(all);
+        index = new AutocompleteIndex(repository, Mockito.mock(ContactDeletionRepository.class), true, 20, null,
+                Duration.ofMinutes(1), Duration.ofDays(1));
+        index.rebuild();
+    }
+
+    @Benchmark
+    public Optional<List<ContactDocument>> search() {
+        return index.search(query, 0, 5);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AutocompleteIndexBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,217 @@
+package com.codehacks.contactsearch.benchmark;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.SearchMode;
+import com.codehacks.contactsearch.service.ContactQueryFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the completion suggester with the edge n-gram {@code bool_prefix}
+ * query behind {@link SearchMode#AUTOCOMPLETE}, for latency and index size.
+ * <p>
+ * Two indices are built from the same generated contacts: one with the
+ * production settings and the autocomplete subfields but no {@code suggest}
+ * field, and one with the {@code suggest} field but no autocomplete
+ * subfields. Both are force-merged to one segment before their store sizes
+ * are printed. Queries go through the same client, so the HTTP round trip is
+ * part of both numbers.
+ * <p>
+ * Needs Docker for the Elasticsearch container. Run the same way as
+ * {@link QueryBuildingBenchmark}:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     com.codehacks.contactsearch.benchmark.CompletionSuggesterBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompletionSuggesterBenchmark {
+
+    private static final String BOOL_PREFIX_INDEX = "bench-bool-prefix";
+
+    private static final String COMPLETION_INDEX = "bench-completion";
+
+    private static final int BULK_SIZE = 5000;
+
+    private static final String[] FIRST_NAMES = {"john", "jane", "joseph", "mary", "maria", "michael", "robert",
+        "roberta", "alex", "alexandra", "sam", "samantha", "chris", "christine", "pat", "patricia"};
+
+    private static final String[] LAST_NAMES = {"smith", "johnson", "jones", "brown", "miller", "davis", "garcia",
+        "rodriguez", "wilson", "martinez", "anderson", "taylor", "thomas", "moore", "jackson", "martin"};
+
+    private static final String[] CITIES = {"new york", "los angeles", "boston", "chicago", "houston", "phoenix",
+        "johannesburg", "london", "madrid", "lagos"};
+
+    @Param({"100000"})
+    public int contacts;
+
+    // Completion inputs match from their start, so the two-term query is a full-name prefix
+    @Param({"jo", "alexan", "john smi"})
+    public String query;
+
+    private final ContactQueryFactory contactQueryFactory = new ContactQueryFactory();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private GenericContainer<?> elasticsearch;
+
+    private RestClient restClient;
+
+    private ElasticsearchClient client;
+
+    @Setup
+    public void setUp() throws IOException {
+        elasticsearch = new GenericContainer<>(DockerImageName.parse("docker.elastic.co/elasticsearch/elasticsearch:8.8.0"))
+                .withEnv("discovery.type", "single-node")
+                .withEnv("xpack.security.enabled", "false")
+                .withEnv("ES_JAVA_OPTS", "-Xms1g -Xmx1g")
+                .withExposedPorts(9200);
+        elasticsearch.start();
+
+        restClient = RestClient.builder(new HttpHost(elasticsearch.getHost(), elasticsearch.getMappedPort(9200))).build();
+        client = new ElasticsearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper()));
+
+        ObjectNode settings = (ObjectNode) readResource("elasticsearch/contact-settings.json");
+        ObjectNode boolPrefixMapping = (ObjectNode) readResource("elasticsearch/contact-mapping.json");
+        ObjectNode completionMapping = boolPrefixMapping.deepCopy();
+
+        ((ObjectNode) boolPrefixMapping.get("properties")).remove("suggest");
+        for (Map.Entry<String, JsonNode> field : completionMapping.get("properties").properties()) {
+            if (field.getValue().get("fields") instanceof ObjectNode subfields) {
+                subfields.remove("autocomplete");
+            }
+        }
+
+        createIndex(BOOL_PREFIX_INDEX, settings, boolPrefixMapping);
+        createIndex(COMPLETION_INDEX, settings, completionMapping);
+        indexContacts();
+
+        for (String index : new String[]{BOOL_PREFIX_INDEX, COMPLETION_INDEX}) {
+            client.indices().refresh(r -> r.index(index));
+            client.indices().forcemerge(f -> f.index(index).maxNumSegments(1L));
+            long bytes = client.indices().stats(s -> s.index(index))
+                    .indices().get(index).primaries().store().sizeInBytes();
+            System.out.printf("%s: %d contacts, %.1f MB%n", index, contacts, bytes / (1024.0 * 1024.0));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        restClient.close();
+        elasticsearch.stop();
+    }
+
+    @Benchmark
+    public SearchResponse<JsonData> boolPrefix() throws IOException {
+        return client.search(s -> s
+                .index(BOOL_PREFIX_INDEX)
+                .query(contactQueryFactory.build(SearchMode.AUTOCOMPLETE, query))
+                .size(5), JsonData.class);
+    }
+
+    @Benchmark
+    public SearchResponse<JsonData> completion() throws IOException {
+        return client.search(s -> s
+                .index(COMPLETION_INDEX)
+                .suggest(contactQueryFactory.suggester(query, 5))
+                .size(0)
+                .trackTotalHits(t -> t.enabled(false)), JsonData.class);
+    }
+
+    private void indexContacts() throws IOException {
+        MappingElasticsearchConverter converter =
+                new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext());
+        converter.afterPropertiesSet();
+
+        Random random = new Random(42);
+        BulkRequest.Builder bulk = new BulkRequest.Builder();
+        for (long i = 1; i <= contacts; i++) {
+            Contact contact = new Contact();
+            contact.setId(i);
+            contact.setFirstName(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+            contact.setLastName(LAST_NAMES[random.nextInt(LAST_NAMES.length)] + random.nextInt(1000));
+            contact.setEmail(contact.getFirstName() + "." + contact.getLastName() + "@example.com");
+            contact.setCity(CITIES[random.nextInt(CITIES.length)]);
+
+            // Serialized the way the repository writes it, suggest inputs included
+            String json = converter.mapObject(ContactDocument.forIndexing(contact)).toJson();
+            String id = String.valueOf(i);
+            // Without the suggest field in its mapping, dynamic mapping would index the inputs as text
+            ObjectNode withoutSuggest = (ObjectNode) objectMapper.readTree(json);
+            withoutSuggest.remove("suggest");
+            bulk.operations(op -> op.index(x -> x.index(COMPLETION_INDEX).id(id)
+                    .document(JsonData.fromJson(json))));
+            bulk.operations(op -> op.index(x -> x.index(BOOL_PREFIX_INDEX).id(id)
+                    .document(JsonData.fromJson(withoutSuggest.toString()))));
+
+            if (i % BULK_SIZE == 0 || i == contacts) {
+                if (client.bulk(bulk.build()).errors()) {
+                    throw new IllegalStateException("Bulk indexing failed");
+                }
+                bulk = new BulkRequest.Builder();
+            }
+        }
+    }
+
+    private void createIndex(String index, ObjectNode settings, ObjectNode mapping) throws IOException {
+        ObjectNode body = objectMapper.createObjectNode();
+        body.set("settings", settings);
+        body.set("mappings", mapping);
+        client.indices().create(c -> c.index(index).withJson(new StringReader(body.toString())));
+    }
+
+    private JsonNode readResource(String path) throws IOException {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            return objectMapper.readTree(in);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CompletionSuggesterBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
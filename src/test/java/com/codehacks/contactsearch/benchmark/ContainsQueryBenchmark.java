@@ -0,0 +1,190 @@
+package com.codehacks.contactsearch.benchmark;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.SearchMode;
+import com.codehacks.contactsearch.service.ContactQueryFactory;
+import com.codehacks.contactsearch.service.WildcardReferenceQuery;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the spelling-correction and partial-match queries with ngram
+ * "contains" clauses against the same queries with the leading-wildcard
+ * clauses they replaced (see {@link WildcardReferenceQuery}), on one index
+ * built with the production settings and mapping. The request cache is
+ * disabled so every call is executed.
+ * <p>
+ * Needs Docker for the Elasticsearch container. Run the same way as
+ * {@link QueryBuildingBenchmark}:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     com.codehacks.contactsearch.benchmark.ContainsQueryBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContainsQueryBenchmark {
+
+    private static final String INDEX = "bench-contains";
+
+    private static final int BULK_SIZE = 5000;
+
+    private static final String[] FIRST_NAMES = {"john", "jane", "joseph", "mary", "maria", "michael", "robert",
+        "roberta", "alex", "alexandra", "sam", "samantha", "chris", "christine", "pat", "patricia"};
+
+    private static final String[] LAST_NAMES = {"smith", "johnson", "jones", "brown", "miller", "davis", "garcia",
+        "rodriguez", "wilson", "martinez", "anderson", "taylor", "thomas", "moore", "jackson", "martin"};
+
+    private static final String[] CITIES = {"new york", "los angeles", "boston", "chicago", "houston", "phoenix",
+        "johannesburg", "london", "madrid", "lagos"};
+
+    @Param({"100000"})
+    public int contacts;
+
+    @Param({"SPELLING_CORRECTION", "PARTIAL_MATCH"})
+    public SearchMode mode;
+
+    @Param({"mit", "ohnso", "example.com"})
+    public String query;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private GenericContainer<?> elasticsearch;
+
+    private RestClient restClient;
+
+    private ElasticsearchClient client;
+
+    private Query ngramQuery;
+
+    private Query wildcardQuery;
+
+    @Setup
+    public void setUp() throws IOException {
+        elasticsearch = new GenericContainer<>(DockerImageName.parse("docker.elastic.co/elasticsearch/elasticsearch:8.8.0"))
+                .withEnv("discovery.type", "single-node")
+                .withEnv("xpack.security.enabled", "false")
+                .withEnv("ES_JAVA_OPTS", "-Xms1g -Xmx1g")
+                .withExposedPorts(9200);
+        elasticsearch.start();
+
+        restClient = RestClient.builder(new HttpHost(elasticsearch.getHost(), elasticsearch.getMappedPort(9200))).build();
+        client = new ElasticsearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper()));
+
+        ObjectNode body = objectMapper.createObjectNode();
+        body.set("settings", readResource("elasticsearch/contact-settings.json"));
+        body.set("mappings", readResource("elasticsearch/contact-mapping.json"));
+        client.indices().create(c -> c.index(INDEX).withJson(new StringReader(body.toString())));
+        indexContacts();
+        client.indices().refresh(r -> r.index(INDEX));
+        client.indices().forcemerge(f -> f.index(INDEX).maxNumSegments(1L));
+
+        ngramQuery = new ContactQueryFactory().build(mode, query);
+        wildcardQuery = WildcardReferenceQuery.of(ngramQuery, query);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        restClient.close();
+        elasticsearch.stop();
+    }
+
+    @Benchmark
+    public SearchResponse<JsonData> ngram() throws IOException {
+        return search(ngramQuery);
+    }
+
+    @Benchmark
+    public SearchResponse<JsonData> wildcard() throws IOException {
+        return search(wildcardQuery);
+    }
+
+    private SearchResponse<JsonData> search(Query searchQuery) throws IOException {
+        return client.search(s -> s
+                .index(INDEX)
+                .query(searchQuery)
+                .size(10)
+                .requestCache(false), JsonData.class);
+    }
+
+    private void indexContacts() throws IOException {
+        MappingElasticsearchConverter converter =
+                new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext());
+        converter.afterPropertiesSet();
+
+        Random random = new Random(42);
+        BulkRequest.Builder bulk = new BulkRequest.Builder();
+        for (long i = 1; i <= contacts; i++) {
+            Contact contact = new Contact();
+            contact.setId(i);
+            contact.setFirstName(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+            contact.setLastName(LAST_NAMES[random.nextInt(LAST_NAMES.length)] + random.nextInt(1000));
+            contact.setEmail(contact.getFirstName() + "." + contact.getLastName() + "@example.com");
+            contact.setCity(CITIES[random.nextInt(CITIES.length)]);
+
+            String json = converter.mapObject(ContactDocument.forIndexing(contact)).toJson();
+            String id = String.valueOf(i);
+            bulk.operations(op -> op.index(x -> x.index(INDEX).id(id).document(JsonData.fromJson(json))));
+
+            if (i % BULK_SIZE == 0 || i == contacts) {
+                if (client.bulk(bulk.build()).errors()) {
+                    throw new IllegalStateException("Bulk indexing failed");
+                }
+                bulk = new BulkRequest.Builder();
+            }
+        }
+    }
+
+    private ObjectNode readResource(String path) throws IOException {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            return (ObjectNode) objectMapper.readTree(in);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ContainsQueryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,273 @@
+package com.codehacks.contactsearch.benchmark;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.JsonpUtils;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.codehacks.contactsearch.model.SearchMode;
+import com.codehacks.contactsearch.service.ContactQueryFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.elasticsearch.client.elc.Queries;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the request body for a search with the typed
+ * {@link ContactQueryFactory} against the former String.format JSON templates,
+ * which Spring Data sends as a base64 wrapper query for Elasticsearch to parse.
+ * Both paths are measured up to the serialized JSON that goes on the wire.
+ * <p>
+ * Run with the GC profiler to compare allocation per operation:
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *     com.codehacks.contactsearch.benchmark.QueryBuildingBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBuildingBenchmark {
+
+    @Param({"STANDARD", "SPELLING_CORRECTION", "PARTIAL_MATCH"})
+    public SearchMode mode;
+
+    @Param({"john", "Alex MacSmith"})
+    public String query;
+
+    private final ContactQueryFactory factory = new ContactQueryFactory();
+
+    private JsonpMapper mapper;
+
+    @Setup
+    public void setUp() {
+        mapper = new JacksonJsonpMapper();
+    }
+
+    @Benchmark
+    public String typedQuery() {
+        return JsonpUtils.toJsonString(factory.build(mode, query), mapper);
+    }
+
+    @Benchmark
+    public String stringTemplateQuery() {
+        Query wrapper = Queries.wrapperQueryAsQuery(legacyTemplate(mode, query));
+        return JsonpUtils.toJsonString(wrapper, mapper);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(QueryBuildingBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+
+    private static String legacyTemplate(SearchMode mode, String query) {
+        return switch (mode) {
+            case SPELLING_CORRECTION -> buildSpellingCorrectionQueryString(query);
+            case PARTIAL_MATCH -> buildPartialMatchQueryString(query);
+            default -> buildMultiMatchQueryString(query);
+        };
+    }
+
+    // Query templates as they were built before ContactQueryFactory
+
+    private static String buildMultiMatchQueryString(String query) {
+        return String.format("""
+            {
+                "multi_match": {
+                    "query": "%s",
+                    "fields": ["firstName^3", "lastName^3", "email^2", "city"],
+                    "type": "best_fields",
+                    "fuzziness": "AUTO"
+                }
+            }
+            """, query);
+    }
+
+    private static String buildSpellingCorrectionQueryString(String query) {
+        return String.format("""
+            {
+                "bool": {
+                    "should": [
+                        {
+                            "multi_match": {
+                                "query": "%s",
+                                "fields": ["firstName^3", "lastName^3", "email^2", "city"],
+                                "fuzziness": "AUTO",
+                                "minimum_should_match": "60%%"
+                            }
+                        },
+                        {
+                            "multi_match": {
+                                "query": "%s",
+                                "fields": ["firstName.keyword^2", "lastName.keyword^2", "email^2", "city.keyword"],
+                                "type": "best_fields"
+                            }
+                        },
+                        {
+                            "match": {
+                                "firstName": {
+                                    "query": "%s",
+                                    "fuzziness": "AUTO",
+                                    "prefix_length": 1
+                                }
+                            }
+                        },
+                        {
+                            "match": {
+                                "lastName": {
+                                    "query": "%s",
+                                    "fuzziness": "AUTO",
+                                    "prefix_length": 1
+                                }
+                            }
+                        },
+                        {
+                            "match": {
+                                "city": {
+                                    "query": "%s",
+                                    "fuzziness": "AUTO",
+                                    "prefix_length": 1
+                                }
+                            }
+                        },
+                        {
+                            "wildcard": {
+                                "firstName": {
+                                    "value": "*%s*"
+                                }
+                            }
+                        },
+                        {
+                            "wildcard": {
+                                "lastName": {
+                                    "value": "*%s*"
+                                }
+                            }
+                        },
+                        {
+                            "wildcard": {
+                                "city": {
+                                    "value": "*%s*"
+                                }
+                            }
+                        }
+                    ],
+                    "minimum_should_match": 1
+                }
+            }
+            """, query, query, query, query, query, query, query, query);
+    }
+
+    private static String buildPartialMatchQueryString(String query) {
+        return String.format("""
+            {
+                "bool": {
+                    "should": [
+                        {
+                            "multi_match": {
+                                "query": "%s",
+                                "fields": [
+                                    "firstName^3",
+                                    "lastName^3",
+                                    "firstName.ngram^2",
+                                    "lastName.ngram^2",
+                                    "email^2",
+                                    "city"
+                                ],
+                                "type": "best_fields",
+                                "minimum_should_match": "50%%"
+                            }
+                        },
+                        {
+                            "multi_match": {
+                                "query": "%s",
+                                "fields": [
+                                    "firstName.autocomplete^3",
+                                    "lastName.autocomplete^3",
+                                    "email.autocomplete^2",
+                                    "city.autocomplete"
+                                ],
+                                "type": "bool_prefix"
+                            }
+                        },
+                        {
+                            "wildcard": {
+                                "firstName": {
+                                    "value": "*%s*"
+                                }
+                            }
+                        },
+                        {
+                            "wildcard": {
+                                "lastName": {
+                                    "value": "*%s*"
+                                }
+                            }
+                        },
+                        {
+                            "wildcard": {
+                                "email": {
+                                    "value": "*%s*"
+                                }
+                            }
+                        },
+                        {
+                            "wildcard": {
+                                "city": {
+                                    "value": "*%s*"
+                                }
+                            }
+                        },
+                        {
+                            "prefix": {
+                                "firstName": {
+                                    "value": "%s"
+                                }
+                            }
+                        },
+                        {
+                            "prefix": {
+                                "lastName": {
+                                    "value": "%s"
+                                }
+                            }
+                        },
+                        {
+                            "prefix": {
+                                "email": {
+                                    "value": "%s"
+                                }
+                            }
+                        },
+                        {
+                            "prefix": {
+                                "city": {
+                                    "value": "%s"
+                                }
+                            }
+                        }
+                    ],
+                    "minimum_should_match": 1
+                }
+            }
+            """, query, query, query, query, query, query, query, query, query, query);
+    }
+}
@@ -0,0 +1,62 @@
+package com.codehacks.contactsearch.config;
+
+import com.codehacks.contactsearch.service.AutocompleteIndex;
+import com.codehacks.contactsearch.service.ContactIndexManager;
+import com.codehacks.contactsearch.service.ContactSearchTemplates;
+import com.codehacks.contactsearch.service.IndexOutbox;
+import com.codehacks.contactsearch.service.PasswordResetService;
+import com.codehacks.contactsearch.service.ReindexJobService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.task.TaskSchedulingAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class ScheduledConfigTest {
+
+    private final PasswordResetService passwordResetService = mock(PasswordResetService.class);
+
+    private final IndexOutbox indexOutbox = mock(IndexOutbox.class);
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(TaskSchedulingAutoConfiguration.class))
+            .withUserConfiguration(ScheduledConfig.class)
+            // Registered as is, so the mocks' @Value fields aren't injected
+            .withInitializer(context -> {
+                context.getBeanFactory().registerSingleton("passwordResetService", passwordResetService);
+                context.getBeanFactory().registerSingleton("contactSearchTemplates", mock(ContactSearchTemplates.class));
+                context.getBeanFactory().registerSingleton("autocompleteIndex", mock(AutocompleteIndex.class));
+                context.getBeanFactory().registerSingleton("reindexJobService", mock(ReindexJobService.class));
+                context.getBeanFactory().registerSingleton("contactIndexManager", mock(ContactIndexManager.class));
+                context.getBeanFactory().registerSingleton("indexOutbox", indexOutbox);
+            })
+            .withPropertyValues("contact-search.contacts.outbox.initial-delay=0s",
+                    "contact-search.contacts.outbox.poll-interval=10ms");
+
+    @Test
+    void testLongRunningJobDoesNotHoldUpDrainingTheOutbox() {
+        // Given
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(passwordResetService).cleanupExpiredTokens();
+
+        // When & Then
+        contextRunner.run(context -> {
+            try {
+                verify(passwordResetService, timeout(2000)).cleanupExpiredTokens();
+                verify(indexOutbox, timeout(2000).atLeastOnce()).drain();
+            } finally {
+                release.countDown();
+            }
+        });
+    }
+}
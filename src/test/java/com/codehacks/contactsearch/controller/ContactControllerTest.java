@@ -1,7 +1,12 @@
 package com.codehacks.contactsearch.controller;
 
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.BulkGetResponse;
 import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.ReindexJob;
+import com.codehacks.contactsearch.model.ReindexJobStatus;
 import com.codehacks.contactsearch.service.ContactService;
+import com.codehacks.contactsearch.service.ReindexJobService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.junit.jupiter.api.BeforeEach;
@@ -20,11 +25,13 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -32,6 +39,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -43,6 +51,9 @@ class ContactControllerTest {
     @Mock
     private ContactService contactService;
 
+    @Mock
+    private ReindexJobService reindexJobService;
+
     @InjectMocks
     private ContactController contactController;
 
@@ -114,6 +125,54 @@ class ContactControllerTest {
         verify(contactService, times(1)).getContactById(999L);
     }
 
+    @Test
+    void testGetContactsByIds() throws Exception {
+        // Given
+        when(contactService.getContactsByIds(List.of(1L, 999L)))
+            .thenReturn(new BulkGetResponse<>(List.of(testContact), List.of(999L)));
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/contacts/bulk-get")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"ids\":[1,999]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.found[0].id").value(1))
+                .andExpect(jsonPath("$.found[0].firstName").value("John"))
+                .andExpect(jsonPath("$.missing[0]").value(999));
+
+        verify(contactService, never()).getDocumentsByIds(any());
+    }
+
+    @Test
+    void testGetContactsByIdsFromIndex() throws Exception {
+        // Given
+        ContactDocument document = ContactDocument.from(testContact);
+        when(contactService.getDocumentsByIds(List.of(1L)))
+            .thenReturn(new BulkGetResponse<>(List.of(document), List.of()));
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/contacts/bulk-get")
+                .param("fromIndex", "true")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"ids\":[1]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.found[0].id").value("1"))
+                .andExpect(jsonPath("$.missing").isEmpty());
+    }
+
+    @Test
+    void testGetContactsByIdsRejectsTooManyIds() throws Exception {
+        // Given
+        when(contactService.getContactsByIds(List.of(1L, 2L)))
+            .thenThrow(new IllegalArgumentException("At most 1 ids can be read at once"));
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/contacts/bulk-get")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"ids\":[1,2]}"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testUpdateContact() throws Exception {
         // Given
@@ -188,15 +247,90 @@ class ContactControllerTest {
     @Test
     void testSyncToElasticsearch() throws Exception {
         // Given
-        doNothing().when(contactService).syncAllToElasticsearch();
+        when(reindexJobService.start()).thenReturn(reindexJob(ReindexJobStatus.RUNNING));
 
         // When & Then
         mockMvc.perform(post("/api/v1/contacts/sync"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/v1/contacts/sync/7"))
+                .andExpect(jsonPath("$.id").value(7))
+                .andExpect(jsonPath("$.status").value("RUNNING"));
+
+        verify(reindexJobService, times(1)).start();
+    }
+
+    @Test
+    void testSyncWithoutElasticsearchIsAConflict() throws Exception {
+        // Given
+        when(reindexJobService.start()).thenThrow(new IllegalStateException("No index"));
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/contacts/sync"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void testRebuildIndexStartsARebuildJob() throws Exception {
+        // Given
+        ReindexJob job = reindexJob(ReindexJobStatus.RUNNING);
+        job.setTargetIndex("contacts-20240101-120000");
+        when(reindexJobService.startRebuild()).thenReturn(job);
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/contacts/index/rebuild"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/v1/contacts/sync/7"))
+                .andExpect(jsonPath("$.targetIndex").value("contacts-20240101-120000"));
+    }
+
+    @Test
+    void testGetSyncJobReportsProgressRateAndEta() throws Exception {
+        // Given
+        ReindexJob job = reindexJob(ReindexJobStatus.RUNNING);
+        job.setUpdatedAt(job.getResumedAt().plusSeconds(10));
+        when(reindexJobService.getJob(7L)).thenReturn(Optional.of(job));
+        when(reindexJobService.getJob(8L)).thenReturn(Optional.empty());
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/contacts/sync/7"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.message").value("Sync completed"))
-                .andExpect(jsonPath("$.description").value("All contacts have been synchronized to Elasticsearch"));
+                .andExpect(jsonPath("$.processed").value(3000))
+                .andExpect(jsonPath("$.total").value(10000))
+                .andExpect(jsonPath("$.lastId").value(3000))
+                .andExpect(jsonPath("$.docsPerSecond").value(200.0))
+                .andExpect(jsonPath("$.etaSeconds").value(35));
+        mockMvc.perform(get("/api/v1/contacts/sync/8"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testCancelSyncJob() throws Exception {
+        // Given
+        ReindexJob job = reindexJob(ReindexJobStatus.RUNNING);
+        job.setCancelRequested(true);
+        when(reindexJobService.cancel(7L)).thenReturn(Optional.of(job));
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/contacts/sync/7/cancel"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.cancelRequested").value(true));
+    }
 
-        verify(contactService, times(1)).syncAllToElasticsearch();
+    /**
+     * A job resumed at 1000 of 10000 contacts that has indexed up to 3000
+     */
+    private static ReindexJob reindexJob(ReindexJobStatus status) {
+        ReindexJob job = new ReindexJob();
+        job.setId(7L);
+        job.setStatus(status);
+        job.setTotal(10000);
+        job.setProcessed(3000);
+        job.setLastId(3000);
+        job.setStartedAt(LocalDateTime.of(2024, 1, 1, 12, 0));
+        job.setResumedAt(LocalDateTime.of(2024, 1, 1, 12, 5));
+        job.setResumedProcessed(1000);
+        job.setUpdatedAt(job.getResumedAt());
+        return job;
     }
 
     @Test
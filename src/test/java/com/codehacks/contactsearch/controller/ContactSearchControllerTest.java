@@ -1,23 +1,56 @@
 package com.codehacks.contactsearch.controller;
 
 import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.dto.BatchSearchRequest;
+import com.codehacks.contactsearch.model.BatchSearchResult;
+import com.codehacks.contactsearch.model.ContactFields;
+import com.codehacks.contactsearch.model.CursorPage;
+import com.codehacks.contactsearch.model.FusedPage;
+import com.codehacks.contactsearch.model.SearchMode;
+import com.codehacks.contactsearch.model.SearchResponse;
+import com.codehacks.contactsearch.model.SearchTier;
+import com.codehacks.contactsearch.model.TieredPage;
 import com.codehacks.contactsearch.service.ContactSearchService;
+import com.codehacks.contactsearch.service.FullTextContactSearch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.elasticsearch.core.suggest.Completion;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,6 +61,12 @@ class ContactSearchControllerTest {
     @Mock
     private ContactSearchService contactSearchService;
 
+    @Mock
+    private FullTextContactSearch fullTextContactSearch;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
     @InjectMocks
     private ContactSearchController contactSearchController;
 
@@ -49,11 +88,16 @@ class ContactSearchControllerTest {
         );
     }
 
+    private static SearchResponse<ContactDocument> page(String query, List<ContactDocument> results) {
+        return SearchResponse.of(query, results, results.size(), true, false, false, 1, 1L);
+    }
+
     @Test
     void testSearchContacts() throws Exception {
         // Given
         List<ContactDocument> results = Arrays.asList(testContact1, testContact2);
-        when(contactSearchService.searchContacts("John", 10)).thenReturn(results);
+        when(contactSearchService.searchWithMetadata(SearchMode.STANDARD, "John", 0, 10, ContactFields.ALL, null))
+            .thenReturn(page("John", results));
 
         // When & Then
         mockMvc.perform(get("/api/v1/search/contacts")
@@ -61,15 +105,123 @@ class ContactSearchControllerTest {
                 .param("size", "10"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").isArray())
+                .andExpect(header().doesNotExist(ContactSearchController.PARTIAL_RESULTS_HEADER))
                 .andExpect(jsonPath("$[0].firstName").value("John"))
                 .andExpect(jsonPath("$[1].firstName").value("Jane"));
     }
 
+    @Test
+    void testSmartSearchReportsAnsweringTier() throws Exception {
+        // Given
+        when(contactSearchService.smartSearch("Jhon", 0, 10, ContactFields.ALL, null))
+            .thenReturn(new TieredPage<>(List.of(testContact1), SearchTier.FUZZY));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts/smart")
+                .param("query", "Jhon"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ContactSearchController.SEARCH_TIER_HEADER, "fuzzy"))
+                .andExpect(header().doesNotExist(ContactSearchController.PARTIAL_RESULTS_HEADER))
+                .andExpect(header().doesNotExist(ContactSearchController.DEGRADED_RESULTS_HEADER))
+                .andExpect(jsonPath("$[0].firstName").value("John"));
+    }
+
+    @Test
+    void testSmartSearchMarksPartialAndDegradedResults() throws Exception {
+        // Given
+        when(contactSearchService.smartSearch("Jhon", 0, 10, ContactFields.ALL, null))
+            .thenReturn(new TieredPage<>(List.of(testContact1), SearchTier.SPELLING, true, true));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts/smart")
+                .param("query", "Jhon"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ContactSearchController.PARTIAL_RESULTS_HEADER, "true"))
+                .andExpect(header().string(ContactSearchController.DEGRADED_RESULTS_HEADER, "true"));
+    }
+
+    @Test
+    void testFusedSearchMarksPartialResults() throws Exception {
+        // Given
+        when(contactSearchService.fusedSearch("Jon", 0, 10, ContactFields.ALL, null))
+            .thenReturn(new FusedPage<>(List.of(testContact1), List.of(SearchMode.FUZZY), true, false));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts/fused")
+                .param("query", "Jon"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ContactSearchController.PARTIAL_RESULTS_HEADER, "true"))
+                .andExpect(header().doesNotExist(ContactSearchController.DEGRADED_RESULTS_HEADER));
+    }
+
+    @Test
+    void testFusedSearchListsFusedStrategies() throws Exception {
+        // Given
+        when(contactSearchService.fusedSearch("Jon", 0, 10, ContactFields.ALL, null))
+            .thenReturn(new FusedPage<>(List.of(testContact1, testContact2),
+                List.of(SearchMode.FUZZY, SearchMode.PARTIAL_MATCH)));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts/fused")
+                .param("query", "Jon"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ContactSearchController.SEARCH_STRATEGIES_HEADER, "fuzzy,partial_match"))
+                .andExpect(jsonPath("$[0].firstName").value("John"))
+                .andExpect(jsonPath("$[1].firstName").value("Jane"));
+    }
+
+    @Test
+    void testBatchSearchStreamsOneLinePerSearch() throws Exception {
+        // Given
+        doAnswer(invocation -> {
+            Consumer<List<BatchSearchResult>> sink = invocation.getArgument(2);
+            sink.accept(List.of(new BatchSearchResult(0, List.of(testContact1))));
+            sink.accept(List.of(new BatchSearchResult(1, List.of(), false, true)));
+            return null;
+        }).when(contactSearchService).batchSearch(anyList(), eq(null), any());
+
+        // When
+        MvcResult result = mockMvc.perform(post("/api/v1/search/contacts/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"searches\":[{\"mode\":\"STANDARD\",\"query\":\"John\"},"
+                    + "{\"mode\":\"CITY\",\"query\":\"Boston\",\"size\":5}]}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Then
+        String[] lines = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString().split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readTree(lines[0]).at("/results/0/firstName").asText()).isEqualTo("John");
+        assertThat(objectMapper.readTree(lines[1]).get("index").asInt()).isEqualTo(1);
+        assertThat(objectMapper.readTree(lines[1]).get("results")).isEmpty();
+        assertThat(objectMapper.readTree(lines[0]).get("degraded").asBoolean()).isFalse();
+        assertThat(objectMapper.readTree(lines[1]).get("degraded").asBoolean()).isTrue();
+        assertThat(objectMapper.readTree(lines[1]).get("partial").asBoolean()).isFalse();
+    }
+
+    @Test
+    void testBatchSearchRejectsUnsupportedBatch() throws Exception {
+        // Given
+        doThrow(new IllegalArgumentException("Suggestions are not supported in a batch"))
+            .when(contactSearchService).validateBatch(anyList());
+
+        // When & Then
+        mockMvc.perform(post("/api/v1/search/contacts/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"searches\":[{\"mode\":\"SUGGEST\",\"query\":\"jo\"}]}"))
+                .andExpect(status().isBadRequest());
+        verify(contactSearchService, never()).batchSearch(anyList(), any(), any());
+    }
+
     @Test
     void testAutocompleteSearch() throws Exception {
         // Given
         List<ContactDocument> results = Arrays.asList(testContact1);
-        when(contactSearchService.autocompleteSearch("Jo", 5)).thenReturn(results);
+        when(contactSearchService.searchWithMetadata(SearchMode.AUTOCOMPLETE, "Jo", 0, 5, ContactFields.ALL, null))
+            .thenReturn(page("Jo", results));
 
         // When & Then
         mockMvc.perform(get("/api/v1/search/contacts/autocomplete")
@@ -80,11 +232,27 @@ class ContactSearchControllerTest {
                 .andExpect(jsonPath("$[0].firstName").value("John"));
     }
 
+    @Test
+    void testSuggestSearchHidesCompletionInputs() throws Exception {
+        // Given
+        testContact1.setSuggest(List.of(new Completion(new String[]{"John"})));
+        when(contactSearchService.searchWithMetadata(SearchMode.SUGGEST, "john sm", 0, 5, ContactFields.ALL, null))
+            .thenReturn(page("john sm", List.of(testContact1)));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts/suggest")
+                .param("query", "john sm"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].firstName").value("John"))
+                .andExpect(jsonPath("$[0].suggest").doesNotExist());
+    }
+
     @Test
     void testFuzzySearch() throws Exception {
         // Given
         List<ContactDocument> results = Arrays.asList(testContact1);
-        when(contactSearchService.fuzzySearch("Jhon", 10)).thenReturn(results);
+        when(contactSearchService.searchWithMetadata(SearchMode.FUZZY, "Jhon", 0, 10, ContactFields.ALL, null))
+            .thenReturn(page("Jhon", results));
 
         // When & Then
         mockMvc.perform(get("/api/v1/search/contacts/fuzzy")
@@ -99,7 +267,8 @@ class ContactSearchControllerTest {
     void testSearchByCity() throws Exception {
         // Given
         List<ContactDocument> results = Arrays.asList(testContact1);
-        when(contactSearchService.searchByCity("New York", 10)).thenReturn(results);
+        when(contactSearchService.searchWithMetadata(SearchMode.CITY, "New York", 0, 10, ContactFields.ALL, null))
+            .thenReturn(page("New York", results));
 
         // When & Then
         mockMvc.perform(get("/api/v1/search/contacts/city")
@@ -114,7 +283,8 @@ class ContactSearchControllerTest {
     void testSpellingCorrectionSearch() throws Exception {
         // Given
         List<ContactDocument> results = Arrays.asList(testContact1);
-        when(contactSearchService.spellingCorrectionSearch("Jhon Smith", 10)).thenReturn(results);
+        when(contactSearchService.searchWithMetadata(SearchMode.SPELLING_CORRECTION, "Jhon Smith", 0, 10, ContactFields.ALL, null))
+            .thenReturn(page("Jhon Smith", results));
 
         // When & Then
         mockMvc.perform(get("/api/v1/search/contacts/spelling-correction")
@@ -129,7 +299,8 @@ class ContactSearchControllerTest {
     void testPartialMatchSearch() throws Exception {
         // Given
         List<ContactDocument> results = Arrays.asList(testContact1);
-        when(contactSearchService.partialMatchSearch("Rob", 10)).thenReturn(results);
+        when(contactSearchService.searchWithMetadata(SearchMode.PARTIAL_MATCH, "Rob", 0, 10, ContactFields.ALL, null))
+            .thenReturn(page("Rob", results));
 
         // When & Then
         mockMvc.perform(get("/api/v1/search/contacts/partial-match")
@@ -144,7 +315,8 @@ class ContactSearchControllerTest {
     void testSearchWithDefaultSize() throws Exception {
         // Given
         List<ContactDocument> results = Arrays.asList(testContact1);
-        when(contactSearchService.searchContacts("John", 10)).thenReturn(results);
+        when(contactSearchService.searchWithMetadata(SearchMode.STANDARD, "John", 0, 10, ContactFields.ALL, null))
+            .thenReturn(page("John", results));
 
         // When & Then
         mockMvc.perform(get("/api/v1/search/contacts")
@@ -154,10 +326,56 @@ class ContactSearchControllerTest {
                 .andExpect(jsonPath("$[0].firstName").value("John"));
     }
 
+    @Test
+    void testSearchReturnsOnlyRequestedFields() throws Exception {
+        // Given
+        ContactFields fields = ContactFields.parse("firstName");
+        when(contactSearchService.searchWithMetadata(SearchMode.FUZZY, "Jhon", 0, 10, fields, null))
+            .thenReturn(page("Jhon", List.of(testContact1)));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts/fuzzy")
+                .param("query", "Jhon")
+                .param("fields", "firstName"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value("1"))
+                .andExpect(jsonPath("$[0].firstName").value("John"))
+                .andExpect(jsonPath("$[0].email").doesNotExist())
+                .andExpect(jsonPath("$[0].createdAt").doesNotExist());
+    }
+
+    @Test
+    void testSearchRejectsUnknownField() throws Exception {
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts")
+                .param("query", "John")
+                .param("fields", "firstName,password"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("UNKNOWN_FIELD"))
+                .andExpect(jsonPath("$.message").value("Unknown contact field: password"));
+    }
+
+    @Test
+    void testFullTextSearchIsServedByTheReportingSearch() throws Exception {
+        // Given
+        when(fullTextContactSearch.searchContacts("john -smith", 0, 100, ContactFields.parse("firstName")))
+            .thenReturn(List.of(testContact2));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts/full-text")
+                .param("query", "john -smith")
+                .param("fields", "firstName"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].firstName").value("Jane"))
+                .andExpect(jsonPath("$[0].city").doesNotExist());
+        verify(contactSearchService, never()).searchContacts(any(), anyInt(), anyInt(), any());
+    }
+
     @Test
     void testSearchWithEmptyResults() throws Exception {
         // Given
-        when(contactSearchService.searchContacts("NonExistent", 10)).thenReturn(Arrays.asList());
+        when(contactSearchService.searchWithMetadata(SearchMode.STANDARD, "NonExistent", 0, 10, ContactFields.ALL, null))
+            .thenReturn(page("NonExistent", Arrays.asList()));
 
         // When & Then
         mockMvc.perform(get("/api/v1/search/contacts")
@@ -167,4 +385,190 @@ class ContactSearchControllerTest {
                 .andExpect(jsonPath("$").isArray())
                 .andExpect(jsonPath("$").isEmpty());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testSearchWithOffset() throws Exception {
+        // Given
+        List<ContactDocument> results = Arrays.asList(testContact2);
+        when(contactSearchService.searchWithMetadata(SearchMode.STANDARD, "John", 10, 5, ContactFields.ALL, null))
+            .thenReturn(page("John", results));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts")
+                .param("query", "John")
+                .param("offset", "10")
+                .param("size", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isArray())
+                .andExpect(jsonPath("$[0].firstName").value("Jane"));
+    }
+
+    @Test
+    void testSearchEnvelopeReportsTotalsAndTimings() throws Exception {
+        // Given
+        ContactFields fields = ContactFields.parse("lastName");
+        when(contactSearchService.searchWithMetadata(SearchMode.CITY, "New York", 0, 10, fields, null))
+            .thenReturn(SearchResponse.of("New York", List.of(testContact1), 1000, false, false, false, 15, 9L));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts/city")
+                .param("city", "New York")
+                .param("fields", "lastName")
+                .param("envelope", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.query").value("New York"))
+                .andExpect(jsonPath("$.results[0].lastName").value("Smith"))
+                .andExpect(jsonPath("$.results[0].firstName").doesNotExist())
+                .andExpect(jsonPath("$.totalResults").value(1000))
+                .andExpect(jsonPath("$.totalResultsExact").value(false))
+                .andExpect(jsonPath("$.partial").value(false))
+                .andExpect(jsonPath("$.searchTimeMs").value(15))
+                .andExpect(jsonPath("$.tookMs").value(9));
+    }
+
+    @Test
+    void testSearchPassesBudgetAndMarksPartialResults() throws Exception {
+        // Given
+        when(contactSearchService.searchWithMetadata(
+                SearchMode.PARTIAL_MATCH, "Rob", 0, 10, ContactFields.ALL, Duration.ofMillis(250)))
+            .thenReturn(SearchResponse.of("Rob", List.of(testContact1), 1, true, true, false, 260, 251L));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts/partial-match")
+                .param("query", "Rob")
+                .header(ContactSearchController.SEARCH_BUDGET_HEADER, "250"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ContactSearchController.PARTIAL_RESULTS_HEADER, "true"))
+                .andExpect(jsonPath("$[0].firstName").value("John"));
+    }
+
+    @Test
+    void testSmartFusedAndBatchSearchesPassBudget() throws Exception {
+        // Given
+        Duration budget = Duration.ofMillis(250);
+        when(contactSearchService.smartSearch("Jhon", 0, 10, ContactFields.ALL, budget))
+            .thenReturn(new TieredPage<>(List.of(testContact1), SearchTier.FUZZY));
+        when(contactSearchService.fusedSearch("Jon", 0, 10, ContactFields.ALL, budget))
+            .thenReturn(new FusedPage<>(List.of(testContact1), List.of(SearchMode.FUZZY)));
+
+        // When
+        mockMvc.perform(get("/api/v1/search/contacts/smart")
+                .param("query", "Jhon")
+                .header(ContactSearchController.SEARCH_BUDGET_HEADER, "250"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].firstName").value("John"));
+        mockMvc.perform(get("/api/v1/search/contacts/fused")
+                .param("query", "Jon")
+                .header(ContactSearchController.SEARCH_BUDGET_HEADER, "250"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].firstName").value("John"));
+        MvcResult result = mockMvc.perform(post("/api/v1/search/contacts/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(ContactSearchController.SEARCH_BUDGET_HEADER, "250")
+                .content("{\"searches\":[{\"mode\":\"STANDARD\",\"query\":\"John\"}]}"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+
+        // Then
+        verify(contactSearchService).batchSearch(anyList(), eq(budget), any());
+    }
+
+    @Test
+    void testSmartFusedAndBatchSearchesRejectNonPositiveBudget() throws Exception {
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts/smart")
+                .param("query", "Jhon")
+                .header(ContactSearchController.SEARCH_BUDGET_HEADER, "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/search/contacts/fused")
+                .param("query", "Jon")
+                .header(ContactSearchController.SEARCH_BUDGET_HEADER, "-5"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/api/v1/search/contacts/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(ContactSearchController.SEARCH_BUDGET_HEADER, "0")
+                .content("{\"searches\":[{\"mode\":\"STANDARD\",\"query\":\"John\"}]}"))
+                .andExpect(status().isBadRequest());
+        verify(contactSearchService, never()).smartSearch(any(), anyInt(), anyInt(), any(), any());
+        verify(contactSearchService, never()).fusedSearch(any(), anyInt(), anyInt(), any(), any());
+        verify(contactSearchService, never()).batchSearch(anyList(), any(), any());
+    }
+
+    @Test
+    void testSearchRejectsNonPositiveBudget() throws Exception {
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts")
+                .param("query", "John")
+                .header(ContactSearchController.SEARCH_BUDGET_HEADER, "0"))
+                .andExpect(status().isBadRequest());
+        verify(contactSearchService, never()).searchWithMetadata(any(), any(), anyInt(), anyInt(), any(), any());
+    }
+
+    @Test
+    void testDegradedSearchIsMarkedAndCursorSearchIsUnavailable() throws Exception {
+        // Given
+        when(contactSearchService.searchWithMetadata(SearchMode.STANDARD, "John", 0, 10, ContactFields.ALL, null))
+            .thenReturn(SearchResponse.of("John", List.of(testContact1), 1, false, false, true, 4, null));
+        when(contactSearchService.searchWithCursor(SearchMode.STANDARD, "John", "*", 10, ContactFields.ALL))
+            .thenThrow(CallNotPermittedException.createCallNotPermittedException(CircuitBreaker.ofDefaults("test")));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts")
+                .param("query", "John")
+                .param("envelope", "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ContactSearchController.DEGRADED_RESULTS_HEADER, "true"))
+                .andExpect(header().doesNotExist(ContactSearchController.PARTIAL_RESULTS_HEADER))
+                .andExpect(jsonPath("$.degraded").value(true))
+                .andExpect(jsonPath("$.results[0].firstName").value("John"));
+        mockMvc.perform(get("/api/v1/search/contacts")
+                .param("query", "John")
+                .param("cursor", "*"))
+                .andExpect(status().isServiceUnavailable());
+    }
+
+    @Test
+    void testSearchWithCursorReturnsNextCursorHeader() throws Exception {
+        // Given
+        CursorPage<ContactDocument> page = new CursorPage<>(Arrays.asList(testContact1), "next-cursor");
+        when(contactSearchService.searchWithCursor(SearchMode.PARTIAL_MATCH, "Jo", "*", 1, ContactFields.ALL)).thenReturn(page);
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts/partial-match")
+                .param("query", "Jo")
+                .param("size", "1")
+                .param("cursor", "*"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "next-cursor"))
+                .andExpect(jsonPath("$[0].firstName").value("John"));
+    }
+
+    @Test
+    void testSearchWithCursorOnLastPageOmitsHeader() throws Exception {
+        // Given
+        CursorPage<ContactDocument> page = new CursorPage<>(Arrays.asList(testContact2), null);
+        when(contactSearchService.searchWithCursor(SearchMode.STANDARD, "John", "abc", 10, ContactFields.ALL)).thenReturn(page);
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts")
+                .param("query", "John")
+                .param("cursor", "abc"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andExpect(jsonPath("$[0].firstName").value("Jane"));
+    }
+
+    @Test
+    void testSearchWithInvalidCursor() throws Exception {
+        // Given
+        when(contactSearchService.searchWithCursor(SearchMode.STANDARD, "John", "bad", 10, ContactFields.ALL))
+                .thenThrow(new IllegalArgumentException("Invalid search cursor"));
+
+        // When & Then
+        mockMvc.perform(get("/api/v1/search/contacts")
+                .param("query", "John")
+                .param("cursor", "bad"))
+                .andExpect(status().isBadRequest());
+    }
+}
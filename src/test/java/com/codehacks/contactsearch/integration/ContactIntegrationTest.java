@@ -143,7 +143,7 @@ class ContactIntegrationTest {
     }
 
     @Test
-    void testSearchFunctionality() {
+    void testSearchFunctionality() throws InterruptedException {
         // Create test contacts
         Contact contact1 = new Contact();
         contact1.setFirstName("Alice");
@@ -167,7 +167,9 @@ class ContactIntegrationTest {
                 String.class
         );
 
-        assertThat(syncResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(syncResponse.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+        assertThat(awaitSyncJob("http://localhost:" + port + syncResponse.getHeaders().getLocation()))
+                .contains("\"status\":\"COMPLETED\"");
 
         // Test search endpoint
         ResponseEntity<String> searchResponse = restTemplate.getForEntity(
@@ -180,6 +182,18 @@ class ContactIntegrationTest {
         assertThat(searchResponse.getBody()).contains("Johnson");
     }
 
+    private String awaitSyncJob(String jobUrl) throws InterruptedException {
+        String job = null;
+        for (int attempt = 0; attempt < 100; attempt++) {
+            job = restTemplate.getForEntity(jobUrl, String.class).getBody();
+            if (job != null && !job.contains("\"status\":\"RUNNING\"")) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        return job;
+    }
+
     @Test
     void testHealthEndpoint() {
         ResponseEntity<String> healthResponse = restTemplate.getForEntity(
@@ -0,0 +1,168 @@
+package com.codehacks.contactsearch.integration;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.SearchMode;
+import com.codehacks.contactsearch.service.ContactQueryFactory;
+import com.codehacks.contactsearch.service.WildcardReferenceQuery;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.elasticsearch.core.convert.MappingElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.mapping.SimpleElasticsearchMappingContext;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the ngram "contains" clauses of the spelling-correction and
+ * partial-match queries return the same contacts as the leading-wildcard
+ * clauses they replaced, on a fixed set of contacts and queries.
+ * <p>
+ * The wildcard reference is built by {@link WildcardReferenceQuery}, so every
+ * other clause is identical on both sides.
+ */
+@Testcontainers
+class ContainsMatchGoldenSetTest {
+
+    private static final String INDEX = "contacts-golden";
+
+    private static final String[][] CONTACTS = {
+        {"John", "Smith", "john.smith@email.com", "New York"},
+        {"Jon", "Smyth", "jon.smyth@example.org", "York"},
+        {"Johanna", "Schmidt", "johanna.schmidt@email.com", "Berlin"},
+        {"Mary-Jane", "Watson", "mj.watson@dailybugle.com", "New York"},
+        {"Sean", "O'Brien", "sean.obrien@example.ie", "Dublin"},
+        {"Alexandra", "Alexandrovich", "alexandra.alexandrovich@example.com", "Saint Petersburg"},
+        {"Alex", "MacSmith", "alex.macsmith@email.com", "Glasgow"},
+        {"Robert", "Johnson", "rob.johnson@example.com", "Los Angeles"},
+        {"Roberta", "Robinson", "roberta+work@example.com", "San Angelo"},
+        {"Christine", "Anderson", "c.anderson@email.com", "Chicago"},
+        {"Chris", "Andersen", "chris.andersen@example.dk", "Copenhagen"},
+        {"Patricia", "Garcia", "pat.garcia@example.com", "Madrid"},
+        {"Michael", "Miller", "mike.miller@email.com", "Houston"},
+        {"Michaela", "Millner", "michaela.millner@example.com", "Phoenix"},
+        {"Samantha", "Taylor", "sam.taylor@example.com", "London"},
+        {"Samuel", "Tailor", "samuel.tailor@email.com", "Londonderry"},
+        {"Maria", "Martinez", "maria.martinez@example.com", "Lagos"},
+        {"Mario", "Martins", "mario.martins@example.com", "Johannesburg"},
+        {"Joseph", "Jackson", "joe.jackson@email.com", "Boston"},
+        {"Josephine", "Jacobs", "josephine.jacobs@example.com", "Jackson"},
+    };
+
+    private static final List<String> QUERIES = List.of(
+        "mit", "smi", "ohn", "jhon", "smiht", "jo", "ork", "ang", "ny", "h.sm", "email.com", "example.",
+        "o'b", "ary-ja", "+work", "andr", "alexandrovi", "alexandrovich", "alexandra.alexandrovich",
+        "ondon", "martin", "john smith", "new york", "zzq", "12");
+
+    @Container
+    static GenericContainer<?> elasticsearch = new GenericContainer<>(DockerImageName.parse("docker.elastic.co/elasticsearch/elasticsearch:8.8.0"))
+            .withEnv("discovery.type", "single-node")
+            .withEnv("xpack.security.enabled", "false")
+            .withEnv("ES_JAVA_OPTS", "-Xms512m -Xmx512m")
+            .withExposedPorts(9200);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final ContactQueryFactory contactQueryFactory = new ContactQueryFactory();
+
+    private static RestClient restClient;
+
+    private static ElasticsearchClient client;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        restClient = RestClient.builder(new HttpHost(elasticsearch.getHost(), elasticsearch.getMappedPort(9200))).build();
+        client = new ElasticsearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper()));
+
+        ObjectNode body = objectMapper.createObjectNode();
+        body.set("settings", readResource("elasticsearch/contact-settings.json"));
+        body.set("mappings", readResource("elasticsearch/contact-mapping.json"));
+        client.indices().create(c -> c.index(INDEX).withJson(new StringReader(body.toString())));
+
+        MappingElasticsearchConverter converter =
+                new MappingElasticsearchConverter(new SimpleElasticsearchMappingContext());
+        converter.afterPropertiesSet();
+        BulkRequest.Builder bulk = new BulkRequest.Builder();
+        for (int i = 0; i < CONTACTS.length; i++) {
+            Contact contact = new Contact();
+            contact.setId((long) i + 1);
+            contact.setFirstName(CONTACTS[i][0]);
+            contact.setLastName(CONTACTS[i][1]);
+            contact.setEmail(CONTACTS[i][2]);
+            contact.setCity(CONTACTS[i][3]);
+            String json = converter.mapObject(ContactDocument.forIndexing(contact)).toJson();
+            String id = contact.getId().toString();
+            bulk.operations(op -> op.index(x -> x.index(INDEX).id(id).document(JsonData.fromJson(json))));
+        }
+        assertThat(client.bulk(bulk.refresh(Refresh.True).build()).errors())
+            .isFalse();
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        restClient.close();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = SearchMode.class, names = {"SPELLING_CORRECTION", "PARTIAL_MATCH"})
+    void testNgramContainsMatchesWildcardReference(SearchMode mode) throws IOException {
+        for (String query : QUERIES) {
+            Query current = contactQueryFactory.build(mode, query);
+
+            assertThat(hitIds(current))
+                .as("%s '%s'", mode, query)
+                .isEqualTo(hitIds(WildcardReferenceQuery.of(current, query)));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = SearchMode.class, names = {"SPELLING_CORRECTION", "PARTIAL_MATCH"})
+    void testMixedCaseQueriesMatchAtLeastTheWildcardReference(SearchMode mode) throws IOException {
+        // Wildcards were case-sensitive against lowercased tokens; the ngram terms are not
+        for (String query : List.of("Smi", "OHN", "O'B", "Email.com")) {
+            Query current = contactQueryFactory.build(mode, query);
+
+            assertThat(hitIds(current))
+                .as("%s '%s'", mode, query)
+                .containsAll(hitIds(WildcardReferenceQuery.of(current, query)));
+        }
+    }
+
+    private static Set<String> hitIds(Query query) throws IOException {
+        return client.search(s -> s.index(INDEX).query(query).size(CONTACTS.length), JsonData.class)
+                .hits().hits().stream()
+                .map(Hit::id)
+                .collect(Collectors.toSet());
+    }
+
+    private static ObjectNode readResource(String path) throws IOException {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            return (ObjectNode) objectMapper.readTree(in);
+        }
+    }
+}
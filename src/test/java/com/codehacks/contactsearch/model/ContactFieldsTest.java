@@ -0,0 +1,54 @@
+package com.codehacks.contactsearch.model;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContactFieldsTest {
+
+    @Test
+    void testParseAddsIdAndKeepsCanonicalOrder() {
+        // When
+        ContactFields fields = ContactFields.parse(" city, firstName,city ");
+
+        // Then
+        assertThat(fields.names()).containsExactly("id", "firstName", "city");
+    }
+
+    @Test
+    void testParseBlankMeansAllFields() {
+        // Then
+        assertThat(ContactFields.parse(null)).isEqualTo(ContactFields.ALL);
+        assertThat(ContactFields.parse(" ")).isEqualTo(ContactFields.ALL);
+        assertThat(ContactFields.ALL.names()).doesNotContain("suggest");
+    }
+
+    @Test
+    void testParseRejectsUnknownField() {
+        // Then
+        assertThatThrownBy(() -> ContactFields.parse("firstName,suggest"))
+            .isInstanceOfSatisfying(UnknownFieldException.class,
+                e -> assertThat(e.getField()).isEqualTo("suggest"));
+    }
+
+    @Test
+    void testProjectionKeepsOnlyRequestedFields() {
+        // Given
+        ContactDocument document = new ContactDocument();
+        document.setId("1");
+        document.setFirstName("John");
+        document.setLastName("Doe");
+        document.setEmail("john.doe@email.com");
+
+        // When
+        ContactProjection projection = ContactProjection.of(document, ContactFields.parse("lastName"));
+
+        // Then
+        assertThat(projection).isEqualTo(new ContactProjection("1", null, "Doe", null, null, null, null));
+        assertThat(ContactFields.parse("lastName").names()).isEqualTo(List.of("id", "lastName"));
+    }
+}
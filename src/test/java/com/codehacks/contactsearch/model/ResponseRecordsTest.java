@@ -74,6 +74,43 @@ class ResponseRecordsTest {
         assertThat(response.timestamp()).isBeforeOrEqualTo(LocalDateTime.now());
     }
 
+    @Test
+    void testSearchResponseWithSearchMetadata() {
+        // Given
+        List<String> results = Arrays.asList("John Doe", "John Smith");
+
+        // When
+        SearchResponse<String> response = SearchResponse.of("John", results, 1000, false, true, true, 150, 12L);
+        SearchResponse<String> defaults = SearchResponse.of("John", results, 2, 150);
+
+        // Then
+        assertThat(response.totalResultsExact()).isFalse();
+        assertThat(response.partial()).isTrue();
+        assertThat(response.degraded()).isTrue();
+        assertThat(response.tookMs()).isEqualTo(12L);
+        assertThat(defaults.totalResultsExact()).isTrue();
+        assertThat(defaults.partial()).isFalse();
+        assertThat(defaults.degraded()).isFalse();
+        assertThat(defaults.tookMs()).isNull();
+    }
+
+    @Test
+    void testSearchResponseMapKeepsMetadata() {
+        // Given
+        SearchResponse<String> response = SearchResponse.of("Jo", List.of("John", "Joe"), 1000, false, true, false, 20, null);
+
+        // When
+        SearchResponse<Integer> mapped = response.map(String::length);
+
+        // Then
+        assertThat(mapped.results()).containsExactly(4, 3);
+        assertThat(mapped.totalResults()).isEqualTo(1000);
+        assertThat(mapped.totalResultsExact()).isFalse();
+        assertThat(mapped.partial()).isTrue();
+        assertThat(mapped.tookMs()).isNull();
+        assertThat(mapped.timestamp()).isEqualTo(response.timestamp());
+    }
+
     @Test
     void testErrorResponseWithDetails() {
         // Given
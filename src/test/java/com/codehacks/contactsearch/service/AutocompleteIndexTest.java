@@ -0,0 +1,376 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.ContactDeletion;
+import com.codehacks.contactsearch.repository.ContactDeletionRepository;
+import com.codehacks.contactsearch.repository.ContactRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AutocompleteIndexTest {
+
+    @Mock
+    private ContactRepository contactRepository;
+
+    @Mock
+    private ContactDeletionRepository contactDeletionRepository;
+
+    private AutocompleteIndex autocompleteIndex;
+
+    @BeforeEach
+    void setUp() {
+        autocompleteIndex = new AutocompleteIndex(contactRepository, contactDeletionRepository, true, 3);
+        autocompleteIndex.load(List.of(
+            contact("1", "John", "Smith", "john.smith@email.com", "New York"),
+            contact("2", "Jane", "Johnson", "jane.j@email.com", "Boston"),
+            contact("3", "Mary", "Jones", "mary@email.com", "Johannesburg"),
+            contact("4", "Bob", "Brown", "bob@email.com", "New Orleans")
+        ));
+    }
+
+    private static ContactDocument contact(String id, String firstName, String lastName, String email, String city) {
+        return new ContactDocument(id, firstName, lastName, email, city, LocalDateTime.now(), LocalDateTime.now());
+    }
+
+    private AutocompleteIndex index(Path snapshot) {
+        return new AutocompleteIndex(contactRepository, contactDeletionRepository, true, 3, snapshot.toString(),
+            Duration.ofMinutes(1), Duration.ofDays(1));
+    }
+
+    private List<String> ids(String query, int offset, int size) {
+        return autocompleteIndex.search(query, offset, size).orElseThrow().stream()
+            .map(ContactDocument::getId)
+            .toList();
+    }
+
+    @Test
+    void testPrefixRankedByFieldWeight() {
+        // "jo": John (first name, 3), Johnson and Jones (last name, 3), Johannesburg (city, 1)
+        assertThat(ids("Jo", 0, 3)).containsExactly("1", "2", "3");
+        assertThat(ids("new", 0, 10)).containsExactly("1", "4");
+        assertThat(ids("smith@", 0, 10)).containsExactly("1");
+    }
+
+    @Test
+    void testUnknownPrefixIsEmpty() {
+        assertThat(ids("xyz", 0, 5)).isEmpty();
+    }
+
+    @Test
+    void testMultiTermScoresEveryTerm() {
+        // Given: John Smith matches both terms
+        // When / Then
+        assertThat(ids("jo sm", 0, 2)).containsExactly("1", "2");
+    }
+
+    @Test
+    void testFallsBackForEveryPageWhenATermMatchesMoreThanTopK() {
+        // Given: four contacts contain an "email.com" token, only three are kept per node
+        // When / Then
+        assertThat(autocompleteIndex.search("email", 0, 3)).isEmpty();
+        assertThat(autocompleteIndex.search("email", 2, 2)).isEmpty();
+        assertThat(autocompleteIndex.search("jo email", 0, 3)).isEmpty();
+        assertThat(ids("jo", 0, 2)).containsExactly("1", "2");
+        assertThat(ids("jo", 2, 2)).containsExactly("3");
+    }
+
+    @Test
+    void testTokensSplitLikeTheStandardTokenizer() {
+        // Given: "john.smith@email.com" is indexed as "john.smith" and "email.com"
+        // When / Then
+        assertThat(ids("john.sm", 0, 5)).containsExactly("1");
+        assertThat(ids("jane.j", 0, 5)).containsExactly("2");
+        assertThat(ids("smith@", 0, 5)).containsExactly("1");
+        // Only the last term is a prefix query; a one-letter term before it matches no gram
+        assertThat(ids("j smith", 0, 5)).containsExactly("1");
+        assertThat(ids("smith j", 0, 5)).containsExactly("1", "2", "3");
+        // Nor does a term longer than the longest gram
+        assertThat(ids("abcdefghijklmnopqrstu jo", 0, 5)).isEqualTo(ids("jo", 0, 5));
+    }
+
+    @Test
+    void testUpsertAndRemoveKeepIndexCurrent() {
+        // When
+        autocompleteIndex.upsert(contact("1", "Jonathan", "Smith", "jon@email.com", "Paris"));
+        autocompleteIndex.upsert(contact("5", "Zed", "Zimmer", "zed@email.com", "Zurich"));
+        autocompleteIndex.remove("3");
+
+        // Then
+        assertThat(ids("john", 0, 5)).containsExactly("2");
+        assertThat(ids("jonathan", 0, 5)).containsExactly("1");
+        assertThat(ids("z", 0, 5)).containsExactly("5");
+        assertThat(ids("jones", 0, 5)).isEmpty();
+        assertThat(ids("jo", 0, 3)).containsExactly("1", "2");
+    }
+
+    @Test
+    void testMatchesBruteForceAfterManyWrites() {
+        // Given
+        List<ContactDocument> documents = new ArrayList<>();
+        String[] names = {"ann", "anna", "annabel", "andrew", "andy", "amy", "al", "alan", "alana"};
+        for (int i = 0; i < 60; i++) {
+            documents.add(contact(String.valueOf(i), names[i % names.length], names[(i * 7) % names.length],
+                i + "@mail.com", names[(i * 3) % names.length] + "ville"));
+        }
+        autocompleteIndex = new AutocompleteIndex(contactRepository, contactDeletionRepository, true, 5);
+        autocompleteIndex.load(documents.subList(0, 30));
+        documents.subList(30, 60).forEach(autocompleteIndex::upsert);
+        for (int i = 0; i < 60; i += 4) {
+            autocompleteIndex.remove(String.valueOf(i));
+        }
+        documents.removeIf(document -> Integer.parseInt(document.getId()) % 4 == 0);
+
+        // When / Then: answered exactly when no term matches more than five contacts, otherwise not at all
+        int answered = 0;
+        for (String query : List.of("a", "an", "ann", "anna", "al", "ala", "amy", "andr", "annabelville",
+                "5", "51", "mail", "1", "13", "55 57", "al 59", "alanaville")) {
+            List<String> terms = List.of(query.split(" "));
+            boolean fits = terms.stream().allMatch(term -> documents.stream()
+                .filter(document -> best(document, term) > 0)
+                .count() <= 5);
+            List<String> expected = documents.stream()
+                .filter(document -> score(document, terms) > 0)
+                .sorted((a, b) -> {
+                    int byScore = Integer.compare(score(b, terms), score(a, terms));
+                    return byScore != 0 ? byScore : a.getId().compareTo(b.getId());
+                })
+                .map(ContactDocument::getId)
+                .toList();
+            for (int offset = 0; offset < 10; offset += 3) {
+                Optional<List<ContactDocument>> page = autocompleteIndex.search(query, offset, 3);
+                assertThat(page.isPresent()).as(query).isEqualTo(fits);
+                if (fits) {
+                    assertThat(page.get()).extracting(ContactDocument::getId).as(query)
+                        .isEqualTo(expected.subList(Math.min(offset, expected.size()),
+                            Math.min(offset + 3, expected.size())));
+                    answered++;
+                }
+            }
+        }
+        assertThat(answered).isPositive();
+    }
+
+    private static int score(ContactDocument document, List<String> terms) {
+        return terms.stream().mapToInt(term -> best(document, term)).sum();
+    }
+
+    private static int best(ContactDocument document, String prefix) {
+        return AutocompleteIndex.weightedTokens(document).entrySet().stream()
+            .filter(token -> token.getKey().startsWith(prefix))
+            .mapToInt(token -> token.getValue())
+            .max()
+            .orElse(0);
+    }
+
+    @Test
+    void testNotReadyUntilBuilt() {
+        // Given
+        Contact contact = new Contact();
+        contact.setId(7L);
+        contact.setFirstName("Ada");
+        contact.setLastName("Lovelace");
+        contact.setEmail("ada@email.com");
+        contact.setCity("London");
+        AutocompleteIndex fresh = new AutocompleteIndex(contactRepository, contactDeletionRepository, true, 3);
+        when(contactRepository.findAll()).thenReturn(List.of(contact));
+
+        // When / Then
+        assertThat(fresh.search("ada", 0, 5)).isEmpty();
+        fresh.rebuild();
+        assertThat(fresh.search("ada", 0, 5)).hasValueSatisfying(results ->
+            assertThat(results).extracting(ContactDocument::getId).containsExactly("7"));
+    }
+
+    private static Contact entity(long id, String firstName, String lastName, String city, LocalDateTime updatedAt) {
+        Contact contact = new Contact();
+        contact.setId(id);
+        contact.setFirstName(firstName);
+        contact.setLastName(lastName);
+        contact.setEmail(firstName.toLowerCase() + "@email.com");
+        contact.setCity(city);
+        contact.setCreatedAt(updatedAt);
+        contact.setUpdatedAt(updatedAt);
+        return contact;
+    }
+
+    @Test
+    void testRebuildKeepsWritesMadeWhileReadingTheDatabase() {
+        // Given: Zed is created and Bob deleted here while the rebuild reads the table as it was before
+        LocalDateTime before = LocalDateTime.now().minusMinutes(5);
+        when(contactRepository.findAll()).thenAnswer(invocation -> {
+            autocompleteIndex.upsert(contact("5", "Zed", "Zimmer", "zed@email.com", "Zurich"));
+            autocompleteIndex.remove("4");
+            return List.of(entity(1, "John", "Smith", "Boston", before), entity(4, "Bob", "Brown", "Paris", before));
+        });
+
+        // When
+        autocompleteIndex.rebuild();
+
+        // Then
+        assertThat(ids("zed", 0, 5)).containsExactly("5");
+        assertThat(ids("bob", 0, 5)).isEmpty();
+        assertThat(ids("john", 0, 5)).containsExactly("1");
+    }
+
+    @Test
+    void testReplayDoesNotOverwriteWritesMadeWhileReadingTheDatabase() {
+        // Given: John is renamed here after the replay read his previous row
+        LocalDateTime updated = LocalDateTime.now();
+        when(contactRepository.findByUpdatedAtGreaterThanEqual(any())).thenAnswer(invocation -> {
+            autocompleteIndex.upsert(contact("1", "Jonathan", "Smith", "jon@email.com", "Paris"));
+            return List.of(entity(1, "Johnny", "Smith", "Boston", updated), entity(6, "Ada", "Lovelace", "London", updated));
+        });
+
+        // When
+        autocompleteIndex.replayChanges();
+
+        // Then
+        assertThat(ids("jonathan", 0, 5)).containsExactly("1");
+        assertThat(ids("johnny", 0, 5)).isEmpty();
+        assertThat(ids("ada", 0, 5)).containsExactly("6");
+    }
+
+    @Test
+    void testReplayRemovesContactsDeletedThroughOtherInstances() {
+        // Given: Mary was deleted elsewhere after everything the index has seen
+        LocalDateTime deletedAt = LocalDateTime.now().plusHours(1);
+        when(contactDeletionRepository.findByDeletedAtGreaterThanEqual(any()))
+            .thenReturn(List.of(deletion(3, deletedAt), deletion(99, deletedAt.minusDays(1))));
+
+        // When
+        autocompleteIndex.replayChanges();
+        autocompleteIndex.replayChanges();
+
+        // Then: and the next replay reads from the delete on
+        assertThat(ids("mary", 0, 5)).isEmpty();
+        assertThat(ids("jo", 0, 5)).containsExactly("1", "2");
+        verify(contactRepository).findByUpdatedAtGreaterThanEqual(deletedAt.minusMinutes(1));
+    }
+
+    private static ContactDeletion deletion(long id, LocalDateTime deletedAt) {
+        ContactDeletion deletion = new ContactDeletion();
+        deletion.setContactId(id);
+        deletion.setDeletedAt(deletedAt);
+        return deletion;
+    }
+
+    @Test
+    void testReconcileKeepsContactsCreatedWhileReadingTheDatabase() {
+        // Given
+        when(contactRepository.findAllIds()).thenAnswer(invocation -> {
+            autocompleteIndex.upsert(contact("5", "Zed", "Zimmer", "zed@email.com", "Zurich"));
+            return List.of(1L, 2L, 3L);
+        });
+
+        // When
+        autocompleteIndex.reconcileDeletes();
+
+        // Then
+        assertThat(ids("zed", 0, 5)).containsExactly("5");
+        assertThat(ids("bob", 0, 5)).isEmpty();
+    }
+
+    @Test
+    void testWarmStartFromSnapshotReplaysOnlyChanges(@TempDir Path directory) {
+        // Given: a snapshot written by a previous instance
+        Path snapshot = directory.resolve("autocomplete.snapshot");
+        LocalDateTime written = LocalDateTime.of(2026, 1, 1, 12, 0);
+        when(contactRepository.findAll()).thenReturn(List.of(
+            entity(1, "John", "Smith", "Boston", written),
+            entity(2, "Jane", "Doe", "Paris", written.minusDays(1))));
+        AutocompleteIndex previous = index(snapshot);
+        previous.buildOnStartup();
+        assertThat(snapshot).exists();
+
+        // Meanwhile John was renamed, Mary added and Jane deleted
+        LocalDateTime later = written.plusHours(1);
+        when(contactRepository.findByUpdatedAtGreaterThanEqual(written.minusMinutes(1))).thenReturn(List.of(
+            entity(1, "Johnny", "Smith", "Boston", later),
+            entity(3, "Mary", "Major", "Rome", later)));
+        when(contactRepository.findAllIds()).thenReturn(List.of(1L, 3L));
+
+        // When
+        AutocompleteIndex restarted = index(snapshot);
+        restarted.buildOnStartup();
+
+        // Then
+        verify(contactRepository, times(1)).findAll();
+        assertThat(restarted.search("johnny", 0, 5).orElseThrow()).extracting(ContactDocument::getId).containsExactly("1");
+        assertThat(restarted.search("mary", 0, 5).orElseThrow()).extracting(ContactDocument::getId).containsExactly("3");
+        assertThat(restarted.search("jane", 0, 5).orElseThrow()).isEmpty();
+        assertThat(restarted.search("smi", 0, 5).orElseThrow()).extracting(ContactDocument::getId).containsExactly("1");
+    }
+
+    @Test
+    void testSnapshotRoundTripsIndex(@TempDir Path directory) throws IOException {
+        // Given
+        Path snapshot = directory.resolve("autocomplete.snapshot");
+        AutocompleteSnapshot.write(snapshot, new AutocompleteSnapshot.Contents(3, null, List.of(), new AutocompleteIndex.Node("")));
+
+        // When
+        AutocompleteSnapshot.Contents contents = AutocompleteSnapshot.read(snapshot);
+
+        // Then
+        assertThat(contents.topK()).isEqualTo(3);
+        assertThat(contents.highWaterMark()).isNull();
+        assertThat(contents.contacts()).isEmpty();
+    }
+
+    @Test
+    void testSnapshotBeyondASingleMappingIsRefused(@TempDir Path directory) throws IOException {
+        // Given: a sparse file one byte past what FileChannel.map can map
+        Path snapshot = directory.resolve("autocomplete.snapshot");
+        try (RandomAccessFile file = new RandomAccessFile(snapshot.toFile(), "rw")) {
+            file.setLength(AutocompleteSnapshot.MAX_SIZE + 1);
+        }
+        AutocompleteIndex restarted = index(snapshot);
+
+        // When / Then
+        assertThatThrownBy(() -> AutocompleteSnapshot.read(snapshot))
+            .isInstanceOf(AutocompleteSnapshot.TooLargeException.class);
+        assertThat(restarted.loadSnapshot()).isFalse();
+    }
+
+    @Test
+    void testCorruptSnapshotFallsBackToDatabase(@TempDir Path directory) throws IOException {
+        // Given
+        Path snapshot = directory.resolve("autocomplete.snapshot");
+        when(contactRepository.findAll()).thenReturn(List.of(entity(1, "John", "Smith", "Boston", LocalDateTime.now())));
+        index(snapshot).buildOnStartup();
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length - 3] ^= 0x5A;
+        Files.write(snapshot, bytes);
+
+        // When
+        AutocompleteIndex restarted = index(snapshot);
+
+        // Then
+        assertThatThrownBy(() -> AutocompleteSnapshot.read(snapshot)).isInstanceOf(IOException.class);
+        assertThat(restarted.loadSnapshot()).isFalse();
+        restarted.buildOnStartup();
+        assertThat(restarted.search("john", 0, 5).orElseThrow()).extracting(ContactDocument::getId).containsExactly("1");
+    }
+}
@@ -0,0 +1,76 @@
+package com.codehacks.contactsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientOptions;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.codehacks.contactsearch.config.SearchTimeoutProperties;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class BudgetedSearchOperationsTest {
+
+    private static final SearchTimeoutProperties SEARCH_TIMEOUTS =
+        new SearchTimeoutProperties(Duration.ofSeconds(2), Duration.ofSeconds(5), Map.of(), Duration.ofMillis(500));
+
+    private RestClient restClient;
+
+    private ElasticsearchClient elasticsearchClient;
+
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // Never connected to
+        restClient = RestClient.builder(HttpHost.create("http://localhost:9200")).build();
+        elasticsearchClient = new ElasticsearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper()));
+        elasticsearchTemplate = new ElasticsearchTemplate(elasticsearchClient);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        restClient.close();
+    }
+
+    @Test
+    void testRequestsTimeOutAfterTheBudgetPlusTheGrace() {
+        // Given
+        BudgetedSearchOperations budgetedSearchOperations = new BudgetedSearchOperations(elasticsearchTemplate,
+            elasticsearchClient, SEARCH_TIMEOUTS, Duration.ofSeconds(1));
+
+        // When
+        ElasticsearchOperations operations = budgetedSearchOperations.within(Duration.ofMillis(700));
+
+        // Then
+        RequestConfig requestConfig = ((ElasticsearchTemplate) operations).execute(client ->
+            ((RestClientOptions) client._transportOptions()).restClientRequestOptions().getRequestConfig());
+        assertThat(requestConfig.getSocketTimeout()).isEqualTo(1200);
+        assertThat(requestConfig.getConnectTimeout()).isEqualTo(1000);
+        assertThat(budgetedSearchOperations.within(Duration.ofMillis(700))).isSameAs(operations);
+        assertThat(budgetedSearchOperations.within(Duration.ofMillis(300))).isNotSameAs(operations);
+    }
+
+    @Test
+    void testOtherTransportsUseTheSharedOperations() {
+        // Given
+        ElasticsearchOperations shared = mock(ElasticsearchOperations.class);
+        BudgetedSearchOperations budgetedSearchOperations = new BudgetedSearchOperations(shared,
+            mock(ElasticsearchClient.class), SEARCH_TIMEOUTS, Duration.ofSeconds(1));
+
+        // When / Then
+        assertThat(budgetedSearchOperations.within(Duration.ofMillis(700))).isSameAs(shared);
+    }
+}
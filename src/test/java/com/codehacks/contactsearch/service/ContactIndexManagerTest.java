@@ -0,0 +1,268 @@
+package com.codehacks.contactsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.indices.ElasticsearchIndicesClient;
+import co.elastic.clients.elasticsearch.indices.ExistsAliasRequest;
+import co.elastic.clients.elasticsearch.indices.ForcemergeRequest;
+import co.elastic.clients.elasticsearch.indices.ForcemergeResponse;
+import co.elastic.clients.elasticsearch.indices.GetAliasRequest;
+import co.elastic.clients.elasticsearch.indices.GetAliasResponse;
+import co.elastic.clients.elasticsearch.indices.PutIndicesSettingsRequest;
+import co.elastic.clients.elasticsearch.indices.get_alias.IndexAliases;
+import co.elastic.clients.transport.endpoints.BooleanResponse;
+import com.codehacks.contactsearch.repository.ContactSearchRepository;
+import com.codehacks.contactsearch.repository.IndexInstanceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.index.AliasAction;
+import org.springframework.data.elasticsearch.core.index.AliasActions;
+import org.springframework.data.elasticsearch.core.index.Settings;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ContactIndexManagerTest {
+
+    private static final String NEW_INDEX = "contacts-20240102-120000";
+
+    private static final String OLD_INDEX = "contacts-20240101-120000";
+
+    @Mock
+    private ElasticsearchOperations elasticsearchOperations;
+
+    @Mock
+    private ElasticsearchClient elasticsearchClient;
+
+    @Mock
+    private ElasticsearchIndicesClient indicesClient;
+
+    @Mock
+    private ContactSearchRepository contactSearchRepository;
+
+    @Mock
+    private IndexInstanceRepository indexInstanceRepository;
+
+    @Mock
+    private IndexOperations aliasOps;
+
+    @Mock
+    private IndexOperations newIndexOps;
+
+    @Mock
+    private IndexOperations oldIndexOps;
+
+    private ContactIndexManager contactIndexManager;
+
+    @BeforeEach
+    void setUp() {
+        contactIndexManager = new ContactIndexManager(elasticsearchOperations, elasticsearchClient,
+                Optional.of(contactSearchRepository), indexInstanceRepository);
+        ReflectionTestUtils.setField(contactIndexManager, "propagation", Duration.ZERO);
+        lenient().when(elasticsearchClient.indices()).thenReturn(indicesClient);
+        lenient().when(elasticsearchOperations.indexOps(IndexCoordinates.of(ContactIndexManager.ALIAS)))
+                .thenReturn(aliasOps);
+        lenient().when(elasticsearchOperations.indexOps(IndexCoordinates.of(NEW_INDEX))).thenReturn(newIndexOps);
+        lenient().when(elasticsearchOperations.indexOps(IndexCoordinates.of(OLD_INDEX))).thenReturn(oldIndexOps);
+    }
+
+    @Test
+    void testEnsureIndexCreatesAVersionedIndexBehindTheAlias() throws IOException {
+        // Given
+        when(aliasOps.exists()).thenReturn(false);
+        IndexOperations createdOps = mock(IndexOperations.class);
+        when(elasticsearchOperations.indexOps(any(IndexCoordinates.class))).thenAnswer(invocation -> {
+            IndexCoordinates index = invocation.getArgument(0);
+            return index.getIndexName().equals(ContactIndexManager.ALIAS) ? aliasOps : createdOps;
+        });
+        when(indicesClient.existsAlias(any(ExistsAliasRequest.class))).thenReturn(new BooleanResponse(false));
+
+        // When
+        contactIndexManager.ensureIndex();
+
+        // Then
+        ArgumentCaptor<AliasActions> actions = ArgumentCaptor.forClass(AliasActions.class);
+        verify(createdOps).create(anyMap(), any());
+        verify(createdOps).alias(actions.capture());
+        assertThat(actions.getValue().getActions()).singleElement()
+                .isInstanceOf(AliasAction.Add.class)
+                .satisfies(action -> assertThat(action.getParameters().getAliases())
+                        .containsExactly(ContactIndexManager.ALIAS));
+    }
+
+    @Test
+    void testEnsureIndexLeavesAnExistingIndexAlone() throws IOException {
+        // Given
+        when(aliasOps.exists()).thenReturn(true);
+        when(indicesClient.existsAlias(any(ExistsAliasRequest.class))).thenReturn(new BooleanResponse(false));
+
+        // When
+        contactIndexManager.ensureIndex();
+
+        // Then
+        verify(aliasOps, never()).create(anyMap(), any());
+    }
+
+    @Test
+    void testPrepareRebuildCreatesABulkLoadIndexAndMakesItTheRebuildTarget() throws InterruptedException {
+        // Given
+        when(newIndexOps.exists()).thenReturn(false);
+
+        // When
+        contactIndexManager.prepareRebuild(NEW_INDEX);
+
+        // Then
+        verify(newIndexOps).create(anyMap(), any());
+        verify(newIndexOps).alias(argThat(actions -> actions.getActions().get(0) instanceof AliasAction.Add));
+        assertThat(contactIndexManager.rebuildTarget()).contains(IndexCoordinates.of(NEW_INDEX));
+    }
+
+    @Test
+    void testPrepareRebuildWaitsForEveryInstanceToReportTheTarget() throws InterruptedException {
+        // Given
+        ReflectionTestUtils.setField(contactIndexManager, "propagation", Duration.ofSeconds(10));
+        when(newIndexOps.exists()).thenReturn(true);
+        when(indexInstanceRepository.countReportingOther(eq(NEW_INDEX), any())).thenReturn(1L, 0L);
+
+        // When
+        contactIndexManager.prepareRebuild(NEW_INDEX);
+
+        // Then
+        verify(indexInstanceRepository).report(anyString(), eq(NEW_INDEX), any());
+        verify(indexInstanceRepository, times(2)).countReportingOther(eq(NEW_INDEX), any());
+    }
+
+    @Test
+    void testPrepareRebuildFailsWhenAnInstanceNeverReportsTheTarget() {
+        // Given
+        when(newIndexOps.exists()).thenReturn(true);
+        when(indexInstanceRepository.countReportingOther(eq(NEW_INDEX), any())).thenReturn(1L);
+
+        // When & Then
+        assertThatThrownBy(() -> contactIndexManager.prepareRebuild(NEW_INDEX))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("1 instances did not start writing to " + NEW_INDEX);
+    }
+
+    @Test
+    void testRefreshRebuildTargetReportsTheIndexThisInstanceWritesTo() throws IOException {
+        // Given
+        when(indicesClient.existsAlias(any(ExistsAliasRequest.class))).thenReturn(new BooleanResponse(true));
+        when(indicesClient.getAlias(any(GetAliasRequest.class))).thenReturn(GetAliasResponse.of(g -> g
+                .result(NEW_INDEX, IndexAliases.of(a -> a.aliases(Map.of())))));
+
+        // When
+        contactIndexManager.refreshRebuildTarget();
+
+        // Then
+        assertThat(contactIndexManager.rebuildTarget()).contains(IndexCoordinates.of(NEW_INDEX));
+        verify(indexInstanceRepository).report(anyString(), eq(NEW_INDEX), any());
+    }
+
+    @Test
+    void testNoRebuildTargetWithoutARebuild() throws IOException {
+        // Given
+        when(indicesClient.existsAlias(any(ExistsAliasRequest.class))).thenReturn(new BooleanResponse(false));
+
+        // When
+        contactIndexManager.refreshRebuildTarget();
+
+        // Then
+        assertThat(contactIndexManager.rebuildTarget()).isEmpty();
+        verify(indexInstanceRepository).report(anyString(), isNull(), any());
+    }
+
+    @Test
+    void testPromoteRestoresSettingsAndSwapsTheAliasAtomically() throws IOException, InterruptedException {
+        // Given
+        when(newIndexOps.exists()).thenReturn(true);
+        contactIndexManager.prepareRebuild(NEW_INDEX);
+        when(indicesClient.forcemerge(any(ForcemergeRequest.class))).thenReturn(ForcemergeResponse.of(f -> f
+                .shards(s -> s.total(1).successful(1).failed(0))));
+        when(indicesClient.existsAlias(any(ExistsAliasRequest.class))).thenReturn(new BooleanResponse(true));
+        when(indicesClient.getAlias(any(GetAliasRequest.class))).thenReturn(GetAliasResponse.of(g -> g
+                .result(OLD_INDEX, IndexAliases.of(a -> a.aliases(Map.of())))));
+
+        // When
+        contactIndexManager.promote(NEW_INDEX, () -> { });
+
+        // Then
+        verify(indicesClient).putSettings(any(PutIndicesSettingsRequest.class));
+        verify(newIndexOps).refresh();
+        ArgumentCaptor<AliasActions> actions = ArgumentCaptor.forClass(AliasActions.class);
+        verify(newIndexOps, times(2)).alias(actions.capture());
+        AliasActions swap = actions.getAllValues().get(1);
+        assertThat(swap.getActions()).hasSize(3);
+        assertThat(swap.getActions().get(0)).isInstanceOf(AliasAction.Remove.class);
+        assertThat(swap.getActions().get(0).getParameters().getIndices()).containsExactly(OLD_INDEX);
+        assertThat(swap.getActions().get(1)).isInstanceOf(AliasAction.Add.class);
+        assertThat(swap.getActions().get(1).getParameters().getIndices()).containsExactly(NEW_INDEX);
+        assertThat(swap.getActions().get(2).getParameters().getAliases())
+                .containsExactly(ContactIndexManager.REBUILD_ALIAS);
+        verify(oldIndexOps).delete();
+        assertThat(contactIndexManager.rebuildTarget()).isEmpty();
+    }
+
+    @Test
+    void testSettingsForBulkLoadDisableRefreshesAndReplicas() {
+        // When
+        Settings settings = contactIndexManager.settings(true);
+
+        // Then
+        assertThat(settings.path("index.refresh_interval")).isEqualTo("-1");
+        assertThat(settings.path("index.number_of_replicas")).isEqualTo(0);
+        assertThat(settings.path("index.max_ngram_diff")).isEqualTo(10);
+        assertThat(settings.path("analysis.analyzer.autocomplete_analyzer")).isNotNull();
+    }
+
+    @Test
+    void testSettingsForServingUseTheConfiguredReplicas() {
+        // When
+        Settings settings = contactIndexManager.settings(false);
+
+        // Then
+        assertThat(settings.path("index.refresh_interval")).isNull();
+        assertThat(settings.path("index.number_of_replicas")).isEqualTo(1);
+    }
+
+    @Test
+    void testAbandonRemovesTheRebuildAliasAndDeletesTheIndex() throws InterruptedException {
+        // Given
+        when(newIndexOps.exists()).thenReturn(true);
+        contactIndexManager.prepareRebuild(NEW_INDEX);
+
+        // When
+        contactIndexManager.abandon(NEW_INDEX);
+
+        // Then
+        verify(newIndexOps).alias(argThat(actions -> actions.getActions().get(0) instanceof AliasAction.Remove));
+        verify(indexInstanceRepository).countReportingOther(isNull(), any());
+        verify(newIndexOps).delete();
+        assertThat(contactIndexManager.rebuildTarget()).isEmpty();
+    }
+}
@@ -0,0 +1,218 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.ResyncStats;
+import com.codehacks.contactsearch.repository.ContactRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.BulkOptions;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ContactIndexerTest {
+
+    private static final IndexCoordinates INDEX = IndexCoordinates.of("contacts");
+
+    @Mock
+    private ContactRepository contactRepository;
+
+    @Mock
+    private ElasticsearchOperations elasticsearchOperations;
+
+    @Mock
+    private IndexOperations indexOperations;
+
+    private ExecutorService executor;
+
+    private final List<Long> checkpoints = new CopyOnWriteArrayList<>();
+
+    private final ContactIndexer.Listener listener = (lastId, documents) -> checkpoints.add(lastId);
+
+    private ContactIndexer contactIndexer;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        contactIndexer = new ContactIndexer(contactRepository, elasticsearchOperations, executor);
+        ReflectionTestUtils.setField(contactIndexer, "chunkSize", 2);
+        ReflectionTestUtils.setField(contactIndexer, "concurrentRequests", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testResyncPagesByIdAndSendsOneBulkRequestPerChunk() {
+        // Given
+        when(contactRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(2))).thenReturn(contacts(1, 2));
+        when(contactRepository.findByIdGreaterThanOrderByIdAsc(2L, Limit.of(2))).thenReturn(contacts(3, 4));
+        when(contactRepository.findByIdGreaterThanOrderByIdAsc(4L, Limit.of(2))).thenReturn(contacts(5));
+        when(elasticsearchOperations.indexOps(INDEX)).thenReturn(indexOperations);
+
+        // When
+        ResyncStats stats = contactIndexer.resync(INDEX, 0, listener);
+
+        // Then
+        assertThat(stats.documents()).isEqualTo(5);
+        assertThat(stats.docsPerSecond()).isPositive();
+        verify(elasticsearchOperations, times(3)).bulkIndex(anyList(), any(BulkOptions.class), eq(INDEX));
+        verify(indexOperations).refresh();
+        // A short chunk is the last one
+        verify(contactRepository, never()).findByIdGreaterThanOrderByIdAsc(5L, Limit.of(2));
+        assertThat(checkpoints).last().isEqualTo(5L);
+    }
+
+    @Test
+    void testResyncResumesAfterTheGivenIdAndStopsWhenCancelled() {
+        // Given
+        AtomicInteger reads = new AtomicInteger();
+        ContactIndexer.Listener cancelAfterOneChunk = new ContactIndexer.Listener() {
+            @Override
+            public void checkpoint(long lastId, long documents) {
+                checkpoints.add(lastId);
+            }
+
+            @Override
+            public boolean cancelled() {
+                return reads.get() > 0;
+            }
+        };
+        when(contactRepository.findByIdGreaterThanOrderByIdAsc(40L, Limit.of(2))).thenAnswer(invocation -> {
+            reads.incrementAndGet();
+            return contacts(41, 42);
+        });
+        when(elasticsearchOperations.indexOps(INDEX)).thenReturn(indexOperations);
+
+        // When
+        ResyncStats stats = contactIndexer.resync(INDEX, 40, cancelAfterOneChunk);
+
+        // Then
+        assertThat(stats.documents()).isEqualTo(2);
+        assertThat(checkpoints).containsExactly(42L);
+        verify(contactRepository, never()).findByIdGreaterThanOrderByIdAsc(42L, Limit.of(2));
+    }
+
+    @Test
+    void testResyncIndexesDocumentsWithSuggestions() {
+        // Given
+        when(contactRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(2))).thenReturn(contacts(7));
+        when(elasticsearchOperations.indexOps(INDEX)).thenReturn(indexOperations);
+        List<List<IndexQuery>> sent = new CopyOnWriteArrayList<>();
+        when(elasticsearchOperations.bulkIndex(anyList(), any(BulkOptions.class), eq(INDEX))).thenAnswer(invocation -> {
+            sent.add(invocation.getArgument(0));
+            return List.of();
+        });
+
+        // When
+        contactIndexer.resync(INDEX, 0, listener);
+
+        // Then
+        assertThat(sent).hasSize(1);
+        IndexQuery query = sent.get(0).get(0);
+        assertThat(query.getId()).isEqualTo("7");
+        assertThat(((ContactDocument) query.getObject()).getSuggest()).isNotEmpty();
+    }
+
+    @Test
+    void testResyncVersionsDocumentsAndSkipsNewerOnes() {
+        // Given
+        List<Contact> contacts = contacts(1);
+        contacts.get(0).setUpdatedAt(LocalDateTime.of(2024, 1, 1, 12, 0, 0, 123_456_000));
+        when(contactRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(2))).thenReturn(contacts);
+        when(elasticsearchOperations.indexOps(INDEX)).thenReturn(indexOperations);
+        List<IndexQuery> sent = new CopyOnWriteArrayList<>();
+        when(elasticsearchOperations.bulkIndex(anyList(), any(BulkOptions.class), eq(INDEX))).thenAnswer(invocation -> {
+            sent.addAll(invocation.getArgument(0));
+            throw new BulkFailureException("conflict",
+                    Map.of("1", new BulkFailureException.FailureDetails(409, "version_conflict_engine_exception")));
+        });
+
+        // When
+        contactIndexer.resync(INDEX, 0, listener);
+
+        // Then
+        assertThat(sent).singleElement().satisfies(query -> {
+            assertThat(query.getOpType()).isNotEqualTo(IndexQuery.OpType.CREATE);
+            assertThat(query.getVersion()).isEqualTo(1_704_110_400_123_456L);
+        });
+        assertThat(checkpoints).containsExactly(1L);
+    }
+
+    @Test
+    void testResyncFailsOnOtherBulkFailures() {
+        // Given
+        when(contactRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(2))).thenReturn(contacts(1));
+        when(elasticsearchOperations.bulkIndex(anyList(), any(BulkOptions.class), eq(INDEX)))
+                .thenThrow(new BulkFailureException("rejected",
+                        Map.of("1", new BulkFailureException.FailureDetails(429, "es_rejected_execution_exception"))));
+
+        // When & Then
+        assertThatThrownBy(() -> contactIndexer.resync(INDEX, 0, listener)).isInstanceOf(BulkFailureException.class);
+        assertThat(checkpoints).isEmpty();
+    }
+
+    @Test
+    void testResyncStopsReadingAfterAFailedBulkRequest() {
+        // Given
+        AtomicInteger reads = new AtomicInteger();
+        when(contactRepository.findByIdGreaterThanOrderByIdAsc(any(), eq(Limit.of(2)))).thenAnswer(invocation -> {
+            reads.incrementAndGet();
+            long after = invocation.getArgument(0);
+            return contacts(after + 1, after + 2);
+        });
+        when(elasticsearchOperations.bulkIndex(anyList(), any(BulkOptions.class), eq(INDEX)))
+                .thenThrow(new IllegalStateException("cluster unavailable"));
+
+        // When & Then
+        assertThatThrownBy(() -> contactIndexer.resync(INDEX, 0, listener))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("cluster unavailable");
+        assertThat(reads.get()).isLessThan(10);
+        assertThat(checkpoints).isEmpty();
+        verify(elasticsearchOperations, never()).indexOps(INDEX);
+    }
+
+    private static List<Contact> contacts(long... ids) {
+        return LongStream.of(ids).mapToObj(id -> {
+            Contact contact = new Contact();
+            contact.setId(id);
+            contact.setFirstName("First" + id);
+            contact.setLastName("Last" + id);
+            contact.setEmail("contact" + id + "@example.com");
+            contact.setCity("City");
+            return contact;
+        }).toList();
+    }
+}
@@ -0,0 +1,153 @@
+package com.codehacks.contactsearch.service;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonpUtils;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import com.codehacks.contactsearch.model.SearchMode;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ContactQueryFactoryTest {
+
+    private final ContactQueryFactory factory = new ContactQueryFactory();
+
+    private final JacksonJsonpMapper jsonpMapper = new JacksonJsonpMapper();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private JsonNode toJson(Query query) throws Exception {
+        return objectMapper.readTree(JsonpUtils.toJsonString(query, jsonpMapper));
+    }
+
+    @Test
+    void testBuildsQueryForEveryQueryMode() {
+        for (SearchMode mode : SearchMode.values()) {
+            if (mode != SearchMode.SUGGEST) {
+                assertThat(factory.build(mode, "john")).isNotNull();
+            }
+        }
+        assertThatThrownBy(() -> factory.build(SearchMode.SUGGEST, "john"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testCompletionSuggester() throws Exception {
+        // When
+        JsonNode json = objectMapper.readTree(JsonpUtils.toJsonString(factory.suggester("john sm", 15), jsonpMapper));
+
+        // Then
+        JsonNode suggestion = json.get(ContactQueryFactory.SUGGESTION_NAME);
+        assertThat(suggestion.get("prefix").asText()).isEqualTo("john sm");
+        assertThat(suggestion.at("/completion/field").asText()).isEqualTo("suggest");
+        assertThat(suggestion.at("/completion/size").asInt()).isEqualTo(15);
+    }
+
+    @Test
+    void testStandardQuery() throws Exception {
+        // When
+        JsonNode json = toJson(factory.build(SearchMode.STANDARD, "john"));
+
+        // Then
+        JsonNode multiMatch = json.get("multi_match");
+        assertThat(multiMatch.get("query").asText()).isEqualTo("john");
+        assertThat(multiMatch.get("fuzziness").asText()).isEqualTo("AUTO");
+        assertThat(multiMatch.get("type").asText()).isEqualTo("best_fields");
+        assertThat(multiMatch.get("fields")).hasSize(4);
+    }
+
+    @Test
+    void testCityQuery() throws Exception {
+        // When
+        JsonNode json = toJson(factory.build(SearchMode.CITY, "New York"));
+
+        // Then
+        assertThat(json.at("/term/city.keyword/value").asText()).isEqualTo("New York");
+    }
+
+    @Test
+    void testExactQueryHasNoFuzziness() throws Exception {
+        // When
+        JsonNode json = toJson(factory.build(SearchMode.EXACT, "john"));
+
+        // Then
+        assertThat(json.at("/bool/should")).hasSize(2);
+        assertThat(json.at("/bool/should/0/multi_match/type").asText()).isEqualTo("best_fields");
+        assertThat(json.at("/bool/should/1/multi_match/type").asText()).isEqualTo("bool_prefix");
+        assertThat(json.toString()).doesNotContain("fuzziness");
+    }
+
+    @Test
+    void testSpellingCorrectionQueryHasAllClauses() throws Exception {
+        // When
+        JsonNode json = toJson(factory.build(SearchMode.SPELLING_CORRECTION, "Jhon"));
+
+        // Then
+        assertThat(json.at("/bool/should")).hasSize(8);
+        assertThat(json.at("/bool/minimum_should_match").asText()).isEqualTo("1");
+    }
+
+    @Test
+    void testPartialMatchQueryHasAllClauses() throws Exception {
+        // When
+        JsonNode json = toJson(factory.build(SearchMode.PARTIAL_MATCH, "Rob"));
+
+        // Then
+        assertThat(json.at("/bool/should")).hasSize(10);
+        assertThat(json.at("/bool/should/2/constant_score/filter/term/firstName.ngram/value").asText())
+            .isEqualTo("rob");
+        assertThat(json.at("/bool/should/4/constant_score/filter/term/email.ngram/value").asText())
+            .isEqualTo("rob");
+        assertThat(json.at("/bool/should/6/prefix/firstName/value").asText()).isEqualTo("Rob");
+        assertThat(json.toString()).doesNotContain("wildcard");
+    }
+
+    @Test
+    void testSpecialCharactersAreKeptAsLiteralValues() throws Exception {
+        // Given
+        String input = "O'Brien \"}, {\"match_all\": {}} \\";
+
+        // When
+        JsonNode json = toJson(factory.build(SearchMode.STANDARD, input));
+
+        // Then
+        assertThat(json.at("/multi_match/query").asText()).isEqualTo(input);
+        assertThat(json.has("match_all")).isFalse();
+    }
+
+    @Test
+    void testWildcardMetacharactersAreLiteralTerms() throws Exception {
+        // When
+        JsonNode json = toJson(factory.build(SearchMode.PARTIAL_MATCH, "a*b?"));
+
+        // Then
+        assertThat(json.at("/bool/should/2/constant_score/filter/term/firstName.ngram/value").asText())
+            .isEqualTo("a*b?");
+    }
+
+    @Test
+    void testLongContainsValueIsCoveredByOverlappingGrams() throws Exception {
+        // When
+        JsonNode json = toJson(factory.build(SearchMode.SPELLING_CORRECTION, "Alexandrovich"));
+
+        // Then
+        JsonNode grams = json.at("/bool/should/5/constant_score/filter/bool/filter");
+        assertThat(grams).hasSize(2);
+        assertThat(grams.get(0).at("/term/firstName.ngram/value").asText()).isEqualTo("alexandrov");
+        assertThat(grams.get(1).at("/term/firstName.ngram/value").asText()).isEqualTo("xandrovich");
+    }
+
+    @Test
+    void testContainsTerms() {
+        assertThat(ContactQueryFactory.containsTerms("a")).isEmpty();
+        assertThat(ContactQueryFactory.containsTerms("Smi")).containsExactly("smi");
+        assertThat(ContactQueryFactory.containsTerms("abcdefghij")).containsExactly("abcdefghij");
+        assertThat(ContactQueryFactory.containsTerms("abcdefghijklmnopqrstu"))
+            .containsExactly("abcdefghij", "klmnopqrst", "lmnopqrstu");
+        assertThat(ContactQueryFactory.templatable(SearchMode.PARTIAL_MATCH, "abcdefghijk")).isFalse();
+        assertThat(ContactQueryFactory.templatable(SearchMode.PARTIAL_MATCH, "abcdefghij")).isTrue();
+    }
+}
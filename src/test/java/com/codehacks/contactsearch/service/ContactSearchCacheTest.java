@@ -0,0 +1,241 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.SearchMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContactSearchCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private ContactSearchCache contactSearchCache;
+
+    private ContactDocument john;
+    private ContactDocument jane;
+
+    @BeforeEach
+    void setUp() {
+        contactSearchCache = new ContactSearchCache(true, 100, Duration.ofMinutes(5), Duration.ofSeconds(2), 1000, clock::get);
+        john = contact("1", "John", "Smith", "john.smith@email.com", "New York");
+        jane = contact("2", "Jane", "Doe", "jane.doe@email.com", "Los Angeles");
+    }
+
+    private static ContactDocument contact(String id, String firstName, String lastName, String email, String city) {
+        return new ContactDocument(id, firstName, lastName, email, city, LocalDateTime.now(), LocalDateTime.now());
+    }
+
+    private static ContactSearchCache.Key key(SearchMode mode, String query) {
+        return new ContactSearchCache.Key(mode, query, 0, 10);
+    }
+
+    private void cache(ContactSearchCache.Key key, List<ContactDocument> results) {
+        contactSearchCache.put(key, contactSearchCache.generation(), SearchResult.unscored(results));
+    }
+
+    @Test
+    void testReturnsStoredResults() {
+        // Given
+        cache(key(SearchMode.STANDARD, "John"), List.of(john));
+
+        // When / Then
+        assertThat(contactSearchCache.get(key(SearchMode.STANDARD, "John")).map(SearchResult::results)).contains(List.of(john));
+        assertThat(contactSearchCache.get(key(SearchMode.STANDARD, "Jane"))).isEmpty();
+    }
+
+    @Test
+    void testWriteInvalidatesOnlyEntriesTheContactCouldMatch() {
+        // Given
+        cache(key(SearchMode.STANDARD, "Jon"), List.of());
+        cache(key(SearchMode.AUTOCOMPLETE, "smi"), List.of());
+        cache(key(SearchMode.CITY, "New York"), List.of());
+        cache(key(SearchMode.STANDARD, "Jane"), List.of(jane));
+        cache(key(SearchMode.CITY, "Los Angeles"), List.of(jane));
+
+        // When
+        contactSearchCache.contactChanged(null, john);
+
+        // Then
+        assertThat(contactSearchCache.get(key(SearchMode.STANDARD, "Jon"))).isEmpty();
+        assertThat(contactSearchCache.get(key(SearchMode.AUTOCOMPLETE, "smi"))).isEmpty();
+        assertThat(contactSearchCache.get(key(SearchMode.CITY, "New York"))).isEmpty();
+        assertThat(contactSearchCache.get(key(SearchMode.STANDARD, "Jane")).map(SearchResult::results)).contains(List.of(jane));
+        assertThat(contactSearchCache.get(key(SearchMode.CITY, "Los Angeles")).map(SearchResult::results)).contains(List.of(jane));
+    }
+
+    @Test
+    void testWriteInvalidatesEntriesMatchingWholeEmailTokens() {
+        // Given: the standard tokenizer keeps "email.com" whole, one edit away from "emailcom"
+        ContactDocument ada = contact("3", "Ada", "Lovelace", "ada.lovelace@email.com", "London");
+        cache(key(SearchMode.FUZZY, "emailcom"), List.of());
+        cache(key(SearchMode.STANDARD, "adalovelace"), List.of());
+        cache(key(SearchMode.AUTOCOMPLETE, "email.c"), List.of());
+        cache(key(SearchMode.FUZZY, "gmailnet"), List.of());
+
+        // When
+        contactSearchCache.contactChanged(null, ada);
+
+        // Then
+        assertThat(contactSearchCache.get(key(SearchMode.FUZZY, "emailcom"))).isEmpty();
+        assertThat(contactSearchCache.get(key(SearchMode.STANDARD, "adalovelace"))).isEmpty();
+        assertThat(contactSearchCache.get(key(SearchMode.AUTOCOMPLETE, "email.c"))).isEmpty();
+        assertThat(contactSearchCache.get(key(SearchMode.FUZZY, "gmailnet"))).isPresent();
+    }
+
+    @Test
+    void testUpdateInvalidatesEntriesHoldingTheOldState() {
+        // Given
+        ContactDocument moved = contact("2", "Jane", "Doe", "jane.doe@email.com", "Boston");
+        cache(key(SearchMode.CITY, "Los Angeles"), List.of(jane));
+        cache(key(SearchMode.CITY, "Boston"), List.of());
+
+        // When
+        contactSearchCache.contactChanged(jane, moved);
+
+        // Then
+        assertThat(contactSearchCache.get(key(SearchMode.CITY, "Los Angeles"))).isEmpty();
+        assertThat(contactSearchCache.get(key(SearchMode.CITY, "Boston"))).isEmpty();
+    }
+
+    @Test
+    void testWriteFenceSkipsStoringUntilRefresh() {
+        // Given
+        long searchGeneration = contactSearchCache.generation();
+        contactSearchCache.contactChanged(null, john);
+
+        // When
+        contactSearchCache.put(key(SearchMode.STANDARD, "John"), searchGeneration, SearchResult.unscored(List.of()));
+        contactSearchCache.put(key(SearchMode.STANDARD, "Jane"), searchGeneration, SearchResult.unscored(List.of(jane)));
+
+        // Then
+        assertThat(contactSearchCache.get(key(SearchMode.STANDARD, "John"))).isEmpty();
+        assertThat(contactSearchCache.get(key(SearchMode.STANDARD, "Jane")).map(SearchResult::results)).contains(List.of(jane));
+
+        clock.addAndGet(Duration.ofSeconds(3).toNanos());
+        contactSearchCache.put(key(SearchMode.STANDARD, "John"), searchGeneration, SearchResult.unscored(List.of(john)));
+        assertThat(contactSearchCache.get(key(SearchMode.STANDARD, "John")).map(SearchResult::results)).contains(List.of(john));
+    }
+
+    @Test
+    void testInvalidateAllDropsEntriesAndInFlightResults() {
+        // Given
+        cache(key(SearchMode.STANDARD, "Jane"), List.of(jane));
+        long searchGeneration = contactSearchCache.generation();
+
+        // When
+        contactSearchCache.invalidateAll();
+        clock.addAndGet(Duration.ofSeconds(3).toNanos());
+        contactSearchCache.put(key(SearchMode.STANDARD, "John"), searchGeneration, SearchResult.unscored(List.of(john)));
+
+        // Then
+        assertThat(contactSearchCache.get(key(SearchMode.STANDARD, "Jane"))).isEmpty();
+        assertThat(contactSearchCache.get(key(SearchMode.STANDARD, "John"))).isEmpty();
+    }
+
+    @Test
+    void testCouldMatchCoversEveryClauseOfTheMode() {
+        assertThat(ContactSearchCache.couldMatch(SearchMode.FUZZY, "Jhon", john)).isTrue();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.FUZZY, "Xavier", john)).isFalse();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.PARTIAL_MATCH, "mit", john)).isTrue();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.PARTIAL_MATCH, "h.sm", john)).isTrue();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.PARTIAL_MATCH, "zzq", john)).isFalse();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.SPELLING_CORRECTION, "Smiht", john)).isTrue();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.SPELLING_CORRECTION, "qqqqqq", john)).isFalse();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.CITY, "new york", john)).isFalse();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.SUGGEST, "john sm", john)).isTrue();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.SUGGEST, "ohn", john)).isFalse();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.EXACT, "smi", john)).isTrue();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.EXACT, "Jhon", john)).isFalse();
+    }
+
+    @Test
+    void testFuzzyMatchCountsTranspositionsAsOneEdit() {
+        // Given
+        ContactDocument jonathan = contact("3", "Jonathan", "Smith", "jonathan.smith@email.com", "Boston");
+
+        // When / Then
+        assertThat(ContactSearchCache.withinEdits("ojnathna", "jonathan")).isTrue();
+        assertThat(ContactSearchCache.withinEdits("ojnahtna", "jonathan")).isFalse();
+        assertThat(ContactSearchCache.couldMatch(SearchMode.FUZZY, "ojnathna", jonathan)).isTrue();
+    }
+
+    @Test
+    void testInvalidationScanLeavesHitAndMissCountsAlone() {
+        // Given
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ContactSearchCache monitored = new ContactSearchCache(true, 100, Duration.ofMinutes(5), Duration.ZERO, 1000,
+                meterRegistry);
+        monitored.put(key(SearchMode.STANDARD, "Jane"), monitored.generation(), SearchResult.unscored(List.of(jane)));
+
+        // When
+        monitored.contactChanged(null, john);
+
+        // Then
+        assertThat(gets(meterRegistry, "hit")).isZero();
+        assertThat(gets(meterRegistry, "miss")).isZero();
+    }
+
+    private static double gets(SimpleMeterRegistry meterRegistry, String result) {
+        return meterRegistry.get("cache.gets").tag("cache", ContactSearchCache.CACHE_NAME).tag("result", result)
+                .functionCounter().count();
+    }
+
+    @Test
+    void testZeroHitQueryIsKnownEmptyAtAnyWindow() {
+        // Given
+        contactSearchCache.put(key(SearchMode.PARTIAL_MATCH, "zzq"), contactSearchCache.generation(), SearchResult.unscored(List.of()));
+        contactSearchCache.put(new ContactSearchCache.Key(SearchMode.PARTIAL_MATCH, "Jo", 40, 10),
+            contactSearchCache.generation(), SearchResult.unscored(List.of()));
+
+        // When / Then
+        assertThat(contactSearchCache.isKnownEmpty(SearchMode.PARTIAL_MATCH, "zzq")).isTrue();
+        assertThat(contactSearchCache.isKnownEmpty(SearchMode.PARTIAL_MATCH, "Jo")).isFalse();
+        assertThat(contactSearchCache.isKnownEmpty(SearchMode.PARTIAL_MATCH, "zzqx")).isFalse();
+    }
+
+    @Test
+    void testAutocompleteExtensionOfZeroHitPrefixIsKnownEmpty() {
+        // Given
+        contactSearchCache.put(key(SearchMode.AUTOCOMPLETE, "john xq"), contactSearchCache.generation(), SearchResult.unscored(List.of()));
+
+        // When / Then
+        assertThat(contactSearchCache.isKnownEmpty(SearchMode.AUTOCOMPLETE, "john xqz1")).isTrue();
+        assertThat(contactSearchCache.isKnownEmpty(SearchMode.AUTOCOMPLETE, "john xq smith")).isFalse();
+        assertThat(contactSearchCache.isKnownEmpty(SearchMode.AUTOCOMPLETE, "john x")).isFalse();
+    }
+
+    @Test
+    void testWriteInvalidatesZeroHitEntriesItCouldMatch() {
+        // Given
+        contactSearchCache.put(key(SearchMode.AUTOCOMPLETE, "xav"), contactSearchCache.generation(), SearchResult.unscored(List.of()));
+        contactSearchCache.put(key(SearchMode.PARTIAL_MATCH, "zzq"), contactSearchCache.generation(), SearchResult.unscored(List.of()));
+        clock.addAndGet(Duration.ofSeconds(3).toNanos());
+
+        // When
+        contactSearchCache.contactChanged(null, contact("3", "Xavier", "Zzqa", "x@z.com", "Paris"));
+
+        // Then
+        assertThat(contactSearchCache.isKnownEmpty(SearchMode.AUTOCOMPLETE, "xavi")).isFalse();
+        assertThat(contactSearchCache.isKnownEmpty(SearchMode.PARTIAL_MATCH, "zzq")).isFalse();
+    }
+
+    @Test
+    void testDisabledCacheStoresNothing() {
+        // Given
+        ContactSearchCache disabled = new ContactSearchCache(false, 100, Duration.ofMinutes(5), Duration.ofSeconds(2), 1000, clock::get);
+
+        // When
+        disabled.put(key(SearchMode.STANDARD, "John"), disabled.generation(), SearchResult.unscored(List.of(john)));
+
+        // Then
+        assertThat(disabled.get(key(SearchMode.STANDARD, "John"))).isEmpty();
+    }
+}
@@ -1,26 +1,71 @@
 package com.codehacks.contactsearch.service;
 
+import com.codehacks.contactsearch.config.SearchTimeoutProperties;
 import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.dto.BatchSearchRequest;
+import com.codehacks.contactsearch.model.BatchSearchResult;
+import com.codehacks.contactsearch.model.ContactFields;
+import com.codehacks.contactsearch.model.CursorPage;
+import com.codehacks.contactsearch.model.FusedPage;
+import com.codehacks.contactsearch.model.SearchEngine;
+import com.codehacks.contactsearch.model.SearchMode;
+import com.codehacks.contactsearch.model.SearchResponse;
+import com.codehacks.contactsearch.model.SearchTier;
+import com.codehacks.contactsearch.model.TieredPage;
 import com.codehacks.contactsearch.repository.ContactSearchRepository;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.TotalHitsRelation;
 import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.data.elasticsearch.core.query.SearchTemplateQuery;
+import org.springframework.data.elasticsearch.core.suggest.response.CompletionSuggestion;
+import org.springframework.data.elasticsearch.core.suggest.response.Suggest;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.net.SocketTimeoutException;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -32,6 +77,40 @@ class ContactSearchServiceTest {
     @Mock
     private ElasticsearchOperations elasticsearchOperations;
 
+    @Spy
+    private ContactQueryFactory contactQueryFactory = new ContactQueryFactory();
+
+    @Mock
+    private ContactSearchTemplates contactSearchTemplates;
+
+    @Mock
+    private ContactSearchCache contactSearchCache;
+
+    @Mock
+    private AutocompleteIndex autocompleteIndex;
+
+    @Mock
+    private BudgetedSearchOperations budgetedSearchOperations;
+
+    @Spy
+    private SearchRequestCoalescer searchRequestCoalescer = new SearchRequestCoalescer(new SimpleMeterRegistry());
+
+    @Spy
+    private Executor contactSearchExecutor = Executors.newFixedThreadPool(3);
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private SearchTimeoutProperties searchTimeouts =
+        new SearchTimeoutProperties(Duration.ofSeconds(2), Duration.ofSeconds(5), Map.of(), Duration.ofMillis(500));
+
+    @Spy
+    private CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("test");
+
+    @Mock
+    private PostgresContactSearch postgresContactSearch;
+
     @InjectMocks
     private ContactSearchService contactSearchService;
 
@@ -40,6 +119,16 @@ class ContactSearchServiceTest {
 
     @BeforeEach
     void setUp() {
+        lenient().when(budgetedSearchOperations.within(any())).thenReturn(elasticsearchOperations);
+        ReflectionTestUtils.setField(contactSearchService, "maxPageSize", 100);
+        ReflectionTestUtils.setField(contactSearchService, "maxResultWindow", 10000);
+        ReflectionTestUtils.setField(contactSearchService, "trackTotalHits", 1000);
+        ReflectionTestUtils.setField(contactSearchService, "cursorKeepAlive", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(contactSearchService, "fusedBudget", Duration.ofSeconds(5));
+        ReflectionTestUtils.setField(contactSearchService, "rrfK", 60);
+        ReflectionTestUtils.setField(contactSearchService, "maxBatchSearches", 10000);
+        ReflectionTestUtils.setField(contactSearchService, "batchChunkSize", 200);
+
         testContact1 = new ContactDocument(
             "1", "John", "Smith", "john.smith@email.com", 
             "New York", LocalDateTime.now(), LocalDateTime.now()
@@ -72,7 +161,7 @@ class ContactSearchServiceTest {
             .thenReturn(searchHits);
 
         // When
-        List<ContactDocument> results = contactSearchService.searchContacts("John", 10);
+        List<ContactDocument> results = contactSearchService.searchContacts("John", 0, 10, ContactFields.ALL);
 
         // Then
         assertThat(results).hasSize(2);
@@ -87,13 +176,26 @@ class ContactSearchServiceTest {
             .thenReturn(searchHits);
 
         // When
-        List<ContactDocument> results = contactSearchService.autocompleteSearch("Jo", 5);
+        List<ContactDocument> results = contactSearchService.autocompleteSearch("Jo", 0, 5, ContactFields.ALL);
 
         // Then
         assertThat(results).hasSize(1);
         assertThat(results.get(0).getFirstName()).isEqualTo("John");
     }
 
+    @Test
+    void testAutocompleteServedFromMemoryIndex() {
+        // Given
+        when(autocompleteIndex.search("Jo", 0, 5)).thenReturn(Optional.of(List.of(testContact1)));
+
+        // When
+        List<ContactDocument> results = contactSearchService.autocompleteSearch("Jo", 0, 5, ContactFields.ALL);
+
+        // Then
+        assertThat(results).containsExactly(testContact1);
+        verify(elasticsearchOperations, never()).search(any(Query.class), any(Class.class));
+    }
+
     @Test
     void testFuzzySearch() {
         // Given
@@ -102,7 +204,7 @@ class ContactSearchServiceTest {
             .thenReturn(searchHits);
 
         // When
-        List<ContactDocument> results = contactSearchService.fuzzySearch("Jhon", 10);
+        List<ContactDocument> results = contactSearchService.fuzzySearch("Jhon", 0, 10, ContactFields.ALL);
 
         // Then
         assertThat(results).hasSize(1);
@@ -117,7 +219,7 @@ class ContactSearchServiceTest {
             .thenReturn(searchHits);
 
         // When
-        List<ContactDocument> results = contactSearchService.searchByCity("New York", 10);
+        List<ContactDocument> results = contactSearchService.searchByCity("New York", 0, 10, ContactFields.ALL);
 
         // Then
         assertThat(results).hasSize(1);
@@ -132,7 +234,7 @@ class ContactSearchServiceTest {
             .thenReturn(searchHits);
 
         // When
-        List<ContactDocument> results = contactSearchService.spellingCorrectionSearch("Jhon Smith", 10);
+        List<ContactDocument> results = contactSearchService.spellingCorrectionSearch("Jhon Smith", 0, 10, ContactFields.ALL);
 
         // Then
         assertThat(results).hasSize(1);
@@ -147,7 +249,7 @@ class ContactSearchServiceTest {
             .thenReturn(searchHits);
 
         // When
-        List<ContactDocument> results = contactSearchService.partialMatchSearch("Rob", 10);
+        List<ContactDocument> results = contactSearchService.partialMatchSearch("Rob", 0, 10, ContactFields.ALL);
 
         // Then
         assertThat(results).hasSize(1);
@@ -162,9 +264,820 @@ class ContactSearchServiceTest {
             .thenReturn(searchHits);
 
         // When
-        List<ContactDocument> results = contactSearchService.searchContacts("NonExistent", 10);
+        List<ContactDocument> results = contactSearchService.searchContacts("NonExistent", 0, 10, ContactFields.ALL);
+
+        // Then
+        assertThat(results).isEmpty();
+    }
+
+    @Test
+    void testSearchAppliesOffsetAndSizeOnServer() {
+        // Given
+        SearchHits<ContactDocument> searchHits = mockHits(Collections.singletonList(testContact2));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(searchHits);
+
+        // When
+        List<ContactDocument> results = contactSearchService.searchContacts("John", 20, 50, ContactFields.ALL);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations).search(captor.capture(), any(Class.class));
+        assertThat(captor.getValue().getPageable().getOffset()).isEqualTo(20);
+        assertThat(captor.getValue().getPageable().getPageSize()).isEqualTo(50);
+        assertThat(results).hasSize(1);
+    }
+
+    @Test
+    void testSearchCapsSizeAtMaximum() {
+        // Given
+        SearchHits<ContactDocument> searchHits = mockHits(Collections.emptyList());
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(searchHits);
+
+        // When
+        contactSearchService.fuzzySearch("John", 9995, 500, ContactFields.ALL);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations).search(captor.capture(), any(Class.class));
+        assertThat(captor.getValue().getPageable().getPageSize()).isEqualTo(5);
+    }
+
+    @Test
+    void testSearchBeyondResultWindowSkipsElasticsearch() {
+        // When
+        List<ContactDocument> results = contactSearchService.searchContacts("John", 10000, 10, ContactFields.ALL);
+
+        // Then
+        assertThat(results).isEmpty();
+        verify(elasticsearchOperations, never()).search(any(Query.class), any(Class.class));
+    }
+
+    @Test
+    void testSearchUsesStoredTemplateWhenRegistered() {
+        // Given
+        Map<String, Object> params = Map.of("query", "John", "from", 0, "size", 10);
+        when(contactSearchTemplates.templateId(SearchMode.STANDARD)).thenReturn(Optional.of("contacts-standard-abc"));
+        when(contactSearchTemplates.params("John", 0, 10, ContactFields.ALL, 1000, Duration.ofSeconds(2))).thenReturn(params);
+        SearchHits<ContactDocument> searchHits = mockHits(Collections.singletonList(testContact1));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(searchHits);
+
+        // When
+        List<ContactDocument> results = contactSearchService.searchContacts("John", 0, 10, ContactFields.ALL);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations).search(captor.capture(), any(Class.class));
+        assertThat(captor.getValue()).isInstanceOf(SearchTemplateQuery.class);
+        SearchTemplateQuery templateQuery = (SearchTemplateQuery) captor.getValue();
+        assertThat(templateQuery.getId()).isEqualTo("contacts-standard-abc");
+        assertThat(templateQuery.getParams()).isEqualTo(params);
+        assertThat(results).hasSize(1);
+    }
+
+    @Test
+    void testSearchFallsBackToInlineQueryWhenTemplateFails() {
+        // Given
+        when(contactSearchTemplates.templateId(SearchMode.FUZZY)).thenReturn(Optional.of("contacts-fuzzy-abc"));
+        when(contactSearchTemplates.params("Jhon", 0, 10, ContactFields.ALL, 1000, Duration.ofSeconds(2))).thenReturn(Map.of());
+        SearchHits<ContactDocument> searchHits = mockHits(Collections.singletonList(testContact1));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenThrow(new RuntimeException("resource_not_found_exception"))
+            .thenReturn(searchHits);
+
+        // When
+        List<ContactDocument> results = contactSearchService.fuzzySearch("Jhon", 0, 10, ContactFields.ALL);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations, times(2)).search(captor.capture(), any(Class.class));
+        assertThat(captor.getAllValues().get(1)).isNotInstanceOf(SearchTemplateQuery.class);
+        verify(contactSearchTemplates).invalidate();
+        assertThat(results).hasSize(1);
+    }
+
+    @Test
+    void testLongPartialMatchQueryIsSentInline() {
+        // Given
+        SearchHits<ContactDocument> searchHits = mockHits(Collections.singletonList(testContact1));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(searchHits);
+
+        // When
+        contactSearchService.partialMatchSearch("john.smith@email", 0, 10, ContactFields.ALL);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations).search(captor.capture(), any(Class.class));
+        assertThat(captor.getValue()).isInstanceOf(NativeQuery.class);
+        verify(contactSearchTemplates, never()).templateId(any());
+    }
+
+    @Test
+    void testSearchServedFromCache() {
+        // Given
+        ContactSearchCache.Key key = new ContactSearchCache.Key(SearchMode.AUTOCOMPLETE, "jo", 0, 5);
+        when(contactSearchCache.get(key)).thenReturn(Optional.of(SearchResult.unscored(List.of(testContact1))));
+
+        // When
+        List<ContactDocument> results = contactSearchService.autocompleteSearch("  JO ", 0, 5, ContactFields.ALL);
+
+        // Then
+        assertThat(results).containsExactly(testContact1);
+        verify(elasticsearchOperations, never()).search(any(Query.class), any(Class.class));
+    }
+
+    @Test
+    void testKnownZeroHitQuerySkipsElasticsearch() {
+        // Given
+        when(contactSearchCache.isKnownEmpty(SearchMode.PARTIAL_MATCH, "xqzt")).thenReturn(true);
+
+        // When
+        List<ContactDocument> results = contactSearchService.partialMatchSearch("xqzt", 0, 10, ContactFields.ALL);
 
         // Then
         assertThat(results).isEmpty();
+        verify(elasticsearchOperations, never()).search(any(Query.class), any(Class.class));
+        verify(contactSearchCache, never()).get(any());
+    }
+
+    @Test
+    void testSearchMissStoresNormalizedResult() {
+        // Given
+        SearchHits<ContactDocument> searchHits = mockHits(Collections.singletonList(testContact1));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(searchHits);
+        when(contactSearchCache.generation()).thenReturn(3L);
+
+        // When
+        contactSearchService.searchByCity(" New   York ", 0, 10, ContactFields.ALL);
+
+        // Then
+        ContactSearchCache.Key key = new ContactSearchCache.Key(SearchMode.CITY, "New York", 0, 10);
+        verify(contactSearchCache).put(key, 3L, new SearchResult(List.of(testContact1), 0f, 0, false, Duration.ZERO, false, false));
+    }
+
+    @Test
+    void testSearchFetchesOnlyRequestedFields() {
+        // Given
+        ContactFields fields = ContactFields.parse("firstName,email");
+        SearchHits<ContactDocument> searchHits = mockHits(Collections.singletonList(testContact1));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(searchHits);
+
+        // When
+        contactSearchService.fuzzySearch("John", 0, 10, fields);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations).search(captor.capture(), any(Class.class));
+        assertThat(captor.getValue().getSourceFilter().getIncludes())
+            .containsExactly("id", "firstName", "email");
+        verify(contactSearchCache).get(new ContactSearchCache.Key(SearchMode.FUZZY, "John", 0, 10, fields));
+    }
+
+    @Test
+    void testSearchWithMetadataReportsTotalsAndTook() {
+        // Given
+        SearchHits<ContactDocument> searchHits = mockHits(Collections.singletonList(testContact1));
+        when(searchHits.getTotalHits()).thenReturn(1000L);
+        when(searchHits.getTotalHitsRelation()).thenReturn(TotalHitsRelation.GREATER_THAN_OR_EQUAL_TO);
+        when(searchHits.getExecutionDuration()).thenReturn(Duration.ofMillis(7));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(searchHits);
+
+        // When
+        SearchResponse<ContactDocument> response =
+            contactSearchService.searchWithMetadata(SearchMode.STANDARD, "John", 0, 10, ContactFields.ALL, null);
+
+        // Then
+        assertThat(response.results()).containsExactly(testContact1);
+        assertThat(response.totalResults()).isEqualTo(1000);
+        assertThat(response.totalResultsExact()).isFalse();
+        assertThat(response.tookMs()).isEqualTo(7);
+        assertThat(response.searchTimeMs()).isGreaterThanOrEqualTo(0);
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations).search(captor.capture(), any(Class.class));
+        assertThat(captor.getValue().getTrackTotalHitsUpTo()).isEqualTo(1000);
+    }
+
+    @Test
+    void testSearchWithMetadataFromCacheHasNoTook() {
+        // Given
+        ContactSearchCache.Key key = new ContactSearchCache.Key(SearchMode.FUZZY, "John", 0, 10);
+        when(contactSearchCache.get(key))
+            .thenReturn(Optional.of(new SearchResult(List.of(testContact1), 1.5f, 1, true, Duration.ofMillis(7), false, false)));
+
+        // When
+        SearchResponse<ContactDocument> response =
+            contactSearchService.searchWithMetadata(SearchMode.FUZZY, "John", 0, 10, ContactFields.ALL, null);
+
+        // Then
+        assertThat(response.totalResults()).isEqualTo(1);
+        assertThat(response.totalResultsExact()).isTrue();
+        assertThat(response.tookMs()).isNull();
+        verify(elasticsearchOperations, never()).search(any(Query.class), any(Class.class));
+    }
+
+    @Test
+    void testSearchOverBudgetIsPartialAndNotCached() {
+        // Given
+        SearchHits<ContactDocument> searchHits = mockHits(Collections.singletonList(testContact1));
+        when(searchHits.getExecutionDuration()).thenReturn(Duration.ofMillis(300));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(searchHits);
+
+        // When
+        SearchResponse<ContactDocument> response = contactSearchService.searchWithMetadata(
+            SearchMode.SPELLING_CORRECTION, "Jhon", 0, 10, ContactFields.ALL, Duration.ofMillis(300));
+
+        // Then
+        assertThat(response.partial()).isTrue();
+        assertThat(response.results()).containsExactly(testContact1);
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations).search(captor.capture(), any(Class.class));
+        assertThat(captor.getValue().getTimeout()).isEqualTo(Duration.ofMillis(300));
+        verify(contactSearchCache, never()).put(any(), anyLong(), any());
+        assertThat(meterRegistry.counter(ContactSearchService.PARTIAL_METRIC, "mode", "spelling_correction").count())
+            .isEqualTo(1);
+    }
+
+    @Test
+    void testRequestedBudgetIsCappedAndSocketTimeoutGivesEmptyPartialPage() {
+        // Given
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenThrow(new DataAccessResourceFailureException("timeout", new SocketTimeoutException("Read timed out")));
+
+        // When
+        SearchResponse<ContactDocument> response = contactSearchService.searchWithMetadata(
+            SearchMode.FUZZY, "John", 0, 10, ContactFields.ALL, Duration.ofMinutes(1));
+
+        // Then
+        assertThat(response.partial()).isTrue();
+        assertThat(response.results()).isEmpty();
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations).search(captor.capture(), any(Class.class));
+        assertThat(captor.getValue().getTimeout()).isEqualTo(Duration.ofSeconds(5));
+        verify(contactSearchCache, never()).put(any(), anyLong(), any());
+        assertThat(circuitBreaker.getMetrics().getNumberOfFailedCalls()).isEqualTo(1);
+        verify(postgresContactSearch, never()).search(any(), anyString(), anyInt(), anyInt(), any());
+    }
+
+    @Test
+    void testElasticsearchErrorIsAnsweredFromDatabaseAndNotCached() {
+        // Given
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenThrow(new DataAccessResourceFailureException("Connection refused"));
+        when(postgresContactSearch.search(SearchMode.STANDARD, "Jane", 0, 10, Duration.ofSeconds(2)))
+            .thenReturn(SearchResult.unscored(List.of(testContact2)));
+
+        // When
+        SearchResponse<ContactDocument> response = contactSearchService.searchWithMetadata(
+            SearchMode.STANDARD, "Jane", 0, 10, ContactFields.ALL, null);
+
+        // Then
+        assertThat(response.degraded()).isTrue();
+        assertThat(response.partial()).isFalse();
+        assertThat(response.results()).containsExactly(testContact2);
+        assertThat(response.tookMs()).isNull();
+        verify(contactSearchCache, never()).put(any(), anyLong(), any());
+        assertThat(circuitBreaker.getMetrics().getNumberOfFailedCalls()).isEqualTo(1);
+        assertThat(meterRegistry.counter(ContactSearchService.FALLBACK_METRIC, "mode", "standard", "reason", "error")
+            .count()).isEqualTo(1);
+    }
+
+    @Test
+    void testOpenCircuitBreakerSkipsElasticsearch() {
+        // Given
+        circuitBreaker.transitionToOpenState();
+        when(postgresContactSearch.search(SearchMode.FUZZY, "John", 0, 10, Duration.ofSeconds(2)))
+            .thenReturn(SearchResult.unscored(List.of(testContact1)));
+        when(postgresContactSearch.search(SearchMode.CITY, "Boston", 0, 5, Duration.ofSeconds(2)))
+            .thenReturn(SearchResult.unscored(List.of()));
+        List<BatchSearchRequest.Search> batch = List.of(new BatchSearchRequest.Search(SearchMode.CITY, "Boston", 5));
+
+        // When
+        SearchResponse<ContactDocument> response = contactSearchService.searchWithMetadata(
+            SearchMode.FUZZY, "John", 0, 10, ContactFields.ALL, null);
+        List<List<BatchSearchResult>> chunks = new ArrayList<>();
+        contactSearchService.batchSearch(batch, null, chunks::add);
+
+        // Then
+        assertThat(response.degraded()).isTrue();
+        assertThat(response.results()).containsExactly(testContact1);
+        assertThat(chunks).containsExactly(List.of(new BatchSearchResult(0, List.of(), false, true)));
+        verify(elasticsearchOperations, never()).search(any(Query.class), any(Class.class));
+        verify(elasticsearchOperations, never()).multiSearch(anyList(), eq(ContactDocument.class));
+        assertThat(meterRegistry.counter(ContactSearchService.FALLBACK_METRIC, "mode", "fuzzy", "reason", "open")
+            .count()).isEqualTo(1);
+        assertThatThrownBy(() -> contactSearchService.searchWithCursor(
+                SearchMode.STANDARD, "John", SearchCursor.START, 10, ContactFields.ALL))
+            .isInstanceOf(CallNotPermittedException.class);
+        verify(elasticsearchOperations, never()).openPointInTime(any(), any(), any(Boolean.class));
+    }
+
+    @Test
+    void testPostgresEngineAnswersWithoutElasticsearch() {
+        // Given
+        ReflectionTestUtils.setField(contactSearchService, "engine", SearchEngine.POSTGRES);
+        when(postgresContactSearch.search(SearchMode.STANDARD, "John", 0, 10, Duration.ofSeconds(2)))
+            .thenReturn(new SearchResult(List.of(testContact1), 2.1f, 1, true, null, false, false));
+        when(postgresContactSearch.search(SearchMode.CITY, "Boston", 0, 5, Duration.ofSeconds(2)))
+            .thenReturn(SearchResult.unscored(List.of(testContact2)));
+
+        // When
+        SearchResponse<ContactDocument> response = contactSearchService.searchWithMetadata(
+            SearchMode.STANDARD, "John", 0, 10, ContactFields.ALL, null);
+        List<List<BatchSearchResult>> chunks = new ArrayList<>();
+        contactSearchService.batchSearch(List.of(new BatchSearchRequest.Search(SearchMode.CITY, "Boston", 5)), null,
+                chunks::add);
+
+        // Then
+        assertThat(response.results()).containsExactly(testContact1);
+        assertThat(response.totalResults()).isEqualTo(1);
+        assertThat(response.degraded()).isFalse();
+        assertThat(chunks).containsExactly(List.of(new BatchSearchResult(0, List.of(testContact2))));
+        verify(contactSearchCache).put(eq(new ContactSearchCache.Key(SearchMode.STANDARD, "John", 0, 10)), anyLong(), any());
+        verify(elasticsearchOperations, never()).search(any(Query.class), any(Class.class));
+        verify(elasticsearchOperations, never()).multiSearch(anyList(), eq(ContactDocument.class));
+        verify(circuitBreaker, never()).tryAcquirePermission();
+    }
+
+    @Test
+    void testPostgresEngineCursorResumesAfterLastScoreAndId() {
+        // Given
+        ReflectionTestUtils.setField(contactSearchService, "engine", SearchEngine.POSTGRES);
+        when(postgresContactSearch.searchAfter(SearchMode.FUZZY, "Jo", null, null, 2, Duration.ofSeconds(2)))
+            .thenReturn(List.of(new PostgresContactSearch.Hit(testContact1, 3.0),
+                new PostgresContactSearch.Hit(testContact2, 2.25)));
+        when(postgresContactSearch.searchAfter(SearchMode.FUZZY, "Jo", 2.25, 2L, 2, Duration.ofSeconds(2)))
+            .thenReturn(List.of(new PostgresContactSearch.Hit(testContact1, 1.5)));
+
+        // When
+        CursorPage<ContactDocument> first = contactSearchService.searchWithCursor(
+            SearchMode.FUZZY, "Jo", SearchCursor.START, 2, ContactFields.ALL);
+        CursorPage<ContactDocument> second = contactSearchService.searchWithCursor(
+            SearchMode.FUZZY, "Jo", first.nextCursor(), 2, ContactFields.ALL);
+
+        // Then
+        assertThat(first.results()).containsExactly(testContact1, testContact2);
+        assertThat(SearchCursor.decode(first.nextCursor()))
+            .isEqualTo(new SearchCursor(PostgresContactSearch.CURSOR_SNAPSHOT, List.of(2.25, "2")));
+        assertThat(second.results()).containsExactly(testContact1);
+        assertThat(second.hasNext()).isFalse();
+        assertThatThrownBy(() -> contactSearchService.searchWithCursor(SearchMode.FUZZY, "Jo",
+                new SearchCursor("pit-1", List.of(2.25, "2")).encode(), 2, ContactFields.ALL))
+            .isInstanceOf(IllegalArgumentException.class);
+        verify(elasticsearchOperations, never()).openPointInTime(any(), any(), any(Boolean.class));
+    }
+
+    private SearchHits<ContactDocument> mockCursorHits(String pitId, List<ContactDocument> docs) {
+        List<SearchHit<ContactDocument>> hits = docs.stream().map(doc -> {
+            SearchHit<ContactDocument> hit = mockHit(doc);
+            Mockito.lenient().when(hit.getSortValues()).thenReturn(List.of(1.5, doc.getId()));
+            return hit;
+        }).toList();
+        SearchHits<ContactDocument> searchHits = Mockito.mock(SearchHits.class);
+        when(searchHits.getSearchHits()).thenReturn(hits);
+        when(searchHits.getPointInTimeId()).thenReturn(pitId);
+        return searchHits;
+    }
+
+    @Test
+    void testSearchWithCursorOpensPointInTimeAndReturnsNextCursor() {
+        // Given
+        when(elasticsearchOperations.openPointInTime(isNull(), eq(Duration.ofMinutes(1)), eq(false)))
+            .thenReturn("pit-1");
+        SearchHits<ContactDocument> searchHits = mockCursorHits("pit-2", Arrays.asList(testContact1, testContact2));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(searchHits);
+
+        // When
+        CursorPage<ContactDocument> page = contactSearchService.searchWithCursor(SearchMode.STANDARD, "John", "*", 2, ContactFields.ALL);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations).search(captor.capture(), any(Class.class));
+        assertThat(captor.getValue().getPointInTime().id()).isEqualTo("pit-1");
+        assertThat(captor.getValue().getSearchAfter()).isNull();
+        assertThat(page.results()).hasSize(2);
+        assertThat(page.hasNext()).isTrue();
+
+        SearchCursor next = SearchCursor.decode(page.nextCursor());
+        assertThat(next.pitId()).isEqualTo("pit-2");
+        assertThat(next.searchAfter()).containsExactly(1.5, "2");
+    }
+
+    @Test
+    void testSearchWithCursorResumesAndClosesPointInTimeOnLastPage() {
+        // Given
+        String cursor = new SearchCursor("pit-2", List.of(1.5, "2")).encode();
+        SearchHits<ContactDocument> searchHits = mockCursorHits("pit-3", Collections.singletonList(testContact1));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(searchHits);
+
+        // When
+        CursorPage<ContactDocument> page = contactSearchService.searchWithCursor(SearchMode.FUZZY, "John", cursor, 2, ContactFields.ALL);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations).search(captor.capture(), any(Class.class));
+        assertThat(captor.getValue().getPointInTime().id()).isEqualTo("pit-2");
+        assertThat(captor.getValue().getSearchAfter()).containsExactly(1.5, "2");
+        verify(elasticsearchOperations, never()).openPointInTime(any(), any(), any());
+        verify(elasticsearchOperations).closePointInTime("pit-3");
+        assertThat(page.results()).hasSize(1);
+        assertThat(page.hasNext()).isFalse();
+    }
+
+    @Test
+    void testSearchWithInvalidCursor() {
+        assertThatThrownBy(() -> contactSearchService.searchWithCursor(SearchMode.STANDARD, "John", "not-a-cursor", 10, ContactFields.ALL))
+            .isInstanceOf(IllegalArgumentException.class);
+        verify(elasticsearchOperations, never()).search(any(Query.class), any(Class.class));
+    }
+
+    @Test
+    void testSuggestSearchReadsCompletionOptionsOncePerContact() {
+        // Given
+        SearchHits<ContactDocument> searchHits = mockSuggestHits(testContact1, testContact1, testContact2);
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(searchHits);
+
+        // When
+        List<ContactDocument> results = contactSearchService.suggestSearch("J", 1, 5, ContactFields.ALL);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations).search(captor.capture(), any(Class.class));
+        NativeQuery query = (NativeQuery) captor.getValue();
+        assertThat(query.getMaxResults()).isZero();
+        assertThat(query.getSuggester().suggesters().get(ContactQueryFactory.SUGGESTION_NAME).prefix())
+            .isEqualTo("j");
+        assertThat(query.getSuggester().suggesters().get(ContactQueryFactory.SUGGESTION_NAME).completion().size())
+            .isEqualTo(6);
+        assertThat(results).containsExactly(testContact2);
+    }
+
+    @Test
+    void testSuggestSearchFallsBackToAutocompleteQuery() {
+        // Given
+        SearchHits<ContactDocument> searchHits = mockHits(Collections.singletonList(testContact1));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenThrow(new RuntimeException("no completion field"))
+            .thenReturn(searchHits);
+
+        // When
+        List<ContactDocument> results = contactSearchService.suggestSearch("jo", 0, 5, ContactFields.ALL);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations, times(2)).search(captor.capture(), any(Class.class));
+        assertThat(((NativeQuery) captor.getAllValues().get(1)).getQuery().isMultiMatch()).isTrue();
+        assertThat(results).containsExactly(testContact1);
+    }
+
+    @Test
+    void testSuggestDoesNotSupportCursor() {
+        assertThatThrownBy(() -> contactSearchService.searchWithCursor(SearchMode.SUGGEST, "jo", "*", 10, ContactFields.ALL))
+            .isInstanceOf(IllegalArgumentException.class);
+        verify(elasticsearchOperations, never()).openPointInTime(any(), any(), any());
+    }
+
+    @Test
+    void testSmartSearchEscalatesUntilATierFillsThePage() {
+        // Given
+        SearchHits<ContactDocument> exactHits = mockHits(Collections.singletonList(testContact1));
+        SearchHits<ContactDocument> fuzzyHits = mockHits(Arrays.asList(testContact1, testContact2));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(exactHits)
+            .thenReturn(fuzzyHits);
+
+        // When
+        TieredPage<ContactDocument> page = contactSearchService.smartSearch("Jon", 0, 2, ContactFields.ALL, null);
+
+        // Then
+        verify(elasticsearchOperations, times(2)).search(any(Query.class), any(Class.class));
+        assertThat(page.tier()).isEqualTo(SearchTier.FUZZY);
+        assertThat(page.results()).containsExactly(testContact1, testContact2);
+        assertThat(meterRegistry.get(ContactSearchService.SMART_TIER_METRIC).tag("tier", "fuzzy").counter().count())
+            .isEqualTo(1.0);
+        assertThat(meterRegistry.get(ContactSearchService.SMART_TIER_METRIC).tag("tier", "exact").counter().count())
+            .isZero();
+    }
+
+    @Test
+    void testSmartSearchEscalatesWhenTopScoreIsBelowMinScore() {
+        // Given
+        ReflectionTestUtils.setField(contactSearchService, "exactMinScore", 5f);
+        SearchHits<ContactDocument> exactHits = mockHits(Arrays.asList(testContact1, testContact2));
+        when(exactHits.getMaxScore()).thenReturn(2f);
+        SearchHits<ContactDocument> fuzzyHits = mockHits(Arrays.asList(testContact2, testContact1));
+        when(fuzzyHits.getMaxScore()).thenReturn(1f);
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(exactHits)
+            .thenReturn(fuzzyHits);
+
+        // When
+        TieredPage<ContactDocument> page = contactSearchService.smartSearch("John", 0, 2, ContactFields.ALL, null);
+
+        // Then
+        assertThat(page.tier()).isEqualTo(SearchTier.FUZZY);
+        assertThat(page.results()).containsExactly(testContact2, testContact1);
+        assertThat(meterRegistry.get(ContactSearchService.SMART_TOP_SCORE_METRIC).tag("tier", "exact").summary().max())
+            .isEqualTo(2.0);
+    }
+
+    @Test
+    void testSmartSearchFallsThroughToSpellingCorrection() {
+        // Given
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenAnswer(invocation -> mockHits(Collections.emptyList()));
+
+        // When
+        TieredPage<ContactDocument> page = contactSearchService.smartSearch("Jhno", 0, 10, ContactFields.ALL, null);
+
+        // Then
+        verify(elasticsearchOperations, times(SearchTier.values().length)).search(any(Query.class), any(Class.class));
+        assertThat(page.tier()).isEqualTo(SearchTier.SPELLING);
+        assertThat(page.results()).isEmpty();
+    }
+
+    @Test
+    void testSmartSearchReportsResultsFromTheDatabaseFallback() {
+        // Given
+        circuitBreaker.transitionToOpenState();
+        when(postgresContactSearch.search(any(), eq("John"), eq(0), eq(10), any()))
+            .thenReturn(SearchResult.unscored(List.of(testContact1)));
+
+        // When
+        TieredPage<ContactDocument> page = contactSearchService.smartSearch("John", 0, 10, ContactFields.ALL, null);
+
+        // Then
+        assertThat(page.results()).containsExactly(testContact1);
+        assertThat(page.degraded()).isTrue();
+        assertThat(page.partial()).isFalse();
+    }
+
+    @Test
+    void testSmartSearchFetchesLaterPagesFromTheDecidedTier() {
+        // Given
+        SearchHits<ContactDocument> firstPage = mockHits(Arrays.asList(testContact1, testContact2));
+        SearchHits<ContactDocument> secondPage = mockHits(Collections.singletonList(testContact2));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(firstPage)
+            .thenReturn(secondPage);
+
+        // When
+        TieredPage<ContactDocument> page = contactSearchService.smartSearch("John", 2, 2, ContactFields.ALL, null);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations, times(2)).search(captor.capture(), any(Class.class));
+        assertThat(captor.getAllValues().get(0).getPageable().getOffset()).isZero();
+        assertThat(captor.getAllValues().get(1).getPageable().getOffset()).isEqualTo(2);
+        assertThat(page.tier()).isEqualTo(SearchTier.EXACT);
+        assertThat(page.results()).containsExactly(testContact2);
+    }
+
+    @Test
+    void testFusedSearchRanksContactsFoundByMoreStrategiesFirst() {
+        // Given
+        ContactDocument testContact3 = new ContactDocument(
+            "3", "Jon", "Smyth", "jon.smyth@email.com",
+            "Boston", LocalDateTime.now(), LocalDateTime.now()
+        );
+        Map<SearchMode, List<ContactDocument>> rankings = new EnumMap<>(SearchMode.class);
+        rankings.put(SearchMode.FUZZY, List.of(testContact1, testContact2));
+        rankings.put(SearchMode.PARTIAL_MATCH, List.of(testContact2));
+        rankings.put(SearchMode.SPELLING_CORRECTION, List.of(testContact3, testContact2));
+        mockStrategies("Jon", rankings, null);
+
+        // When
+        FusedPage<ContactDocument> page = contactSearchService.fusedSearch("Jon", 0, 10, ContactFields.ALL, null);
+
+        // Then
+        verify(elasticsearchOperations, times(3)).search(any(Query.class), any(Class.class));
+        assertThat(page.results()).containsExactly(testContact2, testContact1, testContact3);
+        assertThat(page.strategies()).containsExactlyElementsOf(ContactSearchService.FUSED_STRATEGIES);
+    }
+
+    @Test
+    void testFusedSearchPagesOverTheFusedRanking() {
+        // Given
+        Map<SearchMode, List<ContactDocument>> rankings = new EnumMap<>(SearchMode.class);
+        rankings.put(SearchMode.FUZZY, List.of(testContact1, testContact2));
+        rankings.put(SearchMode.PARTIAL_MATCH, List.of(testContact2, testContact1));
+        rankings.put(SearchMode.SPELLING_CORRECTION, List.of(testContact2));
+        mockStrategies("Jon", rankings, null);
+
+        // When
+        FusedPage<ContactDocument> page = contactSearchService.fusedSearch("Jon", 1, 1, ContactFields.ALL, null);
+
+        // Then
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(elasticsearchOperations, times(3)).search(captor.capture(), any(Class.class));
+        assertThat(captor.getAllValues()).allSatisfy(query -> {
+            assertThat(query.getPageable().getOffset()).isZero();
+            assertThat(query.getPageable().getPageSize()).isEqualTo(2);
+        });
+        assertThat(page.results()).containsExactly(testContact1);
+    }
+
+    @Test
+    void testFusedSearchLeavesOutStrategiesThatMissTheBudget() {
+        // Given
+        ReflectionTestUtils.setField(contactSearchService, "fusedBudget", Duration.ofSeconds(1));
+        Map<SearchMode, List<ContactDocument>> rankings = new EnumMap<>(SearchMode.class);
+        rankings.put(SearchMode.FUZZY, List.of(testContact1));
+        rankings.put(SearchMode.PARTIAL_MATCH, List.of(testContact1));
+        mockStrategies("Jon", rankings, SearchMode.SPELLING_CORRECTION);
+
+        // When
+        FusedPage<ContactDocument> page = contactSearchService.fusedSearch("Jon", 0, 10, ContactFields.ALL, null);
+
+        // Then
+        assertThat(page.strategies()).containsExactly(SearchMode.FUZZY, SearchMode.PARTIAL_MATCH);
+        assertThat(page.results()).containsExactly(testContact1);
+        assertThat(page.partial()).isTrue();
+        assertThat(meterRegistry.get(ContactSearchService.FUSED_DROPPED_METRIC)
+            .tag("strategy", "spelling_correction").tag("reason", "timeout").counter().count())
+            .isEqualTo(1.0);
+    }
+
+    @Test
+    void testFusedSearchLeavesOutFailedStrategies() {
+        // Given
+        Map<SearchMode, List<ContactDocument>> rankings = new EnumMap<>(SearchMode.class);
+        rankings.put(SearchMode.FUZZY, List.of(testContact1));
+        rankings.put(SearchMode.SPELLING_CORRECTION, List.of(testContact2));
+        mockStrategies("Jon", rankings, null);
+        when(postgresContactSearch.search(SearchMode.PARTIAL_MATCH, "Jon", 0, 10, Duration.ofSeconds(2)))
+            .thenThrow(new IllegalStateException("database unavailable"));
+
+        // When
+        FusedPage<ContactDocument> page = contactSearchService.fusedSearch("Jon", 0, 10, ContactFields.ALL, null);
+
+        // Then
+        assertThat(page.strategies()).containsExactly(SearchMode.FUZZY, SearchMode.SPELLING_CORRECTION);
+        assertThat(page.results()).containsExactly(testContact1, testContact2);
+        assertThat(meterRegistry.get(ContactSearchService.FUSED_DROPPED_METRIC)
+            .tag("strategy", "partial_match").tag("reason", "error").counter().count())
+            .isEqualTo(1.0);
+    }
+
+    @Test
+    void testBatchSearchSendsCacheMissesAsChunkedMultiSearch() {
+        // Given
+        ReflectionTestUtils.setField(contactSearchService, "batchChunkSize", 2);
+        List<BatchSearchRequest.Search> searches = List.of(
+            new BatchSearchRequest.Search(SearchMode.STANDARD, "John", 10),
+            new BatchSearchRequest.Search(SearchMode.FUZZY, "Jane", 5),
+            new BatchSearchRequest.Search(SearchMode.CITY, "Boston", 10));
+        ContactSearchCache.Key cachedKey = new ContactSearchCache.Key(SearchMode.STANDARD, "John", 0, 10);
+        when(contactSearchCache.get(any(ContactSearchCache.Key.class))).thenReturn(Optional.empty());
+        when(contactSearchCache.get(cachedKey)).thenReturn(Optional.of(SearchResult.unscored(List.of(testContact1))));
+        SearchHits<ContactDocument> janeHits = mockHits(List.of(testContact2));
+        SearchHits<ContactDocument> bostonHits = mockHits(List.of());
+        doReturn(List.of(janeHits)).doReturn(List.of(bostonHits))
+            .when(elasticsearchOperations).multiSearch(anyList(), eq(ContactDocument.class));
+
+        // When
+        List<List<BatchSearchResult>> chunks = new ArrayList<>();
+        contactSearchService.batchSearch(searches, null, chunks::add);
+
+        // Then
+        ArgumentCaptor<List<Query>> captor = ArgumentCaptor.forClass(List.class);
+        verify(elasticsearchOperations, times(2)).multiSearch(captor.capture(), eq(ContactDocument.class));
+        assertThat(captor.getAllValues()).extracting(List::size).containsExactly(1, 1);
+        assertThat(captor.getAllValues().get(0).get(0).getPageable().getPageSize()).isEqualTo(5);
+        assertThat(chunks).hasSize(2);
+        assertThat(chunks.get(0)).containsExactly(
+            new BatchSearchResult(0, List.of(testContact1)),
+            new BatchSearchResult(1, List.of(testContact2)));
+        assertThat(chunks.get(1)).containsExactly(new BatchSearchResult(2, List.of()));
+        verify(contactSearchCache).put(eq(new ContactSearchCache.Key(SearchMode.FUZZY, "Jane", 0, 5)), eq(0L), any());
+        verify(elasticsearchOperations, never()).search(any(Query.class), any(Class.class));
+    }
+
+    @Test
+    void testBatchSearchSendsTheRequestedBudget() {
+        // Given
+        doReturn(List.of(mockHits(List.of(testContact1))))
+            .when(elasticsearchOperations).multiSearch(anyList(), eq(ContactDocument.class));
+
+        // When
+        contactSearchService.batchSearch(List.of(new BatchSearchRequest.Search(SearchMode.STANDARD, "John", 10)),
+                Duration.ofMillis(300), chunks -> { });
+
+        // Then
+        ArgumentCaptor<List<Query>> captor = ArgumentCaptor.forClass(List.class);
+        verify(elasticsearchOperations).multiSearch(captor.capture(), eq(ContactDocument.class));
+        assertThat(captor.getValue().get(0).getTimeout()).isEqualTo(Duration.ofMillis(300));
+    }
+
+    @Test
+    void testSmartAndFusedSearchesRunEverySearchWithTheRequestedBudget() {
+        // Given
+        ReflectionTestUtils.setField(contactSearchService, "engine", SearchEngine.POSTGRES);
+        when(postgresContactSearch.search(any(), any(), anyInt(), anyInt(), any()))
+            .thenReturn(SearchResult.unscored(List.of()));
+
+        // When
+        contactSearchService.smartSearch("Jon", 0, 10, ContactFields.ALL, Duration.ofMillis(300));
+        contactSearchService.fusedSearch("Jon", 0, 10, ContactFields.ALL, Duration.ofMillis(300));
+
+        // Then: every tier, then every strategy
+        ArgumentCaptor<Duration> captor = ArgumentCaptor.forClass(Duration.class);
+        verify(postgresContactSearch, times(SearchTier.values().length + ContactSearchService.FUSED_STRATEGIES.size()))
+            .search(any(), any(), anyInt(), anyInt(), captor.capture());
+        assertThat(captor.getAllValues()).containsOnly(Duration.ofMillis(300));
+    }
+
+    @Test
+    void testBatchSearchRunsChunkOneByOneWhenAnItemFails() {
+        // Given
+        List<BatchSearchRequest.Search> searches = List.of(
+            new BatchSearchRequest.Search(SearchMode.STANDARD, "John", 10),
+            new BatchSearchRequest.Search(SearchMode.STANDARD, "Jane", 10));
+        doReturn(List.of(Mockito.mock(SearchHits.class)))
+            .when(elasticsearchOperations).multiSearch(anyList(), eq(ContactDocument.class));
+        SearchHits<ContactDocument> johnHits = mockHits(List.of(testContact1));
+        SearchHits<ContactDocument> janeHits = mockHits(List.of(testContact2));
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class)))
+            .thenReturn(johnHits)
+            .thenReturn(janeHits);
+
+        // When
+        List<List<BatchSearchResult>> chunks = new ArrayList<>();
+        contactSearchService.batchSearch(searches, null, chunks::add);
+
+        // Then
+        verify(elasticsearchOperations, times(2)).search(any(Query.class), any(Class.class));
+        assertThat(chunks).containsExactly(List.of(
+            new BatchSearchResult(0, List.of(testContact1)),
+            new BatchSearchResult(1, List.of(testContact2))));
+    }
+
+    @Test
+    void testBatchSearchRejectsOversizedBatchesAndSuggestions() {
+        // Given
+        ReflectionTestUtils.setField(contactSearchService, "maxBatchSearches", 1);
+        BatchSearchRequest.Search search = new BatchSearchRequest.Search(SearchMode.STANDARD, "John", 10);
+
+        // When / Then
+        assertThatThrownBy(() -> contactSearchService.validateBatch(List.of(search, search)))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> contactSearchService.validateBatch(
+                List.of(new BatchSearchRequest.Search(SearchMode.SUGGEST, "jo", 5))))
+            .isInstanceOf(IllegalArgumentException.class);
+        verify(elasticsearchOperations, never()).multiSearch(anyList(), eq(ContactDocument.class));
+    }
+
+    /**
+     * Answers each strategy's query with its ranking, told apart by the query
+     * body; a strategy without a ranking fails, and the slow one blocks past
+     * any test budget
+     */
+    private void mockStrategies(String query, Map<SearchMode, List<ContactDocument>> rankings, SearchMode slow) {
+        ContactQueryFactory factory = new ContactQueryFactory();
+        Map<String, SearchMode> modeByQuery = new HashMap<>();
+        Map<SearchMode, SearchHits<ContactDocument>> hitsByMode = new EnumMap<>(SearchMode.class);
+        for (SearchMode mode : ContactSearchService.FUSED_STRATEGIES) {
+            modeByQuery.put(factory.build(mode, query).toString(), mode);
+            if (rankings.containsKey(mode)) {
+                hitsByMode.put(mode, mockHits(rankings.get(mode)));
+            }
+        }
+        when(elasticsearchOperations.search(any(Query.class), any(Class.class))).thenAnswer(invocation -> {
+            NativeQuery searchQuery = invocation.getArgument(0);
+            SearchMode mode = modeByQuery.get(searchQuery.getQuery().toString());
+            if (mode == slow) {
+                Thread.sleep(5000);
+            }
+            if (!hitsByMode.containsKey(mode)) {
+                throw new IllegalStateException("search failed");
+            }
+            return hitsByMode.get(mode);
+        });
+    }
+
+    private SearchHits<ContactDocument> mockSuggestHits(ContactDocument... docs) {
+        List<CompletionSuggestion.Entry.Option<ContactDocument>> options = Arrays.stream(docs)
+            .map(doc -> {
+                SearchHit<ContactDocument> hit = mockHit(doc);
+                CompletionSuggestion.Entry.Option<ContactDocument> option =
+                    Mockito.mock(CompletionSuggestion.Entry.Option.class);
+                when(option.getSearchHit()).thenReturn(hit);
+                return option;
+            })
+            .toList();
+        CompletionSuggestion<ContactDocument> suggestion = new CompletionSuggestion<>(
+            ContactQueryFactory.SUGGESTION_NAME, 6, List.of(new CompletionSuggestion.Entry<>("j", 0, 1, options)));
+        SearchHits<ContactDocument> searchHits = Mockito.mock(SearchHits.class);
+        when(searchHits.getSuggest()).thenReturn(new Suggest(List.of(suggestion), true));
+        return searchHits;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,139 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.model.ContactFields;
+import com.codehacks.contactsearch.model.SearchMode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.script.Script;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ContactSearchTemplatesTest {
+
+    @Mock
+    private ElasticsearchOperations elasticsearchOperations;
+
+    private ContactSearchTemplates contactSearchTemplates;
+
+    @BeforeEach
+    void setUp() {
+        contactSearchTemplates = new ContactSearchTemplates(elasticsearchOperations, new ContactQueryFactory());
+    }
+
+    @Test
+    void testRendersVersionedTemplatePerMode() {
+        // When
+        Map<SearchMode, Script> templates = contactSearchTemplates.templates();
+
+        // Then
+        assertThat(templates).containsOnlyKeys(EnumSet.complementOf(EnumSet.of(SearchMode.SUGGEST)));
+        assertThat(templates.get(SearchMode.SPELLING_CORRECTION).id())
+            .matches("contacts-spelling-correction-[0-9a-f]{12}");
+        assertThat(templates.values()).allSatisfy(template -> {
+            assertThat(template.language()).isEqualTo("mustache");
+            assertThat(template.source()).startsWith("{\"from\":{{from}},\"size\":{{size}},\"query\":");
+            assertThat(template.source()).contains("{{query}}");
+            assertThat(template.source()).contains(",\"track_total_hits\":{{track_total_hits}},\"timeout\":\"{{timeout}}\",");
+            assertThat(template.source()).endsWith(",\"_source\":{{#toJson}}source_includes{{/toJson}}}");
+        });
+        assertThat(templates.get(SearchMode.PARTIAL_MATCH).source())
+            .contains("{\"term\":{\"email.ngram\":{\"value\":\"{{query_contains}}\"}}}")
+            .doesNotContain("wildcard");
+    }
+
+    @Test
+    void testTemplateIdsDoNotDependOnTheDefaultLocale() {
+        // Given
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        try {
+            // When
+            ContactSearchTemplates turkish = new ContactSearchTemplates(elasticsearchOperations, new ContactQueryFactory());
+
+            // Then
+            assertThat(turkish.templates().get(SearchMode.CITY).id()).startsWith("contacts-city-")
+                .isEqualTo(contactSearchTemplates.templates().get(SearchMode.CITY).id());
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    void testTemplateIdEmptyUntilRegistered() {
+        // When / Then
+        assertThat(contactSearchTemplates.templateId(SearchMode.STANDARD)).isEmpty();
+    }
+
+    @Test
+    void testRegisterPutsEveryTemplateOnce() {
+        // Given
+        when(elasticsearchOperations.putScript(any(Script.class))).thenReturn(true);
+
+        // When
+        contactSearchTemplates.register();
+        contactSearchTemplates.register();
+
+        // Then
+        verify(elasticsearchOperations, times(contactSearchTemplates.templates().size())).putScript(any(Script.class));
+        assertThat(contactSearchTemplates.templateId(SearchMode.CITY))
+            .contains(contactSearchTemplates.templates().get(SearchMode.CITY).id());
+        assertThat(contactSearchTemplates.templateId(SearchMode.SUGGEST)).isEmpty();
+    }
+
+    @Test
+    void testRegisterFailureKeepsInlineQueries() {
+        // Given
+        when(elasticsearchOperations.putScript(any(Script.class))).thenThrow(new RuntimeException("unavailable"));
+
+        // When
+        contactSearchTemplates.register();
+
+        // Then
+        assertThat(contactSearchTemplates.templateId(SearchMode.STANDARD)).isEmpty();
+    }
+
+    @Test
+    void testInvalidateForcesReRegistration() {
+        // Given
+        when(elasticsearchOperations.putScript(any(Script.class))).thenReturn(true);
+        contactSearchTemplates.register();
+
+        // When
+        contactSearchTemplates.invalidate();
+
+        // Then
+        assertThat(contactSearchTemplates.templateId(SearchMode.STANDARD)).isEmpty();
+        contactSearchTemplates.register();
+        verify(elasticsearchOperations, times(2 * contactSearchTemplates.templates().size())).putScript(any(Script.class));
+    }
+
+    @Test
+    void testParamsLowercaseContainsValue() {
+        // When
+        Map<String, Object> params = contactSearchTemplates.params("Smi*", 20, 10, ContactFields.parse("firstName"), 500, Duration.ofMillis(1500));
+
+        // Then
+        assertThat(params).containsEntry("query", "Smi*")
+            .containsEntry("query_contains", "smi*")
+            .containsEntry("from", 20)
+            .containsEntry("size", 10)
+            .containsEntry("source_includes", List.of("id", "firstName"))
+            .containsEntry("track_total_hits", 500)
+            .containsEntry("timeout", "1500ms");
+    }
+}
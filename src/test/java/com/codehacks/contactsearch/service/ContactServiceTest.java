@@ -1,6 +1,12 @@
 package com.codehacks.contactsearch.service;
 
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.BulkGetResponse;
 import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.ContactFields;
+import com.codehacks.contactsearch.model.ReindexJob;
+import com.codehacks.contactsearch.model.ReindexJobStatus;
+import com.codehacks.contactsearch.model.SearchMode;
 import com.codehacks.contactsearch.integration.TestSecurityConfig;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -21,6 +27,8 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -61,6 +69,18 @@ class ContactServiceTest {
     @Autowired
     private ContactService contactService;
 
+    @Autowired
+    private ReindexJobService reindexJobService;
+
+    @Autowired
+    private IndexOutbox indexOutbox;
+
+    @Autowired
+    private PostgresContactSearch postgresContactSearch;
+
+    @Autowired
+    private FullTextContactSearch fullTextContactSearch;
+
     @BeforeEach
     void setUp() {
         // Clear any existing data
@@ -111,6 +131,106 @@ class ContactServiceTest {
         assertThat(foundContact.get().getEmail()).isEqualTo("jane.smith@test.com");
     }
 
+    @Test
+    void testGetContactsByIdsKeepsRequestOrderAndReportsMissing() {
+        // Given
+        Contact first = new Contact();
+        first.setFirstName("Dana");
+        first.setLastName("Scully");
+        first.setEmail("dana.scully@test.com");
+        first.setCity("Test City");
+        Contact second = new Contact();
+        second.setFirstName("Fox");
+        second.setLastName("Mulder");
+        second.setEmail("fox.mulder@test.com");
+        second.setCity("Test City");
+        Long firstId = contactService.createContact(first).getId();
+        Long secondId = contactService.createContact(second).getId();
+        Long missingId = secondId + 1000;
+        indexOutbox.drain();
+
+        // When
+        BulkGetResponse<Contact> contacts = contactService.getContactsByIds(List.of(secondId, missingId, firstId, secondId));
+        BulkGetResponse<ContactDocument> documents = contactService.getDocumentsByIds(List.of(secondId, missingId, firstId));
+
+        // Then
+        assertThat(contacts.found()).extracting(Contact::getFirstName).containsExactly("Fox", "Dana");
+        assertThat(contacts.missing()).containsExactly(missingId);
+        assertThat(documents.found()).extracting(ContactDocument::getFirstName).containsExactly("Fox", "Dana");
+        assertThat(documents.missing()).containsExactly(missingId);
+    }
+
+    @Test
+    void testPostgresSearchRanksTrigramMatches() {
+        // Given
+        Contact first = new Contact();
+        first.setFirstName("Dana");
+        first.setLastName("Scully");
+        first.setEmail("dana.scully@test.com");
+        first.setCity("Annapolis");
+        Contact second = new Contact();
+        second.setFirstName("Danny");
+        second.setLastName("Ocean");
+        second.setEmail("danny_ocean@test.com");
+        second.setCity("Las Vegas");
+        contactService.createContact(first);
+        contactService.createContact(second);
+        Duration timeout = Duration.ofSeconds(2);
+
+        // When
+        SearchResult fuzzy = postgresContactSearch.search(SearchMode.FUZZY, "scuuly", 0, 10, timeout);
+        SearchResult standard = postgresContactSearch.search(SearchMode.STANDARD, "danny", 0, 10, timeout);
+        SearchResult autocomplete = postgresContactSearch.search(SearchMode.AUTOCOMPLETE, "danny oc", 0, 10, timeout);
+        SearchResult partial = postgresContactSearch.search(SearchMode.PARTIAL_MATCH, "y_o", 0, 10, timeout);
+        SearchResult city = postgresContactSearch.search(SearchMode.CITY, "Las Vegas", 0, 10, timeout);
+        List<PostgresContactSearch.Hit> firstPage =
+            postgresContactSearch.searchAfter(SearchMode.STANDARD, "dan", null, null, 1, timeout);
+        PostgresContactSearch.Hit last = firstPage.get(0);
+        List<PostgresContactSearch.Hit> secondPage = postgresContactSearch.searchAfter(
+            SearchMode.STANDARD, "dan", last.score(), Long.valueOf(last.document().getId()), 1, timeout);
+
+        // Then
+        assertThat(fuzzy.results()).extracting(ContactDocument::getLastName).containsExactly("Scully");
+        assertThat(standard.results()).extracting(ContactDocument::getLastName).first().isEqualTo("Ocean");
+        assertThat(standard.totalHitsExact()).isTrue();
+        assertThat(autocomplete.results()).extracting(ContactDocument::getLastName).containsExactly("Ocean");
+        assertThat(partial.results()).extracting(ContactDocument::getLastName).containsExactly("Ocean");
+        assertThat(city.results()).extracting(ContactDocument::getLastName).containsExactly("Ocean");
+        assertThat(secondPage).extracting(hit -> hit.document().getId())
+            .doesNotContain(last.document().getId());
+    }
+
+    @Test
+    void testFullTextSearchRanksNamesAboveEmailAndCity() {
+        // Given
+        Contact byName = new Contact();
+        byName.setFirstName("Austin");
+        byName.setLastName("Powers");
+        byName.setEmail("shagwell@test.com");
+        byName.setCity("London");
+        Contact byCity = new Contact();
+        byCity.setFirstName("Mary");
+        byCity.setLastName("Reed");
+        byCity.setEmail("mary.reed@test.com");
+        byCity.setCity("Austin");
+        Contact byEmail = new Contact();
+        byEmail.setFirstName("Carl");
+        byEmail.setLastName("Smith");
+        byEmail.setEmail("carl.austin@test.com");
+        byEmail.setCity("Dallas");
+        contactService.createContact(byCity);
+        contactService.createContact(byEmail);
+        contactService.createContact(byName);
+
+        // When
+        List<ContactDocument> austin = fullTextContactSearch.searchContacts("austin", 0, 10, ContactFields.ALL);
+        List<ContactDocument> excluded = fullTextContactSearch.searchContacts("austin -london", 0, 10, ContactFields.ALL);
+
+        // Then
+        assertThat(austin).extracting(ContactDocument::getLastName).containsExactly("Powers", "Smith", "Reed");
+        assertThat(excluded).extracting(ContactDocument::getLastName).containsExactly("Smith", "Reed");
+    }
+
     @Test
     void testUpdateContact() {
         // Given
@@ -182,7 +302,7 @@ class ContactServiceTest {
     }
 
     @Test
-    void testSyncToElasticsearch() {
+    void testSyncToElasticsearch() throws InterruptedException {
         // Given
         Contact contact = new Contact();
         contact.setFirstName("Charlie");
@@ -193,10 +313,38 @@ class ContactServiceTest {
         contactService.createContact(contact);
 
         // When
-        contactService.syncAllToElasticsearch();
+        ReindexJob job = reindexJobService.start();
+        for (int attempt = 0; attempt < 100 && job.getStatus() == ReindexJobStatus.RUNNING; attempt++) {
+            Thread.sleep(100);
+            job = reindexJobService.getJob(job.getId()).orElseThrow();
+        }
 
-        // Then - no exception should be thrown
-        // The sync method should complete successfully
-        assertThat(true).isTrue(); // Placeholder assertion
+        // Then
+        assertThat(job.getStatus()).isEqualTo(ReindexJobStatus.COMPLETED);
+        assertThat(job.getProcessed()).isEqualTo(1);
+        assertThat(job.getLastId()).isEqualTo(contact.getId());
+        assertThat(contactService.getDocumentsByIds(List.of(contact.getId())).found()).hasSize(1);
+    }
+
+    @Test
+    void testContactWritesReachTheIndexThroughTheOutbox() {
+        // Given
+        Contact contact = new Contact();
+        contact.setFirstName("Lucy");
+        contact.setLastName("Van Pelt");
+        contact.setEmail("lucy.vanpelt@test.com");
+        contact.setCity("Test City");
+        Long id = contactService.createContact(contact).getId();
+
+        // When
+        indexOutbox.drain();
+        BulkGetResponse<ContactDocument> afterCreate = contactService.getDocumentsByIds(List.of(id));
+        contactService.deleteContact(id);
+        indexOutbox.drain();
+        BulkGetResponse<ContactDocument> afterDelete = contactService.getDocumentsByIds(List.of(id));
+
+        // Then
+        assertThat(afterCreate.found()).extracting(ContactDocument::getLastName).containsExactly("Van Pelt");
+        assertThat(afterDelete.missing()).containsExactly(id);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,337 @@
+package com.codehacks.contactsearch.service;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.VersionType;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.bulk.OperationType;
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.Contact;
+import com.codehacks.contactsearch.model.IndexOutboxEntry;
+import com.codehacks.contactsearch.repository.ContactRepository;
+import com.codehacks.contactsearch.repository.ContactSearchRepository;
+import com.codehacks.contactsearch.repository.IndexOutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.convert.ElasticsearchConverter;
+import org.springframework.data.elasticsearch.core.document.Document;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class IndexOutboxTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2024, 1, 1, 11, 0);
+
+    private static final LocalDateTime CHANGED_AT = LocalDateTime.of(2024, 1, 1, 11, 30);
+
+    @Mock
+    private IndexOutboxRepository indexOutboxRepository;
+
+    @Mock
+    private ContactRepository contactRepository;
+
+    @Mock
+    private ContactSearchRepository contactSearchRepository;
+
+    @Mock
+    private ElasticsearchOperations elasticsearchOperations;
+
+    @Mock
+    private ElasticsearchConverter elasticsearchConverter;
+
+    @Mock
+    private ElasticsearchClient elasticsearchClient;
+
+    @Mock
+    private ContactIndexManager contactIndexManager;
+
+    @Mock
+    private ContactSearchCache contactSearchCache;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private IndexOutbox indexOutbox;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        indexOutbox = new IndexOutbox(indexOutboxRepository, contactRepository, Optional.of(contactSearchRepository),
+                elasticsearchOperations, elasticsearchClient, contactIndexManager, contactSearchCache, meterRegistry);
+        lenient().when(elasticsearchOperations.getIndexCoordinatesFor(ContactDocument.class))
+                .thenReturn(IndexCoordinates.of("contacts"));
+        lenient().when(elasticsearchOperations.getElasticsearchConverter()).thenReturn(elasticsearchConverter);
+        lenient().when(elasticsearchConverter.mapObject(any())).thenReturn(Document.create());
+    }
+
+    @Test
+    void testContactChangedRecordsAnOutboxEntry() {
+        // When
+        indexOutbox.contactChanged(5L);
+
+        // Then
+        verify(indexOutboxRepository).enqueue(eq(5L), any(LocalDateTime.class));
+    }
+
+    @Test
+    void testContactChangedWithoutElasticsearchRecordsNothing() {
+        // Given
+        indexOutbox = new IndexOutbox(indexOutboxRepository, contactRepository, Optional.empty(),
+                elasticsearchOperations, elasticsearchClient, contactIndexManager, contactSearchCache, meterRegistry);
+
+        // When
+        indexOutbox.contactChanged(5L);
+        int drained = indexOutbox.drain();
+
+        // Then
+        assertThat(drained).isZero();
+        verify(indexOutboxRepository, never()).enqueue(anyLong(), any());
+        verify(indexOutboxRepository, never()).claim(any(), any(), anyInt());
+    }
+
+    @Test
+    void testDrainIndexesChangedContactsAndDeletesGoneOnesInOneBulkRequest() throws IOException {
+        // Given
+        when(indexOutboxRepository.claim(any(), any(), eq(500))).thenReturn(List.of(entry(1L, 3, 0), entry(2L, 1, 0)));
+        Contact contact = contact(1L);
+        contact.setUpdatedAt(LocalDateTime.of(2024, 1, 1, 12, 0, 0, 123_456_000));
+        when(contactRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(contact));
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenReturn(response(false));
+        when(indexOutboxRepository.complete(anyLong(), anyLong())).thenReturn(1);
+
+        // When
+        int drained = indexOutbox.drain();
+
+        // Then
+        assertThat(drained).isEqualTo(2);
+        List<BulkOperation> operations = bulkOperations();
+        assertThat(operations).hasSize(2);
+        assertThat(operations.get(0).isIndex()).isTrue();
+        assertThat(operations.get(0).index().id()).isEqualTo("1");
+        assertThat(operations.get(0).index().index()).isEqualTo("contacts");
+        assertThat(operations.get(0).index().version()).isEqualTo(1_704_110_400_123_456L);
+        assertThat(operations.get(0).index().versionType()).isEqualTo(VersionType.ExternalGte);
+        assertThat(operations.get(1).isDelete()).isTrue();
+        assertThat(operations.get(1).delete().id()).isEqualTo("2");
+        assertThat(operations.get(1).delete().version()).isEqualTo(ContactDocument.version(CHANGED_AT));
+        assertThat(operations.get(1).delete().versionType()).isEqualTo(VersionType.ExternalGte);
+        verify(indexOutboxRepository).complete(1L, 3);
+        verify(indexOutboxRepository).complete(2L, 1);
+        verify(contactSearchCache).contactChanged(eq(null), any(ContactDocument.class));
+        verify(contactSearchCache).contactChanged(any(ContactDocument.class), eq(null));
+    }
+
+    @Test
+    void testDrainAlsoWritesToTheIndexBeingRebuilt() throws IOException {
+        // Given
+        when(contactIndexManager.rebuildTarget()).thenReturn(Optional.of(IndexCoordinates.of("contacts-20240101-120000")));
+        when(indexOutboxRepository.claim(any(), any(), anyInt())).thenReturn(List.of(entry(1L, 1, 0)));
+        when(contactRepository.findAllById(List.of(1L))).thenReturn(List.of(contact(1L)));
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenReturn(response(false));
+        when(indexOutboxRepository.complete(1L, 1)).thenReturn(1);
+
+        // When
+        indexOutbox.drain();
+
+        // Then
+        assertThat(bulkOperations()).extracting(operation -> operation.index().index())
+                .containsExactly("contacts", "contacts-20240101-120000");
+    }
+
+    @Test
+    void testFailedEntryIsRetriedAfterABackoff() throws IOException {
+        // Given
+        when(indexOutboxRepository.claim(any(), any(), anyInt())).thenReturn(List.of(entry(1L, 2, 1)));
+        when(contactRepository.findAllById(List.of(1L))).thenReturn(List.of(contact(1L)));
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenReturn(response(true));
+        when(indexOutboxRepository.retryLater(eq(1L), eq(2L), any(), any())).thenReturn(1);
+        LocalDateTime before = LocalDateTime.now();
+
+        // When
+        indexOutbox.drain();
+
+        // Then
+        ArgumentCaptor<LocalDateTime> nextAttempt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(indexOutboxRepository).retryLater(eq(1L), eq(2L), nextAttempt.capture(),
+                eq("es_rejected_execution_exception: queue full"));
+        assertThat(nextAttempt.getValue()).isAfterOrEqualTo(before.plusSeconds(2));
+        verify(indexOutboxRepository, never()).complete(anyLong(), anyLong());
+        verify(contactSearchCache, never()).contactChanged(any(), any());
+    }
+
+    @Test
+    void testFailedBulkRequestRetriesTheWholeBatch() throws IOException {
+        // Given
+        when(indexOutboxRepository.claim(any(), any(), anyInt())).thenReturn(List.of(entry(1L, 1, 0), entry(2L, 1, 0)));
+        when(contactRepository.findAllById(anyList())).thenReturn(List.of(contact(1L), contact(2L)));
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenThrow(new IOException("Connection refused"));
+        when(indexOutboxRepository.retryLater(anyLong(), anyLong(), any(), any())).thenReturn(1);
+
+        // When
+        indexOutbox.drain();
+
+        // Then
+        verify(indexOutboxRepository).retryLater(eq(1L), eq(1L), any(), eq("Connection refused"));
+        verify(indexOutboxRepository).retryLater(eq(2L), eq(1L), any(), eq("Connection refused"));
+    }
+
+    @Test
+    void testEntryOutOfAttemptsIsDeadLettered() throws IOException {
+        // Given
+        when(indexOutboxRepository.claim(any(), any(), anyInt())).thenReturn(List.of(entry(1L, 4, 9)));
+        when(contactRepository.findAllById(List.of(1L))).thenReturn(List.of(contact(1L)));
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenReturn(response(true));
+        when(indexOutboxRepository.deadLetter(eq(1L), eq(4L), any(), any())).thenReturn(1);
+
+        // When
+        indexOutbox.drain();
+
+        // Then
+        verify(indexOutboxRepository).deadLetter(eq(1L), eq(4L), eq("es_rejected_execution_exception: queue full"),
+                any());
+        verify(indexOutboxRepository, never()).retryLater(anyLong(), anyLong(), any(), any());
+        assertThat(meterRegistry.counter(IndexOutbox.DEAD_LETTERED_METRIC).count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void testEntryAlreadyIndexedInANewerVersionIsDone() throws IOException {
+        // Given
+        when(indexOutboxRepository.claim(any(), any(), anyInt())).thenReturn(List.of(entry(1L, 1, 0)));
+        when(contactRepository.findAllById(List.of(1L))).thenReturn(List.of(contact(1L)));
+        BulkResponseItem conflict = BulkResponseItem.of(i -> i.operationType(OperationType.Index).index("contacts")
+                .id("1").status(409).error(e -> e.type("version_conflict_engine_exception").reason("newer")));
+        when(elasticsearchClient.bulk(any(BulkRequest.class)))
+                .thenReturn(BulkResponse.of(b -> b.errors(true).took(1).items(conflict)));
+        when(indexOutboxRepository.complete(1L, 1)).thenReturn(1);
+
+        // When
+        indexOutbox.drain();
+
+        // Then
+        verify(indexOutboxRepository).complete(1L, 1);
+        verify(indexOutboxRepository, never()).retryLater(anyLong(), anyLong(), any(), any());
+    }
+
+    @Test
+    void testDeleteIsVersionedByTheDeletingInstanceNotTheDrainer() throws IOException {
+        // Given: deleted on another instance whose clock is behind, recorded before changed_at was kept
+        IndexOutboxEntry deleted = entry(1L, 1, 0);
+        LocalDateTime deletedAt = LocalDateTime.of(2024, 1, 1, 12, 0);
+        deleted.setChangedAt(deletedAt);
+        IndexOutboxEntry legacy = entry(2L, 1, 0);
+        legacy.setChangedAt(null);
+        when(indexOutboxRepository.claim(any(), any(), anyInt())).thenReturn(List.of(deleted, legacy));
+        when(contactRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of());
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenReturn(response(false));
+        when(indexOutboxRepository.complete(anyLong(), anyLong())).thenReturn(1);
+
+        // When
+        indexOutbox.drain();
+
+        // Then
+        List<BulkOperation> operations = bulkOperations();
+        assertThat(operations.get(0).delete().version()).isEqualTo(ContactDocument.version(deletedAt));
+        assertThat(operations.get(1).delete().version()).isEqualTo(ContactDocument.version(CREATED_AT));
+    }
+
+    @Test
+    void testDeleteOlderThanTheIndexedCopyIsDone() throws IOException {
+        // Given
+        when(indexOutboxRepository.claim(any(), any(), anyInt())).thenReturn(List.of(entry(1L, 1, 0)));
+        when(contactRepository.findAllById(List.of(1L))).thenReturn(List.of());
+        BulkResponseItem conflict = BulkResponseItem.of(i -> i.operationType(OperationType.Delete).index("contacts")
+                .id("1").status(409).error(e -> e.type("version_conflict_engine_exception").reason("newer")));
+        when(elasticsearchClient.bulk(any(BulkRequest.class)))
+                .thenReturn(BulkResponse.of(b -> b.errors(true).took(1).items(conflict)));
+        when(indexOutboxRepository.complete(1L, 1)).thenReturn(1);
+
+        // When
+        indexOutbox.drain();
+
+        // Then
+        verify(indexOutboxRepository).complete(1L, 1);
+        verify(indexOutboxRepository, never()).retryLater(anyLong(), anyLong(), any(), any());
+    }
+
+    @Test
+    void testEntryChangedWhileIndexingIsReleasedForTheNextDrain() throws IOException {
+        // Given
+        when(indexOutboxRepository.claim(any(), any(), anyInt())).thenReturn(List.of(entry(1L, 1, 0)));
+        when(contactRepository.findAllById(List.of(1L))).thenReturn(List.of(contact(1L)));
+        when(elasticsearchClient.bulk(any(BulkRequest.class))).thenReturn(response(false));
+        when(indexOutboxRepository.complete(1L, 1)).thenReturn(0);
+
+        // When
+        indexOutbox.drain();
+
+        // Then
+        verify(indexOutboxRepository).release(1L);
+    }
+
+    @Test
+    void testBackoffDoublesUpToTheMaximum() {
+        // When & Then
+        assertThat(indexOutbox.backoff(1)).isEqualTo(Duration.ofSeconds(1));
+        assertThat(indexOutbox.backoff(2)).isEqualTo(Duration.ofSeconds(2));
+        assertThat(indexOutbox.backoff(4)).isEqualTo(Duration.ofSeconds(8));
+        assertThat(indexOutbox.backoff(40)).isEqualTo(Duration.ofMinutes(5));
+    }
+
+    private List<BulkOperation> bulkOperations() throws IOException {
+        ArgumentCaptor<BulkRequest> request = ArgumentCaptor.forClass(BulkRequest.class);
+        verify(elasticsearchClient).bulk(request.capture());
+        return request.getValue().operations();
+    }
+
+    private static BulkResponse response(boolean rejected) {
+        BulkResponseItem item = rejected
+                ? BulkResponseItem.of(i -> i.operationType(OperationType.Index).index("contacts").id("1").status(429)
+                        .error(e -> e.type("es_rejected_execution_exception").reason("queue full")))
+                : BulkResponseItem.of(i -> i.operationType(OperationType.Index).index("contacts").id("1").status(200));
+        return BulkResponse.of(b -> b.errors(rejected).took(1).items(item));
+    }
+
+    private static IndexOutboxEntry entry(Long contactId, long revision, int attempts) {
+        IndexOutboxEntry entry = new IndexOutboxEntry();
+        entry.setContactId(contactId);
+        entry.setRevision(revision);
+        entry.setAttempts(attempts);
+        entry.setCreatedAt(CREATED_AT);
+        entry.setChangedAt(CHANGED_AT);
+        return entry;
+    }
+
+    private static Contact contact(Long id) {
+        Contact contact = new Contact();
+        contact.setId(id);
+        contact.setFirstName("John");
+        contact.setLastName("Doe");
+        contact.setEmail("john" + id + "@example.com");
+        contact.setCity("Boston");
+        return contact;
+    }
+}
@@ -0,0 +1,242 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.model.ReindexJob;
+import com.codehacks.contactsearch.model.ReindexJobStatus;
+import com.codehacks.contactsearch.model.ResyncStats;
+import com.codehacks.contactsearch.repository.ContactRepository;
+import com.codehacks.contactsearch.repository.ContactSearchRepository;
+import com.codehacks.contactsearch.repository.ReindexJobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReindexJobServiceTest {
+
+    @Mock
+    private ReindexJobRepository reindexJobRepository;
+
+    @Mock
+    private ContactRepository contactRepository;
+
+    @Mock
+    private ContactSearchRepository contactSearchRepository;
+
+    @Mock
+    private ContactIndexer contactIndexer;
+
+    @Mock
+    private ContactIndexManager contactIndexManager;
+
+    @Mock
+    private ContactSearchCache contactSearchCache;
+
+    private ReindexJobService reindexJobService;
+
+    @BeforeEach
+    void setUp() {
+        // Jobs run on the calling thread
+        reindexJobService = new ReindexJobService(reindexJobRepository, contactRepository,
+                Optional.of(contactSearchRepository), contactIndexer, contactIndexManager, contactSearchCache,
+                Runnable::run);
+    }
+
+    @Test
+    void testStartRecordsTheJobAndRunsItToCompletion() {
+        // Given
+        ReindexJob saved = job(1L, 0);
+        when(reindexJobRepository.findFirstByStatus(ReindexJobStatus.RUNNING)).thenReturn(Optional.empty());
+        when(contactRepository.count()).thenReturn(2500L);
+        when(reindexJobRepository.saveAndFlush(any())).thenReturn(saved);
+        when(reindexJobRepository.findById(1L)).thenReturn(Optional.of(saved));
+        when(contactIndexer.resync(eq(0L), any())).thenAnswer(invocation -> {
+            ContactIndexer.Listener listener = invocation.getArgument(1);
+            listener.checkpoint(1000, 1000);
+            listener.checkpoint(2500, 2500);
+            return new ResyncStats(2500, 100, 25000);
+        });
+
+        // When
+        ReindexJob job = reindexJobService.start();
+
+        // Then
+        assertThat(job.getId()).isEqualTo(1L);
+        verify(reindexJobRepository).checkpoint(eq(1L), eq(1000L), eq(1000L), any());
+        verify(reindexJobRepository).checkpoint(eq(1L), eq(2500L), eq(2500L), any());
+        verify(reindexJobRepository).finish(eq(1L), eq(ReindexJobStatus.COMPLETED), isNull(), any());
+        verify(contactSearchCache).invalidateAll();
+    }
+
+    @Test
+    void testStartReturnsTheRunningJob() {
+        // Given
+        ReindexJob running = job(3L, 500);
+        when(reindexJobRepository.findFirstByStatus(ReindexJobStatus.RUNNING)).thenReturn(Optional.of(running));
+
+        // When
+        ReindexJob job = reindexJobService.start();
+
+        // Then
+        assertThat(job).isSameAs(running);
+        verify(reindexJobRepository, never()).saveAndFlush(any());
+        verify(contactIndexer, never()).resync(anyLong(), any());
+    }
+
+    @Test
+    void testStartReturnsTheJobAnotherInstanceStartedConcurrently() {
+        // Given
+        ReindexJob other = job(4L, 0);
+        when(reindexJobRepository.findFirstByStatus(ReindexJobStatus.RUNNING))
+                .thenReturn(Optional.empty(), Optional.of(other));
+        when(reindexJobRepository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("running"));
+
+        // When
+        ReindexJob job = reindexJobService.start();
+
+        // Then
+        assertThat(job).isSameAs(other);
+        verify(contactIndexer, never()).resync(anyLong(), any());
+    }
+
+    @Test
+    void testStartWithoutElasticsearchIsRejected() {
+        // Given
+        reindexJobService = new ReindexJobService(reindexJobRepository, contactRepository, Optional.empty(),
+                contactIndexer, contactIndexManager, contactSearchCache, Runnable::run);
+
+        // When & Then
+        assertThatThrownBy(() -> reindexJobService.start()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testCancelledJobStopsAndEndsCancelled() {
+        // Given
+        when(reindexJobRepository.findById(1L)).thenReturn(Optional.of(job(1L, 0)));
+        when(reindexJobRepository.existsByIdAndCancelRequestedTrue(1L)).thenReturn(true);
+        when(contactIndexer.resync(eq(0L), any())).thenAnswer(invocation -> {
+            ContactIndexer.Listener listener = invocation.getArgument(1);
+            assertThat(listener.cancelled()).isTrue();
+            return new ResyncStats(0, 1, 0);
+        });
+
+        // When
+        reindexJobService.run(1L);
+
+        // Then
+        verify(reindexJobRepository).finish(eq(1L), eq(ReindexJobStatus.CANCELLED), isNull(), any());
+    }
+
+    @Test
+    void testFailedJobRecordsTheError() {
+        // Given
+        when(reindexJobRepository.findById(1L)).thenReturn(Optional.of(job(1L, 0)));
+        when(contactIndexer.resync(eq(0L), any())).thenThrow(new IllegalStateException("cluster unavailable"));
+
+        // When
+        reindexJobService.run(1L);
+
+        // Then
+        verify(reindexJobRepository).finish(eq(1L), eq(ReindexJobStatus.FAILED), eq("cluster unavailable"), any());
+    }
+
+    @Test
+    void testRebuildLoadsTheNewIndexAndPromotesIt() throws InterruptedException {
+        // Given
+        ReindexJob saved = job(5L, 0);
+        saved.setTargetIndex("contacts-20240101-120000");
+        when(contactIndexManager.newIndexName()).thenReturn("contacts-20240101-120000");
+        when(reindexJobRepository.findFirstByStatus(ReindexJobStatus.RUNNING)).thenReturn(Optional.empty());
+        when(reindexJobRepository.saveAndFlush(any())).thenReturn(saved);
+        when(reindexJobRepository.findById(5L)).thenReturn(Optional.of(saved));
+        when(contactIndexer.resync(eq(IndexCoordinates.of("contacts-20240101-120000")), eq(0L), any()))
+                .thenReturn(new ResyncStats(10, 1, 10000));
+
+        // When
+        ReindexJob job = reindexJobService.startRebuild();
+
+        // Then
+        assertThat(job.getTargetIndex()).isEqualTo("contacts-20240101-120000");
+        verify(contactIndexManager).prepareRebuild("contacts-20240101-120000");
+        verify(contactIndexManager).promote(eq("contacts-20240101-120000"), any());
+        verify(contactIndexer, never()).resync(anyLong(), any());
+        verify(reindexJobRepository).finish(eq(5L), eq(ReindexJobStatus.COMPLETED), isNull(), any());
+    }
+
+    @Test
+    void testFailedRebuildDropsTheNewIndex() throws InterruptedException {
+        // Given
+        ReindexJob job = job(5L, 0);
+        job.setTargetIndex("contacts-20240101-120000");
+        when(reindexJobRepository.findById(5L)).thenReturn(Optional.of(job));
+        when(contactIndexer.resync(any(IndexCoordinates.class), eq(0L), any())).thenThrow(new IllegalStateException("cluster unavailable"));
+
+        // When
+        reindexJobService.run(5L);
+
+        // Then
+        verify(contactIndexManager).abandon("contacts-20240101-120000");
+        verify(contactIndexManager, never()).promote(any(), any());
+        verify(reindexJobRepository).finish(eq(5L), eq(ReindexJobStatus.FAILED), eq("cluster unavailable"), any());
+    }
+
+    @Test
+    void testStaleJobResumesAfterItsCheckpoint() {
+        // Given
+        ReindexJob stale = job(2L, 4000);
+        stale.setProcessed(4000);
+        when(reindexJobRepository.findByStatus(ReindexJobStatus.RUNNING)).thenReturn(List.of(stale));
+        when(reindexJobRepository.claim(eq(2L), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+        when(reindexJobRepository.findById(2L)).thenReturn(Optional.of(stale));
+        when(contactIndexer.resync(eq(4000L), any())).thenAnswer(invocation -> {
+            ContactIndexer.Listener listener = invocation.getArgument(1);
+            listener.checkpoint(5000, 1000);
+            return new ResyncStats(1000, 100, 10000);
+        });
+
+        // When
+        reindexJobService.resumeStaleJobs();
+
+        // Then
+        verify(reindexJobRepository).checkpoint(eq(2L), eq(5000L), eq(5000L), any());
+        verify(reindexJobRepository).finish(eq(2L), eq(ReindexJobStatus.COMPLETED), isNull(), any());
+    }
+
+    @Test
+    void testJobClaimedElsewhereIsNotResumed() {
+        // Given
+        when(reindexJobRepository.findByStatus(ReindexJobStatus.RUNNING)).thenReturn(List.of(job(2L, 4000)));
+        when(reindexJobRepository.claim(eq(2L), any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(0);
+
+        // When
+        reindexJobService.resumeStaleJobs();
+
+        // Then
+        verify(contactIndexer, never()).resync(anyLong(), any());
+    }
+
+    private static ReindexJob job(Long id, long lastId) {
+        ReindexJob job = new ReindexJob();
+        job.setId(id);
+        job.setStatus(ReindexJobStatus.RUNNING);
+        job.setLastId(lastId);
+        return job;
+    }
+}
@@ -0,0 +1,45 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.model.SearchMode;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SearchQueryNormalizerTest {
+
+    @Test
+    void testFoldsWhitespaceAndUnicode() {
+        assertThat(SearchQueryNormalizer.normalize(SearchMode.CITY, "  New \t York "))
+            .isEqualTo("New York");
+        assertThat(SearchQueryNormalizer.normalize(SearchMode.STANDARD, "Ｊｏｈｎ"))
+            .isEqualTo("John");
+        assertThat(SearchQueryNormalizer.normalize(SearchMode.STANDARD, "José"))
+            .isEqualTo("José");
+    }
+
+    @Test
+    void testFoldsCaseOnlyForAnalyzedModes() {
+        assertThat(SearchQueryNormalizer.normalize(SearchMode.AUTOCOMPLETE, "JoHn")).isEqualTo("john");
+        assertThat(SearchQueryNormalizer.normalize(SearchMode.CITY, "New York")).isEqualTo("New York");
+        assertThat(SearchQueryNormalizer.normalize(SearchMode.PARTIAL_MATCH, "Rob")).isEqualTo("Rob");
+    }
+
+    @Test
+    void testTokensIncludeWordsAndTheirParts() {
+        assertThat(SearchQueryNormalizer.tokens("John.Smith@Email.com  O'Brien"))
+            .containsExactly("john.smith@email.com", "john", "smith", "email", "com", "o'brien", "o", "brien",
+                "john.smith", "email.com");
+        assertThat(SearchQueryNormalizer.tokens(null)).isEmpty();
+    }
+
+    @Test
+    void testStandardTokensSplitAtWordBoundaries() {
+        assertThat(SearchQueryNormalizer.standardTokens("John.Smith@Email.com  O'Brien"))
+            .containsExactly("john.smith", "email.com", "o'brien");
+        assertThat(SearchQueryNormalizer.standardTokens("Jean-Luc, 12:30 3.14 x.1 a:b snake_case __"))
+            .containsExactly("jean", "luc", "12", "30", "3.14", "x", "1", "a:b", "snake_case");
+        assertThat(SearchQueryNormalizer.standardTokens("Jose\u0301 東京 Ｊｏｈｎ"))
+            .containsExactly("jose\u0301", "東", "京", "ｊｏｈｎ");
+        assertThat(SearchQueryNormalizer.standardTokens(null)).isEmpty();
+    }
+}
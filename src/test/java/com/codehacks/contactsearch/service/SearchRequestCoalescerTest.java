@@ -0,0 +1,165 @@
+package com.codehacks.contactsearch.service;
+
+import com.codehacks.contactsearch.document.ContactDocument;
+import com.codehacks.contactsearch.model.SearchMode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SearchRequestCoalescerTest {
+
+    private static final ContactSearchCache.Key KEY = new ContactSearchCache.Key(SearchMode.STANDARD, "John", 0, 10);
+
+    private static final Duration WAIT = Duration.ofSeconds(5);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private SearchRequestCoalescer searchRequestCoalescer;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        searchRequestCoalescer = new SearchRequestCoalescer(meterRegistry);
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private double coalescedCount() {
+        return meterRegistry.counter(SearchRequestCoalescer.COALESCED_METRIC).count();
+    }
+
+    @Test
+    void testConcurrentIdenticalSearchesShareOneCall() throws Exception {
+        // Given
+        List<ContactDocument> expected = List.of(new ContactDocument(
+            "1", "John", "Smith", "john.smith@email.com", "New York", LocalDateTime.now(), LocalDateTime.now()));
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Future<List<ContactDocument>> leader = executor.submit(() -> searchRequestCoalescer.execute(KEY, WAIT, () -> {
+            calls.incrementAndGet();
+            leaderStarted.countDown();
+            await(release);
+            return expected;
+        }, List::of));
+        assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        List<Future<List<ContactDocument>>> followers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            followers.add(executor.submit(() -> searchRequestCoalescer.execute(KEY, WAIT, () -> {
+                calls.incrementAndGet();
+                return List.of();
+            }, List::of)));
+        }
+        while (coalescedCount() < 5) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        // Then
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo(expected);
+        for (Future<List<ContactDocument>> follower : followers) {
+            assertThat(follower.get(5, TimeUnit.SECONDS)).isSameAs(expected);
+        }
+        assertThat(calls).hasValue(1);
+        assertThat(coalescedCount()).isEqualTo(5);
+    }
+
+    @Test
+    void testSequentialSearchesAreNotCoalesced() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        for (int i = 0; i < 2; i++) {
+            searchRequestCoalescer.execute(KEY, WAIT, () -> {
+                calls.incrementAndGet();
+                return List.of();
+            }, List::of);
+        }
+
+        // Then
+        assertThat(calls).hasValue(2);
+        assertThat(coalescedCount()).isZero();
+    }
+
+    @Test
+    void testFailureIsSharedAndNotRemembered() throws Exception {
+        // Given
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<List<ContactDocument>> leader = executor.submit(() -> searchRequestCoalescer.execute(KEY, WAIT, () -> {
+            leaderStarted.countDown();
+            await(release);
+            throw new IllegalStateException("cluster unavailable");
+        }, List::of));
+        assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<List<ContactDocument>> follower =
+            executor.submit(() -> searchRequestCoalescer.execute(KEY, WAIT, List::of, List::of));
+        while (coalescedCount() < 1) {
+            Thread.onSpinWait();
+        }
+
+        // When
+        release.countDown();
+
+        // Then
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(searchRequestCoalescer.<List<ContactDocument>>execute(KEY, WAIT, List::of, List::of)).isEmpty();
+    }
+
+    @Test
+    void testFollowerGivesUpWhenItsBudgetRunsOut() throws Exception {
+        // Given
+        List<ContactDocument> timedOut = List.of();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<List<ContactDocument>> leader = executor.submit(() -> searchRequestCoalescer.execute(KEY, WAIT, () -> {
+            leaderStarted.countDown();
+            await(release);
+            return List.of(new ContactDocument());
+        }, List::of));
+        assertThat(leaderStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // When
+        List<ContactDocument> result = searchRequestCoalescer.execute(KEY, Duration.ofMillis(50), List::of,
+            () -> timedOut);
+
+        // Then
+        assertThat(result).isSameAs(timedOut);
+        assertThat(meterRegistry.counter(SearchRequestCoalescer.TIMED_OUT_METRIC).count()).isEqualTo(1.0);
+        release.countDown();
+        assertThat(leader.get(5, TimeUnit.SECONDS)).hasSize(1);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
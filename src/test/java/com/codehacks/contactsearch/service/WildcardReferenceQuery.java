@@ -0,0 +1,31 @@
+package com.codehacks.contactsearch.service;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+
+import java.util.List;
+
+/**
+ * Rebuilds the leading-wildcard form of a spelling-correction or
+ * partial-match query, for comparing the ngram "contains" clauses against
+ * the {@code *query*} clauses they replaced. Every other clause is kept as is.
+ */
+public final class WildcardReferenceQuery {
+
+    private WildcardReferenceQuery() {
+    }
+
+    public static Query of(Query current, String query) {
+        String pattern = "*" + query.replace("\\", "\\\\").replace("*", "\\*").replace("?", "\\?") + "*";
+        List<Query> should = current.bool().should().stream()
+                .map(clause -> clause.isConstantScore()
+                        ? Query.of(q -> q.wildcard(w -> w.field(ngramParent(clause.constantScore().filter())).value(pattern)))
+                        : clause)
+                .toList();
+        return Query.of(q -> q.bool(b -> b.should(should).minimumShouldMatch("1")));
+    }
+
+    private static String ngramParent(Query filter) {
+        String field = filter.isTerm() ? filter.term().field() : filter.bool().filter().get(0).term().field();
+        return field.substring(0, field.length() - ".ngram".length());
+    }
+}